@@ -16,21 +16,29 @@
 package com.nesscomputing.jdbc;
 
 import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
 import org.apache.commons.configuration.CombinedConfiguration;
 import org.apache.commons.configuration.ConfigurationConverter;
 import org.apache.commons.configuration.tree.OverrideCombiner;
+import org.skife.config.ConfigurationObjectFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Binding;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -39,8 +47,17 @@ import com.google.inject.Provider;
 import com.google.inject.ProvisionException;
 import com.google.inject.TypeLiteral;
 import com.mchange.v2.c3p0.DataSources;
+import com.mchange.v2.c3p0.PooledDataSource;
 import com.nesscomputing.config.Config;
 import com.nesscomputing.config.util.ImmutableConfiguration;
+import com.nesscomputing.jdbc.pool.DriverDataSource;
+import com.nesscomputing.jdbc.pool.NessPoolConfig;
+import com.nesscomputing.jdbc.pool.NessPooledDataSource;
+import com.nesscomputing.jdbc.stats.LeakDetector;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.jdbc.wrappers.C3P0ConnectionCustomizer;
+import com.nesscomputing.jdbc.wrappers.DelegatingDataSource;
+import com.nesscomputing.jdbc.wrappers.FusedDataSourceWrapper;
 import com.nesscomputing.lifecycle.LifecycleStage;
 import com.nesscomputing.lifecycle.guice.AbstractLifecycleProvider;
 import com.nesscomputing.lifecycle.guice.LifecycleAction;
@@ -51,6 +68,22 @@ public class C3P0DataSourceProvider extends AbstractLifecycleProvider<DataSource
     public static final String PREFIX = "ness.db.";
     public static final String DEFAULTS_PREFIX = "ness.db.defaults";
 
+    /** Pool property that selects the pool implementation. */
+    public static final String POOL_IMPLEMENTATION = "implementation";
+    public static final String POOL_IMPLEMENTATION_C3P0 = "c3p0";
+    public static final String POOL_IMPLEMENTATION_NESS = "ness";
+
+    /** Pool property with the number of connections that are opened before the pool is handed out. */
+    public static final String POOL_WARM_SIZE = "warmSize";
+
+    /** Default of <code>maxPoolSize</code> for C3P0. */
+    public static final int C3P0_DEFAULT_MAX_POOL_SIZE = 15;
+
+    /** C3P0 pool property for the connection customizer, see {@link C3P0ConnectionCustomizer}. */
+    private static final String CONNECTION_CUSTOMIZER = "connectionCustomizerClassName";
+
+    private static final String DEFAULT_TEST_QUERY = "SELECT 1";
+
     private static final Log LOG = Log.findLog();
 
     private Config config;
@@ -63,6 +96,13 @@ public class C3P0DataSourceProvider extends AbstractLifecycleProvider<DataSource
     private final Annotation annotation;
     private final String propertiesPrefix;
 
+    private PoolStartup poolStartup = null;
+    private PoolStatistics poolStatistics = null;
+    private LeakDetector leakDetector = null;
+    private ObjectName statisticsObjectName = null;
+    private String c3p0IdentityToken = null;
+    private volatile int maxPoolSize = 0;
+
     C3P0DataSourceProvider(final String dbName, final Annotation annotation)
     {
         this.dbName = dbName;
@@ -74,12 +114,19 @@ public class C3P0DataSourceProvider extends AbstractLifecycleProvider<DataSource
                 public void performAction(final DataSource dataSource)
                 {
                     LOG.info("Destroying datasource %s", dbName);
+                    unregisterStatistics();
+                    if (leakDetector != null) {
+                        leakDetector.stop();
+                    }
                     try {
-                        DataSources.destroy(dataSource);
+                        destroyPool(dataSource);
                     }
                     catch (SQLException e) {
                         LOG.error(e, "Could not destroy pool %s", dbName);
                     }
+                    if (poolStartup != null) {
+                        poolStartup.stop();
+                    }
                 }
             });
     }
@@ -93,11 +140,33 @@ public class C3P0DataSourceProvider extends AbstractLifecycleProvider<DataSource
     @Inject(optional = true)
     void injectDependencies(final Injector injector)
     {
+        final Binding<PoolStartup> startupBinding = injector.getExistingBinding(Key.get(PoolStartup.class));
+        if (startupBinding != null) {
+            poolStartup = startupBinding.getProvider().get();
+            poolStartup.register(dbName, new Callable<DataSource>() {
+                @Override
+                public DataSource call() throws SQLException
+                {
+                    return createCheckedPool();
+                }
+            });
+        }
+
+        final Binding<PoolStatistics> statisticsBinding = injector.getExistingBinding(Key.get(PoolStatistics.class, annotation));
+        if (statisticsBinding != null) {
+            poolStatistics = statisticsBinding.getProvider().get();
+        }
+
+        final Binding<LeakDetector> leakDetectorBinding = injector.getExistingBinding(Key.get(LeakDetector.class, annotation));
+        if (leakDetectorBinding != null) {
+            leakDetector = leakDetectorBinding.getProvider().get();
+        }
+
         final Binding<Set<Function<DataSource, DataSource>>> datasourceBindings = injector.getExistingBinding(Key.get(new TypeLiteral<Set<Function<DataSource, DataSource>>> () { }, annotation));
-        if (datasourceBindings != null) {
-            for (Function<DataSource, DataSource> fn : datasourceBindings.getProvider().get()) {
-                dataSourceWrapper = Functions.compose(dataSourceWrapper, fn);
-            }
+        if (datasourceBindings != null || poolStatistics != null) {
+            // Merge all wrappers into a single layer with a well defined order, independent of the set iteration order.
+            final Set<Function<DataSource, DataSource>> wrappers = datasourceBindings == null ? ImmutableSet.<Function<DataSource, DataSource>>of() : datasourceBindings.getProvider().get();
+            dataSourceWrapper = new FusedDataSourceWrapper(wrappers, poolStatistics);
         }
 
         final Binding<Properties> propertiesBinding = injector.getExistingBinding(Key.get(Properties.class, annotation));
@@ -116,40 +185,182 @@ public class C3P0DataSourceProvider extends AbstractLifecycleProvider<DataSource
     public DataSource internalGet()
     {
         try {
-            DataSource pool = createC3P0Pool();
-            DatabaseChecker.checkPool(pool);
+            DataSource pool = (poolStartup == null) ? createCheckedPool() : poolStartup.getPool(dbName);
+
+            if (poolStatistics != null) {
+                poolStatistics.setPool(pool);
+                if (pool instanceof NessPooledDataSource) {
+                    ((NessPooledDataSource) pool).setStatistics(poolStatistics);
+                }
+                else if (pool instanceof PooledDataSource) {
+                    c3p0IdentityToken = ((PooledDataSource) pool).getIdentityToken();
+                    C3P0ConnectionCustomizer.register(c3p0IdentityToken, poolStatistics);
+                }
+                registerStatistics();
+            }
+
+            final WrapperConfig wrapperConfig = config.getBean(WrapperConfig.class, ImmutableMap.of("dbName", dbName));
+            if (wrapperConfig.isDelegateWrappers()) {
+                LOG.info("Using delegate wrappers for %s", dbName);
+                pool = new DelegatingDataSource(pool);
+            }
             return dataSourceWrapper.apply(pool);
         } catch (SQLException e) {
             throw new ProvisionException(String.format("Could not start DB pool %s", dbName), e);
         }
     }
 
-    private DataSource createC3P0Pool() throws SQLException
+    private DataSource createCheckedPool() throws SQLException
+    {
+        final Properties poolProps = getProperties("pool");
+        final DataSource pool = createPool(poolProps);
+        DatabaseChecker.checkPool(pool);
+
+        maxPoolSize = getMaxPoolSize(pool, poolProps);
+        final int warmSize = Math.min(Integer.parseInt(poolProps.getProperty(POOL_WARM_SIZE, "0")), maxPoolSize);
+        try {
+            PoolWarmer.warm(dbName, pool, warmSize, poolProps.getProperty("preferredTestQuery", DEFAULT_TEST_QUERY), config.getBean(StartupConfig.class).getTimeout());
+        }
+        catch (SQLException e) {
+            destroyPool(pool);
+            throw e;
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the maximum number of connections of the pool created by this provider, 0 if the pool was not created yet.
+     */
+    public int getMaxPoolSize()
+    {
+        return maxPoolSize;
+    }
+
+    /**
+     * The native pool knows its size. C3P0 does not expose it, so it is read from the same properties that configured the pool.
+     */
+    private static int getMaxPoolSize(final DataSource pool, final Properties poolProps)
+    {
+        if (pool instanceof NessPooledDataSource) {
+            return ((NessPooledDataSource) pool).getMaxPoolSize();
+        }
+        return Integer.parseInt(poolProps.getProperty("maxPoolSize", Integer.toString(C3P0_DEFAULT_MAX_POOL_SIZE)));
+    }
+
+    /**
+     * Destroys the pool below a data source. The C3P0 pool does not implement the JDBC 4 wrapper methods, so it is found by
+     * skipping all delegating layers, and only other data sources, e.g. the proxy of a wrapped native pool, are asked to unwrap.
+     */
+    static void destroyPool(final DataSource dataSource) throws SQLException
+    {
+        final DataSource pool = DelegatingDataSource.unwrapAll(dataSource);
+        if (pool instanceof NessPooledDataSource) {
+            ((NessPooledDataSource) pool).close();
+        }
+        else if (pool instanceof PooledDataSource) {
+            DataSources.destroy(pool);
+        }
+        else if (pool.isWrapperFor(NessPooledDataSource.class)) {
+            pool.unwrap(NessPooledDataSource.class).close();
+        }
+        else {
+            DataSources.destroy(pool);
+        }
+    }
+
+    private DataSource createPool(final Properties poolProps) throws SQLException
     {
         Preconditions.checkState(config != null, "Config object was never injected!");
 
         final DatabaseConfig databaseConfig;
 
         if (uri == null) {
-            LOG.info("Creating datasource %s via C3P0", dbName);
+            LOG.info("Creating datasource %s", dbName);
             final DatabaseConfig dbConfig = config.getBean(DatabaseConfig.class, ImmutableMap.of("dbName", dbName));
             databaseConfig = dbConfig;
         }
         else {
-            LOG.info("Using preset URI %s for %s via C3P0", uri, dbName);
+            LOG.info("Using preset URI %s for %s", uri, dbName);
             databaseConfig = new ImmutableDatabaseConfig(uri);
         }
 
-        final Properties poolProps = getProperties("pool");
-        LOG.info("Setting pool properties for %s to %s", dbName, poolProps);
+        final Properties implementationProps = new Properties();
+        implementationProps.putAll(poolProps);
+        final String implementation = (String) implementationProps.remove(POOL_IMPLEMENTATION);
+        implementationProps.remove(POOL_WARM_SIZE);
+        LOG.info("Setting pool properties for %s to %s", dbName, implementationProps);
 
         final Properties driverProps = getProperties("ds");
         LOG.info("Setting driver properties for %s to %s", dbName, driverProps);
 
-        DataSource unpooledDataSource = DataSources.unpooledDataSource(databaseConfig.getDbUri().toString(), driverProps);
-        DatabaseChecker.checkConnection(unpooledDataSource);
+        if (implementation == null || POOL_IMPLEMENTATION_C3P0.equalsIgnoreCase(implementation)) {
+            LOG.info("Using C3P0 pool for %s", dbName);
+            final DataSource unpooledDataSource = DataSources.unpooledDataSource(databaseConfig.getDbUri().toString(), driverProps);
+            DatabaseChecker.checkConnection(unpooledDataSource);
+            if (implementationProps.containsKey(CONNECTION_CUSTOMIZER)) {
+                LOG.warn("Pool %s names its own connection customizer, hold times are not recorded and statement caches of destroyed connections are not dropped!", dbName);
+            }
+            else {
+                implementationProps.setProperty(CONNECTION_CUSTOMIZER, C3P0ConnectionCustomizer.class.getName());
+            }
+            return DataSources.pooledDataSource(unpooledDataSource, implementationProps);
+        }
+        else if (POOL_IMPLEMENTATION_NESS.equalsIgnoreCase(implementation)) {
+            LOG.info("Using native pool for %s", dbName);
+            // Opens connections without going through the synchronized C3P0 and DriverManager code.
+            final DataSource unpooledDataSource = new DriverDataSource(databaseConfig.getDbUri().toString(), driverProps);
+            // The probe connection becomes the first connection of the pool.
+            final Connection probeConnection = unpooledDataSource.getConnection();
+            boolean success = false;
+            try {
+                final NessPooledDataSource pool = new NessPooledDataSource(dbName, unpooledDataSource, new ConfigurationObjectFactory(implementationProps).build(NessPoolConfig.class));
+                pool.addConnection(probeConnection);
+                success = true;
+                return pool;
+            }
+            finally {
+                if (!success) {
+                    probeConnection.close();
+                }
+            }
+        }
+        else {
+            throw new IllegalArgumentException(String.format("Unknown pool implementation '%s' for %s", implementation, dbName));
+        }
+    }
 
-        return DataSources.pooledDataSource(unpooledDataSource, poolProps);
+    private void registerStatistics()
+    {
+        final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName("com.nesscomputing.jdbc:type=PoolStatistics,name=" + ObjectName.quote(dbName));
+            if (mbeanServer.isRegistered(objectName)) {
+                LOG.warn("Replacing pool statistics for %s in JMX", dbName);
+                mbeanServer.unregisterMBean(objectName);
+            }
+            mbeanServer.registerMBean(poolStatistics, objectName);
+            statisticsObjectName = objectName;
+        }
+        catch (JMException e) {
+            LOG.warn(e, "Could not register pool statistics for %s", dbName);
+        }
+    }
+
+    private void unregisterStatistics()
+    {
+        if (statisticsObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(statisticsObjectName);
+            }
+            catch (JMException e) {
+                LOG.debug(e, "Could not unregister pool statistics for %s", dbName);
+            }
+            statisticsObjectName = null;
+        }
+        if (c3p0IdentityToken != null) {
+            C3P0ConnectionCustomizer.unregister(c3p0IdentityToken);
+            c3p0IdentityToken = null;
+        }
     }
 
     private Properties getProperties(final String suffix)
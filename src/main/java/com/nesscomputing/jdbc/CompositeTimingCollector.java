@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import java.util.List;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Passes every statement execution to a list of timing collectors.
+ */
+class CompositeTimingCollector implements TimingCollector
+{
+    private final TimingCollector [] timingCollectors;
+
+    CompositeTimingCollector(final List<TimingCollector> timingCollectors)
+    {
+        final List<TimingCollector> collectors = ImmutableList.copyOf(timingCollectors);
+        this.timingCollectors = collectors.toArray(new TimingCollector[collectors.size()]);
+    }
+
+    @Override
+    public void collect(final long elapsedTime, final StatementContext ctx)
+    {
+        for (int i = 0; i < timingCollectors.length; i++) {
+            timingCollectors[i].collect(elapsedTime, ctx);
+        }
+    }
+}
@@ -25,16 +25,38 @@ import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.AbstractModule;
+import com.google.inject.Key;
 import com.google.inject.Scopes;
 import com.google.inject.name.Names;
+import com.nesscomputing.jdbc.async.AsyncIDBI;
+import com.nesscomputing.jdbc.async.AsyncIDBIProvider;
+import com.nesscomputing.jdbc.batch.GroupCommitter;
+import com.nesscomputing.jdbc.batch.GroupCommitterProvider;
+import com.nesscomputing.jdbc.cache.QueryCache;
+import com.nesscomputing.jdbc.columnar.ColumnarScanner;
+import com.nesscomputing.jdbc.columnar.ColumnarScannerProvider;
+import com.nesscomputing.jdbc.copy.BulkExporter;
+import com.nesscomputing.jdbc.copy.BulkExporterProvider;
+import com.nesscomputing.jdbc.copy.BulkLoader;
+import com.nesscomputing.jdbc.copy.BulkLoaderProvider;
+import com.nesscomputing.jdbc.logging.SqlLogProvider;
+import com.nesscomputing.jdbc.retry.TransactionRetryPolicy;
+import com.nesscomputing.jdbc.stats.LeakDetector;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.jdbc.stats.StatementStatisticsCollector;
+import com.nesscomputing.jdbc.stream.QueryStreamer;
+import com.nesscomputing.jdbc.stream.QueryStreamerProvider;
 import com.nesscomputing.jdbc.wrappers.ApplicationNameWrapper;
 import com.nesscomputing.jdbc.wrappers.ClientInfoWrapper;
 import com.nesscomputing.jdbc.wrappers.CloseableWrapper;
 import com.nesscomputing.jdbc.wrappers.ConnectionWrapper;
 import com.nesscomputing.jdbc.wrappers.CreateArrayOfWrapper;
+import com.nesscomputing.jdbc.wrappers.SessionSettingsWrapper;
+import com.nesscomputing.jdbc.wrappers.StatementCacheWrapper;
 import com.nesscomputing.logging.Log;
 
 import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.SQLLog;
 
 /**
  * Install this to provide a single pooled DataSource.  The database name is used to select configuration
@@ -57,7 +79,75 @@ import org.skife.jdbi.v2.IDBI;
  * db.dbName.ds
  * </pre>
  *
- * For example, you might specify <code>db.user.pool.maxPoolSize=50</code>
+ * For example, you might specify <code>db.user.pool.maxPoolSize=50</code><br/>
+ *
+ * Session settings are in:
+ * <pre>
+ * db.defaults.session
+ * db.dbName.session
+ * </pre>
+ * For example, <code>db.user.session.statement_timeout=5s</code> runs <code>SET statement_timeout TO '5s'</code>. Settings
+ * are only sent when a physical connection does not have them yet.<br/>
+ *
+ * Setting <code>db.dbName.pool.implementation=ness</code> uses the built-in lock-free pool instead of C3P0. It understands
+ * the pool options listed in {@link com.nesscomputing.jdbc.pool.NessPoolConfig}. Threads waiting for a connection of this pool
+ * only park through <code>java.util.concurrent</code> and never block on a monitor, unlike with C3P0.<br/>
+ *
+ * Setting <code>db.dbName.pool.warmSize</code> opens and tests that many connections, at most <code>maxPoolSize</code>, before
+ * the DataSource is handed out. The native pool also keeps the connection that is opened to check the database URI.<br/>
+ *
+ * Setting <code>ness.db.startup.parallel=true</code> creates and checks all pools of an injector concurrently when the first of
+ * them is requested. They have <code>ness.db.startup.timeout</code> milliseconds to become available, and failures of all pools
+ * are reported together. Pools that are never requested are destroyed when the lifecycle stops, see {@link StartupConfig}.<br/>
+ *
+ * Checkout and hold times, failures and connection counts of the pool are available from the {@link PoolStatistics}
+ * bound with the same annotation, and through JMX. Hold times are recorded by the pool itself, C3P0 pools get a connection
+ * customizer for it unless <code>db.dbName.pool.connectionCustomizerClassName</code> names another one.<br/>
+ *
+ * Execution times per normalized SQL statement are collected by the {@link StatementStatisticsCollector} bound with the
+ * same annotation. <code>db.dbName.statementStats.enabled=false</code> turns it off.<br/>
+ *
+ * Setting <code>db.dbName.statementCache.size</code> to a positive value keeps up to that many prepared statements open per
+ * physical connection and reuses them across checkouts. Hits, misses and evictions are counted in the {@link PoolStatistics}.<br/>
+ *
+ * Transactions that fail with a serialization failure or a deadlock are retried with a randomized, growing backoff, limited by a
+ * retry budget of the pool, see {@link com.nesscomputing.jdbc.retry.RetryConfig}. Conflicts and retries are counted in the
+ * {@link PoolStatistics}, conflicts also per statement in the {@link StatementStatisticsCollector}.<br/>
+ *
+ * Parameters of type <code>long[]</code>, <code>int[]</code>, <code>double[]</code> and <code>UUID[]</code> are bound as
+ * PostgreSQL arrays without boxing their elements, see {@link com.nesscomputing.jdbc.argument.ArrayArgumentFactory}. Binding a
+ * {@link com.nesscomputing.jdbc.mapper.GeneratedBeanMapperFactory} maps bean classes by handles composed once per class and
+ * result shape instead of reflection.<br/>
+ *
+ * An {@link AsyncIDBI} is bound with the same annotation. It runs IDBI calls on a bounded executor, see
+ * {@link com.nesscomputing.jdbc.async.AsyncConfig}.<br/>
+ *
+ * Installing a {@link com.nesscomputing.jdbc.cache.QueryCacheWrapper} for the pool turns the IDBI into a
+ * {@link com.nesscomputing.jdbc.cache.CachingIDBI} that caches the results of selected queries in the {@link QueryCache} bound
+ * with the same annotation, see {@link com.nesscomputing.jdbc.cache.QueryCacheConfig}. Writes through the IDBI invalidate the
+ * results of the tables they change.<br/>
+ *
+ * Results that do not fit into memory can be read through the {@link QueryStreamer} bound with the same annotation. It runs the
+ * query with a server side cursor and adapts the fetch size to the width of the rows, see
+ * {@link com.nesscomputing.jdbc.stream.StreamingConfig}. The {@link ColumnarScanner} bound with the same annotation reads numeric
+ * results that way into reused batches of primitive arrays, see {@link com.nesscomputing.jdbc.columnar.ColumnarConfig}.<br/>
+ *
+ * Large amounts of data can be loaded with <code>COPY ... FROM STDIN</code> through the {@link BulkLoader} bound with the same
+ * annotation. The {@link BulkExporter} writes query results with <code>COPY ... TO STDOUT</code> straight into a channel or stream.
+ * Both need a PostgreSQL database, see {@link com.nesscomputing.jdbc.copy.CopyConfig}.<br/>
+ *
+ * Small writes of many threads can be committed together through the {@link GroupCommitter} bound with the same annotation,
+ * see {@link com.nesscomputing.jdbc.batch.GroupCommitConfig}.<br/>
+ *
+ * Statements are logged at debug level to the <code>org.skife.jdbi</code> logger. <code>db.dbName.sqlLog.mode</code> turns this
+ * <code>OFF</code>, logs only a random sample of the statements or hands them to a background thread through a ring buffer that
+ * drops events when it is full, see {@link com.nesscomputing.jdbc.logging.SqlLogMode}.<br/>
+ *
+ * Setting <code>db.dbName.leak.enabled=true</code> reports connections that are held for longer than
+ * <code>db.dbName.leak.threshold</code> milliseconds, see {@link com.nesscomputing.jdbc.stats.LeakDetectorConfig}.<br/>
+ *
+ * Setting <code>db.dbName.wrapper.delegate=true</code> replaces the reflective proxies around the pool and its connections
+ * with static delegate classes. The DataSource then only implements {@link DataSource} and {@link java.io.Closeable}.
  * @author steven
  */
 public class DatabaseModule extends AbstractModule
@@ -92,14 +182,33 @@ public class DatabaseModule extends AbstractModule
     protected void configure()
     {
         LOG.info("DataSource [%s] is using pool configuration [%s]", annotation, dbName);
-        bind(DataSource.class).annotatedWith(annotation).toProvider(new C3P0DataSourceProvider(dbName, annotation)).in(Scopes.SINGLETON);
+        install(new PoolStartupModule());
+        install(new DefaultFactoriesModule());
+        final C3P0DataSourceProvider dataSourceProvider = new C3P0DataSourceProvider(dbName, annotation);
+        bind(DataSource.class).annotatedWith(annotation).toProvider(dataSourceProvider).in(Scopes.SINGLETON);
         bind(IDBI.class).annotatedWith(annotation).toProvider(new IDBIProvider(annotation)).in(Scopes.SINGLETON);
+        bind(SQLLog.class).annotatedWith(annotation).toProvider(new SqlLogProvider(dbName)).in(Scopes.SINGLETON);
+        bind(AsyncIDBI.class).annotatedWith(annotation).toProvider(new AsyncIDBIProvider(dbName, annotation, dataSourceProvider)).in(Scopes.SINGLETON);
+        bind(PoolStatistics.class).annotatedWith(annotation).toInstance(new PoolStatistics(dbName));
+        bind(LeakDetector.class).annotatedWith(annotation).toInstance(new LeakDetector(dbName));
+        bind(StatementStatisticsCollector.class).annotatedWith(annotation).toInstance(new StatementStatisticsCollector(dbName));
+        bind(TransactionRetryPolicy.class).annotatedWith(annotation).toInstance(new TransactionRetryPolicy(dbName));
+        bind(QueryCache.class).annotatedWith(annotation).toInstance(new QueryCache(dbName));
+        bind(GroupCommitter.class).annotatedWith(annotation).toProvider(new GroupCommitterProvider(dbName, annotation)).in(Scopes.SINGLETON);
+        bind(QueryStreamer.class).annotatedWith(annotation).toProvider(new QueryStreamerProvider(dbName, annotation)).in(Scopes.SINGLETON);
+        bind(ColumnarScanner.class).annotatedWith(annotation).toProvider(new ColumnarScannerProvider(dbName, annotation)).in(Scopes.SINGLETON);
+        bind(BulkLoader.class).annotatedWith(annotation).toProvider(new BulkLoaderProvider(dbName, annotation)).in(Scopes.SINGLETON);
+        bind(BulkExporter.class).annotatedWith(annotation).toProvider(new BulkExporterProvider(dbName, annotation)).in(Scopes.SINGLETON);
 
         NessSqlWrapperBinder.bindDataSourceWrapper(binder(), annotation).to(ApplicationNameWrapper.class).in(Scopes.SINGLETON);
         NessSqlWrapperBinder.bindDataSourceWrapper(binder(), annotation).to(CloseableWrapper.class).in(Scopes.SINGLETON);
         NessSqlWrapperBinder.bindDataSourceWrapper(binder(), annotation).toInstance(new ConnectionWrapper(annotation));
+        NessSqlWrapperBinder.bindDataSourceWrapper(binder(), annotation).toInstance(new SessionSettingsWrapper(dbName));
+        NessSqlWrapperBinder.bindDataSourceWrapper(binder(), annotation).toInstance(new StatementCacheWrapper(dbName, annotation));
         NessSqlWrapperBinder.bindConnectionWrapper(binder(), annotation).to(CreateArrayOfWrapper.class).in(Scopes.SINGLETON);
         NessSqlWrapperBinder.bindConnectionWrapper(binder(), annotation).to(ClientInfoWrapper.class).in(Scopes.SINGLETON);
+        NessSqlWrapperBinder.bindTimingCollector(binder(), annotation).to(Key.get(StatementStatisticsCollector.class, annotation));
+        NessSqlWrapperBinder.bindTimingCollector(binder(), annotation).to(Key.get(QueryCache.class, annotation));
     }
 
     @Override
@@ -16,6 +16,7 @@
 package com.nesscomputing.jdbc;
 
 import java.lang.annotation.Annotation;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -23,12 +24,17 @@ import javax.sql.DataSource;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.inject.Binding;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.inject.TypeLiteral;
+import com.nesscomputing.jdbc.retry.RetryingTransactionRunner;
+import com.nesscomputing.jdbc.retry.TransactionRetryPolicy;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.jdbc.stats.StatementStatisticsCollector;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.skife.jdbi.v2.DBI;
@@ -37,24 +43,33 @@ import org.skife.jdbi.v2.ResultSetMapperFactory;
 import org.skife.jdbi.v2.TimingCollector;
 import org.skife.jdbi.v2.logging.Log4JLog;
 import org.skife.jdbi.v2.tweak.ArgumentFactory;
+import org.skife.jdbi.v2.tweak.SQLLog;
 import org.skife.jdbi.v2.tweak.transactions.SerializableTransactionRunner;
 import org.skife.jdbi.v2.tweak.transactions.SerializableTransactionRunner.Configuration;
 
 /**
  * Bind an IDBI instance with a given annotation, using a DataSource with the same
- * annotation as the backing for it.
+ * annotation as the backing for it. Transactions are retried by a {@link RetryingTransactionRunner}
+ * if a {@link TransactionRetryPolicy} is bound with the same annotation. Statements are logged by the {@link SQLLog} bound with
+ * the same annotation, or by a {@link Log4JLog} if there is none.
  */
 public class IDBIProvider implements Provider<IDBI>
 {
     private static final TypeLiteral<Set<Function<DBI, DBI>>> DBI_DBI_FUNCTION_TYPE = new TypeLiteral<Set<Function<DBI, DBI>>>() {};
     private static final TypeLiteral<Set<Function<IDBI, IDBI>>> IDBI_IDBI_FUNCTION_TYPE = new TypeLiteral<Set<Function<IDBI, IDBI>>>() {};
+    private static final TypeLiteral<Set<TimingCollector>> TIMING_COLLECTOR_TYPE = new TypeLiteral<Set<TimingCollector>>() {};
 
     private Injector injector;
     private TimingCollector timingCollector = null;
+    private Set<TimingCollector> timingCollectors = null;
     private Set<ArgumentFactory<?>> argumentFactories = null;
     private Set<ResultSetMapperFactory> resultSetMapperFactories = null;
     private Set<Function<DBI, DBI>> dbiWrappers = null;
     private Set<Function<IDBI, IDBI>> idbiWrappers = null;
+    private TransactionRetryPolicy retryPolicy = null;
+    private PoolStatistics poolStatistics = null;
+    private StatementStatisticsCollector statementStatistics = null;
+    private SQLLog sqlLog = null;
 
     private final Annotation annotation;
 
@@ -80,7 +95,33 @@ public class IDBIProvider implements Provider<IDBI>
         if (idbiWrapperBindings != null) {
             idbiWrappers = idbiWrapperBindings.getProvider().get();
         }
-}
+
+        final Binding<Set<TimingCollector>> timingCollectorBindings = injector.getExistingBinding(Key.get(TIMING_COLLECTOR_TYPE, annotation));
+
+        if (timingCollectorBindings != null) {
+            timingCollectors = timingCollectorBindings.getProvider().get();
+        }
+
+        final Binding<TransactionRetryPolicy> retryPolicyBinding = injector.getExistingBinding(Key.get(TransactionRetryPolicy.class, annotation));
+        if (retryPolicyBinding != null) {
+            retryPolicy = retryPolicyBinding.getProvider().get();
+        }
+
+        final Binding<PoolStatistics> statisticsBinding = injector.getExistingBinding(Key.get(PoolStatistics.class, annotation));
+        if (statisticsBinding != null) {
+            poolStatistics = statisticsBinding.getProvider().get();
+        }
+
+        final Binding<StatementStatisticsCollector> statementStatisticsBinding = injector.getExistingBinding(Key.get(StatementStatisticsCollector.class, annotation));
+        if (statementStatisticsBinding != null) {
+            statementStatistics = statementStatisticsBinding.getProvider().get();
+        }
+
+        final Binding<SQLLog> sqlLogBinding = injector.getExistingBinding(Key.get(SQLLog.class, annotation));
+        if (sqlLogBinding != null) {
+            sqlLog = sqlLogBinding.getProvider().get();
+        }
+    }
 
     @Inject(optional=true)
     void setTimingCollector(final TimingCollector timingCollector)
@@ -103,11 +144,27 @@ public class IDBIProvider implements Provider<IDBI>
     @Override
     public IDBI get() {
         final DBI dbi = new DBI(injector.getInstance(Key.get(DataSource.class, annotation)));
-        dbi.setSQLLog(new Log4JLog());
-        dbi.setTransactionHandler(new SerializableTransactionRunner(new Configuration(), dbi.getTransactionHandler()));
+        dbi.setSQLLog(sqlLog != null ? sqlLog : new Log4JLog());
+        if (retryPolicy != null) {
+            dbi.setTransactionHandler(new RetryingTransactionRunner(retryPolicy, poolStatistics, statementStatistics, dbi.getTransactionHandler()));
+        }
+        else {
+            dbi.setTransactionHandler(new SerializableTransactionRunner(new Configuration(), dbi.getTransactionHandler()));
+        }
 
+        final List<TimingCollector> collectors = Lists.newArrayList();
         if (timingCollector != null) {
-            dbi.setTimingCollector(timingCollector);
+            collectors.add(timingCollector);
+        }
+        if (timingCollectors != null) {
+            collectors.addAll(timingCollectors);
+        }
+
+        if (collectors.size() == 1) {
+            dbi.setTimingCollector(collectors.get(0));
+        }
+        else if (collectors.size() > 1) {
+            dbi.setTimingCollector(new CompositeTimingCollector(collectors));
         }
 
         if (!CollectionUtils.isEmpty(argumentFactories)) {
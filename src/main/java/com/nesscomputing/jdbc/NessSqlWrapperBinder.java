@@ -28,6 +28,9 @@ import com.google.inject.multibindings.Multibinder;
 
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.ResultSetMapperFactory;
+import org.skife.jdbi.v2.TimingCollector;
+import org.skife.jdbi.v2.tweak.ArgumentFactory;
 
 public final class NessSqlWrapperBinder
 {
@@ -35,6 +38,10 @@ public final class NessSqlWrapperBinder
     {
     }
 
+    /**
+     * Adds a DataSource wrapper. Wrappers implementing {@link com.nesscomputing.jdbc.wrappers.FusibleDataSourceWrapper} are merged
+     * into a single layer around the pool, see {@link com.nesscomputing.jdbc.wrappers.FusedDataSourceWrapper} for the ordering rules.
+     */
     public static LinkedBindingBuilder<Function<DataSource, DataSource>> bindDataSourceWrapper(final Binder binder, final Annotation annotation)
     {
         return  Multibinder.newSetBinder(binder, new TypeLiteral<Function<DataSource, DataSource>>() {}, annotation).addBinding();
@@ -54,4 +61,29 @@ public final class NessSqlWrapperBinder
     {
         return  Multibinder.newSetBinder(binder, new TypeLiteral<Function<DBI, DBI>>() {}, annotation).addBinding();
     }
+
+    /**
+     * Adds a timing collector to the IDBI of a pool. All collectors bound for the pool, and an unannotated
+     * {@link TimingCollector} if present, receive every statement execution.
+     */
+    public static LinkedBindingBuilder<TimingCollector> bindTimingCollector(final Binder binder, final Annotation annotation)
+    {
+        return  Multibinder.newSetBinder(binder, TimingCollector.class, annotation).addBinding();
+    }
+
+    /**
+     * Adds an argument factory to the IDBIs of all pools.
+     */
+    public static LinkedBindingBuilder<ArgumentFactory<?>> bindArgumentFactory(final Binder binder)
+    {
+        return  Multibinder.newSetBinder(binder, new TypeLiteral<ArgumentFactory<?>>() {}).addBinding();
+    }
+
+    /**
+     * Adds a result set mapper factory to the IDBIs of all pools.
+     */
+    public static LinkedBindingBuilder<ResultSetMapperFactory> bindResultSetMapperFactory(final Binder binder)
+    {
+        return  Multibinder.newSetBinder(binder, ResultSetMapperFactory.class).addBinding();
+    }
 }
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.ProvisionException;
+import com.google.inject.spi.Message;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Creates the pools of all database modules together. Every {@link C3P0DataSourceProvider} registers its pool when the injector
+ * is created. With <code>ness.db.startup.parallel=true</code>, the first request for any of the pools creates and checks all
+ * registered pools concurrently, sharing a single deadline. If any of them fails, all failures are reported in one
+ * {@link ProvisionException} and the pools that did start are destroyed again. Pools that were started but never requested
+ * are destroyed by {@link #stop()}.
+ */
+class PoolStartup
+{
+    private static final Log LOG = Log.findLog();
+
+    private final Lock lock = new ReentrantLock();
+
+    private final Map<String, Callable<DataSource>> pending = Maps.newLinkedHashMap();
+    private final Map<String, DataSource> started = Maps.newHashMap();
+
+    private StartupConfig startupConfig = null;
+    private ProvisionException startupFailure = null;
+    private boolean stopped = false;
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.startupConfig = config.getBean(StartupConfig.class);
+    }
+
+    void register(final String dbName, final Callable<DataSource> poolCreator)
+    {
+        lock.lock();
+        try {
+            pending.put(dbName, poolCreator);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    DataSource getPool(final String dbName) throws SQLException
+    {
+        lock.lock();
+        try {
+            if (startupFailure != null) {
+                throw startupFailure;
+            }
+
+            final DataSource pool = started.remove(dbName);
+            if (pool != null) {
+                return pool;
+            }
+
+            final Callable<DataSource> poolCreator = pending.remove(dbName);
+            Preconditions.checkState(poolCreator != null, "Pool %s was never registered!", dbName);
+
+            if (stopped || pending.isEmpty() || startupConfig == null || !startupConfig.isParallel()) {
+                return call(poolCreator);
+            }
+
+            pending.put(dbName, poolCreator);
+            startPending();
+            return started.remove(dbName);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Destroys the pools that were started together with a requested pool but were never requested themselves. Called when the
+     * lifecycle stops any of the pools, pools that are requested later are created on their own.
+     */
+    void stop()
+    {
+        lock.lock();
+        try {
+            stopped = true;
+            for (final Map.Entry<String, DataSource> entry : started.entrySet()) {
+                LOG.info("Destroying unused datasource %s", entry.getKey());
+                destroy(entry.getKey(), entry.getValue());
+            }
+            started.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void startPending()
+    {
+        final Map<String, Future<DataSource>> futures = Maps.newLinkedHashMap();
+        final ExecutorService executor = Executors.newFixedThreadPool(pending.size(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("db-startup-%d").build());
+
+        LOG.info("Starting pools %s", pending.keySet());
+        final long timeout = startupConfig.getTimeout();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            for (final Map.Entry<String, Callable<DataSource>> entry : pending.entrySet()) {
+                futures.put(entry.getKey(), executor.submit(new StartTask(entry.getKey(), entry.getValue())));
+            }
+            pending.clear();
+
+            final List<Message> failures = Lists.newArrayList();
+            for (final Map.Entry<String, Future<DataSource>> entry : futures.entrySet()) {
+                final String dbName = entry.getKey();
+                final Future<DataSource> future = entry.getValue();
+                try {
+                    started.put(dbName, future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                }
+                catch (TimeoutException e) {
+                    future.cancel(true);
+                    failures.add(new Message(ImmutableList.<Object>of(dbName), String.format("DB pool %s did not start within %d ms", dbName, timeout), null));
+                }
+                catch (CancellationException e) {
+                    failures.add(new Message(ImmutableList.<Object>of(dbName), String.format("Start of DB pool %s was cancelled", dbName), e));
+                }
+                catch (ExecutionException e) {
+                    failures.add(new Message(ImmutableList.<Object>of(dbName), String.format("Could not start DB pool %s", dbName), e.getCause()));
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    failures.add(new Message(ImmutableList.<Object>of(dbName), String.format("Interrupted while starting DB pool %s", dbName), e));
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                for (final Map.Entry<String, DataSource> entry : started.entrySet()) {
+                    destroy(entry.getKey(), entry.getValue());
+                }
+                started.clear();
+                startupFailure = new ProvisionException(failures);
+                throw startupFailure;
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a pool. A pool that only becomes available after its start was cancelled is destroyed right away.
+     */
+    private class StartTask implements Callable<DataSource>
+    {
+        private final String dbName;
+        private final Callable<DataSource> poolCreator;
+
+        StartTask(final String dbName, final Callable<DataSource> poolCreator)
+        {
+            this.dbName = dbName;
+            this.poolCreator = poolCreator;
+        }
+
+        @Override
+        public DataSource call() throws Exception
+        {
+            final DataSource pool = poolCreator.call();
+            if (Thread.currentThread().isInterrupted()) {
+                destroy(dbName, pool);
+                throw new InterruptedException(String.format("Start of DB pool %s was cancelled", dbName));
+            }
+            return pool;
+        }
+    }
+
+    private DataSource call(final Callable<DataSource> poolCreator) throws SQLException
+    {
+        try {
+            return poolCreator.call();
+        }
+        catch (SQLException e) {
+            throw e;
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+
+    private static void destroy(final String dbName, final DataSource pool)
+    {
+        try {
+            C3P0DataSourceProvider.destroyPool(pool);
+        }
+        catch (SQLException e) {
+            LOG.error(e, "Could not destroy pool %s", dbName);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * Binds the {@link PoolStartup} that is shared by all database modules. Installed by every {@link DatabaseModule}, Guice
+ * only keeps one copy of it.
+ */
+class PoolStartupModule extends AbstractModule
+{
+    @Override
+    protected void configure()
+    {
+        bind(PoolStartup.class).toInstance(new PoolStartup());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return getClass().hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        return obj != null && getClass() == obj.getClass();
+    }
+}
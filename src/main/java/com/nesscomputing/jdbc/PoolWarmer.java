@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Opens connections of a new pool ahead of time. The connections are checked out concurrently and held until all of them are
+ * open, so the pool has to open one physical connection for each of them. Each connection is tested before it is returned.
+ * Warming fails if the connections are not open within the timeout, e.g. because the pool can not open that many.
+ */
+final class PoolWarmer
+{
+    private static final Log LOG = Log.findLog();
+
+    private PoolWarmer()
+    {
+    }
+
+    static void warm(final String dbName, final DataSource pool, final int warmSize, final String testQuery, final long timeoutMillis) throws SQLException
+    {
+        if (warmSize <= 0) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final ExecutorService executor = Executors.newFixedThreadPool(warmSize, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("db-warm-" + dbName + "-%d").build());
+        final List<Future<Connection>> futures = Lists.newArrayListWithCapacity(warmSize);
+        try {
+            for (int i = 0; i < warmSize; i++) {
+                futures.add(executor.submit(new Callable<Connection>() {
+                    @Override
+                    public Connection call() throws SQLException
+                    {
+                        return openConnection(pool, testQuery);
+                    }
+                }));
+            }
+
+            SQLException failure = null;
+            final List<Connection> connections = Lists.newArrayListWithCapacity(warmSize);
+            for (final Future<Connection> future : futures) {
+                try {
+                    connections.add(future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                }
+                catch (TimeoutException e) {
+                    future.cancel(true);
+                    if (failure == null) {
+                        failure = new SQLException(String.format("Could not warm pool %s within %d ms", dbName, timeoutMillis), e);
+                    }
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new SQLException(String.format("Could not warm pool %s", dbName), e.getCause());
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null) {
+                        failure = new SQLException(String.format("Interrupted while warming pool %s", dbName), e);
+                    }
+                }
+            }
+
+            for (final Connection connection : connections) {
+                connection.close();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            LOG.info("Opened %d connections for pool %s in %d ms", warmSize, dbName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Connection openConnection(final DataSource pool, final String testQuery) throws SQLException
+    {
+        final Connection connection = pool.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                statement.execute(testQuery);
+            }
+            finally {
+                statement.close();
+            }
+            return connection;
+        }
+        catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.AbstractModule;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+import com.nesscomputing.jdbc.replica.ReplicaLagMonitor;
+import com.nesscomputing.jdbc.replica.ReplicaLagMonitorProvider;
+import com.nesscomputing.jdbc.wrappers.ReplicaRoutingWrapper;
+
+/**
+ * Install this instead of {@link DatabaseModule} to provide a pooled DataSource for a primary database with read replicas.
+ * The primary is configured as with {@link DatabaseModule}. Every replica is a separate pool, configured and bound like a
+ * {@link DatabaseModule} with the replica name, e.g. <code>db.dbName_replica1.uri=jdbc:...</code>.
+ *
+ * The DataSource and IDBI bound with the primary annotation send all connections to the primary, except while the current thread
+ * is marked as read-only with {@link com.nesscomputing.jdbc.replica.ReplicaRouting}. Then connections come from a replica in
+ * rotation. The replication lag is measured by the {@link ReplicaLagMonitor} bound with the primary annotation, the settings are in
+ * <pre>
+ * db.defaults.replica
+ * db.dbName.replica
+ * </pre>
+ * see {@link com.nesscomputing.jdbc.replica.ReplicaConfig}.
+ */
+public class ReplicatedDatabaseModule extends AbstractModule
+{
+    private final String dbName;
+    private final Annotation annotation;
+    private final List<String> replicaNames;
+
+    public ReplicatedDatabaseModule(@Nonnull final String dbName, final String ... replicaNames)
+    {
+        this(dbName, Names.named(dbName), Arrays.asList(replicaNames));
+    }
+
+    public ReplicatedDatabaseModule(@Nonnull final String dbName,
+                                    @Nonnull final Annotation annotation,
+                                    @Nonnull final List<String> replicaNames)
+    {
+        Preconditions.checkArgument(dbName != null, "the database name must not be null!");
+        Preconditions.checkArgument(annotation != null, "the database annotation must not be null!");
+        Preconditions.checkArgument(replicaNames != null, "the replica names must not be null!");
+        Preconditions.checkArgument(!replicaNames.contains(dbName), "%s can not be its own replica", dbName);
+
+        this.dbName = dbName;
+        this.annotation = annotation;
+        this.replicaNames = ImmutableList.copyOf(replicaNames);
+    }
+
+    @Override
+    protected void configure()
+    {
+        install(new DatabaseModule(dbName, annotation));
+        for (final String replicaName : replicaNames) {
+            install(new DatabaseModule(replicaName));
+        }
+
+        bind(ReplicaLagMonitor.class).annotatedWith(annotation).toProvider(new ReplicaLagMonitorProvider(dbName, replicaNames)).in(Scopes.SINGLETON);
+        NessSqlWrapperBinder.bindDataSourceWrapper(binder(), annotation).toInstance(new ReplicaRoutingWrapper(dbName, annotation));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(dbName, annotation, replicaNames);
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final ReplicatedDatabaseModule that = (ReplicatedDatabaseModule) obj;
+
+        return Objects.equal(this.dbName, that.dbName)
+                        && Objects.equal(this.annotation, that.annotation)
+                        && Objects.equal(this.replicaNames, that.replicaNames);
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class StartupConfig
+{
+    /**
+     * If true, all database pools that are known to the injector are created and checked concurrently when the first of
+     * them is requested. Pools that are created that way but never requested are destroyed when the lifecycle stops.
+     */
+    @Config("ness.db.startup.parallel")
+    @Default("false")
+    public abstract boolean isParallel();
+
+    /**
+     * Time in milliseconds that all pools together have to become available.
+     */
+    @Config("ness.db.startup.timeout")
+    @Default("60000")
+    public abstract long getTimeout();
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.argument;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.Argument;
+import org.skife.jdbi.v2.tweak.ArgumentFactory;
+
+/**
+ * Binds <code>long[]</code>, <code>int[]</code>, <code>double[]</code> and <code>UUID[]</code> as PostgreSQL arrays of
+ * <code>int8</code>, <code>int4</code>, <code>float8</code> and <code>uuid</code>, e.g. for <code>WHERE id = ANY(:ids)</code>.
+ * The elements are written into the array literal directly, so they are never boxed and no
+ * {@link java.sql.Connection#createArrayOf(String, Object[])} is needed.
+ *
+ * Registered for every IDBI by the {@link com.nesscomputing.jdbc.DatabaseModule}.
+ */
+public class ArrayArgumentFactory implements ArgumentFactory<Object>
+{
+    @Override
+    public boolean accepts(final Class<?> expectedType, final Object value, final StatementContext ctx)
+    {
+        return LiteralArray.isSupported(value);
+    }
+
+    @Override
+    public Argument build(final Class<?> expectedType, final Object value, final StatementContext ctx)
+    {
+        return new ArrayArgument(LiteralArray.forValue(value));
+    }
+
+    static class ArrayArgument implements Argument
+    {
+        private final LiteralArray array;
+
+        ArrayArgument(final LiteralArray array)
+        {
+            this.array = array;
+        }
+
+        @Override
+        public void apply(final int position, final PreparedStatement statement, final StatementContext ctx) throws SQLException
+        {
+            statement.setArray(position, array);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.argument;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link java.sql.Array} over a primitive or UUID array that can only be bound as a statement parameter. The PostgreSQL
+ * driver binds a foreign array as the literal returned by {@link #toString()}, typed as an array of
+ * {@link #getBaseTypeName()}. The literal is written straight from the array elements, no element is boxed.
+ */
+abstract class LiteralArray implements Array
+{
+    private static final char [] HEX = "0123456789abcdef".toCharArray();
+
+    private final String baseTypeName;
+    private final int baseType;
+    private final Object array;
+    private final int length;
+
+    private String literal = null;
+
+    LiteralArray(final String baseTypeName, final int baseType, final Object array, final int length)
+    {
+        this.baseTypeName = baseTypeName;
+        this.baseType = baseType;
+        this.array = array;
+        this.length = length;
+    }
+
+    /**
+     * Returns an array for the given value or null if it is not supported.
+     */
+    static LiteralArray forValue(final Object value)
+    {
+        if (value instanceof long []) {
+            return new LongLiteralArray((long []) value);
+        }
+        else if (value instanceof int []) {
+            return new IntLiteralArray((int []) value);
+        }
+        else if (value instanceof double []) {
+            return new DoubleLiteralArray((double []) value);
+        }
+        else if (value instanceof UUID []) {
+            return new UuidLiteralArray((UUID []) value);
+        }
+        return null;
+    }
+
+    static boolean isSupported(final Object value)
+    {
+        return value instanceof long [] || value instanceof int [] || value instanceof double [] || value instanceof UUID [];
+    }
+
+    abstract void appendElement(StringBuilder sb, int index);
+
+    /**
+     * Returns the array literal, e.g. <code>{1,2,3}</code>.
+     */
+    @Override
+    public String toString()
+    {
+        if (literal == null) {
+            final StringBuilder sb = new StringBuilder(2 + length * 8);
+            sb.append('{');
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendElement(sb, i);
+            }
+            literal = sb.append('}').toString();
+        }
+        return literal;
+    }
+
+    @Override
+    public String getBaseTypeName()
+    {
+        return baseTypeName;
+    }
+
+    @Override
+    public int getBaseType()
+    {
+        return baseType;
+    }
+
+    @Override
+    public Object getArray()
+    {
+        return array;
+    }
+
+    @Override
+    public Object getArray(final Map<String, Class<?>> map) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public Object getArray(final long index, final int count) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public Object getArray(final long index, final int count, final Map<String, Class<?>> map) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public ResultSet getResultSet(final Map<String, Class<?>> map) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public ResultSet getResultSet(final long index, final int count) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public ResultSet getResultSet(final long index, final int count, final Map<String, Class<?>> map) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public void free()
+    {
+    }
+
+    static class LongLiteralArray extends LiteralArray
+    {
+        private final long [] values;
+
+        LongLiteralArray(final long [] values)
+        {
+            super("int8", Types.BIGINT, values, values.length);
+            this.values = values;
+        }
+
+        @Override
+        void appendElement(final StringBuilder sb, final int index)
+        {
+            sb.append(values[index]);
+        }
+    }
+
+    static class IntLiteralArray extends LiteralArray
+    {
+        private final int [] values;
+
+        IntLiteralArray(final int [] values)
+        {
+            super("int4", Types.INTEGER, values, values.length);
+            this.values = values;
+        }
+
+        @Override
+        void appendElement(final StringBuilder sb, final int index)
+        {
+            sb.append(values[index]);
+        }
+    }
+
+    /**
+     * Java and PostgreSQL both spell the special values <code>NaN</code>, <code>Infinity</code> and <code>-Infinity</code>.
+     */
+    static class DoubleLiteralArray extends LiteralArray
+    {
+        private final double [] values;
+
+        DoubleLiteralArray(final double [] values)
+        {
+            super("float8", Types.DOUBLE, values, values.length);
+            this.values = values;
+        }
+
+        @Override
+        void appendElement(final StringBuilder sb, final int index)
+        {
+            sb.append(values[index]);
+        }
+    }
+
+    static class UuidLiteralArray extends LiteralArray
+    {
+        private final UUID [] values;
+
+        UuidLiteralArray(final UUID [] values)
+        {
+            super("uuid", Types.OTHER, values, values.length);
+            this.values = values;
+        }
+
+        @Override
+        void appendElement(final StringBuilder sb, final int index)
+        {
+            final UUID uuid = values[index];
+            if (uuid == null) {
+                sb.append("NULL");
+                return;
+            }
+            final long msb = uuid.getMostSignificantBits();
+            final long lsb = uuid.getLeastSignificantBits();
+            appendHex(sb, msb >>> 32, 8);
+            sb.append('-');
+            appendHex(sb, msb >>> 16, 4);
+            sb.append('-');
+            appendHex(sb, msb, 4);
+            sb.append('-');
+            appendHex(sb, lsb >>> 48, 4);
+            sb.append('-');
+            appendHex(sb, lsb, 12);
+        }
+
+        /**
+         * Appends the lowest <code>digits</code> hex digits of a value.
+         */
+        private static void appendHex(final StringBuilder sb, final long value, final int digits)
+        {
+            Preconditions.checkArgument(digits > 0 && digits <= 16, "bad digit count %s", digits);
+            for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+                sb.append(HEX[(int) (value >>> shift) & 0xf]);
+            }
+        }
+    }
+}
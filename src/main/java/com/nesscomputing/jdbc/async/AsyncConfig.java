@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.async;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class AsyncConfig
+{
+    /**
+     * Number of threads that run asynchronous calls. 0 uses the maximum size of the pool, as more threads would only wait for
+     * connections.
+     */
+    @Config({"ness.db.${dbName}.async.threads","ness.db.defaults.async.threads"})
+    @Default("0")
+    public abstract int getThreads();
+
+    /**
+     * Maximum number of calls waiting for a thread. Further calls are rejected immediately.
+     */
+    @Config({"ness.db.${dbName}.async.queueSize","ness.db.defaults.async.queueSize"})
+    @Default("100")
+    public abstract int getQueueSize();
+}
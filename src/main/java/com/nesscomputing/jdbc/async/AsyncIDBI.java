@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.async;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Runs IDBI calls on a bounded executor and returns futures instead of blocking the caller. The executor has no more threads than
+ * the pool has connections and a bounded queue. When the queue is full, calls fail at once with a
+ * {@link RejectedExecutionException}, so a slow database pushes back on the callers instead of piling up waiting threads.
+ */
+public class AsyncIDBI
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final long STOP_WAIT_MILLIS = 5000L;
+
+    private final String poolName;
+    private final IDBI dbi;
+    private final ThreadPoolExecutor threadPoolExecutor;
+    private final ListeningExecutorService executor;
+
+    private final AtomicLong rejectedCount = new AtomicLong(0L);
+
+    public AsyncIDBI(final String poolName, final IDBI dbi, final int threads, final int queueSize)
+    {
+        Preconditions.checkArgument(dbi != null, "dbi must not be null!");
+        Preconditions.checkArgument(threads > 0, "threads must be at least 1!");
+        Preconditions.checkArgument(queueSize > 0, "queueSize must be at least 1!");
+
+        this.poolName = poolName;
+        this.dbi = dbi;
+        this.threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                                         new ArrayBlockingQueue<Runnable>(queueSize),
+                                                         new ThreadFactoryBuilder().setDaemon(true).setNameFormat("async-" + poolName + "-%d").build(),
+                                                         new ThreadPoolExecutor.AbortPolicy());
+        this.threadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.executor = MoreExecutors.listeningDecorator(threadPoolExecutor);
+
+        LOG.info("Asynchronous calls for %s use %d threads, queue size is %d", poolName, threads, queueSize);
+    }
+
+    /**
+     * Asynchronous version of {@link IDBI#withHandle(HandleCallback)}.
+     */
+    public <T> ListenableFuture<T> withHandle(final HandleCallback<T> callback)
+    {
+        return submit(new Callable<T>() {
+            @Override
+            public T call()
+            {
+                return dbi.withHandle(callback);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link IDBI#inTransaction(TransactionCallback)}.
+     */
+    public <T> ListenableFuture<T> inTransaction(final TransactionCallback<T> callback)
+    {
+        return submit(new Callable<T>() {
+            @Override
+            public T call()
+            {
+                return dbi.inTransaction(callback);
+            }
+        });
+    }
+
+    private <T> ListenableFuture<T> submit(final Callable<T> callable)
+    {
+        try {
+            return executor.submit(callable);
+        }
+        catch (RejectedExecutionException ree) {
+            rejectedCount.incrementAndGet();
+            return Futures.immediateFailedFuture(ree);
+        }
+    }
+
+    /**
+     * Stops accepting calls. Calls that were already accepted still run, this method waits a bounded time for them to finish
+     * before the pool goes away.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STOP_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Asynchronous calls for %s did not finish within %d ms", poolName, STOP_WAIT_MILLIS);
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    public int getThreads()
+    {
+        return threadPoolExecutor.getMaximumPoolSize();
+    }
+
+    public int getQueueDepth()
+    {
+        return threadPoolExecutor.getQueue().size();
+    }
+
+    public int getActiveCount()
+    {
+        return threadPoolExecutor.getActiveCount();
+    }
+
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+}
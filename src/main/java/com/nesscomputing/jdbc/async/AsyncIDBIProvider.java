@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.async;
+
+import java.lang.annotation.Annotation;
+
+import org.skife.jdbi.v2.IDBI;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.jdbc.C3P0DataSourceProvider;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.AbstractLifecycleProvider;
+import com.nesscomputing.lifecycle.guice.LifecycleAction;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Creates the asynchronous facade for the IDBI bound with the same annotation. Unless configured otherwise, it uses as many
+ * threads as the pool has connections.
+ */
+public class AsyncIDBIProvider extends AbstractLifecycleProvider<AsyncIDBI> implements Provider<AsyncIDBI>
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String dbName;
+    private final Annotation annotation;
+    private final C3P0DataSourceProvider dataSourceProvider;
+
+    private Injector injector = null;
+    private Config config = null;
+
+    public AsyncIDBIProvider(final String dbName, final Annotation annotation, final C3P0DataSourceProvider dataSourceProvider)
+    {
+        this.dbName = dbName;
+        this.annotation = annotation;
+        this.dataSourceProvider = dataSourceProvider;
+
+        addAction(LifecycleStage.STOP_STAGE, new LifecycleAction<AsyncIDBI>() {
+                @Override
+                public void performAction(final AsyncIDBI asyncIdbi)
+                {
+                    LOG.info("Stopping asynchronous calls for %s", dbName);
+                    asyncIdbi.shutdown();
+                }
+            });
+    }
+
+    @Inject
+    void setInjector(final Injector injector)
+    {
+        this.injector = injector;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public AsyncIDBI internalGet()
+    {
+        Preconditions.checkState(config != null, "Config object was never injected!");
+
+        final AsyncConfig asyncConfig = config.getBean(AsyncConfig.class, ImmutableMap.of("dbName", dbName));
+        // Looking up the IDBI creates the pool, so its size is known afterwards.
+        final IDBI dbi = injector.getInstance(Key.get(IDBI.class, annotation));
+        final int threads = asyncConfig.getThreads() > 0 ? asyncConfig.getThreads() : dataSourceProvider.getMaxPoolSize();
+        Preconditions.checkState(threads > 0, "Could not determine the pool size of %s!", dbName);
+
+        return new AsyncIDBI(dbName, dbi, threads, asyncConfig.getQueueSize());
+    }
+}
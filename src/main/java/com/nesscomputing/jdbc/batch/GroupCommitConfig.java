@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.batch;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class GroupCommitConfig
+{
+    /**
+     * Maximum number of writes that are committed together.
+     */
+    @Config({"ness.db.${dbName}.groupCommit.maxBatchSize","ness.db.defaults.groupCommit.maxBatchSize"})
+    @Default("100")
+    public abstract int getMaxBatchSize();
+
+    /**
+     * Time in milliseconds that the first write of a batch waits for more writes.
+     */
+    @Config({"ness.db.${dbName}.groupCommit.maxDelay","ness.db.defaults.groupCommit.maxDelay"})
+    @Default("5")
+    public abstract long getMaxDelay();
+
+    /**
+     * Maximum number of writes waiting to be committed. Further writes are rejected.
+     */
+    @Config({"ness.db.${dbName}.groupCommit.queueSize","ness.db.defaults.groupCommit.queueSize"})
+    @Default("10000")
+    public abstract int getQueueSize();
+}
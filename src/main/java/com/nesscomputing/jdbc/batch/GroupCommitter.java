@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.batch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.exceptions.CallbackFailedException;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Commits single statement writes of many threads together. Writes with the same SQL that arrive within
+ * {@link GroupCommitConfig#getMaxDelay()} of each other are executed as one batch in one transaction, so a burst of small inserts
+ * needs one connection and one commit instead of one per row.
+ *
+ * Every caller gets a future with the update count of its own statement. If the statements of a batch fail, its writes are
+ * retried one by one, so that only the writes that fail on their own get an exception. If the batch fails after its statements
+ * were executed, e.g. in the commit, all of its writes fail, as they may have been applied.
+ *
+ * Writes are executed by a single background thread, which is started on the first write.
+ */
+public class GroupCommitter
+{
+    private static final Log LOG = Log.findLog();
+
+    /** How long the background thread waits for writes before checking whether it was stopped. */
+    private static final long IDLE_POLL_MILLIS = 100L;
+
+    /** How long {@link #stop()} waits for the background thread to commit the remaining writes. */
+    private static final long STOP_WAIT_MILLIS = 5000L;
+
+    private final String poolName;
+    private final IDBI dbi;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<PendingWrite> queue;
+    private final AtomicReference<ExecutorService> committer = new AtomicReference<ExecutorService>();
+    private volatile boolean stopped = false;
+
+    private final AtomicLong writeCount = new AtomicLong(0L);
+    private final AtomicLong batchCount = new AtomicLong(0L);
+    private final AtomicLong retriedBatchCount = new AtomicLong(0L);
+
+    public GroupCommitter(final String poolName, final IDBI dbi, final GroupCommitConfig groupCommitConfig)
+    {
+        Preconditions.checkArgument(dbi != null, "dbi must not be null!");
+        Preconditions.checkArgument(groupCommitConfig.getMaxBatchSize() > 0, "maxBatchSize must be positive!");
+
+        this.poolName = poolName;
+        this.dbi = dbi;
+        this.maxBatchSize = groupCommitConfig.getMaxBatchSize();
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitConfig.getMaxDelay());
+        this.queue = new ArrayBlockingQueue<PendingWrite>(groupCommitConfig.getQueueSize());
+    }
+
+    /**
+     * Queues a write. The arguments are bound by name. The future returns the update count of the statement, or fails with a
+     * {@link RejectedExecutionException} if the queue is full or the committer was stopped.
+     */
+    public ListenableFuture<Integer> submit(final String sql, final Map<String, ? extends Object> arguments)
+    {
+        Preconditions.checkArgument(sql != null, "sql must not be null!");
+
+        final PendingWrite write = new PendingWrite(sql, arguments == null ? Collections.<String, Object>emptyMap() : Maps.<String, Object>newHashMap(arguments));
+        if (stopped) {
+            write.future.setException(new RejectedExecutionException(String.format("Group commit for %s was stopped", poolName)));
+        }
+        else if (!queue.offer(write)) {
+            write.future.setException(new RejectedExecutionException(String.format("Group commit queue for %s is full", poolName)));
+        }
+        else if (stopped) {
+            // Stopped after the check above, the background thread may have drained the queue already. If the write is still
+            // queued, nobody is going to commit it.
+            if (queue.remove(write)) {
+                write.future.setException(new RejectedExecutionException(String.format("Group commit for %s was stopped", poolName)));
+            }
+        }
+        else if (committer.get() == null) {
+            start();
+        }
+        return write.future;
+    }
+
+    private void start()
+    {
+        if (stopped) {
+            return;
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("group-commit-" + poolName).build());
+        if (committer.compareAndSet(null, executor)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    commitLoop();
+                }
+            });
+            if (stopped) {
+                // Stopped while starting, stop() may have missed this executor.
+                executor.shutdown();
+            }
+        }
+        else {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting writes. Writes that are already queued are still committed, this waits for them so that the pool is still
+     * available. Writes that are not committed within the wait time fail.
+     */
+    public void stop()
+    {
+        stopped = true;
+        final ExecutorService executor = committer.get();
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(STOP_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Group commit for %s did not finish within %d ms", poolName, STOP_WAIT_MILLIS);
+                }
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        final List<PendingWrite> remaining = Lists.newArrayList();
+        queue.drainTo(remaining);
+        for (final PendingWrite write : remaining) {
+            write.future.setException(new RejectedExecutionException(String.format("Group commit for %s was stopped", poolName)));
+        }
+    }
+
+    private void commitLoop()
+    {
+        try {
+            while (!stopped) {
+                final PendingWrite first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    commitOrFail(collectBatch(first));
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        final List<PendingWrite> remaining = Lists.newArrayList();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            LOG.info("Committing %d remaining writes for %s", remaining.size(), poolName);
+            commitOrFail(remaining);
+        }
+    }
+
+    /**
+     * Commits writes, failing all writes that did not complete if the commit throws. The background thread must survive
+     * anything thrown here, otherwise no later write would ever be committed.
+     */
+    private void commitOrFail(final List<PendingWrite> writes)
+    {
+        try {
+            commit(writes);
+        }
+        catch (Throwable t) {
+            LOG.error(t, "Could not commit %d writes for %s", writes.size(), poolName);
+            for (final PendingWrite write : writes) {
+                write.future.setException(t);
+            }
+        }
+    }
+
+    /**
+     * Collects writes until the batch is full or the first write waited for the maximum delay.
+     */
+    private List<PendingWrite> collectBatch(final PendingWrite first)
+    {
+        final List<PendingWrite> writes = Lists.newArrayList();
+        writes.add(first);
+
+        final long deadline = first.queuedNanos + maxDelayNanos;
+        while (writes.size() < maxBatchSize) {
+            final long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0L) {
+                queue.drainTo(writes, maxBatchSize - writes.size());
+                break;
+            }
+            final PendingWrite next;
+            try {
+                next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException ie) {
+                // Commit what was collected, the commit loop ends at its next poll.
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (next == null) {
+                break;
+            }
+            writes.add(next);
+        }
+        return writes;
+    }
+
+    private void commit(final List<PendingWrite> writes)
+    {
+        final Map<String, List<PendingWrite>> writesBySql = Maps.newLinkedHashMap();
+        for (final PendingWrite write : writes) {
+            List<PendingWrite> sqlWrites = writesBySql.get(write.sql);
+            if (sqlWrites == null) {
+                sqlWrites = Lists.newArrayList();
+                writesBySql.put(write.sql, sqlWrites);
+            }
+            sqlWrites.add(write);
+        }
+
+        for (final Map.Entry<String, List<PendingWrite>> entry : writesBySql.entrySet()) {
+            commitBatch(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void commitBatch(final String sql, final List<PendingWrite> writes)
+    {
+        batchCount.incrementAndGet();
+        writeCount.addAndGet(writes.size());
+
+        // Once the batch was executed, a failure may come from the commit, which may have been applied anyway.
+        final AtomicBoolean executed = new AtomicBoolean(false);
+        final int [] updateCounts;
+        try {
+            updateCounts = dbi.inTransaction(new TransactionCallback<int []>() {
+                @Override
+                public int [] inTransaction(final Handle handle, final TransactionStatus status)
+                {
+                    final PreparedBatch batch = handle.prepareBatch(sql);
+                    for (final PendingWrite write : writes) {
+                        batch.add().bindFromMap(write.arguments);
+                    }
+                    final int [] result = batch.execute();
+                    executed.set(true);
+                    return result;
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            if (writes.size() == 1 || executed.get()) {
+                // Retrying writes that may have been committed could apply them twice.
+                final Throwable cause = unwrap(e);
+                for (final PendingWrite write : writes) {
+                    write.future.setException(cause);
+                }
+            }
+            else {
+                LOG.debug(e, "Batch of %d writes for %s failed, retrying them one by one", writes.size(), poolName);
+                retriedBatchCount.incrementAndGet();
+                for (final PendingWrite write : writes) {
+                    commitSingle(write);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < writes.size(); i++) {
+            writes.get(i).future.set(updateCounts[i]);
+        }
+    }
+
+    private void commitSingle(final PendingWrite write)
+    {
+        try {
+            write.future.set(dbi.withHandle(new HandleCallback<Integer>() {
+                @Override
+                public Integer withHandle(final Handle handle)
+                {
+                    return handle.createStatement(write.sql).bindFromMap(write.arguments).execute();
+                }
+            }));
+        }
+        catch (RuntimeException e) {
+            write.future.setException(unwrap(e));
+        }
+    }
+
+    private static Throwable unwrap(final RuntimeException e)
+    {
+        return (e instanceof CallbackFailedException && e.getCause() != null) ? e.getCause() : e;
+    }
+
+    public int getQueuedWriteCount()
+    {
+        return queue.size();
+    }
+
+    public long getWriteCount()
+    {
+        return writeCount.get();
+    }
+
+    public long getBatchCount()
+    {
+        return batchCount.get();
+    }
+
+    public long getRetriedBatchCount()
+    {
+        return retriedBatchCount.get();
+    }
+
+    private static final class PendingWrite
+    {
+        private final String sql;
+        private final Map<String, Object> arguments;
+        private final long queuedNanos = System.nanoTime();
+        private final SettableFuture<Integer> future = SettableFuture.create();
+
+        PendingWrite(final String sql, final Map<String, Object> arguments)
+        {
+            this.sql = sql;
+            this.arguments = arguments;
+        }
+    }
+}
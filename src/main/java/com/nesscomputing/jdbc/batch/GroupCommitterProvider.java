@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.batch;
+
+import java.lang.annotation.Annotation;
+
+import org.skife.jdbi.v2.IDBI;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.AbstractLifecycleProvider;
+import com.nesscomputing.lifecycle.guice.LifecycleAction;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Creates the group committer for the IDBI bound with the same annotation. Queued writes are committed when the lifecycle stops.
+ */
+public class GroupCommitterProvider extends AbstractLifecycleProvider<GroupCommitter> implements Provider<GroupCommitter>
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String dbName;
+    private final Annotation annotation;
+
+    private Injector injector = null;
+    private Config config = null;
+
+    public GroupCommitterProvider(final String dbName, final Annotation annotation)
+    {
+        this.dbName = dbName;
+        this.annotation = annotation;
+
+        addAction(LifecycleStage.STOP_STAGE, new LifecycleAction<GroupCommitter>() {
+                @Override
+                public void performAction(final GroupCommitter groupCommitter)
+                {
+                    LOG.info("Stopping group commit for %s", dbName);
+                    groupCommitter.stop();
+                }
+            });
+    }
+
+    @Inject
+    void setInjector(final Injector injector)
+    {
+        this.injector = injector;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public GroupCommitter internalGet()
+    {
+        Preconditions.checkState(config != null, "Config object was never injected!");
+
+        final GroupCommitConfig groupCommitConfig = config.getBean(GroupCommitConfig.class, ImmutableMap.of("dbName", dbName));
+        return new GroupCommitter(dbName, injector.getInstance(Key.get(IDBI.class, annotation)), groupCommitConfig);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * A read query whose result may be cached by a {@link CachingIDBI}. The query lists the tables it reads. A write to any of these
+ * tables through the same IDBI drops the cached results.
+ *
+ * <pre>
+ * final List&lt;User&gt; users = cachingIdbi.list(CachedQuery.of("SELECT * FROM users WHERE id = :id", new UserMapper())
+ *                                                         .bind("id", id)
+ *                                                         .tables("users"));
+ * </pre>
+ *
+ * Two queries share cached results if they have the same SQL, arguments and mapper class. Instances are immutable.
+ */
+public final class CachedQuery<T>
+{
+    private final String sql;
+    private final ResultSetMapper<T> mapper;
+    private final Map<String, Object> arguments;
+    private final Set<String> tables;
+
+    private CachedQuery(final String sql, final ResultSetMapper<T> mapper, final Map<String, Object> arguments, final Set<String> tables)
+    {
+        this.sql = sql;
+        this.mapper = mapper;
+        this.arguments = arguments;
+        this.tables = tables;
+    }
+
+    public static <T> CachedQuery<T> of(final String sql, final ResultSetMapper<T> mapper)
+    {
+        Preconditions.checkArgument(sql != null, "sql must not be null!");
+        Preconditions.checkArgument(mapper != null, "mapper must not be null!");
+        return new CachedQuery<T>(sql, mapper, ImmutableMap.<String, Object>of(), ImmutableSet.<String>of());
+    }
+
+    /**
+     * Returns a copy of the query with an additional named argument. Arguments must implement equals and hashCode.
+     */
+    public CachedQuery<T> bind(final String name, final Object value)
+    {
+        final Map<String, Object> newArguments = Maps.newHashMap(arguments);
+        newArguments.put(name, value);
+        return new CachedQuery<T>(sql, mapper, Collections.unmodifiableMap(newArguments), tables);
+    }
+
+    /**
+     * Returns a copy of the query that is invalidated by writes to the given tables.
+     */
+    public CachedQuery<T> tables(final String... tableNames)
+    {
+        final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        builder.addAll(tables);
+        for (final String tableName : tableNames) {
+            builder.add(QueryCache.normalizeTable(tableName));
+        }
+        return new CachedQuery<T>(sql, mapper, arguments, builder.build());
+    }
+
+    public String getSql()
+    {
+        return sql;
+    }
+
+    public ResultSetMapper<T> getMapper()
+    {
+        return mapper;
+    }
+
+    public Map<String, Object> getArguments()
+    {
+        return arguments;
+    }
+
+    public Set<String> getTables()
+    {
+        return tables;
+    }
+
+    Key getKey()
+    {
+        return new Key(sql, arguments, mapper.getClass());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CachedQuery[%s, %s, tables %s]", sql, arguments, tables);
+    }
+
+    /**
+     * Cache key of a query.
+     */
+    static final class Key
+    {
+        private final String sql;
+        private final Map<String, Object> arguments;
+        private final Class<?> mapperClass;
+
+        Key(final String sql, final Map<String, Object> arguments, final Class<?> mapperClass)
+        {
+            this.sql = sql;
+            this.arguments = arguments;
+            this.mapperClass = mapperClass;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(sql, arguments, mapperClass);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key that = (Key) obj;
+            return Objects.equal(this.sql, that.sql)
+                && Objects.equal(this.arguments, that.arguments)
+                && Objects.equal(this.mapperClass, that.mapperClass);
+        }
+    }
+}
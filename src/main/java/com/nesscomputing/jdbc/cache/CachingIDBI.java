@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.cache;
+
+import java.util.List;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An IDBI that can cache query results. Installed by the {@link QueryCacheWrapper}, all other calls are passed to the wrapped
+ * IDBI unchanged. Only queries that are run through {@link #list(CachedQuery)} are cached, all other reads always go to the
+ * database.
+ *
+ * Writes through {@link #withHandle(HandleCallback)} and {@link #inTransaction(TransactionCallback)} invalidate the tables when
+ * the statement runs and again when the call returns. Writes through handles from {@link #open()} and through SQL objects only
+ * invalidate when the statement runs, so a result loaded before such a transaction commits may be used until it expires.
+ */
+public class CachingIDBI implements IDBI
+{
+    private final IDBI delegate;
+    private final QueryCache queryCache;
+
+    public CachingIDBI(final IDBI delegate, final QueryCache queryCache)
+    {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null!");
+        Preconditions.checkArgument(queryCache != null, "query cache must not be null!");
+
+        this.delegate = delegate;
+        this.queryCache = queryCache;
+        queryCache.activate();
+    }
+
+    public IDBI getDelegate()
+    {
+        return delegate;
+    }
+
+    public QueryCache getQueryCache()
+    {
+        return queryCache;
+    }
+
+    /**
+     * Returns the result of a query from the cache, or runs the query and caches its result. The returned list is immutable.
+     */
+    public <T> List<T> list(final CachedQuery<T> query)
+    {
+        final List<T> cached = queryCache.get(query);
+        if (cached != null) {
+            return cached;
+        }
+
+        final long [] snapshot = queryCache.snapshot(query);
+        final List<T> result = delegate.withHandle(new HandleCallback<List<T>>() {
+            @Override
+            public List<T> withHandle(final Handle handle)
+            {
+                return ImmutableList.copyOf(handle.createQuery(query.getSql()).bindFromMap(query.getArguments()).map(query.getMapper()).list());
+            }
+        });
+        queryCache.put(query, snapshot, result);
+        return result;
+    }
+
+    /**
+     * Returns the first row of a query result from the cache, or runs the query and caches its result.
+     */
+    public <T> T first(final CachedQuery<T> query)
+    {
+        final List<T> result = list(query);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    @Override
+    public void define(final String key, final Object value)
+    {
+        delegate.define(key, value);
+    }
+
+    @Override
+    public Handle open()
+    {
+        return delegate.open();
+    }
+
+    @Override
+    public <ReturnType> ReturnType withHandle(final HandleCallback<ReturnType> callback)
+    {
+        queryCache.enterCall();
+        try {
+            return delegate.withHandle(callback);
+        }
+        finally {
+            queryCache.exitCall();
+        }
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(final TransactionCallback<ReturnType> callback)
+    {
+        queryCache.enterCall();
+        try {
+            return delegate.inTransaction(callback);
+        }
+        finally {
+            queryCache.exitCall();
+        }
+    }
+
+    @Override
+    public <SqlObjectType> SqlObjectType open(final Class<SqlObjectType> sqlObjectType)
+    {
+        return delegate.open(sqlObjectType);
+    }
+
+    @Override
+    public <SqlObjectType> SqlObjectType onDemand(final Class<SqlObjectType> sqlObjectType)
+    {
+        return delegate.onDemand(sqlObjectType);
+    }
+
+    @Override
+    public void close(final Object sqlObject)
+    {
+        delegate.close(sqlObject);
+    }
+}
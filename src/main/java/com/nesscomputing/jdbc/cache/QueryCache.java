@@ -0,0 +1,427 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.cache;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Cached query results of a pool. One instance is bound per pool and registered as timing collector with its IDBI, so it sees
+ * every statement that runs through the IDBI. It stays inactive until a {@link QueryCacheWrapper} is installed for the pool.
+ *
+ * Invalidation uses generations. Every table has a generation counter that a write to the table increments. A cached result
+ * remembers the generations of its tables from before the query ran and is only used while they are unchanged. A result
+ * whose tables were written while the query ran is not cached at all.
+ *
+ * Writes are recognized by the leading keyword of the statement. INSERT, UPDATE, DELETE, TRUNCATE, MERGE and COPY FROM
+ * invalidate the tables they write, any other statement that may change data (DDL, writing CTEs, ...) invalidates all
+ * results. Writes inside a call of the {@link CachingIDBI} invalidate their tables again when the call returns, so that results
+ * that were loaded before the transaction committed are not kept.
+ */
+public class QueryCache implements TimingCollector
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final Pattern WRITE = Pattern.compile("^\\s*(?:insert\\s+into|update|delete\\s+from|merge\\s+into)\\s+(?:only\\s+)?([\\w.\"]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TRUNCATE = Pattern.compile("^\\s*truncate\\s+(?:table\\s+)?(?:only\\s+)?([\\w.\", ]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COPY_FROM = Pattern.compile("^\\s*copy\\s+([\\w.\"]+)(?:\\s*\\([^)]*\\))?\\s+from\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern READ = Pattern.compile("^\\s*(?:select|values|show|explain|copy|set|begin|start|commit|rollback|savepoint|release|prepare|execute|deallocate|listen|notify|lock|analyze|vacuum|reset|discard|declare|fetch|move|close)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WITH_WRITE = Pattern.compile("\\b(?:insert|update|delete)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final String ALL_TABLES = "";
+
+    private final String poolName;
+
+    private final ConcurrentMap<String, AtomicLong> generations = Maps.newConcurrentMap();
+    private final ThreadLocal<CallState> callState = new ThreadLocal<CallState>();
+
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    private final AtomicLong invalidations = new AtomicLong(0L);
+
+    private volatile QueryCacheConfig queryCacheConfig = null;
+    private final AtomicReference<Cache<CachedQuery.Key, Entry>> cache = new AtomicReference<Cache<CachedQuery.Key, Entry>>();
+
+    private volatile boolean active = false;
+
+    public QueryCache(final String poolName)
+    {
+        this.poolName = poolName;
+    }
+
+    /**
+     * Creates a cache with a fixed configuration.
+     */
+    public QueryCache(final String poolName, final QueryCacheConfig queryCacheConfig)
+    {
+        this(poolName);
+        this.queryCacheConfig = queryCacheConfig;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.queryCacheConfig = config.getBean(QueryCacheConfig.class, ImmutableMap.of("dbName", poolName));
+    }
+
+    /**
+     * Called by the {@link QueryCacheWrapper}. Builds the cache and starts to track writes.
+     */
+    void activate()
+    {
+        if (cache.get() == null) {
+            final long ttl = queryCacheConfig == null ? 60000L : queryCacheConfig.getTtl();
+            final long maxWeight = queryCacheConfig == null ? 10000L : queryCacheConfig.getMaxWeight();
+
+            final Cache<CachedQuery.Key, Entry> newCache = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher(new Weigher<CachedQuery.Key, Entry>() {
+                    @Override
+                    public int weigh(final CachedQuery.Key key, final Entry entry)
+                    {
+                        return entry.result.size() + 1;
+                    }
+                })
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+            if (cache.compareAndSet(null, newCache)) {
+                LOG.info("Caching query results for %s, ttl is %d ms, at most %d rows", poolName, ttl, maxWeight);
+                active = true;
+            }
+        }
+    }
+
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    /**
+     * Returns the cached result of a query, or null if there is none or it is stale.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    <T> List<T> get(final CachedQuery<T> query)
+    {
+        final CachedQuery.Key key = query.getKey();
+        final Cache<CachedQuery.Key, Entry> currentCache = cache.get();
+        final Entry entry = currentCache.getIfPresent(key);
+        if (entry != null) {
+            if (entry.isCurrent(this)) {
+                hits.incrementAndGet();
+                return (List<T>) entry.result;
+            }
+            currentCache.invalidate(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Captures the generations of the tables of a query before it runs.
+     */
+    long [] snapshot(final CachedQuery<?> query)
+    {
+        final Set<String> tables = query.getTables();
+        final long [] snapshot = new long [tables.size() + 1];
+        snapshot[0] = getGeneration(ALL_TABLES).get();
+        int i = 1;
+        for (final String table : tables) {
+            snapshot[i++] = getGeneration(table).get();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Stores the result of a query, unless one of its tables was written since the snapshot was taken.
+     */
+    <T> void put(final CachedQuery<T> query, final long [] snapshot, final List<T> result)
+    {
+        final Entry entry = new Entry(query.getTables(), snapshot, result);
+        if (entry.isCurrent(this)) {
+            cache.get().put(query.getKey(), entry);
+        }
+    }
+
+    /**
+     * Drops all cached results that read any of the given tables.
+     */
+    public void invalidate(final String... tables)
+    {
+        for (final String table : tables) {
+            getGeneration(normalizeTable(table)).incrementAndGet();
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public void invalidateAll()
+    {
+        getGeneration(ALL_TABLES).incrementAndGet();
+        invalidations.incrementAndGet();
+        final Cache<CachedQuery.Key, Entry> currentCache = cache.get();
+        if (currentCache != null) {
+            currentCache.invalidateAll();
+        }
+    }
+
+    private AtomicLong getGeneration(final String table)
+    {
+        AtomicLong generation = generations.get(table);
+        if (generation == null) {
+            final AtomicLong newGeneration = new AtomicLong(0L);
+            generation = generations.putIfAbsent(table, newGeneration);
+            if (generation == null) {
+                generation = newGeneration;
+            }
+        }
+        return generation;
+    }
+
+    @Override
+    public void collect(final long elapsedTime, final StatementContext ctx)
+    {
+        if (active) {
+            final String sql = ctx.getRewrittenSql();
+            statementExecuted(sql == null ? ctx.getRawSql() : sql);
+        }
+    }
+
+    /**
+     * Drops the cached results of all tables that a statement writes. Only needed for statements that are not executed
+     * through the IDBI, e.g. a COPY through the driver.
+     */
+    public void statementExecuted(@Nullable final String sql)
+    {
+        if (sql == null) {
+            return;
+        }
+
+        final Set<String> tables = findWrittenTables(sql);
+        if (tables == null) {
+            return;
+        }
+
+        final CallState state = callState.get();
+        if (tables.isEmpty()) {
+            invalidateAll();
+            if (state != null) {
+                state.allTables = true;
+            }
+        }
+        else {
+            invalidate(tables.toArray(new String[tables.size()]));
+            if (state != null) {
+                state.tables.addAll(tables);
+            }
+        }
+    }
+
+    /**
+     * Called when a call of the {@link CachingIDBI} starts.
+     */
+    void enterCall()
+    {
+        CallState state = callState.get();
+        if (state == null) {
+            state = new CallState();
+            callState.set(state);
+        }
+        state.depth++;
+    }
+
+    /**
+     * Called when a call of the {@link CachingIDBI} ends. Invalidates the tables that were written during the call again, as the
+     * transaction may only have committed now.
+     */
+    void exitCall()
+    {
+        final CallState state = callState.get();
+        if (state == null || --state.depth > 0) {
+            return;
+        }
+        callState.remove();
+        if (state.allTables) {
+            invalidateAll();
+        }
+        else if (!state.tables.isEmpty()) {
+            invalidate(state.tables.toArray(new String[state.tables.size()]));
+        }
+    }
+
+    /**
+     * Returns the tables written by a statement, an empty set if the statement may write any table, or null for statements that
+     * do not write.
+     */
+    @Nullable
+    static Set<String> findWrittenTables(final String sql)
+    {
+        Matcher matcher = WRITE.matcher(sql);
+        if (matcher.find()) {
+            return ImmutableSet.of(normalizeTable(matcher.group(1)));
+        }
+        matcher = COPY_FROM.matcher(sql);
+        if (matcher.find()) {
+            return ImmutableSet.of(normalizeTable(matcher.group(1)));
+        }
+        matcher = TRUNCATE.matcher(sql);
+        if (matcher.find()) {
+            final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+            for (final String table : Splitter.on(',').trimResults().omitEmptyStrings().split(matcher.group(1))) {
+                builder.add(normalizeTable(table.split("\\s+")[0]));
+            }
+            return builder.build();
+        }
+        if (READ.matcher(sql).find()) {
+            return null;
+        }
+        if (sql.trim().regionMatches(true, 0, "with", 0, 4) && !WITH_WRITE.matcher(sql).find()) {
+            return null;
+        }
+        return ImmutableSet.of();
+    }
+
+    /**
+     * Lower cases a table name and removes the schema and quotes.
+     */
+    static String normalizeTable(final String table)
+    {
+        String name = table.trim().replace("\"", "");
+        final int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1);
+        }
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the fraction of lookups that were answered from the cache.
+     */
+    public double getHitRate()
+    {
+        final long hitCount = hits.get();
+        final long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : hitCount / (double) total;
+    }
+
+    public long getInvalidationCount()
+    {
+        return invalidations.get();
+    }
+
+    public long getEvictionCount()
+    {
+        final Cache<CachedQuery.Key, Entry> currentCache = cache.get();
+        return currentCache == null ? 0L : currentCache.stats().evictionCount();
+    }
+
+    public long getSize()
+    {
+        final Cache<CachedQuery.Key, Entry> currentCache = cache.get();
+        return currentCache == null ? 0L : currentCache.size();
+    }
+
+    public void reset()
+    {
+        hits.set(0L);
+        misses.set(0L);
+        invalidations.set(0L);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("QueryCache[%s: size -> %d, hits -> %d, misses -> %d, invalidations -> %d]",
+                             poolName, getSize(), getHitCount(), getMissCount(), getInvalidationCount());
+    }
+
+    private static final class Entry
+    {
+        private final Set<String> tables;
+        private final long [] generations;
+        private final List<?> result;
+
+        Entry(final Set<String> tables, final long [] generations, final List<?> result)
+        {
+            this.tables = tables;
+            this.generations = generations;
+            this.result = result;
+        }
+
+        boolean isCurrent(final QueryCache queryCache)
+        {
+            if (queryCache.getGeneration(ALL_TABLES).get() != generations[0]) {
+                return false;
+            }
+            int i = 1;
+            for (final String table : tables) {
+                if (queryCache.getGeneration(table).get() != generations[i++]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class CallState
+    {
+        private final Set<String> tables = Sets.newHashSet();
+        private int depth = 0;
+        private boolean allTables = false;
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.cache;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class QueryCacheConfig
+{
+    /**
+     * Time in milliseconds that a cached result is used before the query runs again.
+     */
+    @Config({"ness.db.${dbName}.queryCache.ttl","ness.db.defaults.queryCache.ttl"})
+    @Default("60000")
+    public abstract long getTtl();
+
+    /**
+     * Maximum number of cached rows. Every cached result weighs its number of rows plus one.
+     */
+    @Config({"ness.db.${dbName}.queryCache.maxWeight","ness.db.defaults.queryCache.maxWeight"})
+    @Default("10000")
+    public abstract long getMaxWeight();
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.cache;
+
+import java.lang.annotation.Annotation;
+
+import javax.annotation.Nullable;
+
+import org.skife.jdbi.v2.IDBI;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
+/**
+ * Wraps the IDBI of a pool into a {@link CachingIDBI} that uses the {@link QueryCache} of the pool. Install it with
+ *
+ * <pre>
+ * NessSqlWrapperBinder.bindIdbiWrapper(binder, annotation).toInstance(new QueryCacheWrapper(annotation));
+ * </pre>
+ *
+ * and cast the IDBI of the pool to {@link CachingIDBI} where results should be cached.
+ */
+public class QueryCacheWrapper implements Function<IDBI, IDBI>
+{
+    private final Annotation annotation;
+
+    private QueryCache queryCache = null;
+
+    public QueryCacheWrapper(final Annotation annotation)
+    {
+        Preconditions.checkArgument(annotation != null, "annotation must not be null!");
+        this.annotation = annotation;
+    }
+
+    @Inject
+    void setInjector(final Injector injector)
+    {
+        final Binding<QueryCache> queryCacheBinding = injector.getExistingBinding(Key.get(QueryCache.class, annotation));
+        Preconditions.checkState(queryCacheBinding != null, "No query cache bound for %s", annotation);
+        queryCache = queryCacheBinding.getProvider().get();
+    }
+
+    @Override
+    public IDBI apply(@Nullable final IDBI idbi)
+    {
+        if (idbi == null) {
+            return null;
+        }
+        Preconditions.checkState(queryCache != null, "Query cache wrapper for %s was never injected!", annotation);
+        return new CachingIDBI(idbi, queryCache);
+    }
+}
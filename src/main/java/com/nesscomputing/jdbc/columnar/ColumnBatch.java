@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A batch of rows, stored column by column in primitive arrays. Null values are marked in a bitmap per column, bit
+ * <code>row % 64</code> of word <code>row / 64</code>, and read as 0.
+ *
+ * A scan fills the same batch over and over, the arrays are only allocated once. Only the first {@link #size()} entries of
+ * an array are valid, and only until the callback that received the batch returns.
+ */
+public final class ColumnBatch
+{
+    private final String [] names;
+    private final ColumnType [] types;
+    private final long [][] longs;
+    private final double [][] doubles;
+    private final long [][] nulls;
+    private final boolean [] hasNulls;
+    private final int capacity;
+
+    private int size = 0;
+
+    ColumnBatch(final String [] names, final ColumnType [] types, final int capacity)
+    {
+        Preconditions.checkArgument(names.length == types.length, "%s names for %s types", names.length, types.length);
+        Preconditions.checkArgument(capacity > 0, "capacity must be at least 1!");
+
+        this.names = names;
+        this.types = types;
+        this.capacity = capacity;
+        this.longs = new long[types.length][];
+        this.doubles = new double[types.length][];
+        this.nulls = new long[types.length][(capacity + 63) >>> 6];
+        this.hasNulls = new boolean[types.length];
+
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+                case LONG:
+                    longs[i] = new long[capacity];
+                    break;
+                case DOUBLE:
+                    doubles[i] = new double[capacity];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column type " + types[i]);
+            }
+        }
+    }
+
+    /**
+     * Creates a batch for the columns of a result. Fails if a column has no {@link ColumnType}.
+     */
+    static ColumnBatch forResultSet(final ResultSet rs, final int capacity) throws SQLException
+    {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        final int count = metaData.getColumnCount();
+        final String [] names = new String[count];
+        final ColumnType [] types = new ColumnType[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = metaData.getColumnLabel(i + 1);
+            types[i] = ColumnType.forSqlType(metaData.getColumnType(i + 1));
+            if (types[i] == null) {
+                throw new IllegalArgumentException(String.format("Column %s has type %s, which can not be read into a column batch", names[i], metaData.getColumnTypeName(i + 1)));
+            }
+        }
+        return new ColumnBatch(names, types, capacity);
+    }
+
+    /**
+     * Appends the current row of a result.
+     */
+    void readRow(final ResultSet rs) throws SQLException
+    {
+        Preconditions.checkState(size < capacity, "batch is full!");
+
+        final int row = size;
+        for (int i = 0; i < types.length; i++) {
+            final boolean isNull;
+            if (types[i] == ColumnType.LONG) {
+                longs[i][row] = rs.getLong(i + 1);
+                isNull = rs.wasNull();
+            }
+            else {
+                doubles[i][row] = rs.getDouble(i + 1);
+                isNull = rs.wasNull();
+            }
+            if (isNull) {
+                nulls[i][row >>> 6] |= 1L << row;
+                hasNulls[i] = true;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Empties the batch for the next rows. Only the null bitmaps are reset, values are overwritten.
+     */
+    void clear()
+    {
+        final int words = (size + 63) >>> 6;
+        for (int i = 0; i < types.length; i++) {
+            if (hasNulls[i]) {
+                Arrays.fill(nulls[i], 0, words, 0L);
+                hasNulls[i] = false;
+            }
+        }
+        size = 0;
+    }
+
+    boolean isFull()
+    {
+        return size == capacity;
+    }
+
+    /**
+     * Number of rows in this batch.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public int getColumnCount()
+    {
+        return types.length;
+    }
+
+    public String getColumnName(final int column)
+    {
+        return names[column];
+    }
+
+    /**
+     * Returns the index of a column by its label, or -1.
+     */
+    public int getColumnIndex(final String name)
+    {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public ColumnType getColumnType(final int column)
+    {
+        return types[column];
+    }
+
+    public long [] getLongs(final int column)
+    {
+        Preconditions.checkState(types[column] == ColumnType.LONG, "column %s is %s", names[column], types[column]);
+        return longs[column];
+    }
+
+    public double [] getDoubles(final int column)
+    {
+        Preconditions.checkState(types[column] == ColumnType.DOUBLE, "column %s is %s", names[column], types[column]);
+        return doubles[column];
+    }
+
+    /**
+     * Returns true if any row of this batch is null in the column. If not, the null bitmap need not be checked.
+     */
+    public boolean hasNulls(final int column)
+    {
+        return hasNulls[column];
+    }
+
+    public boolean isNull(final int column, final int row)
+    {
+        return (nulls[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns the null bitmap of a column.
+     */
+    public long [] getNulls(final int column)
+    {
+        return nulls[column];
+    }
+}
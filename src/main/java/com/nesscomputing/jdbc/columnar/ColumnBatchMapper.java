@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+/**
+ * Reads every row into a {@link ColumnBatch} instead of mapping it to an object. The batch is created with the first row
+ * and must be emptied by the caller whenever it is full.
+ */
+class ColumnBatchMapper implements ResultSetMapper<Void>
+{
+    private final int batchSize;
+    private ColumnBatch batch = null;
+
+    ColumnBatchMapper(final int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Void map(final int index, final ResultSet rs, final StatementContext ctx) throws SQLException
+    {
+        if (batch == null) {
+            batch = ColumnBatch.forResultSet(rs, batchSize);
+        }
+        batch.readRow(rs);
+        return null;
+    }
+
+    /**
+     * Returns the batch, or null if no row was read yet.
+     */
+    ColumnBatch getBatch()
+    {
+        return batch;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.columnar;
+
+import java.sql.Types;
+
+/**
+ * Primitive representation of a column in a {@link ColumnBatch}.
+ */
+public enum ColumnType
+{
+    /** Integer columns, read with {@link java.sql.ResultSet#getLong(int)}. */
+    LONG,
+
+    /** Floating point and numeric columns, read with {@link java.sql.ResultSet#getDouble(int)}. Numerics may lose precision. */
+    DOUBLE;
+
+    /**
+     * Returns the column type for a {@link Types} value, or null if the SQL type has no primitive representation.
+     */
+    public static ColumnType forSqlType(final int sqlType)
+    {
+        switch (sqlType) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return LONG;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DOUBLE;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.columnar;
+
+import java.util.Map;
+
+import org.skife.jdbi.v2.exceptions.CallbackFailedException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.nesscomputing.jdbc.stream.QueryStreamer;
+import com.nesscomputing.jdbc.stream.StreamingResultIterator;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Scans query results into {@link ColumnBatch}es of primitive arrays instead of one object per row. Meant for analytics
+ * over many rows of numeric columns, e.g.
+ *
+ * <pre>
+ * columnarScanner.scan("SELECT user_id, amount FROM payments", new ColumnBatchCallback() {
+ *     public void onBatch(final ColumnBatch batch) {
+ *         final double [] amounts = batch.getDoubles(1);
+ *         for (int i = 0; i &lt; batch.size(); i++) {
+ *             total += amounts[i];
+ *         }
+ *     }
+ * });
+ * </pre>
+ *
+ * Every column must be of a type listed in {@link ColumnType}. The rows are read through the {@link QueryStreamer} of the
+ * pool, so the result is never held in memory. A single batch of {@link ColumnarConfig#getBatchSize()} rows is allocated
+ * per scan and refilled for every callback, the last batch may be smaller. Exceptions of the callback are reported as
+ * {@link CallbackFailedException}.
+ */
+public class ColumnarScanner
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String poolName;
+    private final QueryStreamer queryStreamer;
+    private final int batchSize;
+
+    public ColumnarScanner(final String poolName, final QueryStreamer queryStreamer, final ColumnarConfig columnarConfig)
+    {
+        Preconditions.checkArgument(queryStreamer != null, "query streamer must not be null!");
+        Preconditions.checkArgument(columnarConfig != null, "columnar config must not be null!");
+        Preconditions.checkArgument(columnarConfig.getBatchSize() > 0, "batchSize must be at least 1!");
+
+        this.poolName = poolName;
+        this.queryStreamer = queryStreamer;
+        this.batchSize = columnarConfig.getBatchSize();
+    }
+
+    /**
+     * Runs a query and hands its rows to the callback in batches. Returns the number of rows.
+     */
+    public long scan(final String sql, final ColumnBatchCallback callback)
+    {
+        return scan(sql, ImmutableMap.<String, Object>of(), callback);
+    }
+
+    /**
+     * Runs a query with named arguments and hands its rows to the callback in batches. Returns the number of rows.
+     */
+    public long scan(final String sql, final Map<String, ? extends Object> arguments, final ColumnBatchCallback callback)
+    {
+        Preconditions.checkArgument(callback != null, "callback must not be null!");
+
+        final ColumnBatchMapper mapper = new ColumnBatchMapper(batchSize);
+        final StreamingResultIterator<Void> rows = queryStreamer.stream(sql, arguments, mapper);
+        long count = 0L;
+        try {
+            while (rows.hasNext()) {
+                rows.next();
+                final ColumnBatch batch = mapper.getBatch();
+                if (batch.isFull()) {
+                    count += deliver(batch, callback);
+                }
+            }
+            final ColumnBatch batch = mapper.getBatch();
+            if (batch != null && batch.size() > 0) {
+                count += deliver(batch, callback);
+            }
+        }
+        finally {
+            rows.close();
+        }
+
+        LOG.debug("Scanned %d rows of '%s' on %s", count, sql, poolName);
+        return count;
+    }
+
+    private long deliver(final ColumnBatch batch, final ColumnBatchCallback callback)
+    {
+        final int size = batch.size();
+        try {
+            callback.onBatch(batch);
+        }
+        catch (RuntimeException re) {
+            throw re;
+        }
+        catch (Exception e) {
+            throw new CallbackFailedException(e);
+        }
+        finally {
+            batch.clear();
+        }
+        return size;
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.columnar;
+
+import java.lang.annotation.Annotation;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.jdbc.stream.QueryStreamer;
+
+/**
+ * Creates the columnar scanner for the query streamer bound with the same annotation.
+ */
+public class ColumnarScannerProvider implements Provider<ColumnarScanner>
+{
+    private final String dbName;
+    private final Annotation annotation;
+
+    private Injector injector = null;
+    private Config config = null;
+
+    public ColumnarScannerProvider(final String dbName, final Annotation annotation)
+    {
+        this.dbName = dbName;
+        this.annotation = annotation;
+    }
+
+    @Inject
+    void setInjector(final Injector injector)
+    {
+        this.injector = injector;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public ColumnarScanner get()
+    {
+        Preconditions.checkState(config != null, "Config object was never injected!");
+
+        final ColumnarConfig columnarConfig = config.getBean(ColumnarConfig.class, ImmutableMap.of("dbName", dbName));
+        return new ColumnarScanner(dbName, injector.getInstance(Key.get(QueryStreamer.class, annotation)), columnarConfig);
+    }
+}
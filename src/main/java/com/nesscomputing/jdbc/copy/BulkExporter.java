@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.sql.SQLException;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+
+import com.google.common.base.Preconditions;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Exports large results with <code>COPY ... TO STDOUT</code>. The server formats the rows, they are written to the target
+ * without being mapped to objects. Needs a PostgreSQL database.
+ *
+ * <pre>
+ * final FileChannel channel = new FileOutputStream("events.csv").getChannel();
+ * try {
+ *     bulkExporter.export("SELECT * FROM events WHERE day = '2012-06-01'", CopyFormat.CSV, channel);
+ * }
+ * finally {
+ *     channel.close();
+ * }
+ * </pre>
+ *
+ * The driver hands out the data row by row. Rows are collected in a buffer of {@link CopyConfig#getBufferSize()} bytes
+ * and written when it is full, so a target sees few, large writes. A <code>COPY</code> can not have bind parameters.
+ * Every export runs on a connection of its own. Failures, also of the target, are reported as
+ * {@link UnableToExecuteStatementException}, the target then has an incomplete export.
+ */
+public class BulkExporter
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String poolName;
+    private final IDBI idbi;
+    private final int bufferSize;
+
+    public BulkExporter(final String poolName, final IDBI idbi, final CopyConfig copyConfig)
+    {
+        Preconditions.checkArgument(idbi != null, "idbi must not be null!");
+        Preconditions.checkArgument(copyConfig != null, "copy config must not be null!");
+        Preconditions.checkArgument(copyConfig.getBufferSize() > 0, "bufferSize must be at least 1!");
+
+        this.poolName = poolName;
+        this.idbi = idbi;
+        this.bufferSize = copyConfig.getBufferSize();
+    }
+
+    /**
+     * Writes the result of a query in the given format to a channel. The channel is not closed. Returns the number of
+     * exported rows.
+     */
+    public long export(final String query, final CopyFormat format, final WritableByteChannel target)
+    {
+        return copyOut(exportStatement(query, format), target);
+    }
+
+    /**
+     * Writes the result of a query in the given format to a stream. The stream is flushed but not closed. Returns the number
+     * of exported rows.
+     */
+    public long export(final String query, final CopyFormat format, final OutputStream target)
+    {
+        return copyOut(exportStatement(query, format), target);
+    }
+
+    /**
+     * Runs a <code>COPY ... TO STDOUT</code> statement and writes its data to a stream. The stream is flushed but not closed.
+     * Returns the number of exported rows.
+     */
+    public long copyOut(final String copySql, final OutputStream target)
+    {
+        Preconditions.checkArgument(target != null, "target must not be null!");
+
+        final long count = copyOut(copySql, new OutputStreamChannel(target));
+        try {
+            target.flush();
+        }
+        catch (IOException ioe) {
+            throw new UnableToExecuteStatementException(String.format("Could not flush result of '%s' on %s", copySql, poolName), ioe);
+        }
+        return count;
+    }
+
+    /**
+     * Runs a <code>COPY ... TO STDOUT</code> statement and writes its data to a channel. The channel is not closed. Returns the
+     * number of exported rows.
+     */
+    public long copyOut(final String copySql, final WritableByteChannel target)
+    {
+        Preconditions.checkArgument(copySql != null, "copy statement must not be null!");
+        Preconditions.checkArgument(target != null, "target must not be null!");
+
+        final Handle handle = idbi.open();
+        try {
+            final CopySource source = PgCopyApi.forConnection(handle.getConnection()).copyOut(copySql);
+            boolean success = false;
+            try {
+                final long bytes = transfer(source, target, ByteBuffer.allocate(bufferSize));
+                final long count = source.getRowCount();
+                success = true;
+                LOG.debug("Exported %d rows (%d bytes) with '%s' on %s", count, bytes, copySql, poolName);
+                return count;
+            }
+            finally {
+                if (!success) {
+                    cancel(source);
+                }
+            }
+        }
+        catch (SQLException sqle) {
+            throw new UnableToExecuteStatementException(String.format("Could not execute '%s' on %s", copySql, poolName), sqle);
+        }
+        catch (IOException ioe) {
+            throw new UnableToExecuteStatementException(String.format("Could not write result of '%s' on %s", copySql, poolName), ioe);
+        }
+        finally {
+            handle.close();
+        }
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    static String exportStatement(final String query, final CopyFormat format)
+    {
+        Preconditions.checkArgument(query != null, "query must not be null!");
+        Preconditions.checkArgument(format != null, "format must not be null!");
+
+        return String.format("COPY (%s) TO STDOUT WITH (FORMAT %s)", query, format.getOption());
+    }
+
+    /**
+     * Moves all data of a copy to the target, through the buffer. Chunks that do not fit into the buffer are written on
+     * their own. Returns the number of bytes written.
+     */
+    static long transfer(final CopySource source, final WritableByteChannel target, final ByteBuffer buffer) throws SQLException, IOException
+    {
+        long bytes = 0L;
+        buffer.clear();
+
+        byte [] data;
+        while ((data = source.read()) != null) {
+            if (data.length > buffer.remaining()) {
+                drain(buffer, target);
+            }
+            if (data.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(data), target);
+            }
+            else {
+                buffer.put(data);
+            }
+            bytes += data.length;
+        }
+        drain(buffer, target);
+        return bytes;
+    }
+
+    private static void drain(final ByteBuffer buffer, final WritableByteChannel target) throws IOException
+    {
+        buffer.flip();
+        writeFully(buffer, target);
+        buffer.clear();
+    }
+
+    private static void writeFully(final ByteBuffer buffer, final WritableByteChannel target) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private void cancel(final CopySource source)
+    {
+        try {
+            source.cancel();
+        }
+        catch (SQLException sqle) {
+            LOG.warn(sqle, "Could not cancel copy on %s", poolName);
+        }
+        catch (RuntimeException re) {
+            LOG.warn(re, "Could not cancel copy on %s", poolName);
+        }
+    }
+
+    /**
+     * Writes the buffers straight from their backing arrays. Unlike {@link java.nio.channels.Channels#newChannel(OutputStream)},
+     * this does not copy them again and never closes the stream.
+     */
+    private static class OutputStreamChannel implements WritableByteChannel
+    {
+        private final OutputStream out;
+
+        OutputStreamChannel(final OutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException
+        {
+            final int length = src.remaining();
+            if (src.hasArray()) {
+                out.write(src.array(), src.arrayOffset() + src.position(), length);
+                src.position(src.limit());
+            }
+            else {
+                final byte [] data = new byte[length];
+                src.get(data);
+                out.write(data);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.lang.annotation.Annotation;
+
+import org.skife.jdbi.v2.IDBI;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.nesscomputing.config.Config;
+
+/**
+ * Creates the bulk exporter for the IDBI bound with the same annotation.
+ */
+public class BulkExporterProvider implements Provider<BulkExporter>
+{
+    private final String dbName;
+    private final Annotation annotation;
+
+    private Injector injector = null;
+    private Config config = null;
+
+    public BulkExporterProvider(final String dbName, final Annotation annotation)
+    {
+        this.dbName = dbName;
+        this.annotation = annotation;
+    }
+
+    @Inject
+    void setInjector(final Injector injector)
+    {
+        this.injector = injector;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public BulkExporter get()
+    {
+        Preconditions.checkState(config != null, "Config object was never injected!");
+
+        final CopyConfig copyConfig = config.getBean(CopyConfig.class, ImmutableMap.of("dbName", dbName));
+        return new BulkExporter(dbName, injector.getInstance(Key.get(IDBI.class, annotation)), copyConfig);
+    }
+}
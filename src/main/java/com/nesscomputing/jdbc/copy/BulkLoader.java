@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.nesscomputing.jdbc.cache.QueryCache;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Loads large amounts of data with <code>COPY ... FROM STDIN</code>, which is much faster than batched inserts. Needs a
+ * PostgreSQL database.
+ *
+ * Rows are encoded while they are sent, only {@link CopyConfig#getBufferSize()} bytes are held in memory. The rows of
+ * an iterator are turned into column values by a function:
+ *
+ * <pre>
+ * bulkLoader.copyRows("events", ImmutableList.of("id", "name"), CopyFormat.TEXT, events.iterator(), new Function&lt;Event, Object []&gt;() {
+ *     public Object [] apply(final Event event) {
+ *         return new Object [] { event.getId(), event.getName() };
+ *     }
+ * });
+ * </pre>
+ *
+ * Data that is already in a copy format can be sent from a stream or channel with a complete <code>COPY</code> statement.
+ * Every copy runs on a connection of its own and is a single statement, so it is either loaded completely or not at all.
+ * Failures are reported as {@link UnableToExecuteStatementException}. Cached results of the loaded table are dropped from the
+ * {@link QueryCache}.
+ */
+public class BulkLoader
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String poolName;
+    private final IDBI idbi;
+    private final int bufferSize;
+    private final QueryCache queryCache;
+
+    public BulkLoader(final String poolName, final IDBI idbi, final CopyConfig copyConfig, @Nullable final QueryCache queryCache)
+    {
+        Preconditions.checkArgument(idbi != null, "idbi must not be null!");
+        Preconditions.checkArgument(copyConfig != null, "copy config must not be null!");
+        Preconditions.checkArgument(copyConfig.getBufferSize() > 0, "bufferSize must be at least 1!");
+
+        this.poolName = poolName;
+        this.idbi = idbi;
+        this.bufferSize = copyConfig.getBufferSize();
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * Copies rows into the given columns of a table. Returns the number of loaded rows.
+     */
+    public <T> long copyRows(final String table, final List<String> columns, final CopyFormat format, final Iterator<? extends T> rows, final Function<? super T, Object []> rowFunction)
+    {
+        Preconditions.checkArgument(rows != null, "rows must not be null!");
+        Preconditions.checkArgument(rowFunction != null, "row function must not be null!");
+
+        final String sql = copyStatement(table, columns, format);
+        final Handle handle = idbi.open();
+        try {
+            final CopySink sink = PgCopyApi.forConnection(handle.getConnection()).copyIn(sql);
+            boolean success = false;
+            try {
+                final CopyRowWriter writer = CopyRowWriter.forFormat(format, new CopySinkOutputStream(sink, bufferSize));
+                writer.start();
+                while (rows.hasNext()) {
+                    final Object [] values = rowFunction.apply(rows.next());
+                    Preconditions.checkState(values != null && values.length == columns.size(), "expected %s values per row for %s", columns.size(), columns);
+                    writer.writeRow(values);
+                }
+                writer.finish();
+                final long count = sink.end();
+                success = true;
+                copied(sql);
+                LOG.debug("Copied %d rows into %s on %s", count, table, poolName);
+                return count;
+            }
+            finally {
+                if (!success) {
+                    cancel(sink);
+                }
+            }
+        }
+        catch (SQLException sqle) {
+            throw new UnableToExecuteStatementException(String.format("Could not execute '%s' on %s", sql, poolName), sqle);
+        }
+        catch (IOException ioe) {
+            throw new UnableToExecuteStatementException(String.format("Could not execute '%s' on %s", sql, poolName), ioe);
+        }
+        finally {
+            handle.close();
+        }
+    }
+
+    /**
+     * Runs a <code>COPY ... FROM STDIN</code> statement with the data of a stream. The stream is read to its end but not closed.
+     * Returns the number of loaded rows.
+     */
+    public long copyIn(final String copySql, final InputStream data)
+    {
+        Preconditions.checkArgument(copySql != null, "copy statement must not be null!");
+        Preconditions.checkArgument(data != null, "data must not be null!");
+
+        final Handle handle = idbi.open();
+        try {
+            final long count = PgCopyApi.forConnection(handle.getConnection()).copyIn(copySql, data, bufferSize);
+            copied(copySql);
+            LOG.debug("Copied %d rows with '%s' on %s", count, copySql, poolName);
+            return count;
+        }
+        catch (SQLException sqle) {
+            throw new UnableToExecuteStatementException(String.format("Could not execute '%s' on %s", copySql, poolName), sqle);
+        }
+        finally {
+            handle.close();
+        }
+    }
+
+    /**
+     * Runs a <code>COPY ... FROM STDIN</code> statement with the data of a channel. The channel is read to its end but not closed.
+     * Returns the number of loaded rows.
+     */
+    public long copyIn(final String copySql, final ReadableByteChannel data)
+    {
+        Preconditions.checkArgument(data != null, "data must not be null!");
+
+        // The stream of a channel closes the channel, so it is never closed here.
+        return copyIn(copySql, Channels.newInputStream(data));
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    static String copyStatement(final String table, final List<String> columns, final CopyFormat format)
+    {
+        Preconditions.checkArgument(table != null, "table must not be null!");
+        Preconditions.checkArgument(columns != null && !columns.isEmpty(), "at least one column is needed!");
+        Preconditions.checkArgument(format != null, "format must not be null!");
+
+        return String.format("COPY %s (%s) FROM STDIN WITH (FORMAT %s)", table, Joiner.on(", ").join(columns), format.getOption());
+    }
+
+    /**
+     * A copy does not pass the timing collectors of the IDBI, so the query cache must be told about it.
+     */
+    private void copied(final String sql)
+    {
+        if (queryCache != null) {
+            queryCache.statementExecuted(sql);
+        }
+    }
+
+    private void cancel(final CopySink sink)
+    {
+        try {
+            sink.cancel();
+        }
+        catch (SQLException sqle) {
+            LOG.warn(sqle, "Could not cancel copy on %s", poolName);
+        }
+        catch (RuntimeException re) {
+            LOG.warn(re, "Could not cancel copy on %s", poolName);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class CopyConfig
+{
+    /**
+     * Number of bytes that are collected before they are sent to the server, or written to the target of an export. This is
+     * the only buffering of a <code>COPY</code>.
+     */
+    @Config({"ness.db.${dbName}.copy.bufferSize","ness.db.defaults.copy.bufferSize"})
+    @Default("65536")
+    public abstract int getBufferSize();
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+/**
+ * Data format of a <code>COPY</code> statement.
+ */
+public enum CopyFormat
+{
+    /** Tab separated text, one line per row. Every value is sent as a string and parsed by the server. */
+    TEXT("text"),
+
+    /** Comma separated values. Null is an empty, unquoted value. */
+    CSV("csv"),
+
+    /**
+     * The binary format of PostgreSQL. Values are sent in their internal representation, so the Java type of every value
+     * must match the column type exactly.
+     */
+    BINARY("binary");
+
+    private final String option;
+
+    private CopyFormat(final String option)
+    {
+        this.option = option;
+    }
+
+    /**
+     * Returns the value of the <code>FORMAT</code> option of the <code>COPY</code> statement.
+     */
+    public String getOption()
+    {
+        return option;
+    }
+}
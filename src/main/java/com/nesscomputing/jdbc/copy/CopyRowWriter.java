@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Encodes rows in one of the {@link CopyFormat}s. Every row is written as soon as it is encoded, the writer keeps no
+ * more than a single row.
+ */
+abstract class CopyRowWriter
+{
+    private static final char [] HEX = "0123456789abcdef".toCharArray();
+
+    static CopyRowWriter forFormat(final CopyFormat format, final OutputStream out)
+    {
+        switch (format) {
+            case TEXT:
+                return new TextRowWriter(out);
+            case CSV:
+                return new CsvRowWriter(out);
+            case BINARY:
+                return new BinaryRowWriter(out);
+            default:
+                throw new IllegalArgumentException("Unknown copy format " + format);
+        }
+    }
+
+    abstract void start() throws IOException;
+
+    abstract void writeRow(Object [] values) throws IOException;
+
+    abstract void finish() throws IOException;
+
+    private static String toHex(final byte [] bytes)
+    {
+        final StringBuilder sb = new StringBuilder(2 + bytes.length * 2);
+        sb.append("\\x");
+        for (byte b : bytes) {
+            sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tab separated columns, newline terminated rows. Null is <code>\N</code>, backslashes and control characters in
+     * values are escaped.
+     */
+    static class TextRowWriter extends CopyRowWriter
+    {
+        private final OutputStream out;
+        private final StringBuilder line = new StringBuilder();
+
+        TextRowWriter(final OutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        void start()
+        {
+        }
+
+        @Override
+        void writeRow(final Object [] values) throws IOException
+        {
+            line.setLength(0);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append('\t');
+                }
+                appendValue(values[i]);
+            }
+            line.append('\n');
+            out.write(line.toString().getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        void finish() throws IOException
+        {
+            out.flush();
+        }
+
+        private void appendValue(final Object value)
+        {
+            if (value == null) {
+                line.append("\\N");
+            }
+            else if (value instanceof byte []) {
+                // bytea hex format, the backslash itself must be escaped.
+                line.append('\\').append(toHex((byte []) value));
+            }
+            else if (value instanceof Boolean) {
+                line.append(((Boolean) value).booleanValue() ? 't' : 'f');
+            }
+            else {
+                final String str = value.toString();
+                for (int i = 0; i < str.length(); i++) {
+                    final char c = str.charAt(i);
+                    switch (c) {
+                        case '\\':
+                            line.append("\\\\");
+                            break;
+                        case '\t':
+                            line.append("\\t");
+                            break;
+                        case '\n':
+                            line.append("\\n");
+                            break;
+                        case '\r':
+                            line.append("\\r");
+                            break;
+                        default:
+                            line.append(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Comma separated columns, newline terminated rows. Null is an empty value, values that are empty or contain a comma,
+     * quote or line break are quoted.
+     */
+    static class CsvRowWriter extends CopyRowWriter
+    {
+        private final OutputStream out;
+        private final StringBuilder line = new StringBuilder();
+
+        CsvRowWriter(final OutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        void start()
+        {
+        }
+
+        @Override
+        void writeRow(final Object [] values) throws IOException
+        {
+            line.setLength(0);
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                appendValue(values[i]);
+            }
+            line.append('\n');
+            out.write(line.toString().getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        void finish() throws IOException
+        {
+            out.flush();
+        }
+
+        private void appendValue(final Object value)
+        {
+            if (value == null) {
+                return;
+            }
+
+            final String str;
+            if (value instanceof byte []) {
+                str = toHex((byte []) value);
+            }
+            else if (value instanceof Boolean) {
+                str = ((Boolean) value).booleanValue() ? "t" : "f";
+            }
+            else {
+                str = value.toString();
+            }
+
+            // An empty unquoted value would be read as null.
+            if (str.isEmpty() || str.indexOf(',') >= 0 || str.indexOf('"') >= 0 || str.indexOf('\n') >= 0 || str.indexOf('\r') >= 0) {
+                line.append('"').append(str.replace("\"", "\"\"")).append('"');
+            }
+            else {
+                line.append(str);
+            }
+        }
+    }
+
+    /**
+     * The binary copy format: a signature and header, a field count and length prefixed fields per row and a trailer. Values
+     * are encoded as <code>int2</code> (Short), <code>int4</code> (Integer), <code>int8</code> (Long), <code>float4</code> (Float),
+     * <code>float8</code> (Double), <code>bool</code> (Boolean), <code>text</code> (String), <code>bytea</code> (byte []),
+     * <code>uuid</code> (UUID), <code>date</code> (java.sql.Date) and <code>timestamp</code> (Timestamp). Dates and timestamps
+     * assume integer datetimes on the server.
+     */
+    static class BinaryRowWriter extends CopyRowWriter
+    {
+        private static final byte [] SIGNATURE = new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 };
+
+        /** 2000-01-01 00:00:00 UTC, the epoch of PostgreSQL dates and timestamps. */
+        private static final long PG_EPOCH_MILLIS = 946684800000L;
+        private static final long MILLIS_PER_DAY = 86400000L;
+
+        private final DataOutputStream out;
+
+        BinaryRowWriter(final OutputStream out)
+        {
+            this.out = new DataOutputStream(out);
+        }
+
+        @Override
+        void start() throws IOException
+        {
+            out.write(SIGNATURE);
+            // Flags and header extension length.
+            out.writeInt(0);
+            out.writeInt(0);
+        }
+
+        @Override
+        void writeRow(final Object [] values) throws IOException
+        {
+            if (values.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many columns: " + values.length);
+            }
+            out.writeShort(values.length);
+            for (Object value : values) {
+                writeValue(value);
+            }
+        }
+
+        @Override
+        void finish() throws IOException
+        {
+            out.writeShort(-1);
+            out.flush();
+        }
+
+        private void writeValue(final Object value) throws IOException
+        {
+            if (value == null) {
+                out.writeInt(-1);
+            }
+            else if (value instanceof Integer) {
+                out.writeInt(4);
+                out.writeInt((Integer) value);
+            }
+            else if (value instanceof Long) {
+                out.writeInt(8);
+                out.writeLong((Long) value);
+            }
+            else if (value instanceof Short) {
+                out.writeInt(2);
+                out.writeShort((Short) value);
+            }
+            else if (value instanceof Double) {
+                out.writeInt(8);
+                out.writeDouble((Double) value);
+            }
+            else if (value instanceof Float) {
+                out.writeInt(4);
+                out.writeFloat((Float) value);
+            }
+            else if (value instanceof Boolean) {
+                out.writeInt(1);
+                out.writeByte(((Boolean) value).booleanValue() ? 1 : 0);
+            }
+            else if (value instanceof String) {
+                writeBytes(((String) value).getBytes(Charsets.UTF_8));
+            }
+            else if (value instanceof byte []) {
+                writeBytes((byte []) value);
+            }
+            else if (value instanceof UUID) {
+                final UUID uuid = (UUID) value;
+                out.writeInt(16);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            }
+            else if (value instanceof Timestamp) {
+                final Timestamp timestamp = (Timestamp) value;
+                // getTime() already contains the milliseconds of the nanos.
+                final long micros = (timestamp.getTime() - PG_EPOCH_MILLIS) * 1000L + (timestamp.getNanos() / 1000) % 1000;
+                out.writeInt(8);
+                out.writeLong(micros);
+            }
+            else if (value instanceof Date) {
+                final long millis = ((Date) value).getTime() - PG_EPOCH_MILLIS;
+                out.writeInt(4);
+                out.writeInt((int) Math.floor((double) millis / MILLIS_PER_DAY));
+            }
+            else {
+                throw new IllegalArgumentException(String.format("Can not encode %s in binary copy format, use the text format", value.getClass().getName()));
+            }
+        }
+
+        private void writeBytes(final byte [] bytes) throws IOException
+        {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
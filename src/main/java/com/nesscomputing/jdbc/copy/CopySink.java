@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.sql.SQLException;
+
+/**
+ * Receiving end of a <code>COPY ... FROM STDIN</code> that is in progress on a connection.
+ */
+interface CopySink
+{
+    void write(byte [] data, int offset, int length) throws SQLException;
+
+    /**
+     * Completes the copy and returns the number of rows that the server has loaded.
+     */
+    long end() throws SQLException;
+
+    /**
+     * Aborts the copy. Nothing that was written so far is loaded.
+     */
+    void cancel() throws SQLException;
+}
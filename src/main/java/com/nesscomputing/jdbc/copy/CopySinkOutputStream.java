@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Collects written bytes in a fixed size buffer and hands them to a {@link CopySink} whenever the buffer is full. Writes
+ * that are larger than the buffer go straight to the sink.
+ */
+class CopySinkOutputStream extends OutputStream
+{
+    private final CopySink sink;
+    private final byte [] buffer;
+    private int count = 0;
+
+    CopySinkOutputStream(final CopySink sink, final int bufferSize)
+    {
+        Preconditions.checkArgument(sink != null, "sink must not be null!");
+        Preconditions.checkArgument(bufferSize > 0, "buffer size must be positive!");
+
+        this.sink = sink;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(final int b) throws IOException
+    {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte [] data, final int offset, final int length) throws IOException
+    {
+        if (length >= buffer.length) {
+            flushBuffer();
+            send(data, offset, length);
+        }
+        else {
+            if (length > buffer.length - count) {
+                flushBuffer();
+            }
+            System.arraycopy(data, offset, buffer, count, length);
+            count += length;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        if (count > 0) {
+            send(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void send(final byte [] data, final int offset, final int length) throws IOException
+    {
+        try {
+            sink.write(data, offset, length);
+        }
+        catch (SQLException sqle) {
+            throw new IOException("While sending copy data", sqle);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.sql.SQLException;
+
+/**
+ * Sending end of a <code>COPY ... TO STDOUT</code> that is in progress on a connection.
+ */
+interface CopySource
+{
+    /**
+     * Returns the next chunk of data, usually a single row, or null when the copy is complete.
+     */
+    byte [] read() throws SQLException;
+
+    /**
+     * Returns the number of rows that the server has sent, once the copy is complete.
+     */
+    long getRowCount() throws SQLException;
+
+    /**
+     * Aborts the copy.
+     */
+    void cancel() throws SQLException;
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+
+/**
+ * Reflective access to the copy API of the PostgreSQL driver, which is not a compile time dependency of this
+ * component. The <code>CopyManager</code> is fetched from the physical connection through
+ * {@link C3P0ProxyConnection#rawConnectionOperation}, connections that are not pooled are unwrapped.
+ *
+ * A copy must complete before the connection is closed or used for anything else.
+ */
+final class PgCopyApi
+{
+    private static final Class<?> PG_CONNECTION_CLASS;
+    private static final Method GET_COPY_API;
+    private static final Method COPY_IN;
+    private static final Method COPY_IN_STREAM;
+    private static final Method WRITE_TO_COPY;
+    private static final Method END_COPY;
+    private static final Method CANCEL_COPY;
+    private static final Method COPY_OUT;
+    private static final Method READ_FROM_COPY;
+    private static final Method GET_HANDLED_ROW_COUNT;
+
+    static {
+        Class<?> pgConnectionClass = null;
+        Method getCopyApi = null;
+        Method copyIn = null;
+        Method copyInStream = null;
+        Method writeToCopy = null;
+        Method endCopy = null;
+        Method cancelCopy = null;
+        Method copyOut = null;
+        Method readFromCopy = null;
+        Method getHandledRowCount = null;
+
+        try {
+            final ClassLoader loader = PgCopyApi.class.getClassLoader();
+            pgConnectionClass = Class.forName("org.postgresql.PGConnection", false, loader);
+            final Class<?> copyManagerClass = Class.forName("org.postgresql.copy.CopyManager", false, loader);
+            final Class<?> copyInClass = Class.forName("org.postgresql.copy.CopyIn", false, loader);
+            final Class<?> copyOutClass = Class.forName("org.postgresql.copy.CopyOut", false, loader);
+            final Class<?> copyOperationClass = Class.forName("org.postgresql.copy.CopyOperation", false, loader);
+
+            getCopyApi = pgConnectionClass.getMethod("getCopyAPI");
+            copyIn = copyManagerClass.getMethod("copyIn", String.class);
+            copyInStream = copyManagerClass.getMethod("copyIn", String.class, InputStream.class, int.class);
+            writeToCopy = copyInClass.getMethod("writeToCopy", byte [].class, int.class, int.class);
+            endCopy = copyInClass.getMethod("endCopy");
+            cancelCopy = copyOperationClass.getMethod("cancelCopy");
+            copyOut = copyManagerClass.getMethod("copyOut", String.class);
+            readFromCopy = copyOutClass.getMethod("readFromCopy");
+            getHandledRowCount = copyOperationClass.getMethod("getHandledRowCount");
+        }
+        catch (ClassNotFoundException cnfe) {
+            pgConnectionClass = null;
+        }
+        catch (NoSuchMethodException nsme) {
+            pgConnectionClass = null;
+        }
+
+        PG_CONNECTION_CLASS = pgConnectionClass;
+        GET_COPY_API = getCopyApi;
+        COPY_IN = copyIn;
+        COPY_IN_STREAM = copyInStream;
+        WRITE_TO_COPY = writeToCopy;
+        END_COPY = endCopy;
+        CANCEL_COPY = cancelCopy;
+        COPY_OUT = copyOut;
+        READ_FROM_COPY = readFromCopy;
+        GET_HANDLED_ROW_COUNT = getHandledRowCount;
+    }
+
+    private final Object copyManager;
+
+    private PgCopyApi(final Object copyManager)
+    {
+        this.copyManager = copyManager;
+    }
+
+    static PgCopyApi forConnection(final Connection connection) throws SQLException
+    {
+        if (PG_CONNECTION_CLASS == null) {
+            throw new SQLException("COPY needs the PostgreSQL driver (8.4 or later) on the classpath");
+        }
+
+        if (connection instanceof C3P0ProxyConnection) {
+            try {
+                return new PgCopyApi(((C3P0ProxyConnection) connection).rawConnectionOperation(GET_COPY_API, C3P0ProxyConnection.RAW_CONNECTION, new Object[0]));
+            }
+            catch (InvocationTargetException ite) {
+                throw toSQLException(GET_COPY_API, ite);
+            }
+            catch (IllegalAccessException iae) {
+                throw new SQLException(String.format("While invoking '%s'", GET_COPY_API), iae);
+            }
+        }
+        else if (PG_CONNECTION_CLASS.isInstance(connection)) {
+            return new PgCopyApi(invoke(GET_COPY_API, connection));
+        }
+        else if (connection.isWrapperFor(PG_CONNECTION_CLASS)) {
+            return new PgCopyApi(invoke(GET_COPY_API, connection.unwrap(PG_CONNECTION_CLASS)));
+        }
+        throw new SQLException(String.format("%s is not a PostgreSQL connection", connection));
+    }
+
+    /**
+     * Starts a <code>COPY ... FROM STDIN</code>. The connection can not be used until the returned sink is ended or
+     * cancelled.
+     */
+    CopySink copyIn(final String sql) throws SQLException
+    {
+        final Object copyIn = invoke(COPY_IN, copyManager, sql);
+        return new CopySink() {
+            @Override
+            public void write(final byte [] data, final int offset, final int length) throws SQLException
+            {
+                invoke(WRITE_TO_COPY, copyIn, data, offset, length);
+            }
+
+            @Override
+            public long end() throws SQLException
+            {
+                return (Long) invoke(END_COPY, copyIn);
+            }
+
+            @Override
+            public void cancel() throws SQLException
+            {
+                invoke(CANCEL_COPY, copyIn);
+            }
+        };
+    }
+
+    /**
+     * Runs a <code>COPY ... FROM STDIN</code> with the contents of a stream. The driver reads and sends
+     * <code>bufferSize</code> bytes at a time.
+     */
+    long copyIn(final String sql, final InputStream in, final int bufferSize) throws SQLException
+    {
+        return (Long) invoke(COPY_IN_STREAM, copyManager, sql, in, bufferSize);
+    }
+
+    /**
+     * Starts a <code>COPY ... TO STDOUT</code>. The connection can not be used until the returned source is read to its end
+     * or cancelled.
+     */
+    CopySource copyOut(final String sql) throws SQLException
+    {
+        final Object copyOut = invoke(COPY_OUT, copyManager, sql);
+        return new CopySource() {
+            @Override
+            public byte [] read() throws SQLException
+            {
+                return (byte []) invoke(READ_FROM_COPY, copyOut);
+            }
+
+            @Override
+            public long getRowCount() throws SQLException
+            {
+                return (Long) invoke(GET_HANDLED_ROW_COUNT, copyOut);
+            }
+
+            @Override
+            public void cancel() throws SQLException
+            {
+                invoke(CANCEL_COPY, copyOut);
+            }
+        };
+    }
+
+    private static Object invoke(final Method method, final Object target, final Object ... args) throws SQLException
+    {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException ite) {
+            throw toSQLException(method, ite);
+        }
+        catch (IllegalAccessException iae) {
+            throw new SQLException(String.format("While invoking '%s'", method), iae);
+        }
+    }
+
+    private static SQLException toSQLException(final Method method, final InvocationTargetException ite)
+    {
+        final Throwable cause = ite.getCause();
+        if (cause instanceof SQLException) {
+            return (SQLException) cause;
+        }
+        else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new SQLException(String.format("While invoking '%s'", method), cause);
+    }
+}
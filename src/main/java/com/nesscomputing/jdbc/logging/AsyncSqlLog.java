@@ -0,0 +1,417 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.logging;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.SQLLog;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Hands SQL log events to a background thread that passes them on to another SQL log. Events are stored in a ring buffer
+ * of preallocated slots, so logging a statement never blocks and does not allocate, except for the statements of a
+ * {@link #logBatch()} which are copied into one array per batch. If the buffer is full, the event is dropped and counted.
+ *
+ * Any number of threads can log at the same time. A thread claims a slot by moving the tail with a compare and swap, fills
+ * it and then publishes it through the sequence of the slot, which the background thread waits for.
+ *
+ * While the buffer stays empty, the background thread sleeps for longer and longer, up to 100 ms. The first event that is
+ * published while it sleeps wakes it up.
+ */
+public class AsyncSqlLog implements SQLLog
+{
+    private static final Log LOG = Log.findLog();
+
+    /** How long the background thread sleeps when the buffer is empty, doubled every time it stays empty. */
+    private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+    /** How long {@link #stop()} waits for the background thread to log the remaining events. */
+    private static final long STOP_WAIT_MILLIS = 5000L;
+
+    private static final byte BEGIN_TRANSACTION = 0;
+    private static final byte COMMIT_TRANSACTION = 1;
+    private static final byte ROLLBACK_TRANSACTION = 2;
+    private static final byte OBTAIN_HANDLE = 3;
+    private static final byte RELEASE_HANDLE = 4;
+    private static final byte SQL = 5;
+    private static final byte PREPARED_BATCH = 6;
+    private static final byte BATCH = 7;
+    private static final byte CHECKPOINT = 8;
+    private static final byte RELEASE_CHECKPOINT = 9;
+    private static final byte ROLLBACK_TO_CHECKPOINT = 10;
+
+    private final String poolName;
+    private final SQLLog delegate;
+
+    private final int capacity;
+    private final int mask;
+
+    // The slots of the ring buffer. A slot at position p may be written when its sequence is p, and read when it is p + 1.
+    private final AtomicLongArray sequences;
+    private final byte [] kinds;
+    private final long [] times;
+    private final Handle [] handles;
+    private final String [] texts;
+    private final int [] counts;
+    private final String [][] batches;
+
+    private final AtomicLong tail = new AtomicLong(0L);
+    private long head = 0L;
+
+    private final AtomicLong droppedCount = new AtomicLong(0L);
+    private long reportedDroppedCount = 0L;
+
+    private final ThreadLocal<BufferedBatchLogger> batchLoggers = new ThreadLocal<BufferedBatchLogger>() {
+        @Override
+        protected BufferedBatchLogger initialValue()
+        {
+            return new BufferedBatchLogger();
+        }
+    };
+
+    private final ExecutorService drainer;
+    private volatile Thread drainThread = null;
+    private volatile boolean stopped = false;
+
+    /** True while the background thread sleeps because the buffer is empty. */
+    private final AtomicBoolean idle = new AtomicBoolean(false);
+
+    public AsyncSqlLog(final String poolName, final SQLLog delegate, final int bufferSize)
+    {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null!");
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be positive!");
+        Preconditions.checkArgument(bufferSize <= 1 << 30, "bufferSize must be at most 2^30!");
+
+        this.poolName = poolName;
+        this.delegate = delegate;
+
+        this.capacity = bufferSize == 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+        this.mask = capacity - 1;
+
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.kinds = new byte [capacity];
+        this.times = new long [capacity];
+        this.handles = new Handle [capacity];
+        this.texts = new String [capacity];
+        this.counts = new int [capacity];
+        this.batches = new String [capacity][];
+
+        this.drainer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sql-log-" + poolName).build());
+        drainer.execute(new Runnable() {
+            @Override
+            public void run()
+            {
+                drainLoop();
+            }
+        });
+    }
+
+    /**
+     * Stops the background thread after it logged all events that are in the buffer. Events that are logged afterwards are dropped.
+     */
+    public void stop()
+    {
+        stopped = true;
+        final Thread thread = drainThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        drainer.shutdown();
+        try {
+            if (!drainer.awaitTermination(STOP_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("SQL log for %s did not finish within %d ms", poolName, STOP_WAIT_MILLIS);
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of events that were dropped because the buffer was full.
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of slots of the buffer.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    private void publish(final byte kind, final long time, final Handle handle, final String text, final int count, final String [] batch)
+    {
+        if (stopped) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        long pos = tail.get();
+        for (;;) {
+            final long available = sequences.get((int) pos & mask) - pos;
+            if (available == 0L) {
+                if (tail.compareAndSet(pos, pos + 1L)) {
+                    break;
+                }
+                pos = tail.get();
+            }
+            else if (available < 0L) {
+                // The background thread has not consumed this slot yet, so the buffer is full.
+                droppedCount.incrementAndGet();
+                return;
+            }
+            else {
+                pos = tail.get();
+            }
+        }
+
+        final int index = (int) pos & mask;
+        kinds[index] = kind;
+        times[index] = time;
+        handles[index] = handle;
+        texts[index] = text;
+        counts[index] = count;
+        batches[index] = batch;
+        sequences.lazySet(index, pos + 1L);
+
+        // Not a full fence, so the background thread may miss the wake up. It then finds the event when its sleep ends.
+        if (idle.get() && idle.compareAndSet(true, false)) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    private void drainLoop()
+    {
+        drainThread = Thread.currentThread();
+        long parkNanos = MIN_IDLE_PARK_NANOS;
+        while (!stopped) {
+            if (drain() > 0) {
+                parkNanos = MIN_IDLE_PARK_NANOS;
+            }
+            else {
+                reportDrops();
+                idle.set(true);
+                // An event published before the flag was set does not wake this thread.
+                if (!stopped && sequences.get((int) head & mask) != head + 1L) {
+                    LockSupport.parkNanos(this, parkNanos);
+                    parkNanos = Math.min(parkNanos * 2L, MAX_IDLE_PARK_NANOS);
+                }
+                idle.set(false);
+            }
+        }
+
+        // Producers that claimed a slot before the stop may still be filling it.
+        LockSupport.parkNanos(MIN_IDLE_PARK_NANOS);
+        drain();
+        reportDrops();
+    }
+
+    /**
+     * Passes all published events to the delegate and returns how many there were.
+     */
+    private int drain()
+    {
+        int drained = 0;
+        for (;;) {
+            final int index = (int) head & mask;
+            if (sequences.get(index) != head + 1L) {
+                return drained;
+            }
+
+            try {
+                replay(index);
+            }
+            catch (RuntimeException re) {
+                LOG.warn(re, "Could not log SQL event for %s", poolName);
+            }
+
+            handles[index] = null;
+            texts[index] = null;
+            batches[index] = null;
+            sequences.lazySet(index, head + capacity);
+            head++;
+            drained++;
+        }
+    }
+
+    private void replay(final int index)
+    {
+        final long time = times[index];
+        final Handle handle = handles[index];
+        final String text = texts[index];
+
+        switch (kinds[index]) {
+            case BEGIN_TRANSACTION:
+                delegate.logBeginTransaction(handle);
+                break;
+            case COMMIT_TRANSACTION:
+                delegate.logCommitTransaction(time, handle);
+                break;
+            case ROLLBACK_TRANSACTION:
+                delegate.logRollbackTransaction(time, handle);
+                break;
+            case OBTAIN_HANDLE:
+                delegate.logObtainHandle(time, handle);
+                break;
+            case RELEASE_HANDLE:
+                delegate.logReleaseHandle(handle);
+                break;
+            case SQL:
+                delegate.logSQL(time, text);
+                break;
+            case PREPARED_BATCH:
+                delegate.logPreparedBatch(time, text, counts[index]);
+                break;
+            case BATCH:
+                final BatchLogger batchLogger = delegate.logBatch();
+                final String [] statements = batches[index];
+                for (int i = 0; i < statements.length; i++) {
+                    batchLogger.add(statements[i]);
+                }
+                batchLogger.log(time);
+                break;
+            case CHECKPOINT:
+                delegate.logCheckpointTransaction(handle, text);
+                break;
+            case RELEASE_CHECKPOINT:
+                delegate.logReleaseCheckpointTransaction(handle, text);
+                break;
+            case ROLLBACK_TO_CHECKPOINT:
+                delegate.logRollbackToCheckpoint(time, handle, text);
+                break;
+            default:
+                throw new IllegalStateException("Unknown SQL log event " + kinds[index]);
+        }
+    }
+
+    private void reportDrops()
+    {
+        final long dropped = droppedCount.get();
+        if (dropped != reportedDroppedCount) {
+            LOG.warn("Dropped %d SQL log events for %s, the buffer of %d events was full", dropped - reportedDroppedCount, poolName, capacity);
+            reportedDroppedCount = dropped;
+        }
+    }
+
+    @Override
+    public void logBeginTransaction(final Handle h)
+    {
+        publish(BEGIN_TRANSACTION, 0L, h, null, 0, null);
+    }
+
+    @Override
+    public void logCommitTransaction(final long time, final Handle h)
+    {
+        publish(COMMIT_TRANSACTION, time, h, null, 0, null);
+    }
+
+    @Override
+    public void logRollbackTransaction(final long time, final Handle h)
+    {
+        publish(ROLLBACK_TRANSACTION, time, h, null, 0, null);
+    }
+
+    @Override
+    public void logObtainHandle(final long time, final Handle h)
+    {
+        publish(OBTAIN_HANDLE, time, h, null, 0, null);
+    }
+
+    @Override
+    public void logReleaseHandle(final Handle h)
+    {
+        publish(RELEASE_HANDLE, 0L, h, null, 0, null);
+    }
+
+    @Override
+    public void logSQL(final long time, final String sql)
+    {
+        publish(SQL, time, null, sql, 0, null);
+    }
+
+    @Override
+    public void logPreparedBatch(final long time, final String sql, final int count)
+    {
+        publish(PREPARED_BATCH, time, null, sql, count, null);
+    }
+
+    @Override
+    public BatchLogger logBatch()
+    {
+        final BufferedBatchLogger batchLogger = batchLoggers.get();
+        batchLogger.statements.clear();
+        return batchLogger;
+    }
+
+    @Override
+    public void logCheckpointTransaction(final Handle h, final String name)
+    {
+        publish(CHECKPOINT, 0L, h, name, 0, null);
+    }
+
+    @Override
+    public void logReleaseCheckpointTransaction(final Handle h, final String name)
+    {
+        publish(RELEASE_CHECKPOINT, 0L, h, name, 0, null);
+    }
+
+    @Override
+    public void logRollbackToCheckpoint(final long time, final Handle h, final String checkpointName)
+    {
+        publish(ROLLBACK_TO_CHECKPOINT, time, h, checkpointName, 0, null);
+    }
+
+    /**
+     * Collects the statements of a batch in a list that is reused by the thread, and publishes a copy once the batch is logged.
+     */
+    private class BufferedBatchLogger implements BatchLogger
+    {
+        private final List<String> statements = Lists.newArrayList();
+
+        @Override
+        public void add(final String sql)
+        {
+            statements.add(sql);
+        }
+
+        @Override
+        public void log(final long time)
+        {
+            publish(BATCH, time, null, null, 0, statements.toArray(new String [statements.size()]));
+            statements.clear();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.SQLLog;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Passes one in <code>n</code> events to another SQL log. Every event is sampled on its own, so e.g. the commit of a sampled
+ * transaction start may be missing. Sampling uses a thread local random, so threads do not contend on a shared counter.
+ */
+public class SampledSqlLog implements SQLLog
+{
+    private static final BatchLogger NO_OP_BATCH_LOGGER = new BatchLogger() {
+        @Override
+        public void add(final String sql)
+        {
+        }
+
+        @Override
+        public void log(final long time)
+        {
+        }
+    };
+
+    private final SQLLog delegate;
+    private final int sampleRate;
+
+    public SampledSqlLog(final SQLLog delegate, final int sampleRate)
+    {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null!");
+        Preconditions.checkArgument(sampleRate > 0, "sampleRate must be at least 1!");
+
+        this.delegate = delegate;
+        this.sampleRate = sampleRate;
+    }
+
+    private boolean sample()
+    {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    @Override
+    public void logBeginTransaction(final Handle h)
+    {
+        if (sample()) {
+            delegate.logBeginTransaction(h);
+        }
+    }
+
+    @Override
+    public void logCommitTransaction(final long time, final Handle h)
+    {
+        if (sample()) {
+            delegate.logCommitTransaction(time, h);
+        }
+    }
+
+    @Override
+    public void logRollbackTransaction(final long time, final Handle h)
+    {
+        if (sample()) {
+            delegate.logRollbackTransaction(time, h);
+        }
+    }
+
+    @Override
+    public void logObtainHandle(final long time, final Handle h)
+    {
+        if (sample()) {
+            delegate.logObtainHandle(time, h);
+        }
+    }
+
+    @Override
+    public void logReleaseHandle(final Handle h)
+    {
+        if (sample()) {
+            delegate.logReleaseHandle(h);
+        }
+    }
+
+    @Override
+    public void logSQL(final long time, final String sql)
+    {
+        if (sample()) {
+            delegate.logSQL(time, sql);
+        }
+    }
+
+    @Override
+    public void logPreparedBatch(final long time, final String sql, final int count)
+    {
+        if (sample()) {
+            delegate.logPreparedBatch(time, sql, count);
+        }
+    }
+
+    @Override
+    public BatchLogger logBatch()
+    {
+        return sample() ? delegate.logBatch() : NO_OP_BATCH_LOGGER;
+    }
+
+    @Override
+    public void logCheckpointTransaction(final Handle h, final String name)
+    {
+        if (sample()) {
+            delegate.logCheckpointTransaction(h, name);
+        }
+    }
+
+    @Override
+    public void logReleaseCheckpointTransaction(final Handle h, final String name)
+    {
+        if (sample()) {
+            delegate.logReleaseCheckpointTransaction(h, name);
+        }
+    }
+
+    @Override
+    public void logRollbackToCheckpoint(final long time, final Handle h, final String checkpointName)
+    {
+        if (sample()) {
+            delegate.logRollbackToCheckpoint(time, h, checkpointName);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.logging;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class SqlLogConfig
+{
+    /**
+     * How statements are logged, one of the {@link SqlLogMode} names.
+     */
+    @Config({"ness.db.${dbName}.sqlLog.mode","ness.db.defaults.sqlLog.mode"})
+    @Default("ALL")
+    public abstract SqlLogMode getMode();
+
+    /**
+     * In <code>SAMPLED</code> mode, one in this many events is logged.
+     */
+    @Config({"ness.db.${dbName}.sqlLog.sampleRate","ness.db.defaults.sqlLog.sampleRate"})
+    @Default("100")
+    public abstract int getSampleRate();
+
+    /**
+     * In <code>ASYNC</code> mode, the number of events that can wait for the background thread. Rounded up to a power of two.
+     */
+    @Config({"ness.db.${dbName}.sqlLog.bufferSize","ness.db.defaults.sqlLog.bufferSize"})
+    @Default("8192")
+    public abstract int getBufferSize();
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.logging;
+
+/**
+ * How the statements of a pool are logged.
+ */
+public enum SqlLogMode
+{
+    /** Nothing is logged, not even the log level is checked. */
+    OFF,
+
+    /** Every statement is logged to the <code>org.skife.jdbi</code> logger at debug level. */
+    ALL,
+
+    /** One in {@link SqlLogConfig#getSampleRate()} events, chosen at random, is logged like {@link #ALL}. */
+    SAMPLED,
+
+    /**
+     * Events are put into a ring buffer and logged like {@link #ALL} by a background thread. Events that do not fit into
+     * the buffer are dropped and counted.
+     */
+    ASYNC;
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.logging;
+
+import org.skife.jdbi.v2.logging.Log4JLog;
+import org.skife.jdbi.v2.logging.NoOpLog;
+import org.skife.jdbi.v2.tweak.SQLLog;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.AbstractLifecycleProvider;
+import com.nesscomputing.lifecycle.guice.LifecycleAction;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Creates the SQL log for a pool as configured in its {@link SqlLogConfig}. An asynchronous log is stopped when the lifecycle stops.
+ */
+public class SqlLogProvider extends AbstractLifecycleProvider<SQLLog> implements Provider<SQLLog>
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String dbName;
+
+    private Config config = null;
+
+    public SqlLogProvider(final String dbName)
+    {
+        this.dbName = dbName;
+
+        addAction(LifecycleStage.STOP_STAGE, new LifecycleAction<SQLLog>() {
+                @Override
+                public void performAction(final SQLLog sqlLog)
+                {
+                    if (sqlLog instanceof AsyncSqlLog) {
+                        LOG.info("Stopping SQL log for %s", dbName);
+                        ((AsyncSqlLog) sqlLog).stop();
+                    }
+                }
+            });
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public SQLLog internalGet()
+    {
+        Preconditions.checkState(config != null, "Config object was never injected!");
+
+        final SqlLogConfig sqlLogConfig = config.getBean(SqlLogConfig.class, ImmutableMap.of("dbName", dbName));
+        switch (sqlLogConfig.getMode()) {
+            case OFF:
+                return new NoOpLog();
+            case SAMPLED:
+                return new SampledSqlLog(new Log4JLog(), sqlLogConfig.getSampleRate());
+            case ASYNC:
+                return new AsyncSqlLog(dbName, new Log4JLog(), sqlLogConfig.getBufferSize());
+            case ALL:
+            default:
+                return new Log4JLog();
+        }
+    }
+}
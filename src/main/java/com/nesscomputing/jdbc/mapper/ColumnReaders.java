@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.mapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Map;
+
+import com.google.common.base.Defaults;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Method handles that read a column of a result set as a given Java type. Primitives are read with the typed getters and
+ * never boxed, boxed types are null for SQL NULL, enums are read by name. Follows the conversions of the JDBI
+ * {@link org.skife.jdbi.v2.BeanMapper}.
+ */
+final class ColumnReaders
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /** Handles of the type (ResultSet, int)type. */
+    private static final Map<Class<?>, MethodHandle> READERS;
+    private static final MethodHandle GET_OBJECT;
+    private static final MethodHandle GET_ENUM;
+
+    static {
+        try {
+            READERS = ImmutableMap.<Class<?>, MethodHandle>builder()
+                .put(boolean.class, getter("getBoolean", boolean.class))
+                .put(byte.class, getter("getByte", byte.class))
+                .put(short.class, getter("getShort", short.class))
+                .put(int.class, getter("getInt", int.class))
+                .put(long.class, getter("getLong", long.class))
+                .put(float.class, getter("getFloat", float.class))
+                .put(double.class, getter("getDouble", double.class))
+                .put(Boolean.class, helper("getBooleanObject", Boolean.class))
+                .put(Byte.class, helper("getByteObject", Byte.class))
+                .put(Short.class, helper("getShortObject", Short.class))
+                .put(Integer.class, helper("getIntegerObject", Integer.class))
+                .put(Long.class, helper("getLongObject", Long.class))
+                .put(Float.class, helper("getFloatObject", Float.class))
+                .put(Double.class, helper("getDoubleObject", Double.class))
+                .put(String.class, getter("getString", String.class))
+                .put(BigDecimal.class, getter("getBigDecimal", BigDecimal.class))
+                .put(Timestamp.class, getter("getTimestamp", Timestamp.class))
+                .put(java.util.Date.class, getter("getTimestamp", Timestamp.class).asType(MethodType.methodType(java.util.Date.class, ResultSet.class, int.class)))
+                .put(java.sql.Date.class, getter("getDate", java.sql.Date.class))
+                .put(Time.class, getter("getTime", Time.class))
+                .put(byte [].class, getter("getBytes", byte [].class))
+                .build();
+            GET_OBJECT = getter("getObject", Object.class);
+            GET_ENUM = LOOKUP.findStatic(ColumnReaders.class, "getEnum", MethodType.methodType(Enum.class, Class.class, ResultSet.class, int.class));
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+        catch (IllegalAccessException iae) {
+            throw new ExceptionInInitializerError(iae);
+        }
+    }
+
+    private ColumnReaders()
+    {
+    }
+
+    /**
+     * Returns a handle of the type (ResultSet)type that reads the column with the given index.
+     */
+    static MethodHandle reader(final Class<?> type, final int index)
+    {
+        MethodHandle reader = READERS.get(type);
+        if (reader == null) {
+            if (type.isEnum()) {
+                reader = MethodHandles.insertArguments(GET_ENUM, 0, type);
+            }
+            else if (type.isPrimitive()) {
+                throw new IllegalArgumentException("Can not read a column as " + type);
+            }
+            else {
+                reader = GET_OBJECT;
+            }
+            reader = reader.asType(MethodType.methodType(type, ResultSet.class, int.class));
+        }
+        return MethodHandles.insertArguments(reader, 1, index);
+    }
+
+    /**
+     * Returns a handle of the type (ResultSet)type that always returns the default value of the type.
+     */
+    static MethodHandle defaultValue(final Class<?> type)
+    {
+        return MethodHandles.dropArguments(MethodHandles.constant(type, Defaults.defaultValue(type)), 0, ResultSet.class);
+    }
+
+    private static MethodHandle getter(final String name, final Class<?> type) throws NoSuchMethodException, IllegalAccessException
+    {
+        return LOOKUP.findVirtual(ResultSet.class, name, MethodType.methodType(type, int.class));
+    }
+
+    private static MethodHandle helper(final String name, final Class<?> type) throws NoSuchMethodException, IllegalAccessException
+    {
+        return LOOKUP.findStatic(ColumnReaders.class, name, MethodType.methodType(type, ResultSet.class, int.class));
+    }
+
+    private static Boolean getBooleanObject(final ResultSet rs, final int index) throws SQLException
+    {
+        final boolean value = rs.getBoolean(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Byte getByteObject(final ResultSet rs, final int index) throws SQLException
+    {
+        final byte value = rs.getByte(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Short getShortObject(final ResultSet rs, final int index) throws SQLException
+    {
+        final short value = rs.getShort(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Integer getIntegerObject(final ResultSet rs, final int index) throws SQLException
+    {
+        final int value = rs.getInt(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Long getLongObject(final ResultSet rs, final int index) throws SQLException
+    {
+        final long value = rs.getLong(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Float getFloatObject(final ResultSet rs, final int index) throws SQLException
+    {
+        final float value = rs.getFloat(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Double getDoubleObject(final ResultSet rs, final int index) throws SQLException
+    {
+        final double value = rs.getDouble(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Enum getEnum(final Class type, final ResultSet rs, final int index) throws SQLException
+    {
+        final String name = rs.getString(index);
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+}
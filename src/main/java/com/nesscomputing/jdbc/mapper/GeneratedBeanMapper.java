@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.mapper;
+
+import java.beans.BeanInfo;
+import java.beans.ConstructorProperties;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Maps rows to a bean through a single method handle that is composed for the columns of the result. The handle reads every
+ * column with its typed getter and passes it straight to the constructor parameter or setter of the matching property. No
+ * reflection and no lookup by column name happens per row.
+ *
+ * Columns match a property by their lower case label, like the JDBI {@link org.skife.jdbi.v2.BeanMapper} does. A class is created through its public
+ * no-argument constructor, or through a public constructor annotated with {@link ConstructorProperties}. Constructor
+ * parameters without a column get their default value. Properties with a setter that are not constructor parameters are set
+ * afterwards. Columns without a property are ignored, like the JDBI {@link org.skife.jdbi.v2.BeanMapper} does.
+ *
+ * The handle for a set of column labels is composed once and reused for every result with the same labels.
+ */
+class GeneratedBeanMapper<T> implements ResultSetMapper<T>
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType ROW_TYPE = MethodType.methodType(Object.class, ResultSet.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, ResultSet.class);
+
+    private final Class<T> type;
+
+    /** Normalized property name to its setter. */
+    private final Map<String, Method> setters = Maps.newHashMap();
+
+    private final Constructor<T> constructor;
+
+    /** Normalized names of the constructor parameters, empty for the no-argument constructor. */
+    private final List<String> constructorProperties;
+
+    private final ConcurrentMap<List<String>, MethodHandle> handlesByLabels = Maps.newConcurrentMap();
+
+    /** The handle of the result that was mapped last, so only a new result needs its labels read. */
+    private volatile Binding lastBinding = null;
+
+    GeneratedBeanMapper(final Class<T> type)
+    {
+        this.type = type;
+
+        final Constructor<T> annotatedConstructor = findAnnotatedConstructor(type);
+        if (annotatedConstructor != null) {
+            this.constructor = annotatedConstructor;
+            final ImmutableList.Builder<String> builder = ImmutableList.builder();
+            for (String name : annotatedConstructor.getAnnotation(ConstructorProperties.class).value()) {
+                builder.add(normalize(name));
+            }
+            this.constructorProperties = builder.build();
+            Preconditions.checkArgument(constructorProperties.size() == annotatedConstructor.getParameterTypes().length,
+                                        "@ConstructorProperties of %s does not name all parameters", type.getName());
+        }
+        else {
+            try {
+                this.constructor = type.getConstructor();
+            }
+            catch (NoSuchMethodException nsme) {
+                throw new IllegalArgumentException(String.format("%s has neither a public no-argument constructor nor one annotated with @ConstructorProperties", type.getName()), nsme);
+            }
+            this.constructorProperties = ImmutableList.of();
+        }
+
+        try {
+            final BeanInfo info = Introspector.getBeanInfo(type);
+            for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+                final Method writeMethod = descriptor.getWriteMethod();
+                if (writeMethod != null) {
+                    setters.put(normalize(descriptor.getName()), writeMethod);
+                }
+            }
+        }
+        catch (IntrospectionException ie) {
+            throw new IllegalArgumentException(String.format("Could not introspect %s", type.getName()), ie);
+        }
+    }
+
+    /**
+     * Returns true if the class can be created by a generated mapper.
+     */
+    static boolean isMappable(final Class<?> type)
+    {
+        if (type.isPrimitive() || type.isArray() || type.isEnum() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+            || !Modifier.isPublic(type.getModifiers()) || (type.getEnclosingClass() != null && !Modifier.isStatic(type.getModifiers()))) {
+            return false;
+        }
+        final String name = type.getName();
+        if (name.startsWith("java.") || name.startsWith("javax.")) {
+            return false;
+        }
+        if (findAnnotatedConstructor(type) != null) {
+            return true;
+        }
+        try {
+            type.getConstructor();
+            return true;
+        }
+        catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
+    @Override
+    public T map(final int index, final ResultSet rs, final StatementContext ctx) throws SQLException
+    {
+        Binding binding = lastBinding;
+        if (binding == null || binding.resultSet.get() != rs) {
+            binding = new Binding(rs, getHandle(rs));
+            lastBinding = binding;
+        }
+
+        try {
+            return type.cast((Object) binding.handle.invokeExact(rs));
+        }
+        catch (SQLException sqle) {
+            throw sqle;
+        }
+        catch (RuntimeException re) {
+            throw re;
+        }
+        catch (Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new IllegalArgumentException(String.format("Could not map row to %s", type.getName()), t);
+        }
+    }
+
+    private MethodHandle getHandle(final ResultSet rs) throws SQLException
+    {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        final int count = metaData.getColumnCount();
+        final ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (int i = 1; i <= count; i++) {
+            builder.add(metaData.getColumnLabel(i).toLowerCase(Locale.ENGLISH));
+        }
+        final List<String> labels = builder.build();
+
+        MethodHandle handle = handlesByLabels.get(labels);
+        if (handle == null) {
+            handle = compose(labels);
+            final MethodHandle existing = handlesByLabels.putIfAbsent(labels, handle);
+            if (existing != null) {
+                handle = existing;
+            }
+        }
+        return handle;
+    }
+
+    /**
+     * Composes the handle (ResultSet)Object that creates the bean for a row with the given column labels.
+     */
+    MethodHandle compose(final List<String> labels)
+    {
+        // Property name to the (1 based) column index, in column order. Later columns win.
+        final Map<String, Integer> columns = Maps.newLinkedHashMap();
+        for (int i = 0; i < labels.size(); i++) {
+            columns.put(normalize(labels.get(i)), i + 1);
+        }
+
+        try {
+            MethodHandle handle = createInstance(columns);
+
+            // Fold the setters in reverse, so they run in column order.
+            MethodHandle setterChain = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, ResultSet.class);
+            final List<Map.Entry<String, Integer>> entries = ImmutableList.copyOf(columns.entrySet()).reverse();
+            for (Map.Entry<String, Integer> entry : entries) {
+                final Method setter = setters.get(entry.getKey());
+                if (setter == null || constructorProperties.contains(entry.getKey())) {
+                    continue;
+                }
+                setterChain = MethodHandles.foldArguments(setterChain, setterHandle(setter, entry.getValue()));
+            }
+
+            handle = MethodHandles.foldArguments(setterChain, handle);
+            return handle.asType(ROW_TYPE);
+        }
+        catch (IllegalAccessException iae) {
+            throw new IllegalArgumentException(String.format("Could not access %s", type.getName()), iae);
+        }
+    }
+
+    /**
+     * Returns the handle (ResultSet)Object that calls the constructor with the constructor parameter columns.
+     */
+    private MethodHandle createInstance(final Map<String, Integer> columns) throws IllegalAccessException
+    {
+        MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+        final Class<?> [] parameterTypes = constructor.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            return MethodHandles.dropArguments(handle.asType(MethodType.methodType(Object.class)), 0, ResultSet.class);
+        }
+
+        final MethodHandle [] readers = new MethodHandle[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            final Integer column = columns.get(constructorProperties.get(i));
+            readers[i] = column == null ? ColumnReaders.defaultValue(parameterTypes[i]) : ColumnReaders.reader(parameterTypes[i], column);
+        }
+
+        // (ResultSet, ..., ResultSet)T, then all parameters are the same result set.
+        handle = MethodHandles.filterArguments(handle, 0, readers);
+        return MethodHandles.permuteArguments(handle.asType(handle.type().changeReturnType(Object.class)),
+                                              MethodType.methodType(Object.class, ResultSet.class),
+                                              new int[parameterTypes.length]);
+    }
+
+    /**
+     * Returns the handle (Object, ResultSet)void that sets a property from a column.
+     */
+    private MethodHandle setterHandle(final Method setter, final int column) throws IllegalAccessException
+    {
+        if (!setter.isAccessible()) {
+            setter.setAccessible(true);
+        }
+        final MethodHandle handle = MethodHandles.filterArguments(LOOKUP.unreflect(setter), 1, ColumnReaders.reader(setter.getParameterTypes()[0], column));
+        return handle.asType(SETTER_TYPE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Constructor<T> findAnnotatedConstructor(final Class<T> type)
+    {
+        for (Constructor<?> constructor : type.getConstructors()) {
+            if (constructor.isAnnotationPresent(ConstructorProperties.class)) {
+                return (Constructor<T>) constructor;
+            }
+        }
+        return null;
+    }
+
+    private static String normalize(final String name)
+    {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static class Binding
+    {
+        private final WeakReference<ResultSet> resultSet;
+        private final MethodHandle handle;
+
+        Binding(final ResultSet resultSet, final MethodHandle handle)
+        {
+            this.resultSet = new WeakReference<ResultSet>(resultSet);
+            this.handle = handle;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.mapper;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.skife.jdbi.v2.ResultSetMapperFactory;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Maps query results to bean classes with a {@link GeneratedBeanMapper}, e.g. for <code>query.mapTo(User.class)</code>. The
+ * mapper of a class is built the first time the class is seen and shared by all queries afterwards.
+ *
+ * Accepts public, concrete classes outside of <code>java.*</code> and <code>javax.*</code> that have a public no-argument
+ * constructor or a public constructor annotated with {@link java.beans.ConstructorProperties}. As that is true for most
+ * classes, the factory is not registered by default. Bind it to use it for the IDBIs of all pools:
+ * <pre>
+ * NessSqlWrapperBinder.bindResultSetMapperFactory(binder).toInstance(new GeneratedBeanMapperFactory());
+ * </pre>
+ */
+public class GeneratedBeanMapperFactory implements ResultSetMapperFactory
+{
+    private final ConcurrentMap<Class<?>, Boolean> mappable = Maps.newConcurrentMap();
+    private final ConcurrentMap<Class<?>, GeneratedBeanMapper<?>> mappers = Maps.newConcurrentMap();
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean accepts(final Class type, final StatementContext ctx)
+    {
+        Boolean result = mappable.get(type);
+        if (result == null) {
+            result = GeneratedBeanMapper.isMappable(type);
+            mappable.putIfAbsent(type, result);
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public ResultSetMapper mapperFor(final Class type, final StatementContext ctx)
+    {
+        return getMapper(type);
+    }
+
+    /**
+     * Returns the mapper for a class.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResultSetMapper<T> getMapper(final Class<T> type)
+    {
+        GeneratedBeanMapper<?> mapper = mappers.get(type);
+        if (mapper == null) {
+            final GeneratedBeanMapper<T> newMapper = new GeneratedBeanMapper<T>(type);
+            mapper = mappers.putIfAbsent(type, newMapper);
+            if (mapper == null) {
+                mapper = newMapper;
+            }
+        }
+        return (ResultSetMapper<T>) mapper;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import javax.annotation.Nullable;
+
+/**
+ * A per-thread hint for the {@link NessPooledDataSource}. While a hint is set, the pool prefers idle connections that were
+ * last checked out with the same hint. Other pools ignore it.
+ *
+ * The hint only affects which connection is handed out, never whether a connection is handed out.
+ */
+public final class ConnectionAffinity
+{
+    private static final ThreadLocal<Object> AFFINITY = new ThreadLocal<Object>();
+
+    private ConnectionAffinity()
+    {
+    }
+
+    /**
+     * Sets the hint for the current thread. <code>null</code> removes it.
+     */
+    public static void set(@Nullable final Object affinity)
+    {
+        if (affinity == null) {
+            AFFINITY.remove();
+        }
+        else {
+            AFFINITY.set(affinity);
+        }
+    }
+
+    @Nullable
+    public static Object get()
+    {
+        return AFFINITY.get();
+    }
+
+    public static void clear()
+    {
+        AFFINITY.remove();
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Unpooled data source that opens connections directly through the JDBC driver. The driver is looked up once, opening a
+ * connection does not go through {@link DriverManager} or any other code that holds a monitor. Used by
+ * {@link NessPooledDataSource}, so that a thread that has to open a connection during checkout never blocks other threads on a
+ * lock it can not give up while parked.
+ */
+public class DriverDataSource implements DataSource
+{
+    private final String url;
+    private final Properties properties;
+    private final Driver driver;
+
+    public DriverDataSource(final String url, final Properties properties) throws SQLException
+    {
+        Preconditions.checkArgument(url != null, "url must not be null!");
+        this.url = url;
+        this.properties = new Properties();
+        if (properties != null) {
+            this.properties.putAll(properties);
+        }
+        this.driver = DriverManager.getDriver(url);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        final Connection connection = driver.connect(url, properties);
+        if (connection == null) {
+            throw new SQLException(String.format("Driver %s does not accept %s", driver.getClass().getName(), url));
+        }
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException
+    {
+        final Properties userProperties = new Properties();
+        userProperties.putAll(properties);
+        if (username != null) {
+            userProperties.setProperty("user", username);
+        }
+        if (password != null) {
+            userProperties.setProperty("password", password);
+        }
+
+        final Connection connection = driver.connect(url, userProperties);
+        if (connection == null) {
+            throw new SQLException(String.format("Driver %s does not accept %s", driver.getClass().getName(), url));
+        }
+        return connection;
+    }
+
+    @Override
+    public PrintWriter getLogWriter()
+    {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out)
+    {
+    }
+
+    /**
+     * Not supported, the login timeout has to be set as a driver property.
+     */
+    @Override
+    public void setLoginTimeout(final int seconds)
+    {
+    }
+
+    @Override
+    public int getLoginTimeout()
+    {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException(String.format("%s is not a wrapper for %s", getClass().getSimpleName(), iface.getName()));
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface)
+    {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("DriverDataSource[%s]", url);
+    }
+}
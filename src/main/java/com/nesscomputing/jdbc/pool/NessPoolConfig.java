@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+/**
+ * Configuration for the {@link NessPooledDataSource}. Built from the pool properties (<code>ness.db.dbName.pool.*</code>), the
+ * names follow the C3P0 settings where they have the same meaning.
+ */
+public abstract class NessPoolConfig
+{
+    /**
+     * Maximum number of connections in the pool.
+     */
+    @Config("maxPoolSize")
+    @Default("16")
+    public abstract int getMaxPoolSize();
+
+    /**
+     * Time in milliseconds that a caller waits for a connection before giving up. 0 waits forever.
+     */
+    @Config("checkoutTimeout")
+    @Default("1000")
+    public abstract long getCheckoutTimeout();
+
+    /**
+     * Maximum age of a physical connection in seconds. Older connections are closed when they are returned. 0 keeps connections forever.
+     */
+    @Config("maxConnectionAge")
+    @Default("1800")
+    public abstract long getMaxConnectionAge();
+
+    /**
+     * Connections that were idle for longer than this number of seconds are tested before they are handed out. 0 disables testing.
+     */
+    @Config("idleConnectionTestPeriod")
+    @Default("30")
+    public abstract long getIdleConnectionTestPeriod();
+
+    /**
+     * Query used to test a connection.
+     */
+    @Config("preferredTestQuery")
+    @Default("SELECT 1")
+    public abstract String getPreferredTestQuery();
+
+    /**
+     * If true, callers waiting for a connection are served in arrival order.
+     */
+    @Config("fair")
+    @Default("false")
+    public abstract boolean isFair();
+}
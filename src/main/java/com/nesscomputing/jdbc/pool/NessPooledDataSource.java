@@ -0,0 +1,478 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.jdbc.wrappers.StatementCacheWrapper;
+import com.nesscomputing.logging.Log;
+
+/**
+ * A connection pool that does not use any locks for handing out connections.
+ *
+ * <ul>
+ * <li>The number of checked out connections is limited by a semaphore. Only callers that have to wait for a connection park, all other
+ * callers pass through it without blocking.</li>
+ * <li>Idle connections are kept in a lock-free deque and handed out in LIFO order, so recently used connections are reused first.</li>
+ * <li>Each thread remembers the connection it returned last and tries to reclaim it before looking at the deque.</li>
+ * <li>Ownership of a connection is decided by a compare-and-set on its state, so a connection can be reachable from the deque and
+ * from a thread at the same time without being handed out twice.</li>
+ * <li>If the calling thread has set a {@link ConnectionAffinity} hint, idle connections last used with the same hint are preferred.</li>
+ * <li>Checkout and checkin never hold or wait for a monitor. Waiting threads park in the semaphore, and new connections are
+ * opened through a {@link DriverDataSource} when the pool is created by the DataSource provider.</li>
+ * </ul>
+ *
+ * Connections handed out implement {@link com.mchange.v2.c3p0.C3P0ProxyConnection}, so the C3P0 connection wrappers work unchanged.
+ */
+public class NessPooledDataSource implements DataSource, Closeable
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String poolName;
+    private final DataSource unpooledDataSource;
+
+    private final int maxPoolSize;
+    private final long checkoutTimeoutMillis;
+    private final long maxConnectionAgeNanos;
+    private final long idleConnectionTestPeriodNanos;
+    private final String testQuery;
+
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger(0);
+    private final List<PoolEntry> entries = new CopyOnWriteArrayList<PoolEntry>();
+    private final ConcurrentLinkedDeque<PoolEntry> idleEntries = new ConcurrentLinkedDeque<PoolEntry>();
+    private final ThreadLocal<PoolEntry> lastEntry = new ThreadLocal<PoolEntry>();
+
+    private volatile boolean closed = false;
+    private volatile PoolStatistics statistics = null;
+
+    public NessPooledDataSource(final String poolName, final DataSource unpooledDataSource, final NessPoolConfig poolConfig)
+    {
+        Preconditions.checkArgument(unpooledDataSource != null, "unpooled data source must not be null!");
+        Preconditions.checkArgument(poolConfig.getMaxPoolSize() > 0, "maxPoolSize must be at least 1!");
+
+        this.poolName = poolName;
+        this.unpooledDataSource = unpooledDataSource;
+        this.maxPoolSize = poolConfig.getMaxPoolSize();
+        this.checkoutTimeoutMillis = poolConfig.getCheckoutTimeout();
+        this.maxConnectionAgeNanos = TimeUnit.SECONDS.toNanos(poolConfig.getMaxConnectionAge());
+        this.idleConnectionTestPeriodNanos = TimeUnit.SECONDS.toNanos(poolConfig.getIdleConnectionTestPeriod());
+        this.testQuery = poolConfig.getPreferredTestQuery();
+        this.permits = new Semaphore(maxPoolSize, poolConfig.isFair());
+    }
+
+    /**
+     * Sets the statistics that the time each connection is held is recorded in. The pool records it when a connection is
+     * checked in, so the wrappers do not need an extra layer around every connection for it.
+     */
+    public void setStatistics(@Nullable final PoolStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Called by {@link PooledConnection#close()}.
+     */
+    void recordHoldTime(final long checkoutNanos)
+    {
+        final PoolStatistics currentStatistics = statistics;
+        if (currentStatistics != null) {
+            currentStatistics.recordHoldTime(System.nanoTime() - checkoutNanos);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        return new PooledConnection(this, checkout());
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Per-user connections are not supported by this pool");
+    }
+
+    private PoolEntry checkout() throws SQLException
+    {
+        checkOpen();
+        acquirePermit();
+
+        final Object affinity = ConnectionAffinity.get();
+        boolean success = false;
+        try {
+            while (true) {
+                checkOpen();
+
+                PoolEntry entry = claimIdle(affinity);
+                if (entry == null) {
+                    entry = createEntry();
+                    if (entry == null) {
+                        // All connections exist and one is being returned right now.
+                        Thread.yield();
+                        continue;
+                    }
+                    entry.setAffinity(affinity);
+                    success = true;
+                    return entry;
+                }
+
+                if (isUsable(entry)) {
+                    // A checkout without a hint may change the session as well (e.g. select a default schema), so the old
+                    // hint is cleared instead of being kept.
+                    entry.setAffinity(affinity);
+                    success = true;
+                    return entry;
+                }
+                destroy(entry, PoolEntry.IN_USE);
+            }
+        }
+        finally {
+            if (!success) {
+                permits.release();
+            }
+        }
+    }
+
+    private void acquirePermit() throws SQLException
+    {
+        try {
+            if (checkoutTimeoutMillis <= 0) {
+                permits.acquire();
+            }
+            else if (!permits.tryAcquire(checkoutTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException(String.format("Timed out after %d ms waiting for a connection from pool %s", checkoutTimeoutMillis, poolName));
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(String.format("Interrupted while waiting for a connection from pool %s", poolName), ie);
+        }
+    }
+
+    private PoolEntry claimIdle(final Object affinity)
+    {
+        final PoolEntry last = lastEntry.get();
+        if (last != null) {
+            if (last.getState() == PoolEntry.CLOSED) {
+                lastEntry.remove();
+            }
+            else if ((affinity == null || affinity.equals(last.getAffinity())) && last.claim()) {
+                return last;
+            }
+        }
+
+        if (affinity != null) {
+            // Claim a matching entry in place. It stays queued, and is skipped when it is polled while in use.
+            for (final PoolEntry entry : idleEntries) {
+                if (affinity.equals(entry.getAffinity()) && entry.claim()) {
+                    return entry;
+                }
+            }
+        }
+
+        PoolEntry entry;
+        while ((entry = idleEntries.pollFirst()) != null) {
+            // Clear before claiming, so that a concurrent checkin queues the entry again if the claim fails.
+            entry.clearQueued();
+            if (entry.claim()) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private PoolEntry createEntry() throws SQLException
+    {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= maxPoolSize) {
+                return null;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+
+        boolean success = false;
+        try {
+            final PoolEntry entry = new PoolEntry(unpooledDataSource.getConnection());
+            entries.add(entry);
+            success = true;
+            LOG.debug("Opened connection %d for pool %s", total + 1, poolName);
+            return entry;
+        }
+        finally {
+            if (!success) {
+                totalConnections.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adds an open physical connection to the pool as an idle connection. If the pool is full or closed, the connection is
+     * closed instead.
+     *
+     * @return True if the connection was added to the pool.
+     */
+    public boolean addConnection(final Connection connection) throws SQLException
+    {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (closed || total >= maxPoolSize) {
+                connection.close();
+                return false;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+
+        final PoolEntry entry;
+        try {
+            entry = new PoolEntry(connection);
+        }
+        catch (SQLException e) {
+            totalConnections.decrementAndGet();
+            connection.close();
+            throw e;
+        }
+        entries.add(entry);
+        entry.release();
+        if (entry.markQueued()) {
+            idleEntries.offerFirst(entry);
+        }
+        if (closed) {
+            destroy(entry, PoolEntry.IDLE);
+        }
+        LOG.debug("Added connection %d to pool %s", total + 1, poolName);
+        return true;
+    }
+
+    private boolean isUsable(final PoolEntry entry)
+    {
+        final long now = System.nanoTime();
+        if (maxConnectionAgeNanos > 0 && now - entry.getCreatedNanos() > maxConnectionAgeNanos) {
+            return false;
+        }
+        if (idleConnectionTestPeriodNanos > 0 && now - entry.getLastUsedNanos() > idleConnectionTestPeriodNanos) {
+            try {
+                final Statement statement = entry.getConnection().createStatement();
+                try {
+                    statement.execute(testQuery);
+                }
+                finally {
+                    statement.close();
+                }
+            }
+            catch (SQLException e) {
+                LOG.debug(e, "Connection test failed for pool %s", poolName);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called by {@link PooledConnection#close()}.
+     */
+    void checkin(final PoolEntry entry, final boolean resetReadOnly, final boolean resetTransactionIsolation)
+    {
+        try {
+            boolean reuse = !closed && (maxConnectionAgeNanos <= 0 || System.nanoTime() - entry.getCreatedNanos() <= maxConnectionAgeNanos);
+
+            if (reuse) {
+                try {
+                    reset(entry, resetReadOnly, resetTransactionIsolation);
+                }
+                catch (SQLException e) {
+                    LOG.warn(e, "Could not reset connection for pool %s, discarding it", poolName);
+                    reuse = false;
+                }
+            }
+
+            if (reuse) {
+                entry.release();
+                lastEntry.set(entry);
+                if (entry.markQueued()) {
+                    idleEntries.offerFirst(entry);
+                }
+                // The pool may have been closed while the entry was returned.
+                if (closed) {
+                    destroy(entry, PoolEntry.IDLE);
+                }
+            }
+            else {
+                destroy(entry, PoolEntry.IN_USE);
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    private void reset(final PoolEntry entry, final boolean resetReadOnly, final boolean resetTransactionIsolation) throws SQLException
+    {
+        final Connection connection = entry.getConnection();
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        if (resetReadOnly) {
+            connection.setReadOnly(false);
+        }
+        if (resetTransactionIsolation) {
+            connection.setTransactionIsolation(entry.getDefaultTransactionIsolation());
+        }
+        connection.clearWarnings();
+    }
+
+    private void destroy(final PoolEntry entry, final int expectedState)
+    {
+        if (entry.markClosed(expectedState)) {
+            entries.remove(entry);
+            totalConnections.decrementAndGet();
+            StatementCacheWrapper.connectionDestroyed(entry.getConnection());
+            try {
+                entry.getConnection().close();
+            }
+            catch (SQLException e) {
+                LOG.debug(e, "While closing connection for pool %s", poolName);
+            }
+        }
+    }
+
+    private void checkOpen() throws SQLException
+    {
+        if (closed) {
+            throw new SQLException(String.format("Pool %s is closed", poolName));
+        }
+    }
+
+    /**
+     * Closes the pool and all idle connections. Connections that are checked out are closed when they are returned.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        for (final PoolEntry entry : entries) {
+            destroy(entry, PoolEntry.IDLE);
+        }
+        idleEntries.clear();
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    public int getMaxPoolSize()
+    {
+        return maxPoolSize;
+    }
+
+    public int getNumConnections()
+    {
+        return totalConnections.get();
+    }
+
+    public int getNumBusyConnections()
+    {
+        return maxPoolSize - permits.availablePermits();
+    }
+
+    public int getNumIdleConnections()
+    {
+        return Math.max(0, getNumConnections() - getNumBusyConnections());
+    }
+
+    public int getNumThreadsAwaitingCheckout()
+    {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException
+    {
+        return unpooledDataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) throws SQLException
+    {
+        unpooledDataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) throws SQLException
+    {
+        unpooledDataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException
+    {
+        return unpooledDataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException(String.format("Not a wrapper for %s", iface));
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("NessPooledDataSource[%s: maxPoolSize -> %d, checkoutTimeout -> %d, connections -> %d, busy -> %d]",
+                             poolName, maxPoolSize, checkoutTimeoutMillis, getNumConnections(), getNumBusyConnections());
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A physical connection in the {@link NessPooledDataSource}. The state is only changed with compare-and-set, the thread that
+ * moves an entry from IDLE to IN_USE owns it until it is returned.
+ */
+final class PoolEntry
+{
+    static final int IDLE = 0;
+    static final int IN_USE = 1;
+    static final int CLOSED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(IN_USE);
+
+    /** True while the entry is in the idle queue. Prevents an entry from being queued multiple times. */
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+
+    private final Connection connection;
+    private final long createdNanos;
+    private final int defaultTransactionIsolation;
+
+    private volatile long lastUsedNanos;
+
+    /** The {@link ConnectionAffinity} hint of the last checkout. */
+    private volatile Object affinity;
+
+    PoolEntry(final Connection connection) throws SQLException
+    {
+        this.connection = connection;
+        this.createdNanos = System.nanoTime();
+        this.lastUsedNanos = createdNanos;
+        this.defaultTransactionIsolation = connection.getTransactionIsolation();
+    }
+
+    Connection getConnection()
+    {
+        return connection;
+    }
+
+    boolean claim()
+    {
+        return state.compareAndSet(IDLE, IN_USE);
+    }
+
+    void release()
+    {
+        lastUsedNanos = System.nanoTime();
+        state.set(IDLE);
+    }
+
+    boolean markClosed(final int expectedState)
+    {
+        return state.compareAndSet(expectedState, CLOSED);
+    }
+
+    int getState()
+    {
+        return state.get();
+    }
+
+    boolean markQueued()
+    {
+        return queued.compareAndSet(false, true);
+    }
+
+    void clearQueued()
+    {
+        queued.set(false);
+    }
+
+    long getCreatedNanos()
+    {
+        return createdNanos;
+    }
+
+    long getLastUsedNanos()
+    {
+        return lastUsedNanos;
+    }
+
+    Object getAffinity()
+    {
+        return affinity;
+    }
+
+    void setAffinity(final Object affinity)
+    {
+        this.affinity = affinity;
+    }
+
+    int getDefaultTransactionIsolation()
+    {
+        return defaultTransactionIsolation;
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.nesscomputing.jdbc.wrappers.DelegatingConnection;
+import com.nesscomputing.jdbc.wrappers.DelegatingPreparedStatement;
+import com.nesscomputing.jdbc.wrappers.DelegatingStatement;
+import com.nesscomputing.logging.Log;
+
+/**
+ * A logical connection handed out by the {@link NessPooledDataSource}. Closing it returns the physical connection to the pool.
+ *
+ * Implements {@link C3P0ProxyConnection} so that the wrappers that need the raw driver connection work the same way as with a
+ * C3P0 pool.
+ *
+ * Like with C3P0, statements created on the logical connection are closed, together with their result sets, when the connection
+ * is closed, and their <code>getConnection()</code> returns the logical connection instead of the physical one.
+ */
+final class PooledConnection extends DelegatingConnection implements C3P0ProxyConnection
+{
+    private static final Log LOG = Log.findLog();
+
+    /** Stands in for the physical connection after close. Every call except close() and isClosed() fails. */
+    private static final Connection CLOSED_CONNECTION = (Connection) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(),
+                                                                                            new Class<?>[] { Connection.class },
+                                                                                            new ClosedConnectionHandler());
+
+    private final NessPooledDataSource pool;
+    private final PoolEntry entry;
+    private final long checkoutNanos;
+
+    private Connection current;
+    private boolean readOnlyChanged = false;
+    private boolean transactionIsolationChanged = false;
+
+    /** Statements that are open on this logical connection. Created with the first statement. */
+    private Set<Statement> openStatements = null;
+
+    PooledConnection(final NessPooledDataSource pool, final PoolEntry entry)
+    {
+        super(entry.getConnection());
+        this.pool = pool;
+        this.entry = entry;
+        this.checkoutNanos = System.nanoTime();
+        this.current = entry.getConnection();
+    }
+
+    @Override
+    public Connection getDelegate()
+    {
+        return current;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        if (current != CLOSED_CONNECTION) {
+            // The physical connection is still owned by this thread until it is checked in.
+            closeStatements();
+            current = CLOSED_CONNECTION;
+            pool.recordHoldTime(checkoutNanos);
+            pool.checkin(entry, readOnlyChanged, transactionIsolationChanged);
+        }
+    }
+
+    private void closeStatements()
+    {
+        if (openStatements == null || openStatements.isEmpty()) {
+            return;
+        }
+
+        final List<Statement> statements = Lists.newArrayList(openStatements);
+        for (final Statement statement : statements) {
+            try {
+                statement.close();
+            }
+            catch (SQLException e) {
+                LOG.debug(e, "While closing statement");
+            }
+        }
+        openStatements.clear();
+    }
+
+    private <T extends Statement> T track(final T statement)
+    {
+        if (openStatements == null) {
+            openStatements = Sets.newSetFromMap(Maps.<Statement, Boolean>newIdentityHashMap());
+        }
+        openStatements.add(statement);
+        return statement;
+    }
+
+    private void untrack(final Statement statement)
+    {
+        if (openStatements != null) {
+            openStatements.remove(statement);
+        }
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException
+    {
+        return track(new PooledStatement(super.createStatement()));
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException
+    {
+        return track(new PooledStatement(super.createStatement(resultSetType, resultSetConcurrency)));
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException
+    {
+        return track(new PooledStatement(super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability)));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException
+    {
+        return track(new PooledPreparedStatement(super.prepareStatement(sql)));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException
+    {
+        return track(new PooledPreparedStatement(super.prepareStatement(sql, autoGeneratedKeys)));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException
+    {
+        return track(new PooledPreparedStatement(super.prepareStatement(sql, columnIndexes)));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException
+    {
+        return track(new PooledPreparedStatement(super.prepareStatement(sql, columnNames)));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException
+    {
+        return track(new PooledPreparedStatement(super.prepareStatement(sql, resultSetType, resultSetConcurrency)));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException
+    {
+        return track(new PooledPreparedStatement(super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability)));
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql) throws SQLException
+    {
+        return track(wrapCall(super.prepareCall(sql)));
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException
+    {
+        return track(wrapCall(super.prepareCall(sql, resultSetType, resultSetConcurrency)));
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException
+    {
+        return track(wrapCall(super.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability)));
+    }
+
+    /**
+     * Callable statements are rare, so they get a proxy instead of a delegate class.
+     */
+    private CallableStatement wrapCall(final CallableStatement statement)
+    {
+        return (CallableStatement) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(),
+                                                          new Class<?>[] { CallableStatement.class },
+                                                          new PooledCallableStatementHandler(statement));
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException
+    {
+        return current == CLOSED_CONNECTION || super.isClosed();
+    }
+
+    @Override
+    public void setReadOnly(final boolean readOnly) throws SQLException
+    {
+        super.setReadOnly(readOnly);
+        readOnlyChanged = true;
+    }
+
+    @Override
+    public void setTransactionIsolation(final int level) throws SQLException
+    {
+        super.setTransactionIsolation(level);
+        transactionIsolationChanged = true;
+    }
+
+    /**
+     * Invokes a method on the physical connection. Works like the C3P0 implementation: {@link C3P0ProxyConnection#RAW_CONNECTION}
+     * as target or argument is replaced with the physical connection.
+     */
+    @Override
+    public Object rawConnectionOperation(final Method method, final Object target, final Object[] args)
+        throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, SQLException
+    {
+        if (current == CLOSED_CONNECTION) {
+            throw new SQLException("Connection is closed");
+        }
+
+        final Object [] rawArgs = args == null ? new Object[0] : args.clone();
+        for (int i = 0; i < rawArgs.length; i++) {
+            if (rawArgs[i] == RAW_CONNECTION) {
+                rawArgs[i] = current;
+            }
+        }
+        return method.invoke(target == RAW_CONNECTION ? current : target, rawArgs);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("PooledConnection[%s]", current);
+    }
+
+    private final class PooledStatement extends DelegatingStatement
+    {
+        PooledStatement(final Statement statement)
+        {
+            super(statement);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return PooledConnection.this;
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            untrack(this);
+            super.close();
+        }
+    }
+
+    private final class PooledPreparedStatement extends DelegatingPreparedStatement
+    {
+        PooledPreparedStatement(final PreparedStatement statement)
+        {
+            super(statement);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return PooledConnection.this;
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            untrack(this);
+            super.close();
+        }
+    }
+
+    private final class PooledCallableStatementHandler implements InvocationHandler
+    {
+        private final CallableStatement statement;
+
+        PooledCallableStatementHandler(final CallableStatement statement)
+        {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+        {
+            final String name = method.getName();
+            final int argCount = args == null ? 0 : args.length;
+            if ("getConnection".equals(name) && argCount == 0) {
+                return PooledConnection.this;
+            }
+            else if ("close".equals(name) && argCount == 0) {
+                untrack((Statement) proxy);
+            }
+            else if ("hashCode".equals(name) && argCount == 0) {
+                return System.identityHashCode(proxy);
+            }
+            else if ("equals".equals(name) && argCount == 1) {
+                return proxy == args[0];
+            }
+
+            try {
+                return method.invoke(statement, args);
+            }
+            catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+    }
+
+    private static final class ClosedConnectionHandler implements InvocationHandler
+    {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+        {
+            final String name = method.getName();
+            if ("close".equals(name)) {
+                return null;
+            }
+            else if ("isClosed".equals(name)) {
+                return Boolean.TRUE;
+            }
+            else if ("toString".equals(name)) {
+                return "<closed connection>";
+            }
+            else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            else if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            throw new SQLException("Connection is closed");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.replica;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A replica pool and its last measured state. A replica is only in rotation after a lag measurement succeeded.
+ */
+public final class Replica
+{
+    private final String name;
+    private final DataSource dataSource;
+
+    private volatile boolean inRotation = false;
+    private volatile double lagMillis = -1.0;
+
+    public Replica(final String name, final DataSource dataSource)
+    {
+        Preconditions.checkArgument(name != null, "the replica name must not be null!");
+        Preconditions.checkArgument(dataSource != null, "the replica data source must not be null!");
+        this.name = name;
+        this.dataSource = dataSource;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public DataSource getDataSource()
+    {
+        return dataSource;
+    }
+
+    public boolean isInRotation()
+    {
+        return inRotation;
+    }
+
+    /**
+     * Returns the last measured lag, or -1 if the last measurement failed.
+     */
+    public double getLagMillis()
+    {
+        return lagMillis;
+    }
+
+    void update(final boolean inRotation, final double lagMillis)
+    {
+        this.inRotation = inRotation;
+        this.lagMillis = lagMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Replica[%s: inRotation -> %s, lag -> %.0f ms]", name, inRotation, lagMillis);
+    }
+}
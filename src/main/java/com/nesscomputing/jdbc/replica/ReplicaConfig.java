@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.replica;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class ReplicaConfig
+{
+    /**
+     * Replicas that lag behind the primary by more than this many milliseconds are taken out of rotation.
+     */
+    @Config({"ness.db.${dbName}.replica.maxLag","ness.db.defaults.replica.maxLag"})
+    @Default("10000")
+    public abstract long getMaxLag();
+
+    /**
+     * Time in milliseconds between two lag measurements.
+     */
+    @Config({"ness.db.${dbName}.replica.checkInterval","ness.db.defaults.replica.checkInterval"})
+    @Default("1000")
+    public abstract long getCheckInterval();
+
+    /**
+     * Query that returns the replication lag of a replica in milliseconds. NULL counts as no lag. The default works for
+     * PostgreSQL 9.x hot standby servers.
+     */
+    @Config({"ness.db.${dbName}.replica.lagQuery","ness.db.defaults.replica.lagQuery"})
+    @Default("SELECT CASE WHEN pg_last_xlog_receive_location() = pg_last_xlog_replay_location() THEN 0 "
+           + "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 END")
+    public abstract String getLagQuery();
+
+    /**
+     * After a thread used the primary, its read-only checkouts go to the primary as well for this many milliseconds, so that it
+     * reads its own writes. 0 turns this off.
+     */
+    @Config({"ness.db.${dbName}.replica.readYourWrites","ness.db.defaults.replica.readYourWrites"})
+    @Default("0")
+    public abstract long getReadYourWrites();
+}
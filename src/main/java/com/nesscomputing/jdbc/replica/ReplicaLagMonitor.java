@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.replica;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Measures the replication lag of the replicas of a pool and keeps the replicas that are close enough to the primary in
+ * rotation. Replicas whose lag exceeds {@link ReplicaConfig#getMaxLag()} or that can not be reached are taken out of rotation
+ * until a later measurement succeeds.
+ */
+public class ReplicaLagMonitor
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String poolName;
+    private final List<Replica> replicas;
+    private final ReplicaConfig replicaConfig;
+
+    private final AtomicInteger nextReplica = new AtomicInteger(0);
+    private final AtomicReference<ScheduledExecutorService> checker = new AtomicReference<ScheduledExecutorService>();
+
+    public ReplicaLagMonitor(final String poolName, final List<Replica> replicas, final ReplicaConfig replicaConfig)
+    {
+        Preconditions.checkArgument(replicas != null, "replicas must not be null!");
+        Preconditions.checkArgument(replicaConfig != null, "replica config must not be null!");
+        this.poolName = poolName;
+        this.replicas = ImmutableList.copyOf(replicas);
+        this.replicaConfig = replicaConfig;
+    }
+
+    public List<Replica> getReplicas()
+    {
+        return replicas;
+    }
+
+    public ReplicaConfig getReplicaConfig()
+    {
+        return replicaConfig;
+    }
+
+    /**
+     * Returns the next replica in rotation, or null if no replica is in rotation.
+     */
+    @Nullable
+    public Replica nextReplica()
+    {
+        final int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+
+        final int start = (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % size;
+        for (int i = 0; i < size; i++) {
+            final Replica replica = replicas.get((start + i) % size);
+            if (replica.isInRotation()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes a replica out of rotation until the next successful measurement, e.g. because a checkout failed.
+     */
+    public void markFailed(final Replica replica, final Throwable cause)
+    {
+        if (replica.isInRotation()) {
+            LOG.warn(cause, "Replica %s of pool %s failed, taking it out of rotation", replica.getName(), poolName);
+        }
+        replica.update(false, -1.0);
+    }
+
+    /**
+     * Measures the lag of all replicas once.
+     */
+    public void checkReplicas()
+    {
+        for (final Replica replica : replicas) {
+            checkReplica(replica);
+        }
+    }
+
+    private void checkReplica(final Replica replica)
+    {
+        final boolean wasInRotation = replica.isInRotation();
+        try {
+            final double lagMillis = measureLag(replica);
+            final boolean inRotation = lagMillis <= replicaConfig.getMaxLag();
+            replica.update(inRotation, lagMillis);
+
+            if (wasInRotation && !inRotation) {
+                LOG.warn("Replica %s of pool %s lags by %.0f ms, taking it out of rotation", replica.getName(), poolName, lagMillis);
+            }
+            else if (!wasInRotation && inRotation) {
+                LOG.info("Replica %s of pool %s lags by %.0f ms, putting it into rotation", replica.getName(), poolName, lagMillis);
+            }
+        }
+        catch (SQLException e) {
+            replica.update(false, -1.0);
+            if (wasInRotation) {
+                LOG.warn(e, "Could not measure lag of replica %s of pool %s, taking it out of rotation", replica.getName(), poolName);
+            }
+            else {
+                LOG.debug(e, "Could not measure lag of replica %s of pool %s", replica.getName(), poolName);
+            }
+        }
+    }
+
+    private double measureLag(final Replica replica) throws SQLException
+    {
+        final Connection connection = replica.getDataSource().getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                final ResultSet resultSet = statement.executeQuery(replicaConfig.getLagQuery());
+                try {
+                    if (!resultSet.next()) {
+                        throw new SQLException("lag query returned no rows");
+                    }
+                    final double lagMillis = resultSet.getDouble(1);
+                    return resultSet.wasNull() ? 0.0 : lagMillis;
+                }
+                finally {
+                    resultSet.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Starts measuring the lag in the background.
+     */
+    public void start()
+    {
+        final long checkInterval = replicaConfig.getCheckInterval();
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("replica-lag-" + poolName).build());
+        if (checker.compareAndSet(null, executor)) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run()
+                {
+                    checkReplicas();
+                }
+            }, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        }
+        else {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops the background measurements.
+     */
+    public void stop()
+    {
+        final ScheduledExecutorService executor = checker.getAndSet(null);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
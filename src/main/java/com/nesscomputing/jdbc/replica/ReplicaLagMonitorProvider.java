@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.replica;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.name.Names;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.AbstractLifecycleProvider;
+import com.nesscomputing.lifecycle.guice.LifecycleAction;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Creates the lag monitor for the replicas of a pool. The replica pools are the data sources bound with
+ * <code>@Named(replicaName)</code>. The first measurement is done before the monitor is handed out, the background
+ * measurements stop with the lifecycle.
+ */
+public class ReplicaLagMonitorProvider extends AbstractLifecycleProvider<ReplicaLagMonitor> implements Provider<ReplicaLagMonitor>
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String dbName;
+    private final List<String> replicaNames;
+
+    private Injector injector = null;
+    private Config config = null;
+
+    public ReplicaLagMonitorProvider(final String dbName, final List<String> replicaNames)
+    {
+        this.dbName = dbName;
+        this.replicaNames = ImmutableList.copyOf(replicaNames);
+
+        addAction(LifecycleStage.STOP_STAGE, new LifecycleAction<ReplicaLagMonitor>() {
+                @Override
+                public void performAction(final ReplicaLagMonitor monitor)
+                {
+                    LOG.info("Stopping replica lag monitor for %s", dbName);
+                    monitor.stop();
+                }
+            });
+    }
+
+    @Inject
+    void setInjector(final Injector injector)
+    {
+        this.injector = injector;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public ReplicaLagMonitor internalGet()
+    {
+        Preconditions.checkState(config != null, "Config object was never injected!");
+
+        final List<Replica> replicas = Lists.newArrayList();
+        for (final String replicaName : replicaNames) {
+            replicas.add(new Replica(replicaName, injector.getInstance(Key.get(DataSource.class, Names.named(replicaName)))));
+        }
+
+        final ReplicaLagMonitor monitor = new ReplicaLagMonitor(dbName, replicas, config.getBean(ReplicaConfig.class, ImmutableMap.of("dbName", dbName)));
+        monitor.checkReplicas();
+        monitor.start();
+
+        LOG.info("Replicas of %s: %s", dbName, monitor.getReplicas());
+        return monitor;
+    }
+}
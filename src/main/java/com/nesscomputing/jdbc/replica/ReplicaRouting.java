@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.replica;
+
+/**
+ * Marks the work of the current thread as read-only. While it is set, connections checked out from a pool installed with
+ * {@link com.nesscomputing.jdbc.ReplicatedDatabaseModule} come from one of its replicas. This covers handles, transactions and
+ * SQL objects of the IDBI as well, as they check out their connections from the pool.
+ *
+ * Set it before opening the handle or starting the transaction and clear it afterwards.
+ */
+public final class ReplicaRouting
+{
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<Boolean>();
+
+    private ReplicaRouting()
+    {
+    }
+
+    public static void setReadOnly(final boolean readOnly)
+    {
+        if (readOnly) {
+            READ_ONLY.set(Boolean.TRUE);
+        }
+        else {
+            clear();
+        }
+    }
+
+    public static boolean isReadOnly()
+    {
+        return READ_ONLY.get() != null;
+    }
+
+    public static void clear()
+    {
+        READ_ONLY.remove();
+    }
+}
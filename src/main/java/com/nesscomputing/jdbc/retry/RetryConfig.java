@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.retry;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class RetryConfig
+{
+    /**
+     * Maximum number of times a transaction is retried after a serialization failure. 0 disables retries.
+     */
+    @Config({"ness.db.${dbName}.retry.maxRetries","ness.db.defaults.retry.maxRetries"})
+    @Default("5")
+    public abstract int getMaxRetries();
+
+    /**
+     * Upper bound of the wait in milliseconds before the first retry. It doubles for every further retry. The actual wait is
+     * picked at random between 0 and the bound, so that conflicting transactions do not retry in lock step.
+     */
+    @Config({"ness.db.${dbName}.retry.initialBackoff","ness.db.defaults.retry.initialBackoff"})
+    @Default("5")
+    public abstract long getInitialBackoff();
+
+    /**
+     * Largest bound of the wait in milliseconds between two retries.
+     */
+    @Config({"ness.db.${dbName}.retry.maxBackoff","ness.db.defaults.retry.maxBackoff"})
+    @Default("500")
+    public abstract long getMaxBackoff();
+
+    /**
+     * Every transaction adds this fraction of a retry to the retry budget of the pool, every retry takes one. With 0.1,
+     * retries can add at most 10% to the transactions that are run against the database.
+     */
+    @Config({"ness.db.${dbName}.retry.budgetRatio","ness.db.defaults.retry.budgetRatio"})
+    @Default("0.1")
+    public abstract double getBudgetRatio();
+
+    /**
+     * Maximum and initial number of retries in the retry budget. Allows bursts of retries after quiet periods.
+     */
+    @Config({"ness.db.${dbName}.retry.budgetMaximum","ness.db.defaults.retry.budgetMaximum"})
+    @Default("100")
+    public abstract int getBudgetMaximum();
+
+    /**
+     * Comma separated SQL states that cause a retry. The defaults are serialization failure and deadlock.
+     */
+    @Config({"ness.db.${dbName}.retry.sqlStates","ness.db.defaults.retry.sqlStates"})
+    @Default("40001,40P01")
+    public abstract String getSqlStates();
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.retry;
+
+import java.sql.SQLException;
+
+import javax.annotation.Nullable;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.exceptions.StatementException;
+import org.skife.jdbi.v2.tweak.TransactionHandler;
+import org.skife.jdbi.v2.tweak.transactions.DelegatingTransactionHandler;
+
+import com.google.common.base.Preconditions;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.jdbc.stats.StatementStatisticsCollector;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Replaces the {@link org.skife.jdbi.v2.tweak.transactions.SerializableTransactionRunner}. Failed transactions are retried as
+ * decided by the {@link TransactionRetryPolicy} of the pool.
+ *
+ * Every conflict is counted in the {@link PoolStatistics} of the pool, and, if the failing statement is known, in the
+ * {@link StatementStatisticsCollector} for the fingerprint of the statement. Retries, and transactions that ran out of retries or
+ * of budget, are counted in the {@link PoolStatistics}.
+ */
+public class RetryingTransactionRunner extends DelegatingTransactionHandler implements TransactionHandler
+{
+    private static final Log LOG = Log.findLog();
+
+    private final TransactionRetryPolicy retryPolicy;
+    private final PoolStatistics poolStatistics;
+    private final StatementStatisticsCollector statementStatistics;
+
+    public RetryingTransactionRunner(final TransactionRetryPolicy retryPolicy,
+                                     @Nullable final PoolStatistics poolStatistics,
+                                     @Nullable final StatementStatisticsCollector statementStatistics,
+                                     final TransactionHandler delegate)
+    {
+        super(delegate);
+        Preconditions.checkArgument(retryPolicy != null, "retry policy must not be null!");
+
+        this.retryPolicy = retryPolicy;
+        this.poolStatistics = poolStatistics;
+        this.statementStatistics = statementStatistics;
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(final Handle handle, final TransactionCallback<ReturnType> callback)
+    {
+        // A nested transaction is part of the outer one, only the outer transaction can be retried.
+        if (isInTransaction(handle)) {
+            return getDelegate().inTransaction(handle, callback);
+        }
+
+        final int maxRetries = retryPolicy.getMaxRetries();
+        retryPolicy.recordTransaction();
+
+        int retry = 0;
+        while (true) {
+            try {
+                return getDelegate().inTransaction(handle, callback);
+            }
+            catch (RuntimeException e) {
+                final SQLException cause = retryPolicy.findRetryableCause(e);
+                if (cause == null) {
+                    throw e;
+                }
+                recordConflict(e);
+
+                if (retry >= maxRetries) {
+                    if (maxRetries > 0 && poolStatistics != null) {
+                        poolStatistics.recordRetriesExhausted();
+                    }
+                    throw e;
+                }
+                if (!retryPolicy.tryAcquireRetry()) {
+                    LOG.debug("Retry budget of %s is used up, not retrying transaction (SQL state %s)", retryPolicy.getPoolName(), cause.getSQLState());
+                    if (poolStatistics != null) {
+                        poolStatistics.recordRetryBudgetExhausted();
+                    }
+                    throw e;
+                }
+
+                final long backoff = retryPolicy.getBackoffMillis(retry);
+                LOG.debug("Retrying transaction on %s in %d ms (SQL state %s, retry %d of %d)", retryPolicy.getPoolName(), backoff, cause.getSQLState(), retry + 1, maxRetries);
+                if (backoff > 0) {
+                    try {
+                        Thread.sleep(backoff);
+                    }
+                    catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+                retry++;
+                if (poolStatistics != null) {
+                    poolStatistics.recordTransactionRetry();
+                }
+            }
+        }
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(final Handle handle, final TransactionIsolationLevel level, final TransactionCallback<ReturnType> callback)
+    {
+        final TransactionIsolationLevel initial = handle.getTransactionIsolationLevel();
+        try {
+            handle.setTransactionIsolation(level);
+            return inTransaction(handle, callback);
+        }
+        finally {
+            handle.setTransactionIsolation(initial);
+        }
+    }
+
+    private void recordConflict(final Throwable failure)
+    {
+        if (poolStatistics != null) {
+            poolStatistics.recordSerializationConflict();
+        }
+        if (statementStatistics != null) {
+            for (Throwable t = failure; t != null; t = t.getCause()) {
+                if (t instanceof StatementException) {
+                    final StatementContext ctx = ((StatementException) t).getStatementContext();
+                    if (ctx != null) {
+                        final String sql = ctx.getRewrittenSql();
+                        statementStatistics.recordConflict(sql == null ? ctx.getRawSql() : sql);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.retry;
+
+import javax.annotation.Nullable;
+
+/**
+ * Overrides the maximum number of retries for transactions that the current thread starts. For example, a transaction that
+ * has side effects outside of the database can turn retries off with <code>TransactionRetries.setMaxRetries(0)</code>.
+ *
+ * Set it before starting the transaction and clear it afterwards.
+ */
+public final class TransactionRetries
+{
+    private static final ThreadLocal<Integer> MAX_RETRIES = new ThreadLocal<Integer>();
+
+    private TransactionRetries()
+    {
+    }
+
+    public static void setMaxRetries(final int maxRetries)
+    {
+        MAX_RETRIES.set(Math.max(0, maxRetries));
+    }
+
+    /**
+     * Returns the override of the current thread or null if it uses the configuration of the pool.
+     */
+    @Nullable
+    public static Integer getMaxRetries()
+    {
+        return MAX_RETRIES.get();
+    }
+
+    public static void clear()
+    {
+        MAX_RETRIES.remove();
+    }
+}
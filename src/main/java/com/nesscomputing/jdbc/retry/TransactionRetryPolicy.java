@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.retry;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.nesscomputing.config.Config;
+
+/**
+ * Decides whether and when a failed transaction of a pool is retried. One instance is bound per pool.
+ *
+ * <ul>
+ * <li>Only failures with one of the configured SQL states are retried, at most {@link RetryConfig#getMaxRetries()} times unless
+ * the thread has set an override with {@link TransactionRetries}.</li>
+ * <li>Before each retry, the transaction waits for a random time up to an exponentially growing bound ("full jitter").</li>
+ * <li>All retries of the pool draw from a shared budget that is refilled by a fraction of every transaction. Once it is empty,
+ * conflicts are not retried anymore, so a contended row can not cause a retry storm.</li>
+ * </ul>
+ */
+public class TransactionRetryPolicy
+{
+    /** The budget is kept in thousandths of a retry. */
+    private static final long RETRY_COST = 1000L;
+
+    private final String poolName;
+    private final AtomicLong budget = new AtomicLong(0L);
+
+    private volatile RetryConfig retryConfig = null;
+    private volatile Set<String> sqlStates = ImmutableSet.of();
+    private volatile long budgetDeposit = 0L;
+    private volatile long budgetMaximum = 0L;
+
+    public TransactionRetryPolicy(final String poolName)
+    {
+        this.poolName = poolName;
+    }
+
+    /**
+     * Creates a policy with a fixed configuration.
+     */
+    public TransactionRetryPolicy(final String poolName, final RetryConfig retryConfig)
+    {
+        this(poolName);
+        setRetryConfig(retryConfig);
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        setRetryConfig(config.getBean(RetryConfig.class, ImmutableMap.of("dbName", poolName)));
+    }
+
+    private void setRetryConfig(final RetryConfig retryConfig)
+    {
+        this.sqlStates = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(retryConfig.getSqlStates()));
+        this.budgetDeposit = Math.round(retryConfig.getBudgetRatio() * RETRY_COST);
+        this.budgetMaximum = retryConfig.getBudgetMaximum() * RETRY_COST;
+        this.budget.set(budgetMaximum);
+        this.retryConfig = retryConfig;
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    /**
+     * Returns the maximum number of retries for a transaction of the current thread.
+     */
+    public int getMaxRetries()
+    {
+        final Integer override = TransactionRetries.getMaxRetries();
+        if (override != null) {
+            return override;
+        }
+        final RetryConfig currentConfig = retryConfig;
+        return currentConfig == null ? 0 : currentConfig.getMaxRetries();
+    }
+
+    /**
+     * Returns the SQL exception that makes a failure retryable, or null if the failure must not be retried.
+     */
+    @Nullable
+    public SQLException findRetryableCause(@Nullable final Throwable failure)
+    {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                for (SQLException e = (SQLException) t; e != null; e = e.getNextException()) {
+                    if (e.getSQLState() != null && sqlStates.contains(e.getSQLState())) {
+                        return e;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called for every transaction, refills the retry budget.
+     */
+    public void recordTransaction()
+    {
+        final long max = budgetMaximum;
+        long current;
+        do {
+            current = budget.get();
+            if (current >= max) {
+                return;
+            }
+        } while (!budget.compareAndSet(current, Math.min(max, current + budgetDeposit)));
+    }
+
+    /**
+     * Takes a retry from the budget. Returns false if the budget is used up.
+     */
+    public boolean tryAcquireRetry()
+    {
+        long current;
+        do {
+            current = budget.get();
+            if (current < RETRY_COST) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - RETRY_COST));
+        return true;
+    }
+
+    /**
+     * Returns the number of retries that are left in the budget.
+     */
+    public double getRemainingBudget()
+    {
+        return budget.get() / (double) RETRY_COST;
+    }
+
+    /**
+     * Returns the time to wait before the given retry, starting with 0 for the first retry.
+     */
+    public long getBackoffMillis(final int retry)
+    {
+        final RetryConfig currentConfig = retryConfig;
+        if (currentConfig == null || currentConfig.getInitialBackoff() <= 0) {
+            return 0L;
+        }
+        final long bound = Math.min(currentConfig.getMaxBackoff(), currentConfig.getInitialBackoff() << Math.min(retry, 30));
+        if (bound <= 0) {
+            return 0L;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
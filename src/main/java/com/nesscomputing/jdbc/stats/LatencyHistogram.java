@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram for durations. Values are counted in buckets of powers of two microseconds, so recording a value is
+ * a few atomic increments and never blocks. Percentiles are therefore approximations, reported as the upper bound of the
+ * bucket that contains them.
+ */
+public final class LatencyHistogram
+{
+    /** Bucket 0 counts values below one microsecond, bucket i counts values from 2^(i-1) up to 2^i microseconds. */
+    static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0L);
+    private final AtomicLong totalNanos = new AtomicLong(0L);
+    private final AtomicLong maxNanos = new AtomicLong(0L);
+
+    public void record(final long nanos)
+    {
+        final long value = Math.max(0L, nanos);
+
+        buckets.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+
+        long max;
+        do {
+            max = maxNanos.get();
+            if (value <= max) {
+                break;
+            }
+        } while (!maxNanos.compareAndSet(max, value));
+    }
+
+    static int getBucket(final long nanos)
+    {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        return micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Returns the upper bound of a bucket in nanoseconds.
+     */
+    static long getBucketLimit(final int bucket)
+    {
+        return TimeUnit.MICROSECONDS.toNanos(1L << bucket);
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos()
+    {
+        final long currentCount = count.get();
+        return currentCount == 0 ? 0L : totalNanos.get() / currentCount;
+    }
+
+    /**
+     * Returns the approximate value below which the given fraction (0.0 - 1.0) of all values fall.
+     */
+    public long getPercentileNanos(final double fraction)
+    {
+        final long [] counts = getBucketCounts();
+        long total = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final long target = Math.max(1L, (long) Math.ceil(total * Math.min(1.0, Math.max(0.0, fraction))));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(getBucketLimit(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns a copy of the bucket counts. Bucket i counts values below 2^i microseconds.
+     */
+    public long [] getBucketCounts()
+    {
+        final long [] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Clears the histogram. Values recorded concurrently with a reset may be partially lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0L);
+        }
+        count.set(0L);
+        totalNanos.set(0L);
+        maxNanos.set(0L);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d, mean=%dus, p99=%dus, max=%dus",
+                             getCount(),
+                             TimeUnit.NANOSECONDS.toMicros(getMeanNanos()),
+                             TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(0.99)),
+                             TimeUnit.NANOSECONDS.toMicros(getMaxNanos()));
+    }
+}
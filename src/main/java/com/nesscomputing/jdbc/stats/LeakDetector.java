@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Reports connections that are held for longer than a threshold. One instance is bound per pool, the connection wrapper
+ * registers every checkout with it while it is enabled.
+ *
+ * Capturing a stack trace is expensive, so only every n-th checkout is captured (see {@link LeakDetectorConfig#getCaptureEvery()}).
+ * For all other leaks, the current stack of the holding thread is reported, which usually points at the leaking code as well.
+ */
+public class LeakDetector
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String poolName;
+
+    private final Set<Checkout> activeCheckouts = Collections.newSetFromMap(Maps.<Checkout, Boolean>newConcurrentMap());
+    private final AtomicLong checkoutCount = new AtomicLong(0L);
+    private final AtomicLong leakCount = new AtomicLong(0L);
+    private final AtomicReference<ScheduledExecutorService> scanner = new AtomicReference<ScheduledExecutorService>();
+
+    private volatile LeakDetectorConfig leakDetectorConfig = null;
+    private volatile boolean stopped = false;
+
+    public LeakDetector(final String poolName)
+    {
+        this.poolName = poolName;
+    }
+
+    /**
+     * Creates a detector with a fixed configuration.
+     */
+    public LeakDetector(final String poolName, final LeakDetectorConfig leakDetectorConfig)
+    {
+        this(poolName);
+        setLeakDetectorConfig(leakDetectorConfig);
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        setLeakDetectorConfig(config.getBean(LeakDetectorConfig.class, ImmutableMap.of("dbName", poolName)));
+    }
+
+    private void setLeakDetectorConfig(final LeakDetectorConfig leakDetectorConfig)
+    {
+        if (leakDetectorConfig.isEnabled()) {
+            LOG.info("Leak detection for %s enabled, threshold is %d ms", poolName, leakDetectorConfig.getThreshold());
+            this.leakDetectorConfig = leakDetectorConfig;
+        }
+        else {
+            this.leakDetectorConfig = null;
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return leakDetectorConfig != null;
+    }
+
+    /**
+     * Registers a checkout. The returned object must be passed to {@link #checkin(Checkout)} when the connection is closed.
+     */
+    public Checkout checkout()
+    {
+        final LeakDetectorConfig currentConfig = leakDetectorConfig;
+        final int captureEvery = currentConfig == null ? 0 : currentConfig.getCaptureEvery();
+        final long count = checkoutCount.incrementAndGet();
+
+        final Throwable checkoutSite = (captureEvery > 0 && count % captureEvery == 0) ? new Throwable("Connection checked out here") : null;
+        final Checkout checkout = new Checkout(Thread.currentThread(), checkoutSite);
+        activeCheckouts.add(checkout);
+
+        if (currentConfig != null && !stopped && scanner.get() == null) {
+            startScanner(currentConfig.getScanInterval());
+        }
+        return checkout;
+    }
+
+    public void checkin(final Checkout checkout)
+    {
+        activeCheckouts.remove(checkout);
+        if (checkout.reported) {
+            LOG.info("Connection from pool %s reported as leaked was returned after %d ms", poolName, checkout.getHeldMillis());
+        }
+    }
+
+    private void startScanner(final long scanInterval)
+    {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("leak-detector-" + poolName).build());
+        if (scanner.compareAndSet(null, executor)) {
+            // The detector may have been stopped after the caller checked it.
+            if (stopped && scanner.compareAndSet(executor, null)) {
+                executor.shutdownNow();
+                return;
+            }
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run()
+                {
+                    scan();
+                }
+            }, scanInterval, scanInterval, TimeUnit.MILLISECONDS);
+        }
+        else {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops the background scan for good. Checkouts are still tracked afterwards, but the scan is never started again.
+     */
+    public void stop()
+    {
+        stopped = true;
+        final ScheduledExecutorService executor = scanner.getAndSet(null);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reports all connections that have been held for longer than the threshold and were not reported before. Returns the
+     * number of newly reported connections.
+     */
+    public int scan()
+    {
+        final LeakDetectorConfig currentConfig = leakDetectorConfig;
+        if (currentConfig == null) {
+            return 0;
+        }
+
+        int reported = 0;
+        for (final Checkout checkout : activeCheckouts) {
+            if (!checkout.reported && checkout.getHeldMillis() > currentConfig.getThreshold()) {
+                checkout.reported = true;
+                leakCount.incrementAndGet();
+                reported++;
+                report(checkout);
+            }
+        }
+        return reported;
+    }
+
+    private void report(final Checkout checkout)
+    {
+        final Thread thread = checkout.getThread();
+        final String threadName = thread == null ? "<gone>" : thread.getName();
+
+        if (checkout.checkoutSite != null) {
+            LOG.warn(checkout.checkoutSite, "Connection from pool %s held for %d ms by thread %s", poolName, checkout.getHeldMillis(), threadName);
+        }
+        else if (thread != null && thread.isAlive()) {
+            final Throwable currentSite = new Throwable("Holding thread is here");
+            currentSite.setStackTrace(thread.getStackTrace());
+            LOG.warn(currentSite, "Connection from pool %s held for %d ms by thread %s, checkout site was not captured", poolName, checkout.getHeldMillis(), threadName);
+        }
+        else {
+            LOG.warn("Connection from pool %s held for %d ms by thread %s, which is no longer running", poolName, checkout.getHeldMillis(), threadName);
+        }
+    }
+
+    public int getActiveCheckoutCount()
+    {
+        return activeCheckouts.size();
+    }
+
+    public long getLeakCount()
+    {
+        return leakCount.get();
+    }
+
+    /**
+     * A single checkout of a connection.
+     */
+    public static final class Checkout
+    {
+        private final WeakReference<Thread> thread;
+        private final long checkoutNanos = System.nanoTime();
+        private final Throwable checkoutSite;
+
+        private volatile boolean reported = false;
+
+        Checkout(final Thread thread, @Nullable final Throwable checkoutSite)
+        {
+            this.thread = new WeakReference<Thread>(thread);
+            this.checkoutSite = checkoutSite;
+        }
+
+        @Nullable
+        Thread getThread()
+        {
+            return thread.get();
+        }
+
+        long getHeldMillis()
+        {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - checkoutNanos);
+        }
+    }
+}
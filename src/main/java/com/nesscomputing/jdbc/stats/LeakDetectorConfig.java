@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class LeakDetectorConfig
+{
+    /**
+     * If true, connections that are held for longer than the threshold are reported.
+     */
+    @Config({"ness.db.${dbName}.leak.enabled","ness.db.defaults.leak.enabled"})
+    @Default("false")
+    public abstract boolean isEnabled();
+
+    /**
+     * Time in milliseconds after which a checked out connection is reported as leaked.
+     */
+    @Config({"ness.db.${dbName}.leak.threshold","ness.db.defaults.leak.threshold"})
+    @Default("30000")
+    public abstract long getThreshold();
+
+    /**
+     * The stack trace of every n-th checkout is captured. 1 captures every checkout, 0 never captures. If the checkout of a
+     * leaked connection was not captured, the current stack of the thread that holds it is reported instead.
+     */
+    @Config({"ness.db.${dbName}.leak.captureEvery","ness.db.defaults.leak.captureEvery"})
+    @Default("100")
+    public abstract int getCaptureEvery();
+
+    /**
+     * Time in milliseconds between two scans for leaked connections.
+     */
+    @Config({"ness.db.${dbName}.leak.scanInterval","ness.db.defaults.leak.scanInterval"})
+    @Default("1000")
+    public abstract long getScanInterval();
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import com.mchange.v2.c3p0.PooledDataSource;
+import com.nesscomputing.jdbc.pool.NessPooledDataSource;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Statistics for a connection pool. One instance is bound per pool and can be injected with the pool annotation. It is also
+ * registered with JMX as <code>com.nesscomputing.jdbc:type=PoolStatistics,name=dbName</code>.
+ *
+ * Recording only uses atomic operations, so it adds no contention to the checkout path.
+ */
+public class PoolStatistics implements PoolStatisticsMBean
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final String poolName;
+
+    private final LatencyHistogram checkoutWait = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+    private final AtomicLong acquireFailures = new AtomicLong(0L);
+    private final AtomicLong timeouts = new AtomicLong(0L);
+    private final AtomicLong statementCacheHits = new AtomicLong(0L);
+    private final AtomicLong statementCacheMisses = new AtomicLong(0L);
+    private final AtomicLong statementCacheEvictions = new AtomicLong(0L);
+    private final AtomicLong serializationConflicts = new AtomicLong(0L);
+    private final AtomicLong transactionRetries = new AtomicLong(0L);
+    private final AtomicLong retriesExhausted = new AtomicLong(0L);
+    private final AtomicLong retryBudgetExhausted = new AtomicLong(0L);
+
+    private volatile DataSource pool = null;
+
+    public PoolStatistics(final String poolName)
+    {
+        this.poolName = poolName;
+    }
+
+    /**
+     * Sets the pool that provides the connection counts.
+     */
+    public void setPool(@Nullable final DataSource pool)
+    {
+        this.pool = pool;
+    }
+
+    public void recordCheckout(final long waitNanos)
+    {
+        checkoutWait.record(waitNanos);
+    }
+
+    public void recordCheckoutFailure(@Nullable final Throwable cause)
+    {
+        if (isTimeout(cause)) {
+            timeouts.incrementAndGet();
+        }
+        else {
+            acquireFailures.incrementAndGet();
+        }
+    }
+
+    public void recordHoldTime(final long holdNanos)
+    {
+        holdTime.record(holdNanos);
+    }
+
+    public void recordStatementCacheHit()
+    {
+        statementCacheHits.incrementAndGet();
+    }
+
+    public void recordStatementCacheMiss()
+    {
+        statementCacheMisses.incrementAndGet();
+    }
+
+    public void recordStatementCacheEviction()
+    {
+        statementCacheEvictions.incrementAndGet();
+    }
+
+    public void recordSerializationConflict()
+    {
+        serializationConflicts.incrementAndGet();
+    }
+
+    public void recordTransactionRetry()
+    {
+        transactionRetries.incrementAndGet();
+    }
+
+    public void recordRetriesExhausted()
+    {
+        retriesExhausted.incrementAndGet();
+    }
+
+    public void recordRetryBudgetExhausted()
+    {
+        retryBudgetExhausted.incrementAndGet();
+    }
+
+    /**
+     * C3P0 reports a checkout timeout as a plain SQLException.
+     */
+    static boolean isTimeout(@Nullable final Throwable cause)
+    {
+        if (cause instanceof SQLTimeoutException) {
+            return true;
+        }
+        final String message = cause == null ? null : cause.getMessage();
+        return message != null && message.contains("timed out");
+    }
+
+    public LatencyHistogram getCheckoutWait()
+    {
+        return checkoutWait;
+    }
+
+    public LatencyHistogram getHoldTime()
+    {
+        return holdTime;
+    }
+
+    @Override
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    @Override
+    public long getCheckoutCount()
+    {
+        return checkoutWait.getCount();
+    }
+
+    @Override
+    public long getAcquireFailureCount()
+    {
+        return acquireFailures.get();
+    }
+
+    @Override
+    public long getTimeoutCount()
+    {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getStatementCacheHitCount()
+    {
+        return statementCacheHits.get();
+    }
+
+    @Override
+    public long getStatementCacheMissCount()
+    {
+        return statementCacheMisses.get();
+    }
+
+    @Override
+    public long getStatementCacheEvictionCount()
+    {
+        return statementCacheEvictions.get();
+    }
+
+    @Override
+    public long getSerializationConflictCount()
+    {
+        return serializationConflicts.get();
+    }
+
+    @Override
+    public long getTransactionRetryCount()
+    {
+        return transactionRetries.get();
+    }
+
+    @Override
+    public long getRetriesExhaustedCount()
+    {
+        return retriesExhausted.get();
+    }
+
+    @Override
+    public long getRetryBudgetExhaustedCount()
+    {
+        return retryBudgetExhausted.get();
+    }
+
+    @Override
+    public double getCheckoutWaitMeanMillis()
+    {
+        return checkoutWait.getMeanNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getCheckoutWait99thPercentileMillis()
+    {
+        return checkoutWait.getPercentileNanos(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getCheckoutWaitMaxMillis()
+    {
+        return checkoutWait.getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getHoldTimeMeanMillis()
+    {
+        return holdTime.getMeanNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getHoldTime99thPercentileMillis()
+    {
+        return holdTime.getPercentileNanos(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getHoldTimeMaxMillis()
+    {
+        return holdTime.getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns the number of connections in the pool, or -1 if the pool does not report it.
+     */
+    @Override
+    public int getNumConnections()
+    {
+        final DataSource currentPool = pool;
+        try {
+            if (currentPool instanceof NessPooledDataSource) {
+                return ((NessPooledDataSource) currentPool).getNumConnections();
+            }
+            else if (currentPool instanceof PooledDataSource) {
+                return ((PooledDataSource) currentPool).getNumConnectionsDefaultUser();
+            }
+        }
+        catch (SQLException e) {
+            LOG.debug(e, "While reading connection count for %s", poolName);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of checked out connections, or -1 if the pool does not report it.
+     */
+    @Override
+    public int getNumBusyConnections()
+    {
+        final DataSource currentPool = pool;
+        try {
+            if (currentPool instanceof NessPooledDataSource) {
+                return ((NessPooledDataSource) currentPool).getNumBusyConnections();
+            }
+            else if (currentPool instanceof PooledDataSource) {
+                return ((PooledDataSource) currentPool).getNumBusyConnectionsDefaultUser();
+            }
+        }
+        catch (SQLException e) {
+            LOG.debug(e, "While reading busy connection count for %s", poolName);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of idle connections, or -1 if the pool does not report it.
+     */
+    @Override
+    public int getNumIdleConnections()
+    {
+        final DataSource currentPool = pool;
+        try {
+            if (currentPool instanceof NessPooledDataSource) {
+                return ((NessPooledDataSource) currentPool).getNumIdleConnections();
+            }
+            else if (currentPool instanceof PooledDataSource) {
+                return ((PooledDataSource) currentPool).getNumIdleConnectionsDefaultUser();
+            }
+        }
+        catch (SQLException e) {
+            LOG.debug(e, "While reading idle connection count for %s", poolName);
+        }
+        return -1;
+    }
+
+    @Override
+    public void reset()
+    {
+        checkoutWait.reset();
+        holdTime.reset();
+        acquireFailures.set(0L);
+        timeouts.set(0L);
+        statementCacheHits.set(0L);
+        statementCacheMisses.set(0L);
+        statementCacheEvictions.set(0L);
+        serializationConflicts.set(0L);
+        transactionRetries.set(0L);
+        retriesExhausted.set(0L);
+        retryBudgetExhausted.set(0L);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("PoolStatistics[%s: checkoutWait -> (%s), holdTime -> (%s), failures -> %d, timeouts -> %d]",
+                             poolName, checkoutWait, holdTime, getAcquireFailureCount(), getTimeoutCount());
+    }
+}
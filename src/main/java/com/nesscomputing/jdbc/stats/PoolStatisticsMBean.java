@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+/**
+ * JMX view of {@link PoolStatistics}. All times are in milliseconds.
+ */
+public interface PoolStatisticsMBean
+{
+    String getPoolName();
+
+    long getCheckoutCount();
+
+    long getAcquireFailureCount();
+
+    long getTimeoutCount();
+
+    long getStatementCacheHitCount();
+
+    long getStatementCacheMissCount();
+
+    long getStatementCacheEvictionCount();
+
+    long getSerializationConflictCount();
+
+    long getTransactionRetryCount();
+
+    long getRetriesExhaustedCount();
+
+    long getRetryBudgetExhaustedCount();
+
+    double getCheckoutWaitMeanMillis();
+
+    double getCheckoutWait99thPercentileMillis();
+
+    double getCheckoutWaitMaxMillis();
+
+    double getHoldTimeMeanMillis();
+
+    double getHoldTime99thPercentileMillis();
+
+    double getHoldTimeMaxMillis();
+
+    int getNumConnections();
+
+    int getNumBusyConnections();
+
+    int getNumIdleConnections();
+
+    void reset();
+}
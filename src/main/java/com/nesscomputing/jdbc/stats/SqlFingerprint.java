@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * Normalizes SQL statements into fingerprints, so that statements which only differ in their literals are counted together.
+ *
+ * <ul>
+ * <li>String, numeric and dollar quoted literals, positional (<code>$1</code>) and named (<code>:name</code>) parameters are
+ * replaced with <code>?</code>.</li>
+ * <li>Comments are removed and all whitespace is collapsed.</li>
+ * <li>IN lists and multi row VALUES lists are collapsed, so that their length does not matter.</li>
+ * </ul>
+ */
+public final class SqlFingerprint
+{
+    private static final Pattern IN_LIST = Pattern.compile("(\\b[iI][nN]) \\(\\?(?:, \\?)*\\)");
+    private static final Pattern VALUES_LIST = Pattern.compile("(\\([?, ]*\\))(?:, \\1)+");
+
+    private SqlFingerprint()
+    {
+    }
+
+    public static String normalize(@Nullable final String sql)
+    {
+        if (sql == null) {
+            return "";
+        }
+
+        final int length = sql.length();
+        final StringBuilder sb = new StringBuilder(length);
+        boolean pendingSpace = false;
+
+        int i = 0;
+        while (i < length) {
+            final char c = sql.charAt(i);
+            final char next = i + 1 < length ? sql.charAt(i + 1) : '\0';
+            final char prev = i > 0 ? sql.charAt(i - 1) : '\0';
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            else if (c == '-' && next == '-') {
+                i = skipUntil(sql, i + 2, "\n");
+                pendingSpace = true;
+                continue;
+            }
+            else if (c == '/' && next == '*') {
+                i = skipUntil(sql, i + 2, "*/");
+                pendingSpace = true;
+                continue;
+            }
+
+            if (pendingSpace) {
+                pendingSpace = false;
+                if (sb.length() > 0 && c != ',' && c != ')' && sb.charAt(sb.length() - 1) != '(') {
+                    sb.append(' ');
+                }
+            }
+
+            if (c == '\'') {
+                i = skipString(sql, i + 1, false);
+                sb.append('?');
+            }
+            else if ((c == 'E' || c == 'e') && next == '\'' && !isIdentifierChar(prev)) {
+                i = skipString(sql, i + 2, true);
+                sb.append('?');
+            }
+            else if (c == '"') {
+                final int end = skipUntil(sql, i + 1, "\"");
+                sb.append(sql, i, end);
+                i = end;
+            }
+            else if (c == '$' && Character.isDigit(next)) {
+                i = skipDigits(sql, i + 1);
+                sb.append('?');
+            }
+            else if (c == '$' && !isIdentifierChar(prev) && (next == '$' || Character.isLetter(next) || next == '_')) {
+                final int tagEnd = sql.indexOf('$', i + 1);
+                if (tagEnd < 0) {
+                    sb.append(c);
+                    i++;
+                }
+                else {
+                    final String tag = sql.substring(i, tagEnd + 1);
+                    i = skipUntil(sql, tagEnd + 1, tag);
+                    sb.append('?');
+                }
+            }
+            else if (c == ':' && next != ':' && prev != ':' && (Character.isLetter(next) || next == '_')) {
+                i = i + 1;
+                while (i < length && isIdentifierChar(sql.charAt(i))) {
+                    i++;
+                }
+                sb.append('?');
+            }
+            else if (Character.isDigit(c) && !isIdentifierChar(prev)) {
+                i = skipNumber(sql, i);
+                sb.append('?');
+            }
+            else if (c == ',') {
+                sb.append(", ");
+                pendingSpace = false;
+                i++;
+                // Swallow the whitespace after a comma, the comma already added one.
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+            }
+            else {
+                sb.append(c);
+                i++;
+            }
+        }
+
+        String result = sb.toString().trim();
+        result = IN_LIST.matcher(result).replaceAll("$1 (...)");
+        result = VALUES_LIST.matcher(result).replaceAll("$1, ...");
+        return result;
+    }
+
+    private static boolean isIdentifierChar(final char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Returns the position after the end marker, or the end of the string.
+     */
+    private static int skipUntil(final String sql, final int start, final String end)
+    {
+        final int pos = sql.indexOf(end, start);
+        return pos < 0 ? sql.length() : pos + end.length();
+    }
+
+    /**
+     * Returns the position after the closing quote of a string literal.
+     */
+    private static int skipString(final String sql, final int start, final boolean backslashEscapes)
+    {
+        int i = start;
+        while (i < sql.length()) {
+            final char c = sql.charAt(i);
+            if (backslashEscapes && c == '\\') {
+                i += 2;
+            }
+            else if (c == '\'') {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                    i += 2;
+                }
+                else {
+                    return i + 1;
+                }
+            }
+            else {
+                i++;
+            }
+        }
+        return sql.length();
+    }
+
+    private static int skipDigits(final String sql, final int start)
+    {
+        int i = start;
+        while (i < sql.length() && Character.isDigit(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipNumber(final String sql, final int start)
+    {
+        int i = skipDigits(sql, start);
+        if (i < sql.length() && sql.charAt(i) == '.') {
+            i = skipDigits(sql, i + 1);
+        }
+        if (i < sql.length() && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int j = i + 1;
+            if (j < sql.length() && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) {
+                j++;
+            }
+            if (j < sql.length() && Character.isDigit(sql.charAt(j))) {
+                i = skipDigits(sql, j);
+            }
+        }
+        return i;
+    }
+}
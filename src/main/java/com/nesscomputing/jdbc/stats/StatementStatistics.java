@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics for all executions of a SQL fingerprint. Instances are immutable snapshots, the live counters are kept by the
+ * {@link StatementStatisticsCollector}.
+ */
+public final class StatementStatistics
+{
+    private final String fingerprint;
+    private final long count;
+    private final long totalNanos;
+    private final long minNanos;
+    private final long maxNanos;
+    private final long [] bucketCounts;
+    private final long medianNanos;
+    private final long p99Nanos;
+    private final long conflictCount;
+
+    StatementStatistics(final String fingerprint, final Counters counters)
+    {
+        this.fingerprint = fingerprint;
+        this.count = counters.histogram.getCount();
+        this.totalNanos = counters.histogram.getTotalNanos();
+        this.minNanos = count == 0 ? 0L : counters.minNanos.get();
+        this.maxNanos = counters.histogram.getMaxNanos();
+        this.bucketCounts = counters.histogram.getBucketCounts();
+        this.medianNanos = counters.histogram.getPercentileNanos(0.5);
+        this.p99Nanos = counters.histogram.getPercentileNanos(0.99);
+        this.conflictCount = counters.conflicts.get();
+    }
+
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+    public long getMinNanos()
+    {
+        return minNanos;
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos;
+    }
+
+    public long getMeanNanos()
+    {
+        return count == 0 ? 0L : totalNanos / count;
+    }
+
+    public long getMedianNanos()
+    {
+        return medianNanos;
+    }
+
+    public long get99thPercentileNanos()
+    {
+        return p99Nanos;
+    }
+
+    /**
+     * Number of serialization conflicts or deadlocks that were reported for this fingerprint.
+     */
+    public long getConflictCount()
+    {
+        return conflictCount;
+    }
+
+    /**
+     * Bucket i counts executions that took less than 2^i microseconds, see {@link LatencyHistogram}.
+     */
+    public long [] getBucketCounts()
+    {
+        return bucketCounts.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: count=%d, total=%dms, min=%dus, mean=%dus, max=%dus, conflicts=%d",
+                             fingerprint,
+                             count,
+                             TimeUnit.NANOSECONDS.toMillis(totalNanos),
+                             TimeUnit.NANOSECONDS.toMicros(minNanos),
+                             TimeUnit.NANOSECONDS.toMicros(getMeanNanos()),
+                             TimeUnit.NANOSECONDS.toMicros(maxNanos),
+                             conflictCount);
+    }
+
+    /**
+     * The live counters for a fingerprint.
+     */
+    static final class Counters
+    {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong conflicts = new AtomicLong(0L);
+
+        void record(final long nanos)
+        {
+            histogram.record(nanos);
+
+            long min;
+            do {
+                min = minNanos.get();
+                if (nanos >= min) {
+                    break;
+                }
+            } while (!minNanos.compareAndSet(min, nanos));
+        }
+
+        void recordConflict()
+        {
+            conflicts.incrementAndGet();
+        }
+
+        long getCount()
+        {
+            return histogram.getCount();
+        }
+    }
+}
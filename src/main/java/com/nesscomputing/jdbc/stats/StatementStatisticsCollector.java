@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Collects execution statistics per SQL fingerprint (see {@link SqlFingerprint}), similar to <code>pg_stat_statements</code>
+ * but on the client side. Bound per pool and registered as timing collector with the IDBI of the pool.
+ *
+ * Recording uses only atomic operations. The number of fingerprints is bounded, when a new fingerprint would exceed the limit,
+ * the tenth of the fingerprints with the fewest executions is dropped at once, so that statements with new fingerprints do not
+ * scan all fingerprints every time. Only one thread evicts at a time, the others go on without waiting for it.
+ */
+public class StatementStatisticsCollector implements TimingCollector
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final Comparator<StatementStatistics> BY_TOTAL_TIME = new Comparator<StatementStatistics>() {
+        @Override
+        public int compare(final StatementStatistics s1, final StatementStatistics s2)
+        {
+            return s1.getTotalNanos() == s2.getTotalNanos() ? 0 : (s1.getTotalNanos() > s2.getTotalNanos() ? -1 : 1);
+        }
+    };
+
+    /** Fraction of the fingerprints that is evicted at once. */
+    private static final int EVICTION_DIVISOR = 10;
+
+    private static final Comparator<EvictionCandidate> BY_COUNT = new Comparator<EvictionCandidate>() {
+        @Override
+        public int compare(final EvictionCandidate c1, final EvictionCandidate c2)
+        {
+            return c1.count == c2.count ? 0 : (c1.count < c2.count ? -1 : 1);
+        }
+    };
+
+    private final String poolName;
+
+    /** Raw SQL to fingerprint. Avoids normalizing the same statement text over and over. */
+    private final ConcurrentMap<String, String> fingerprints = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, StatementStatistics.Counters> statistics = Maps.newConcurrentMap();
+    private final AtomicLong evictions = new AtomicLong(0L);
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    private volatile boolean enabled = true;
+    private volatile int maxFingerprints = 500;
+
+    public StatementStatisticsCollector(final String poolName)
+    {
+        this.poolName = poolName;
+    }
+
+    public StatementStatisticsCollector(final String poolName, final int maxFingerprints)
+    {
+        this(poolName);
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        final StatementStatisticsConfig statementStatisticsConfig = config.getBean(StatementStatisticsConfig.class, ImmutableMap.of("dbName", poolName));
+        this.enabled = statementStatisticsConfig.isEnabled();
+        this.maxFingerprints = statementStatisticsConfig.getMaxFingerprints();
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public void collect(final long elapsedTime, final StatementContext ctx)
+    {
+        if (enabled) {
+            final String sql = ctx.getRewrittenSql();
+            record(sql == null ? ctx.getRawSql() : sql, elapsedTime);
+        }
+    }
+
+    /**
+     * Records an execution of a SQL statement.
+     */
+    public void record(final String sql, final long elapsedNanos)
+    {
+        if (sql != null) {
+            getCounters(sql).record(elapsedNanos);
+        }
+    }
+
+    /**
+     * Records a serialization conflict or deadlock of a SQL statement.
+     */
+    public void recordConflict(final String sql)
+    {
+        if (enabled && sql != null) {
+            getCounters(sql).recordConflict();
+        }
+    }
+
+    private StatementStatistics.Counters getCounters(final String sql)
+    {
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = SqlFingerprint.normalize(sql);
+            if (fingerprints.size() >= maxFingerprints * 4) {
+                // Lots of different statement texts that do not use parameters. Start over instead of growing forever.
+                fingerprints.clear();
+            }
+            fingerprints.put(sql, fingerprint);
+        }
+
+        StatementStatistics.Counters counters = statistics.get(fingerprint);
+        if (counters == null) {
+            if (statistics.size() >= maxFingerprints) {
+                evictLeastUsed();
+            }
+            final StatementStatistics.Counters newCounters = new StatementStatistics.Counters();
+            counters = statistics.putIfAbsent(fingerprint, newCounters);
+            if (counters == null) {
+                counters = newCounters;
+            }
+        }
+        return counters;
+    }
+
+    private void evictLeastUsed()
+    {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            // The counts are copied, they keep changing while the candidates are sorted.
+            final List<EvictionCandidate> candidates = Lists.newArrayListWithCapacity(statistics.size());
+            for (final Map.Entry<String, StatementStatistics.Counters> entry : statistics.entrySet()) {
+                candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue()));
+            }
+            Collections.sort(candidates, BY_COUNT);
+
+            final int evictCount = Math.min(candidates.size(), Math.max(1, candidates.size() / EVICTION_DIVISOR));
+            for (int i = 0; i < evictCount; i++) {
+                final EvictionCandidate candidate = candidates.get(i);
+                if (statistics.remove(candidate.fingerprint, candidate.counters)) {
+                    evictions.incrementAndGet();
+                    LOG.trace("Evicted statement statistics for '%s'", candidate.fingerprint);
+                }
+            }
+        }
+        finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Returns the statistics of all fingerprints, ordered by total execution time.
+     */
+    public List<StatementStatistics> getSnapshot()
+    {
+        final List<StatementStatistics> result = Lists.newArrayListWithCapacity(statistics.size());
+        for (final Map.Entry<String, StatementStatistics.Counters> entry : statistics.entrySet()) {
+            result.add(new StatementStatistics(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(result, BY_TOTAL_TIME);
+        return result;
+    }
+
+    /**
+     * Returns the statistics of all fingerprints and starts over. Executions that are recorded while the snapshot is taken may be
+     * lost.
+     */
+    public List<StatementStatistics> getSnapshotAndReset()
+    {
+        final List<StatementStatistics> result = Lists.newArrayListWithCapacity(statistics.size());
+        for (final String fingerprint : statistics.keySet()) {
+            final StatementStatistics.Counters counters = statistics.remove(fingerprint);
+            if (counters != null) {
+                result.add(new StatementStatistics(fingerprint, counters));
+            }
+        }
+        Collections.sort(result, BY_TOTAL_TIME);
+        return result;
+    }
+
+    public void reset()
+    {
+        statistics.clear();
+        evictions.set(0L);
+    }
+
+    public int getFingerprintCount()
+    {
+        return statistics.size();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    private static final class EvictionCandidate
+    {
+        private final String fingerprint;
+        private final StatementStatistics.Counters counters;
+        private final long count;
+
+        EvictionCandidate(final String fingerprint, final StatementStatistics.Counters counters)
+        {
+            this.fingerprint = fingerprint;
+            this.counters = counters;
+            this.count = counters.getCount();
+        }
+    }
+}
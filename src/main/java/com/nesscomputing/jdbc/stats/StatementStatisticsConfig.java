@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class StatementStatisticsConfig
+{
+    /**
+     * If true, execution statistics are collected per SQL fingerprint.
+     */
+    @Config({"ness.db.${dbName}.statementStats.enabled","ness.db.defaults.statementStats.enabled"})
+    @Default("true")
+    public abstract boolean isEnabled();
+
+    /**
+     * Maximum number of fingerprints that are tracked.
+     */
+    @Config({"ness.db.${dbName}.statementStats.maxFingerprints","ness.db.defaults.statementStats.maxFingerprints"})
+    @Default("500")
+    public abstract int getMaxFingerprints();
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stream;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+/**
+ * Passes every row to the {@link FetchSizeAdjuster} before mapping it.
+ */
+class AdaptiveFetchMapper<T> implements ResultSetMapper<T>
+{
+    private final ResultSetMapper<T> delegate;
+    private final FetchSizeAdjuster adjuster;
+
+    AdaptiveFetchMapper(final ResultSetMapper<T> delegate, final FetchSizeAdjuster adjuster)
+    {
+        this.delegate = delegate;
+        this.adjuster = adjuster;
+    }
+
+    @Override
+    public T map(final int index, final ResultSet rs, final StatementContext ctx) throws SQLException
+    {
+        adjuster.rowFetched(index, rs);
+        return delegate.map(index, rs, ctx);
+    }
+}
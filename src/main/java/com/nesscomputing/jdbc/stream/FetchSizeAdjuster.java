@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stream;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Estimates the heap size of the rows of a streamed query and derives the fetch size from it. A row is sampled at the start
+ * of every fetch, the estimate is a moving average of the samples.
+ */
+class FetchSizeAdjuster
+{
+    private static final long ROW_OVERHEAD = 16L;
+    private static final long VALUE_OVERHEAD = 16L;
+
+    private final long fetchBytes;
+    private final int minFetchSize;
+    private final int maxFetchSize;
+
+    private int fetchSize;
+    private long nextSample = 0L;
+    private long averageRowBytes = 0L;
+
+    FetchSizeAdjuster(final StreamingConfig streamingConfig)
+    {
+        this.fetchBytes = streamingConfig.getFetchBytes();
+        this.minFetchSize = streamingConfig.getMinFetchSize();
+        this.maxFetchSize = Math.max(minFetchSize, streamingConfig.getMaxFetchSize());
+        this.fetchSize = clamp(streamingConfig.getInitialFetchSize());
+    }
+
+    int getFetchSize()
+    {
+        return fetchSize;
+    }
+
+    long getAverageRowBytes()
+    {
+        return averageRowBytes;
+    }
+
+    /**
+     * Called for every row, before it is mapped. Samples the first row of every fetch and updates the fetch size of the result
+     * set, which the driver uses for the following fetches.
+     */
+    void rowFetched(final long index, final ResultSet rs) throws SQLException
+    {
+        if (index < nextSample) {
+            return;
+        }
+
+        final long rowBytes = estimateRowBytes(rs);
+        averageRowBytes = (averageRowBytes == 0L) ? rowBytes : (3 * averageRowBytes + rowBytes) / 4;
+
+        final int newFetchSize = computeFetchSize(averageRowBytes);
+        if (newFetchSize != fetchSize) {
+            fetchSize = newFetchSize;
+            rs.setFetchSize(fetchSize);
+        }
+        nextSample = index + fetchSize;
+    }
+
+    int computeFetchSize(final long rowBytes)
+    {
+        return clamp(rowBytes <= 0L ? maxFetchSize : fetchBytes / rowBytes);
+    }
+
+    private int clamp(final long size)
+    {
+        return (int) Math.max(minFetchSize, Math.min(maxFetchSize, size));
+    }
+
+    static long estimateRowBytes(final ResultSet rs) throws SQLException
+    {
+        final int columns = rs.getMetaData().getColumnCount();
+        long bytes = ROW_OVERHEAD;
+        for (int i = 1; i <= columns; i++) {
+            bytes += estimateValueBytes(rs.getObject(i));
+        }
+        return bytes;
+    }
+
+    private static long estimateValueBytes(final Object value)
+    {
+        if (value == null) {
+            return 8L;
+        }
+        else if (value instanceof byte []) {
+            return VALUE_OVERHEAD + ((byte []) value).length;
+        }
+        else if (value instanceof CharSequence) {
+            return 2 * VALUE_OVERHEAD + 2L * ((CharSequence) value).length();
+        }
+        else if (value instanceof Number || value instanceof Boolean || value instanceof java.util.Date) {
+            return 2 * VALUE_OVERHEAD;
+        }
+        else {
+            return 2 * VALUE_OVERHEAD + 2L * String.valueOf(value).length();
+        }
+    }
+}
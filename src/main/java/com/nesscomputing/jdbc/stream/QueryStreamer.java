@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stream;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.exceptions.TransactionFailedException;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Runs queries whose results are too large to be held in memory. The PostgreSQL driver only uses a server side cursor if
+ * auto commit is off and a fetch size is set, otherwise it reads the whole result before returning the first row.
+ *
+ * A streamed query runs in its own read-only transaction on a connection of its own. Rows are fetched in batches, the fetch
+ * size is adjusted to the observed width of the rows so that every batch has about {@link StreamingConfig#getFetchBytes()}
+ * bytes. The returned iterator holds the connection until it is closed or fully consumed, it must always be closed.
+ *
+ * <pre>
+ * final ResultIterator&lt;Row&gt; rows = queryStreamer.stream("SELECT * FROM events WHERE day = :day", ImmutableMap.of("day", day), new RowMapper());
+ * try {
+ *     while (rows.hasNext()) {
+ *         export(rows.next());
+ *     }
+ * }
+ * finally {
+ *     rows.close();
+ * }
+ * </pre>
+ */
+public class QueryStreamer
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String poolName;
+    private final IDBI idbi;
+    private final StreamingConfig streamingConfig;
+
+    public QueryStreamer(final String poolName, final IDBI idbi, final StreamingConfig streamingConfig)
+    {
+        Preconditions.checkArgument(idbi != null, "idbi must not be null!");
+        Preconditions.checkArgument(streamingConfig != null, "streaming config must not be null!");
+        Preconditions.checkArgument(streamingConfig.getMinFetchSize() > 0, "minFetchSize must be at least 1!");
+
+        this.poolName = poolName;
+        this.idbi = idbi;
+        this.streamingConfig = streamingConfig;
+    }
+
+    public <T> StreamingResultIterator<T> stream(final String sql, final ResultSetMapper<T> mapper)
+    {
+        return stream(sql, ImmutableMap.<String, Object>of(), mapper);
+    }
+
+    public <T> StreamingResultIterator<T> stream(final String sql, final Map<String, ? extends Object> arguments, final ResultSetMapper<T> mapper)
+    {
+        final Handle handle = idbi.open();
+        boolean success = false;
+        try {
+            final Connection connection = handle.getConnection();
+            try {
+                // Must be set before the transaction starts.
+                connection.setReadOnly(true);
+            }
+            catch (SQLException e) {
+                throw new TransactionFailedException(String.format("Could not start read-only transaction on %s", poolName), e);
+            }
+            handle.begin();
+
+            final FetchSizeAdjuster adjuster = new FetchSizeAdjuster(streamingConfig);
+            final ResultIterator<T> rows = handle.createQuery(sql)
+                .bindFromMap(arguments)
+                .setFetchSize(adjuster.getFetchSize())
+                .map(new AdaptiveFetchMapper<T>(mapper, adjuster))
+                .iterator();
+
+            LOG.debug("Streaming '%s' on %s", sql, poolName);
+            final StreamingResultIterator<T> result = new StreamingResultIterator<T>(handle, rows, adjuster);
+            success = true;
+            return result;
+        }
+        finally {
+            if (!success) {
+                StreamingResultIterator.release(handle);
+            }
+        }
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stream;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class StreamingConfig
+{
+    /**
+     * Number of rows fetched with the first round trip, before the width of the rows is known.
+     */
+    @Config({"ness.db.${dbName}.streaming.initialFetchSize","ness.db.defaults.streaming.initialFetchSize"})
+    @Default("100")
+    public abstract int getInitialFetchSize();
+
+    /**
+     * Approximate heap size in bytes of the rows fetched with one round trip. The fetch size is adjusted so that a fetch
+     * stays close to this size.
+     */
+    @Config({"ness.db.${dbName}.streaming.fetchBytes","ness.db.defaults.streaming.fetchBytes"})
+    @Default("2097152")
+    public abstract long getFetchBytes();
+
+    @Config({"ness.db.${dbName}.streaming.minFetchSize","ness.db.defaults.streaming.minFetchSize"})
+    @Default("10")
+    public abstract int getMinFetchSize();
+
+    @Config({"ness.db.${dbName}.streaming.maxFetchSize","ness.db.defaults.streaming.maxFetchSize"})
+    @Default("10000")
+    public abstract int getMaxFetchSize();
+}
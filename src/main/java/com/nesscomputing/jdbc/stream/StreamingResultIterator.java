@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stream;
+
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.ResultIterator;
+
+import com.nesscomputing.logging.Log;
+
+/**
+ * Rows of a streamed query. Closing the iterator, or reading its last row, ends the read-only transaction and returns the
+ * connection to the pool.
+ */
+public class StreamingResultIterator<T> implements ResultIterator<T>
+{
+    private static final Log LOG = Log.findLog();
+
+    private final Handle handle;
+    private final ResultIterator<T> rows;
+    private final FetchSizeAdjuster adjuster;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private long rowCount = 0L;
+
+    StreamingResultIterator(final Handle handle, final ResultIterator<T> rows, final FetchSizeAdjuster adjuster)
+    {
+        this.handle = handle;
+        this.rows = rows;
+        this.adjuster = adjuster;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (closed.get()) {
+            return false;
+        }
+        boolean success = false;
+        try {
+            final boolean hasNext = rows.hasNext();
+            success = true;
+            if (!hasNext) {
+                close();
+            }
+            return hasNext;
+        }
+        finally {
+            if (!success) {
+                close();
+            }
+        }
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        boolean success = false;
+        try {
+            final T row = rows.next();
+            rowCount++;
+            success = true;
+            return row;
+        }
+        finally {
+            if (!success) {
+                close();
+            }
+        }
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("rows of a streamed query can not be removed");
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                rows.close();
+            }
+            finally {
+                LOG.debug("Streamed %d rows, last fetch size %d, about %d bytes per row", rowCount, adjuster.getFetchSize(), adjuster.getAverageRowBytes());
+                release(handle);
+            }
+        }
+    }
+
+    public boolean isClosed()
+    {
+        return closed.get();
+    }
+
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getFetchSize()
+    {
+        return adjuster.getFetchSize();
+    }
+
+    /**
+     * Ends the read-only transaction and closes the handle.
+     */
+    static void release(final Handle handle)
+    {
+        try {
+            if (handle.isInTransaction()) {
+                handle.rollback();
+            }
+            handle.getConnection().setReadOnly(false);
+        }
+        catch (SQLException e) {
+            LOG.debug(e, "While resetting streaming connection");
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "While ending streaming transaction");
+        }
+        finally {
+            handle.close();
+        }
+    }
+}
@@ -15,16 +15,25 @@
  */
 package com.nesscomputing.jdbc.wrappers;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.ClientInfoStatus;
 import java.sql.Connection;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Singleton;
 import com.mchange.v2.c3p0.C3P0ProxyConnection;
 import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodWrapper;
+import com.nesscomputing.jdbc.wrappers.ProxyClassCache.ProxyClass;
 import com.nesscomputing.logging.Log;
 
 @Singleton
@@ -32,29 +41,93 @@ public abstract class AbstractC3P0ConnectionWrapper implements Function<Connecti
 {
     private static final Log LOG = Log.findLog();
 
+    private static final Method CREATE_ARRAY_OF;
+    private static final Method GET_CLIENT_INFO_NAME;
+    private static final Method GET_CLIENT_INFO;
+    private static final Method SET_CLIENT_INFO_NAME_VALUE;
+    private static final Method SET_CLIENT_INFO_PROPERTIES;
+
+    /** Methods that the delegate classes know how to intercept. Other methods require the reflective proxy. */
+    private static final Set<Method> DELEGATE_METHODS;
+
+    static {
+        try {
+            CREATE_ARRAY_OF = Connection.class.getMethod("createArrayOf", new Class<?>[] { String.class, Object [].class});
+            GET_CLIENT_INFO_NAME = Connection.class.getMethod("getClientInfo", new Class<?>[] { String.class });
+            GET_CLIENT_INFO = Connection.class.getMethod("getClientInfo", new Class<?>[0]);
+            SET_CLIENT_INFO_NAME_VALUE = Connection.class.getMethod("setClientInfo", new Class<?>[] { String.class, String.class });
+            SET_CLIENT_INFO_PROPERTIES = Connection.class.getMethod("setClientInfo", new Class<?>[] { Properties.class });
+            DELEGATE_METHODS = ImmutableSet.of(CREATE_ARRAY_OF, GET_CLIENT_INFO_NAME, GET_CLIENT_INFO, SET_CLIENT_INFO_NAME_VALUE, SET_CLIENT_INFO_PROPERTIES);
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+    }
+
+    private static final Object [] NO_ARGS = new Object[0];
+
     private final Set<Method> interceptedMethods;
+    private final boolean delegateCapable;
+    private final ProxyClassCache proxyClassCache = new ProxyClassCache();
 
     public AbstractC3P0ConnectionWrapper(final Set<Method> interceptedMethods) throws NoSuchMethodException
     {
         this.interceptedMethods = interceptedMethods;
+        this.delegateCapable = DELEGATE_METHODS.containsAll(interceptedMethods);
+    }
+
+    Set<Method> getInterceptedMethods()
+    {
+        return interceptedMethods;
+    }
+
+    /**
+     * Merges multiple C3P0 connection wrappers into a single wrapper that intercepts the union of all their methods. Applying the
+     * merged wrapper creates a single proxy per connection instead of one per wrapper.
+     */
+    public static AbstractC3P0ConnectionWrapper merge(final Iterable<AbstractC3P0ConnectionWrapper> wrappers)
+    {
+        final ImmutableSet.Builder<Method> methods = ImmutableSet.builder();
+        for (final AbstractC3P0ConnectionWrapper wrapper : wrappers) {
+            methods.addAll(wrapper.getInterceptedMethods());
+        }
+        try {
+            return new MergedC3P0ConnectionWrapper(methods.build());
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new IllegalStateException(nsme);
+        }
     }
 
     /**
      * Returns a proxy for a C3P0 connection. Intercepts {@link java.sql.Connection#createArrayOf(String, Object[])}.
+     *
+     * If the connection is a {@link DelegatingConnection}, a delegate class is returned instead of a proxy, provided that all
+     * intercepted methods are known to the delegate class.
      */
     @Override
     public Connection apply(final Connection connection)
     {
-        return (Connection) Proxy.newProxyInstance(connection.getClass().getClassLoader(),
-                                                   connection.getClass().getInterfaces(),
-                                                   new C3P0ConnectionInvocationHandler(connection));
+        if (delegateCapable && connection instanceof DelegatingConnection) {
+            if (connection instanceof C3P0ProxyConnection) {
+                return new C3P0InterceptingConnection((C3P0ProxyConnection) connection);
+            }
+            else {
+                LOG.warn("No C3P0 pool found, falling back to connection method!");
+                return connection;
+            }
+        }
+
+        // The proxy constructor and the method table are shared between all connections of the same class.
+        final ProxyClass proxyClass = proxyClassCache.forClass(connection.getClass());
+        return (Connection) proxyClass.newInstance(new C3P0ConnectionInvocationHandler(connection, proxyClass.getMethodMap()));
     }
 
     class C3P0ConnectionInvocationHandler extends AbstractProxyInvocationHandler
     {
-        private C3P0ConnectionInvocationHandler(final Connection connection)
+        private C3P0ConnectionInvocationHandler(final Connection connection, final Map<Method, MethodWrapper> methodMap)
         {
-            super(connection);
+            super(connection, methodMap);
         }
 
         @Override
@@ -94,7 +167,7 @@ public abstract class AbstractC3P0ConnectionWrapper implements Function<Connecti
             // If that cast fails, something is very, very wrong anyway...
             final C3P0ProxyConnection proxyConnection = C3P0ProxyConnection.class.cast(proxy);
             return proxyConnection.rawConnectionOperation(method, C3P0ProxyConnection.RAW_CONNECTION,
-                                                          args == null ? new Object[0] : args); // Bug in C3P0 rawConnectionOperation work-around.
+                                                          args == null ? NO_ARGS : args); // Bug in C3P0 rawConnectionOperation work-around.
         }
 
         @Override
@@ -103,4 +176,109 @@ public abstract class AbstractC3P0ConnectionWrapper implements Function<Connecti
             return method.toString();
         }
     }
+
+    /**
+     * Delegate class version of {@link C3P0ConnectionInvocationHandler}. Intercepted methods are executed on the raw
+     * connection, everything else is passed on to the pooled connection.
+     */
+    class C3P0InterceptingConnection extends DelegatingC3P0Connection
+    {
+        private final boolean interceptCreateArrayOf = interceptedMethods.contains(CREATE_ARRAY_OF);
+        private final boolean interceptGetClientInfoName = interceptedMethods.contains(GET_CLIENT_INFO_NAME);
+        private final boolean interceptGetClientInfo = interceptedMethods.contains(GET_CLIENT_INFO);
+        private final boolean interceptSetClientInfoNameValue = interceptedMethods.contains(SET_CLIENT_INFO_NAME_VALUE);
+        private final boolean interceptSetClientInfoProperties = interceptedMethods.contains(SET_CLIENT_INFO_PROPERTIES);
+
+        C3P0InterceptingConnection(final C3P0ProxyConnection proxyConnection)
+        {
+            super(proxyConnection);
+        }
+
+        @Override
+        public Array createArrayOf(final String typeName, final Object[] elements) throws SQLException
+        {
+            if (interceptCreateArrayOf) {
+                return Array.class.cast(rawOperation(CREATE_ARRAY_OF, new Object[] { typeName, elements }));
+            }
+            return super.createArrayOf(typeName, elements);
+        }
+
+        @Override
+        public String getClientInfo(final String name) throws SQLException
+        {
+            if (interceptGetClientInfoName) {
+                return String.class.cast(rawOperation(GET_CLIENT_INFO_NAME, new Object[] { name }));
+            }
+            return super.getClientInfo(name);
+        }
+
+        @Override
+        public Properties getClientInfo() throws SQLException
+        {
+            if (interceptGetClientInfo) {
+                return Properties.class.cast(rawOperation(GET_CLIENT_INFO, new Object[0]));
+            }
+            return super.getClientInfo();
+        }
+
+        @Override
+        public void setClientInfo(final String name, final String value) throws SQLClientInfoException
+        {
+            if (interceptSetClientInfoNameValue) {
+                rawClientInfoOperation(SET_CLIENT_INFO_NAME_VALUE, new Object[] { name, value });
+            }
+            else {
+                super.setClientInfo(name, value);
+            }
+        }
+
+        @Override
+        public void setClientInfo(final Properties properties) throws SQLClientInfoException
+        {
+            if (interceptSetClientInfoProperties) {
+                rawClientInfoOperation(SET_CLIENT_INFO_PROPERTIES, new Object[] { properties });
+            }
+            else {
+                super.setClientInfo(properties);
+            }
+        }
+
+        private Object rawOperation(final Method method, final Object[] args) throws SQLException
+        {
+            try {
+                return rawConnectionOperation(method, C3P0ProxyConnection.RAW_CONNECTION, args);
+            }
+            catch (InvocationTargetException ite) {
+                final Throwable cause = ite.getCause();
+                if (cause instanceof SQLException) {
+                    throw (SQLException) cause;
+                }
+                throw new SQLException(String.format("While invoking '%s'", method), cause);
+            }
+            catch (IllegalAccessException iae) {
+                throw new SQLException(String.format("While invoking '%s'", method), iae);
+            }
+        }
+
+        private void rawClientInfoOperation(final Method method, final Object[] args) throws SQLClientInfoException
+        {
+            try {
+                rawOperation(method, args);
+            }
+            catch (SQLClientInfoException scie) {
+                throw scie;
+            }
+            catch (SQLException sqle) {
+                throw new SQLClientInfoException(sqle.getMessage(), Collections.<String, ClientInfoStatus>emptyMap(), sqle);
+            }
+        }
+    }
+
+    static final class MergedC3P0ConnectionWrapper extends AbstractC3P0ConnectionWrapper
+    {
+        MergedC3P0ConnectionWrapper(final Set<Method> interceptedMethods) throws NoSuchMethodException
+        {
+            super(interceptedMethods);
+        }
+    }
 }
@@ -32,23 +32,35 @@ abstract class AbstractProxyInvocationHandler implements InvocationHandler
     private static final Log LOG = Log.findLog();
 
     /** Marks a non existing method. */
-    protected final MethodHolder DOES_NOT_EXIST = new MethodHolder(null);
+    protected static final MethodHolder DOES_NOT_EXIST = new MethodHolder(null);
 
     /** Marks a method that does not exist but can be ignored. */
-    protected final MethodHolder IGNORE_THIS_METHOD = new MethodHolder(null);
+    protected static final MethodHolder IGNORE_THIS_METHOD = new MethodHolder(null);
 
     /** Map from "proxy method invoked" to "method to invoke". */
-    private final Map<Method, MethodWrapper> methodMap = Maps.newConcurrentMap();
+    private final Map<Method, MethodWrapper> methodMap;
 
     private final Object obj;
     private final Class<?> objectClass;
 
     protected AbstractProxyInvocationHandler(final Object obj)
+    {
+        this(obj, Maps.<Method, MethodWrapper>newConcurrentMap());
+    }
+
+    /**
+     * Creates a handler that uses a method map shared with other handlers. The map must only be shared between handlers of
+     * the same type for objects of the same class, as the method wrappers are resolved against that class.
+     */
+    protected AbstractProxyInvocationHandler(final Object obj, final Map<Method, MethodWrapper> methodMap)
     {
         this.obj = obj;
         this.objectClass = obj.getClass();
+        this.methodMap = methodMap;
 
-        LOG.trace("Set up proxy handler for '%s'", objectClass.getSimpleName());
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Set up proxy handler for '%s'", objectClass.getSimpleName());
+        }
     }
 
     /**
@@ -58,7 +70,9 @@ abstract class AbstractProxyInvocationHandler implements InvocationHandler
      */
     protected Object intercept(final Method method, final Object obj) throws Throwable
     {
-        LOG.trace("Intercepted '%s' on '%s'", method.getName(), obj);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Intercepted '%s' on '%s'", method.getName(), obj);
+        }
         return obj;
     }
 
@@ -68,7 +82,9 @@ abstract class AbstractProxyInvocationHandler implements InvocationHandler
      */
     protected boolean ignore(final Method method)
     {
-        LOG.trace("Accepted '%s'", method.getName());
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Accepted '%s'", method.getName());
+        }
         return false;
     }
 
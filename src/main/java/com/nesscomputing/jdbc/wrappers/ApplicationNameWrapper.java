@@ -26,7 +26,6 @@ import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
-import com.google.common.base.Function;
 import com.google.common.collect.Maps;
 import com.google.inject.Singleton;
 import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodInterceptor;
@@ -37,12 +36,12 @@ import com.nesscomputing.logging.Log;
  * Set the application name in the database connection.
  */
 @Singleton
-public final class ApplicationNameWrapper implements Function<DataSource, DataSource>
+public final class ApplicationNameWrapper implements FusibleDataSourceWrapper
 {
     private static final Log LOG = Log.findLog();
 
     private final Map<Method, MethodInterceptor<Connection>> interceptors = Maps.newHashMap();
-    private final MethodInterceptor<Connection> applicationNameInterceptor = new ApplicationNameInterceptor();
+    private final ApplicationNameInterceptor applicationNameInterceptor = new ApplicationNameInterceptor();
 
     public ApplicationNameWrapper() throws NoSuchMethodException
     {
@@ -53,8 +52,21 @@ public final class ApplicationNameWrapper implements Function<DataSource, DataSo
         interceptors.put(DataSource.class.getMethod("getConnection", new Class<?>[] {String.class, String.class}), applicationNameInterceptor);
     }
 
+    @Override
+    public int getOrder()
+    {
+        return ORDER_APPLICATION_NAME;
+    }
+
+    @Override
+    public Connection interceptConnection(final Connection connection) throws SQLException
+    {
+        return applicationNameInterceptor.intercept(connection);
+    }
+
     /**
      * Returns a proxy for a data source. All methods on the datasource object are passed through the proxy.
+     * A {@link DelegatingDataSource} is wrapped into a delegate class instead.
      */
     @Override
     public DataSource apply(@Nullable final DataSource dataSource)
@@ -62,6 +74,9 @@ public final class ApplicationNameWrapper implements Function<DataSource, DataSo
         if (dataSource == null) {
             return null;
         }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return new ApplicationNameDataSource(dataSource);
+        }
         else {
             return (DataSource) Proxy.newProxyInstance(dataSource.getClass().getClassLoader(),
                                                        dataSource.getClass().getInterfaces(),
@@ -84,12 +99,34 @@ public final class ApplicationNameWrapper implements Function<DataSource, DataSo
         }
     }
 
+    class ApplicationNameDataSource extends DelegatingDataSource
+    {
+        ApplicationNameDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return applicationNameInterceptor.intercept(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return applicationNameInterceptor.intercept(super.getConnection(username, password));
+        }
+    }
+
     /**
      * Intercept calls to getConnection() which returns a {@link java.sql.Connection} object. Use this connection
-     * to set the name of the application on PostgreSQL 9.0 or better.
+     * to set the name of the application on PostgreSQL 9.0 or better. The name is set once per physical connection.
      */
     static class ApplicationNameInterceptor implements MethodInterceptor<Connection>
     {
+        static final String APPLICATION_NAME = "clientinfo:ApplicationName";
+
         private static final AtomicLong ID = new AtomicLong();
         private static final AtomicBoolean BROKEN = new AtomicBoolean(false);
 
@@ -100,14 +137,18 @@ public final class ApplicationNameWrapper implements Function<DataSource, DataSo
                 throw new IllegalStateException("null target in method interceptor");
             }
 
-            final long id = ID.incrementAndGet();
             if (!BROKEN.get()) {
-                try {
-                    connection.setClientInfo("ApplicationName", Long.toString(id));
-                }
-                catch (Exception e) {
-                    LOG.trace(e, "While setting application name");
-                    BROKEN.set(true);
+                final SessionState sessionState = SessionState.forConnection(connection);
+                if (!sessionState.isKnown(APPLICATION_NAME)) {
+                    final String id = Long.toString(ID.incrementAndGet());
+                    try {
+                        connection.setClientInfo("ApplicationName", id);
+                        sessionState.record(connection, APPLICATION_NAME, id);
+                    }
+                    catch (Exception e) {
+                        LOG.trace(e, "While setting application name");
+                        BROKEN.set(true);
+                    }
                 }
             }
             return connection;
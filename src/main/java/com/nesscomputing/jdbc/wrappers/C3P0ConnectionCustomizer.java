@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.sql.Connection;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+import com.mchange.v2.c3p0.AbstractConnectionCustomizer;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+
+/**
+ * Set as <code>connectionCustomizerClassName</code> of C3P0 pools unless the pool configuration already names a customizer.
+ *
+ * <ul>
+ * <li>Drops the statement cache of a physical connection when C3P0 destroys the connection.</li>
+ * <li>Records the hold time of every checkout in the {@link PoolStatistics} that are registered for the pool, without
+ * putting another layer around the checked out connection.</li>
+ * </ul>
+ *
+ * C3P0 creates the customizer itself, so pools are told apart by the identity token of the pooled data source.
+ */
+public class C3P0ConnectionCustomizer extends AbstractConnectionCustomizer
+{
+    /** Identity token of the pooled data source to its statistics. */
+    private static final ConcurrentMap<String, PoolStatistics> STATISTICS = new MapMaker().makeMap();
+
+    /** Physical connection to the time it was checked out. The weak keys only provide identity comparison. */
+    private static final ConcurrentMap<Object, Long> CHECKOUT_NANOS = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Records the hold times of a C3P0 pool in the given statistics.
+     */
+    public static void register(final String identityToken, final PoolStatistics statistics)
+    {
+        STATISTICS.put(identityToken, statistics);
+    }
+
+    public static void unregister(final String identityToken)
+    {
+        STATISTICS.remove(identityToken);
+    }
+
+    @Override
+    public void onCheckOut(final Connection connection, final String parentDataSourceIdentityToken)
+    {
+        if (STATISTICS.containsKey(parentDataSourceIdentityToken)) {
+            CHECKOUT_NANOS.put(connection, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onCheckIn(final Connection connection, final String parentDataSourceIdentityToken)
+    {
+        final Long checkoutNanos = CHECKOUT_NANOS.remove(connection);
+        final PoolStatistics statistics = STATISTICS.get(parentDataSourceIdentityToken);
+        if (checkoutNanos != null && statistics != null) {
+            statistics.recordHoldTime(System.nanoTime() - checkoutNanos);
+        }
+    }
+
+    @Override
+    public void onDestroy(final Connection connection, final String parentDataSourceIdentityToken)
+    {
+        CHECKOUT_NANOS.remove(connection);
+        StatementCache.remove(connection);
+    }
+}
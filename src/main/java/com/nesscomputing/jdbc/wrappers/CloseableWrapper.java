@@ -16,14 +16,16 @@
 package com.nesscomputing.jdbc.wrappers;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.sql.Connection;
 import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
-import com.google.common.base.Function;
 import com.google.common.collect.Sets;
 import com.google.inject.Singleton;
 
@@ -32,7 +34,7 @@ import com.google.inject.Singleton;
  * Fakes "closeable" on all datasources and acts on it accordingly.
  */
 @Singleton
-public final class CloseableWrapper implements Function<DataSource, DataSource>
+public final class CloseableWrapper implements FusibleDataSourceWrapper
 {
     private final Method closeableCloseMethod;
 
@@ -41,6 +43,21 @@ public final class CloseableWrapper implements Function<DataSource, DataSource>
         this.closeableCloseMethod = Closeable.class.getMethod("close", new Class<?>[0]);
     }
 
+    @Override
+    public int getOrder()
+    {
+        return ORDER_CLOSEABLE;
+    }
+
+    /**
+     * Does not touch connections. When fused, the fused layer implements {@link java.io.Closeable} instead.
+     */
+    @Override
+    public Connection interceptConnection(final Connection connection)
+    {
+        return connection;
+    }
+
     /**
      * Returns a proxy for a data source. All methods on the datasource object are passed through the proxy. In addition, the
      * DataSource also implements {@link java.io.Closeable}.
@@ -51,6 +68,9 @@ public final class CloseableWrapper implements Function<DataSource, DataSource>
         if (dataSource == null) {
             return null;
         }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return new CloseableDataSource(dataSource);
+        }
         else {
 
             Set<Class<?>> interfaces = Sets.newHashSet(dataSource.getClass().getInterfaces());
@@ -91,4 +111,50 @@ public final class CloseableWrapper implements Function<DataSource, DataSource>
             }
         }
     }
+
+    /**
+     * Delegate class version of {@link CloseableInvocationHandler}. The close method of the innermost data source is
+     * looked up once, when the wrapper is created.
+     */
+    static class CloseableDataSource extends DelegatingDataSource implements Closeable
+    {
+        private final DataSource target;
+        private final Method closeMethod;
+
+        CloseableDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+            this.target = unwrapAll(dataSource);
+            this.closeMethod = findCloseMethod(target);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (target instanceof Closeable) {
+                ((Closeable) target).close();
+            }
+            else if (closeMethod != null) {
+                try {
+                    closeMethod.invoke(target);
+                }
+                catch (InvocationTargetException ite) {
+                    throw new IOException(ite.getCause());
+                }
+                catch (IllegalAccessException iae) {
+                    throw new IOException(iae);
+                }
+            }
+        }
+
+        private static Method findCloseMethod(final DataSource dataSource)
+        {
+            try {
+                return dataSource.getClass().getMethod("close", new Class<?>[0]);
+            }
+            catch (NoSuchMethodException nsme) {
+                return null;
+            }
+        }
+    }
 }
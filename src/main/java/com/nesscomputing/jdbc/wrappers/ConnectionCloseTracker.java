@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+
+/**
+ * Wraps checked out connections to run a callback when they are closed for the first time. Delegating connections get a
+ * delegate class, all other connections a proxy.
+ */
+final class ConnectionCloseTracker
+{
+    private final ProxyClassCache proxyClassCache = new ProxyClassCache();
+
+    Connection track(final Connection connection, final Runnable onClose)
+    {
+        if (connection instanceof DelegatingConnection) {
+            if (connection instanceof C3P0ProxyConnection) {
+                return new CloseTrackingC3P0Connection((C3P0ProxyConnection) connection, onClose);
+            }
+            return new CloseTrackingConnection(connection, onClose);
+        }
+        else {
+            return (Connection) proxyClassCache.forClass(connection.getClass()).newInstance(new CloseTrackingInvocationHandler(connection, onClose));
+        }
+    }
+
+    static class CloseTrackingConnection extends DelegatingConnection
+    {
+        private final Runnable onClose;
+        private boolean closed = false;
+
+        CloseTrackingConnection(final Connection connection, final Runnable onClose)
+        {
+            super(connection);
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            if (!closed) {
+                closed = true;
+                onClose.run();
+            }
+            super.close();
+        }
+    }
+
+    static class CloseTrackingC3P0Connection extends DelegatingC3P0Connection
+    {
+        private final Runnable onClose;
+        private boolean closed = false;
+
+        CloseTrackingC3P0Connection(final C3P0ProxyConnection connection, final Runnable onClose)
+        {
+            super(connection);
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            if (!closed) {
+                closed = true;
+                onClose.run();
+            }
+            super.close();
+        }
+    }
+
+    static class CloseTrackingInvocationHandler implements InvocationHandler
+    {
+        private final Connection connection;
+        private final Runnable onClose;
+        private boolean closed = false;
+
+        CloseTrackingInvocationHandler(final Connection connection, final Runnable onClose)
+        {
+            this.connection = connection;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+        {
+            if (!closed && "close".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                closed = true;
+                onClose.run();
+            }
+
+            try {
+                return method.invoke(connection, args);
+            }
+            catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+    }
+}
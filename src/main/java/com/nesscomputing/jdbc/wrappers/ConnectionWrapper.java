@@ -20,6 +20,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -28,6 +29,7 @@ import javax.sql.DataSource;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Binding;
 import com.google.inject.Inject;
@@ -35,19 +37,26 @@ import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
+import com.nesscomputing.jdbc.stats.LeakDetector;
 import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodInterceptor;
 
 
 /**
  * Adds wrappers to all handed out connections. These in turn can be wrapped into other interceptors.
+ *
+ * If a {@link LeakDetector} is bound for the pool and enabled, every handed out connection is registered with it until it is
+ * closed.
  */
 @Singleton
-public final class ConnectionWrapper implements Function<DataSource, DataSource>
+public final class ConnectionWrapper implements FusibleDataSourceWrapper
 {
     private final Map<Method, MethodInterceptor<Connection>> interceptors = Maps.newHashMap();
     private final Annotation annotation;
 
+    private final ConnectionCloseTracker closeTracker = new ConnectionCloseTracker();
+
     private Function<Connection, Connection> connectionWrapper = Functions.identity();
+    private LeakDetector leakDetector = null;
 
     public ConnectionWrapper(final Annotation annotation)
     {
@@ -71,15 +80,62 @@ public final class ConnectionWrapper implements Function<DataSource, DataSource>
     {
         final Binding<Set<Function<Connection, Connection>>> connectionBindings = injector.getExistingBinding(Key.get(new TypeLiteral<Set<Function<Connection, Connection>>> () { }, annotation));
         if (connectionBindings != null) {
+            // All C3P0 wrappers are merged into one, so that every connection gets only a single proxy for all of them.
+            final List<AbstractC3P0ConnectionWrapper> c3p0Wrappers = Lists.newArrayList();
             for (Function<Connection, Connection> fn : connectionBindings.getProvider().get()) {
-                connectionWrapper = Functions.compose(connectionWrapper, fn);
+                if (fn instanceof AbstractC3P0ConnectionWrapper) {
+                    c3p0Wrappers.add((AbstractC3P0ConnectionWrapper) fn);
+                }
+                else {
+                    connectionWrapper = Functions.compose(connectionWrapper, fn);
+                }
+            }
+            if (!c3p0Wrappers.isEmpty()) {
+                connectionWrapper = Functions.compose(connectionWrapper, AbstractC3P0ConnectionWrapper.merge(c3p0Wrappers));
             }
         }
+
+        final Binding<LeakDetector> leakDetectorBinding = injector.getExistingBinding(Key.get(LeakDetector.class, annotation));
+        if (leakDetectorBinding != null) {
+            leakDetector = leakDetectorBinding.getProvider().get();
+        }
+    }
+
+    private Connection wrapConnection(final Connection connection)
+    {
+        final Connection c = connectionWrapper.apply(connection);
+        if (leakDetector == null || !leakDetector.isEnabled()) {
+            return c;
+        }
+
+        final LeakDetector.Checkout checkout = leakDetector.checkout();
+        return closeTracker.track(c, new Runnable() {
+            @Override
+            public void run()
+            {
+                leakDetector.checkin(checkout);
+            }
+        });
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return ORDER_CONNECTION_WRAPPER;
+    }
+
+    @Override
+    public Connection interceptConnection(final Connection connection) throws SQLException
+    {
+        return wrapConnection(connection);
     }
 
     /**
      * Returns a proxy for a data source. All methods on the datasource object are passed through the proxy. In addition, the
      * DataSource also implements {@link java.io.Closeable}.
+     *
+     * A {@link DelegatingDataSource} is wrapped into a delegate class instead. All connections handed out by it are
+     * {@link DelegatingConnection}s, so the connection wrappers can use their delegate classes as well.
      */
     @Override
     public DataSource apply(@Nullable final DataSource dataSource)
@@ -87,6 +143,9 @@ public final class ConnectionWrapper implements Function<DataSource, DataSource>
         if (dataSource == null) {
             return null;
         }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return new ConnectionWrapperDataSource(dataSource);
+        }
         else {
             return (DataSource) Proxy.newProxyInstance(dataSource.getClass().getClassLoader(),
                                                        dataSource.getClass().getInterfaces(),
@@ -109,6 +168,34 @@ public final class ConnectionWrapper implements Function<DataSource, DataSource>
         }
     }
 
+    class ConnectionWrapperDataSource extends DelegatingDataSource
+    {
+        ConnectionWrapperDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return wrap(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return wrap(super.getConnection(username, password));
+        }
+
+        private Connection wrap(final Connection connection)
+        {
+            if (connection == null) {
+                throw new IllegalStateException("null connection from data source");
+            }
+            return wrapConnection(DelegatingConnection.forConnection(connection));
+        }
+    }
+
     /**
      * Wrap a connection object by applying all the wrappers.
      */
@@ -123,7 +210,7 @@ public final class ConnectionWrapper implements Function<DataSource, DataSource>
                 throw new IllegalStateException("null target in method interceptor");
             }
 
-            return connectionWrapper.apply(c);
+            return wrapConnection(c);
         }
     }
 }
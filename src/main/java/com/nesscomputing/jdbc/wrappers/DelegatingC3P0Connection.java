@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+
+/**
+ * Delegating connection for a pooled C3P0 connection. Keeps the {@link C3P0ProxyConnection} interface visible so that
+ * wrappers further out can still reach the raw connection.
+ */
+public class DelegatingC3P0Connection extends DelegatingConnection implements C3P0ProxyConnection
+{
+    private final C3P0ProxyConnection proxyConnection;
+
+    public DelegatingC3P0Connection(final C3P0ProxyConnection proxyConnection)
+    {
+        super(proxyConnection);
+        this.proxyConnection = proxyConnection;
+    }
+
+    @Override
+    public Object rawConnectionOperation(final Method method, final Object target, final Object[] args)
+        throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, SQLException
+    {
+        return proxyConnection.rawConnectionOperation(method, target, args);
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import com.google.common.base.Preconditions;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+
+/**
+ * A connection that passes all calls on to a delegate. Wrappers in delegate mode extend this class and
+ * override only the methods they intercept; everything else is a plain virtual call instead of the reflective
+ * dispatch done by {@link AbstractProxyInvocationHandler}.
+ */
+public class DelegatingConnection implements Connection
+{
+    private final Connection delegate;
+
+    public DelegatingConnection(final Connection delegate)
+    {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null!");
+        this.delegate = delegate;
+    }
+
+    /**
+     * Wraps a connection into a delegating connection. C3P0 connections keep their
+     * {@link C3P0ProxyConnection} interface so that raw connection operations are still possible.
+     */
+    public static DelegatingConnection forConnection(final Connection connection)
+    {
+        if (connection instanceof DelegatingConnection) {
+            return (DelegatingConnection) connection;
+        }
+        else if (connection instanceof C3P0ProxyConnection) {
+            return new DelegatingC3P0Connection((C3P0ProxyConnection) connection);
+        }
+        else {
+            return new DelegatingConnection(connection);
+        }
+    }
+
+    /**
+     * Returns the connection that all calls are passed to.
+     */
+    public Connection getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return getDelegate().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this) || getDelegate().isWrapperFor(iface);
+    }
+
+    @Override
+    public void abort(final Executor executor) throws SQLException
+    {
+        getDelegate().abort(executor);
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException
+    {
+        getDelegate().clearWarnings();
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        getDelegate().close();
+    }
+
+    @Override
+    public void commit() throws SQLException
+    {
+        getDelegate().commit();
+    }
+
+    @Override
+    public Array createArrayOf(final String typeName, final Object[] elements) throws SQLException
+    {
+        return getDelegate().createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException
+    {
+        return getDelegate().createBlob();
+    }
+
+    @Override
+    public Clob createClob() throws SQLException
+    {
+        return getDelegate().createClob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException
+    {
+        return getDelegate().createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException
+    {
+        return getDelegate().createSQLXML();
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException
+    {
+        return getDelegate().createStatement();
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException
+    {
+        return getDelegate().createStatement(resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException
+    {
+        return getDelegate().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public Struct createStruct(final String typeName, final Object[] attributes) throws SQLException
+    {
+        return getDelegate().createStruct(typeName, attributes);
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException
+    {
+        return getDelegate().getAutoCommit();
+    }
+
+    @Override
+    public String getCatalog() throws SQLException
+    {
+        return getDelegate().getCatalog();
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException
+    {
+        return getDelegate().getClientInfo();
+    }
+
+    @Override
+    public String getClientInfo(final String name) throws SQLException
+    {
+        return getDelegate().getClientInfo(name);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException
+    {
+        return getDelegate().getHoldability();
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException
+    {
+        return getDelegate().getMetaData();
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException
+    {
+        return getDelegate().getNetworkTimeout();
+    }
+
+    @Override
+    public String getSchema() throws SQLException
+    {
+        return getDelegate().getSchema();
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException
+    {
+        return getDelegate().getTransactionIsolation();
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException
+    {
+        return getDelegate().getTypeMap();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException
+    {
+        return getDelegate().getWarnings();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException
+    {
+        return getDelegate().isClosed();
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException
+    {
+        return getDelegate().isReadOnly();
+    }
+
+    @Override
+    public boolean isValid(final int timeout) throws SQLException
+    {
+        return getDelegate().isValid(timeout);
+    }
+
+    @Override
+    public String nativeSQL(final String sql) throws SQLException
+    {
+        return getDelegate().nativeSQL(sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql) throws SQLException
+    {
+        return getDelegate().prepareCall(sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException
+    {
+        return getDelegate().prepareCall(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException
+    {
+        return getDelegate().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException
+    {
+        return getDelegate().prepareStatement(sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException
+    {
+        return getDelegate().prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException
+    {
+        return getDelegate().prepareStatement(sql, columnIndexes);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException
+    {
+        return getDelegate().prepareStatement(sql, columnNames);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException
+    {
+        return getDelegate().prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException
+    {
+        return getDelegate().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public void releaseSavepoint(final Savepoint savepoint) throws SQLException
+    {
+        getDelegate().releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public void rollback() throws SQLException
+    {
+        getDelegate().rollback();
+    }
+
+    @Override
+    public void rollback(final Savepoint savepoint) throws SQLException
+    {
+        getDelegate().rollback(savepoint);
+    }
+
+    @Override
+    public void setAutoCommit(final boolean autoCommit) throws SQLException
+    {
+        getDelegate().setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public void setCatalog(final String catalog) throws SQLException
+    {
+        getDelegate().setCatalog(catalog);
+    }
+
+    @Override
+    public void setClientInfo(final Properties properties) throws SQLClientInfoException
+    {
+        getDelegate().setClientInfo(properties);
+    }
+
+    @Override
+    public void setClientInfo(final String name, final String value) throws SQLClientInfoException
+    {
+        getDelegate().setClientInfo(name, value);
+    }
+
+    @Override
+    public void setHoldability(final int holdability) throws SQLException
+    {
+        getDelegate().setHoldability(holdability);
+    }
+
+    @Override
+    public void setNetworkTimeout(final Executor executor, final int milliseconds) throws SQLException
+    {
+        getDelegate().setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public void setReadOnly(final boolean readOnly) throws SQLException
+    {
+        getDelegate().setReadOnly(readOnly);
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException
+    {
+        return getDelegate().setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(final String name) throws SQLException
+    {
+        return getDelegate().setSavepoint(name);
+    }
+
+    @Override
+    public void setSchema(final String schema) throws SQLException
+    {
+        getDelegate().setSchema(schema);
+    }
+
+    @Override
+    public void setTransactionIsolation(final int level) throws SQLException
+    {
+        getDelegate().setTransactionIsolation(level);
+    }
+
+    @Override
+    public void setTypeMap(final Map<String, Class<?>> map) throws SQLException
+    {
+        getDelegate().setTypeMap(map);
+    }
+
+    @Override
+    public String toString()
+    {
+        return getDelegate().toString();
+    }
+}
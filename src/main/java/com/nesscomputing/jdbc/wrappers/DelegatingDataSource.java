@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A data source that passes all calls on to a delegate. Wrappers in delegate mode extend this class and
+ * override only the methods they intercept; everything else is a plain virtual call instead of the reflective
+ * dispatch done by {@link AbstractProxyInvocationHandler}.
+ *
+ * Unlike a proxy, a delegating data source only exposes the {@link DataSource} interface. Pool specific interfaces
+ * of the wrapped object are not visible and must be reached through {@link #getDelegate()}.
+ */
+public class DelegatingDataSource implements DataSource
+{
+    private final DataSource delegate;
+
+    public DelegatingDataSource(final DataSource delegate)
+    {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null!");
+        this.delegate = delegate;
+    }
+
+    public DataSource getDelegate()
+    {
+        return delegate;
+    }
+
+    /**
+     * Returns the innermost data source, skipping all delegating layers.
+     */
+    public static DataSource unwrapAll(final DataSource dataSource)
+    {
+        DataSource ds = dataSource;
+        while (ds instanceof DelegatingDataSource) {
+            ds = ((DelegatingDataSource) ds).getDelegate();
+        }
+        return ds;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        return delegate.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException
+    {
+        return delegate.getConnection(username, password);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException
+    {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) throws SQLException
+    {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) throws SQLException
+    {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException
+    {
+        return delegate.getLoginTimeout();
+    }
+
+    /**
+     * Data sources written against JDBC 3, like the C3P0 pool, do not implement the JDBC 4 methods. Calling them on such an object
+     * throws an {@link AbstractMethodError}, which the methods below turn into the answer of a data source that wraps nothing.
+     */
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        try {
+            return delegate.getParentLogger();
+        }
+        catch (AbstractMethodError e) {
+            throw new SQLFeatureNotSupportedException("getParentLogger is not supported by " + delegate.getClass().getName());
+        }
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        final DataSource target = unwrapAll(this);
+        if (iface.isInstance(target)) {
+            return iface.cast(target);
+        }
+        try {
+            return target.unwrap(iface);
+        }
+        catch (AbstractMethodError e) {
+            throw new SQLException(String.format("%s does not wrap %s", target.getClass().getName(), iface.getName()));
+        }
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return true;
+        }
+        final DataSource target = unwrapAll(this);
+        if (iface.isInstance(target)) {
+            return true;
+        }
+        try {
+            return target.isWrapperFor(iface);
+        }
+        catch (AbstractMethodError e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return delegate.toString();
+    }
+}
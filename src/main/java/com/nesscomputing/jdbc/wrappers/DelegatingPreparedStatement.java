@@ -0,0 +1,660 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A prepared statement that passes all calls on to a delegate. Subclasses override only the methods they intercept.
+ */
+public class DelegatingPreparedStatement implements PreparedStatement
+{
+    private final PreparedStatement delegate;
+
+    public DelegatingPreparedStatement(final PreparedStatement delegate)
+    {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null!");
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the statement that all calls are passed to.
+     */
+    public PreparedStatement getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public void addBatch() throws SQLException
+    {
+        getDelegate().addBatch();
+    }
+
+    @Override
+    public void addBatch(final String sql) throws SQLException
+    {
+        getDelegate().addBatch(sql);
+    }
+
+    @Override
+    public void cancel() throws SQLException
+    {
+        getDelegate().cancel();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException
+    {
+        getDelegate().clearBatch();
+    }
+
+    @Override
+    public void clearParameters() throws SQLException
+    {
+        getDelegate().clearParameters();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException
+    {
+        getDelegate().clearWarnings();
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        getDelegate().close();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException
+    {
+        getDelegate().closeOnCompletion();
+    }
+
+    @Override
+    public boolean execute() throws SQLException
+    {
+        return getDelegate().execute();
+    }
+
+    @Override
+    public boolean execute(final String sql) throws SQLException
+    {
+        return getDelegate().execute(sql);
+    }
+
+    @Override
+    public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException
+    {
+        return getDelegate().execute(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public boolean execute(final String sql, final int[] columnIndexes) throws SQLException
+    {
+        return getDelegate().execute(sql, columnIndexes);
+    }
+
+    @Override
+    public boolean execute(final String sql, final String[] columnNames) throws SQLException
+    {
+        return getDelegate().execute(sql, columnNames);
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException
+    {
+        return getDelegate().executeBatch();
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException
+    {
+        return getDelegate().executeQuery();
+    }
+
+    @Override
+    public ResultSet executeQuery(final String sql) throws SQLException
+    {
+        return getDelegate().executeQuery(sql);
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException
+    {
+        return getDelegate().executeUpdate();
+    }
+
+    @Override
+    public int executeUpdate(final String sql) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql, columnIndexes);
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final String[] columnNames) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql, columnNames);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        return getDelegate().getConnection();
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException
+    {
+        return getDelegate().getFetchDirection();
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException
+    {
+        return getDelegate().getFetchSize();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException
+    {
+        return getDelegate().getGeneratedKeys();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException
+    {
+        return getDelegate().getMaxFieldSize();
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException
+    {
+        return getDelegate().getMaxRows();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException
+    {
+        return getDelegate().getMetaData();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException
+    {
+        return getDelegate().getMoreResults();
+    }
+
+    @Override
+    public boolean getMoreResults(final int current) throws SQLException
+    {
+        return getDelegate().getMoreResults(current);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException
+    {
+        return getDelegate().getParameterMetaData();
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException
+    {
+        return getDelegate().getQueryTimeout();
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException
+    {
+        return getDelegate().getResultSet();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException
+    {
+        return getDelegate().getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException
+    {
+        return getDelegate().getResultSetHoldability();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException
+    {
+        return getDelegate().getResultSetType();
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException
+    {
+        return getDelegate().getUpdateCount();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException
+    {
+        return getDelegate().getWarnings();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException
+    {
+        return getDelegate().isCloseOnCompletion();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException
+    {
+        return getDelegate().isClosed();
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException
+    {
+        return getDelegate().isPoolable();
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this) || getDelegate().isWrapperFor(iface);
+    }
+
+    @Override
+    public void setArray(final int parameterIndex, final Array x) throws SQLException
+    {
+        getDelegate().setArray(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream inputStream) throws SQLException
+    {
+        getDelegate().setAsciiStream(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream inputStream, final int length) throws SQLException
+    {
+        getDelegate().setAsciiStream(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException
+    {
+        getDelegate().setAsciiStream(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException
+    {
+        getDelegate().setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream inputStream) throws SQLException
+    {
+        getDelegate().setBinaryStream(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream inputStream, final int length) throws SQLException
+    {
+        getDelegate().setBinaryStream(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException
+    {
+        getDelegate().setBinaryStream(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final InputStream inputStream) throws SQLException
+    {
+        getDelegate().setBlob(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final Blob x) throws SQLException
+    {
+        getDelegate().setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException
+    {
+        getDelegate().setBlob(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setBoolean(final int parameterIndex, final boolean x) throws SQLException
+    {
+        getDelegate().setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(final int parameterIndex, final byte x) throws SQLException
+    {
+        getDelegate().setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(final int parameterIndex, final byte[] x) throws SQLException
+    {
+        getDelegate().setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader) throws SQLException
+    {
+        getDelegate().setCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final int length) throws SQLException
+    {
+        getDelegate().setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final long length) throws SQLException
+    {
+        getDelegate().setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Reader reader) throws SQLException
+    {
+        getDelegate().setClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Clob x) throws SQLException
+    {
+        getDelegate().setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Reader reader, final long length) throws SQLException
+    {
+        getDelegate().setClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setCursorName(final String name) throws SQLException
+    {
+        getDelegate().setCursorName(name);
+    }
+
+    @Override
+    public void setDate(final int parameterIndex, final Date x) throws SQLException
+    {
+        getDelegate().setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(final int parameterIndex, final Date x, final Calendar cal) throws SQLException
+    {
+        getDelegate().setDate(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setDouble(final int parameterIndex, final double x) throws SQLException
+    {
+        getDelegate().setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setEscapeProcessing(final boolean enable) throws SQLException
+    {
+        getDelegate().setEscapeProcessing(enable);
+    }
+
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException
+    {
+        getDelegate().setFetchDirection(direction);
+    }
+
+    @Override
+    public void setFetchSize(final int rows) throws SQLException
+    {
+        getDelegate().setFetchSize(rows);
+    }
+
+    @Override
+    public void setFloat(final int parameterIndex, final float x) throws SQLException
+    {
+        getDelegate().setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(final int parameterIndex, final int x) throws SQLException
+    {
+        getDelegate().setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(final int parameterIndex, final long x) throws SQLException
+    {
+        getDelegate().setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setMaxFieldSize(final int max) throws SQLException
+    {
+        getDelegate().setMaxFieldSize(max);
+    }
+
+    @Override
+    public void setMaxRows(final int max) throws SQLException
+    {
+        getDelegate().setMaxRows(max);
+    }
+
+    @Override
+    public void setNCharacterStream(final int parameterIndex, final Reader reader) throws SQLException
+    {
+        getDelegate().setNCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(final int parameterIndex, final Reader reader, final long length) throws SQLException
+    {
+        getDelegate().setNCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final Reader reader) throws SQLException
+    {
+        getDelegate().setNClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final NClob x) throws SQLException
+    {
+        getDelegate().setNClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final Reader reader, final long length) throws SQLException
+    {
+        getDelegate().setNClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setNString(final int parameterIndex, final String x) throws SQLException
+    {
+        getDelegate().setNString(parameterIndex, x);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType) throws SQLException
+    {
+        getDelegate().setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException
+    {
+        getDelegate().setNull(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x) throws SQLException
+    {
+        getDelegate().setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType) throws SQLException
+    {
+        getDelegate().setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType, final int scaleOrLength) throws SQLException
+    {
+        getDelegate().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setPoolable(final boolean poolable) throws SQLException
+    {
+        getDelegate().setPoolable(poolable);
+    }
+
+    @Override
+    public void setQueryTimeout(final int seconds) throws SQLException
+    {
+        getDelegate().setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void setRef(final int parameterIndex, final Ref x) throws SQLException
+    {
+        getDelegate().setRef(parameterIndex, x);
+    }
+
+    @Override
+    public void setRowId(final int parameterIndex, final RowId x) throws SQLException
+    {
+        getDelegate().setRowId(parameterIndex, x);
+    }
+
+    @Override
+    public void setSQLXML(final int parameterIndex, final SQLXML x) throws SQLException
+    {
+        getDelegate().setSQLXML(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(final int parameterIndex, final short x) throws SQLException
+    {
+        getDelegate().setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(final int parameterIndex, final String x) throws SQLException
+    {
+        getDelegate().setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(final int parameterIndex, final Time x) throws SQLException
+    {
+        getDelegate().setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(final int parameterIndex, final Time x, final Calendar cal) throws SQLException
+    {
+        getDelegate().setTime(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException
+    {
+        getDelegate().setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x, final Calendar cal) throws SQLException
+    {
+        getDelegate().setTimestamp(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setURL(final int parameterIndex, final URL x) throws SQLException
+    {
+        getDelegate().setURL(parameterIndex, x);
+    }
+
+    @Override
+    public void setUnicodeStream(final int parameterIndex, final InputStream inputStream, final int length) throws SQLException
+    {
+        getDelegate().setUnicodeStream(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return getDelegate().unwrap(iface);
+    }
+}
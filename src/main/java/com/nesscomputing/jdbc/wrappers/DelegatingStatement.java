@@ -0,0 +1,313 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A statement that passes all calls on to a delegate. Subclasses override only the methods they intercept.
+ */
+public class DelegatingStatement implements Statement
+{
+    private final Statement delegate;
+
+    public DelegatingStatement(final Statement delegate)
+    {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null!");
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the statement that all calls are passed to.
+     */
+    public Statement getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public void addBatch(final String sql) throws SQLException
+    {
+        getDelegate().addBatch(sql);
+    }
+
+    @Override
+    public void cancel() throws SQLException
+    {
+        getDelegate().cancel();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException
+    {
+        getDelegate().clearBatch();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException
+    {
+        getDelegate().clearWarnings();
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        getDelegate().close();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException
+    {
+        getDelegate().closeOnCompletion();
+    }
+
+    @Override
+    public boolean execute(final String sql) throws SQLException
+    {
+        return getDelegate().execute(sql);
+    }
+
+    @Override
+    public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException
+    {
+        return getDelegate().execute(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public boolean execute(final String sql, final int[] columnIndexes) throws SQLException
+    {
+        return getDelegate().execute(sql, columnIndexes);
+    }
+
+    @Override
+    public boolean execute(final String sql, final String[] columnNames) throws SQLException
+    {
+        return getDelegate().execute(sql, columnNames);
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException
+    {
+        return getDelegate().executeBatch();
+    }
+
+    @Override
+    public ResultSet executeQuery(final String sql) throws SQLException
+    {
+        return getDelegate().executeQuery(sql);
+    }
+
+    @Override
+    public int executeUpdate(final String sql) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql, columnIndexes);
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final String[] columnNames) throws SQLException
+    {
+        return getDelegate().executeUpdate(sql, columnNames);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        return getDelegate().getConnection();
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException
+    {
+        return getDelegate().getFetchDirection();
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException
+    {
+        return getDelegate().getFetchSize();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException
+    {
+        return getDelegate().getGeneratedKeys();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException
+    {
+        return getDelegate().getMaxFieldSize();
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException
+    {
+        return getDelegate().getMaxRows();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException
+    {
+        return getDelegate().getMoreResults();
+    }
+
+    @Override
+    public boolean getMoreResults(final int current) throws SQLException
+    {
+        return getDelegate().getMoreResults(current);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException
+    {
+        return getDelegate().getQueryTimeout();
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException
+    {
+        return getDelegate().getResultSet();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException
+    {
+        return getDelegate().getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException
+    {
+        return getDelegate().getResultSetHoldability();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException
+    {
+        return getDelegate().getResultSetType();
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException
+    {
+        return getDelegate().getUpdateCount();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException
+    {
+        return getDelegate().getWarnings();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException
+    {
+        return getDelegate().isCloseOnCompletion();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException
+    {
+        return getDelegate().isClosed();
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException
+    {
+        return getDelegate().isPoolable();
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this) || getDelegate().isWrapperFor(iface);
+    }
+
+    @Override
+    public void setCursorName(final String name) throws SQLException
+    {
+        getDelegate().setCursorName(name);
+    }
+
+    @Override
+    public void setEscapeProcessing(final boolean enable) throws SQLException
+    {
+        getDelegate().setEscapeProcessing(enable);
+    }
+
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException
+    {
+        getDelegate().setFetchDirection(direction);
+    }
+
+    @Override
+    public void setFetchSize(final int rows) throws SQLException
+    {
+        getDelegate().setFetchSize(rows);
+    }
+
+    @Override
+    public void setMaxFieldSize(final int max) throws SQLException
+    {
+        getDelegate().setMaxFieldSize(max);
+    }
+
+    @Override
+    public void setMaxRows(final int max) throws SQLException
+    {
+        getDelegate().setMaxRows(max);
+    }
+
+    @Override
+    public void setPoolable(final boolean poolable) throws SQLException
+    {
+        getDelegate().setPoolable(poolable);
+    }
+
+    @Override
+    public void setQueryTimeout(final int seconds) throws SQLException
+    {
+        getDelegate().setQueryTimeout(seconds);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return getDelegate().unwrap(iface);
+    }
+}
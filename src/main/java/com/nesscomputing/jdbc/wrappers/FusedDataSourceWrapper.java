@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodWrapper;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Merges all DataSource wrappers of a pool into a single dispatch layer.
+ *
+ * <ul>
+ * <li>All {@link FusibleDataSourceWrapper}s are combined into one proxy (or one delegate class if the data source is a
+ * {@link DelegatingDataSource}). A call to getConnection() passes through this layer once and then runs the connection through
+ * all wrappers, ordered by {@link FusibleDataSourceWrapper#getOrder()}.</li>
+ * <li>All other wrappers are applied on top of the fused layer in the order in which they are passed in, each one wrapping the
+ * result of the previous one.</li>
+ * </ul>
+ *
+ * If {@link PoolStatistics} are given, the fused layer also records the checkout wait time and checkout failures. The time each
+ * connection is held until it is closed is recorded by the pool (the native pool, or C3P0 through the
+ * {@link C3P0ConnectionCustomizer}). For other pools, it is recorded in delegate mode by the delegating connection that the fused
+ * layer puts around every checked out connection anyway. In proxy mode, no extra layer is added for this.
+ */
+public final class FusedDataSourceWrapper implements Function<DataSource, DataSource>
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final Comparator<FusibleDataSourceWrapper> ORDER_COMPARATOR = new Comparator<FusibleDataSourceWrapper>() {
+        @Override
+        public int compare(final FusibleDataSourceWrapper w1, final FusibleDataSourceWrapper w2)
+        {
+            if (w1.getOrder() != w2.getOrder()) {
+                return w1.getOrder() < w2.getOrder() ? -1 : 1;
+            }
+            return w1.getClass().getName().compareTo(w2.getClass().getName());
+        }
+    };
+
+    private final FusibleDataSourceWrapper [] fusedWrappers;
+    private final List<Function<DataSource, DataSource>> outerWrappers;
+    private final boolean closeable;
+
+    private final PoolStatistics statistics;
+
+    private final Method getConnectionMethod;
+    private final Method getConnectionUserPasswordMethod;
+    private final Method closeableCloseMethod;
+
+    public FusedDataSourceWrapper(final Iterable<? extends Function<DataSource, DataSource>> wrappers)
+    {
+        this(wrappers, null);
+    }
+
+    public FusedDataSourceWrapper(final Iterable<? extends Function<DataSource, DataSource>> wrappers, @Nullable final PoolStatistics statistics)
+    {
+        final List<FusibleDataSourceWrapper> fusible = Lists.newArrayList();
+        final ImmutableList.Builder<Function<DataSource, DataSource>> outer = ImmutableList.builder();
+
+        boolean closeable = false;
+        for (final Function<DataSource, DataSource> wrapper : wrappers) {
+            if (wrapper instanceof FusibleDataSourceWrapper) {
+                fusible.add((FusibleDataSourceWrapper) wrapper);
+                closeable |= wrapper instanceof CloseableWrapper;
+            }
+            else {
+                outer.add(wrapper);
+            }
+        }
+        Collections.sort(fusible, ORDER_COMPARATOR);
+
+        this.fusedWrappers = fusible.toArray(new FusibleDataSourceWrapper[fusible.size()]);
+        this.outerWrappers = outer.build();
+        this.closeable = closeable;
+        this.statistics = statistics;
+
+        try {
+            this.getConnectionMethod = DataSource.class.getMethod("getConnection", new Class<?>[0]);
+            this.getConnectionUserPasswordMethod = DataSource.class.getMethod("getConnection", new Class<?>[] {String.class, String.class});
+            this.closeableCloseMethod = Closeable.class.getMethod("close", new Class<?>[0]);
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+
+        LOG.debug("Fused wrappers: %s, outer wrappers: %s", fusible, outerWrappers);
+    }
+
+    @Override
+    public DataSource apply(@Nullable final DataSource dataSource)
+    {
+        if (dataSource == null) {
+            return null;
+        }
+
+        DataSource result = fuse(dataSource);
+        for (final Function<DataSource, DataSource> wrapper : outerWrappers) {
+            result = wrapper.apply(result);
+        }
+        return result;
+    }
+
+    private DataSource fuse(final DataSource dataSource)
+    {
+        if (fusedWrappers.length == 0 && !closeable && statistics == null) {
+            return dataSource;
+        }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return closeable ? new FusedCloseableDataSource(dataSource) : new FusedDataSource(dataSource);
+        }
+        else {
+            final Set<Class<?>> interfaces = Sets.newHashSet(dataSource.getClass().getInterfaces());
+            if (closeable) {
+                interfaces.add(Closeable.class);
+            }
+            return (DataSource) Proxy.newProxyInstance(dataSource.getClass().getClassLoader(),
+                                                       interfaces.toArray(new Class<?>[interfaces.size()]),
+                                                       new FusedInvocationHandler(dataSource));
+        }
+    }
+
+    /**
+     * Runs a connection through all fused wrappers. If a wrapper fails, the connection is closed, so that it goes back to the pool.
+     */
+    Connection interceptConnection(final Connection connection) throws SQLException
+    {
+        if (connection == null) {
+            throw new IllegalStateException("null connection from data source");
+        }
+
+        boolean success = false;
+        try {
+            Connection c = connection;
+            for (int i = 0; i < fusedWrappers.length; i++) {
+                c = fusedWrappers[i].interceptConnection(c);
+            }
+            success = true;
+            return c;
+        }
+        finally {
+            if (!success) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private static void closeQuietly(final Connection connection)
+    {
+        try {
+            connection.close();
+        }
+        catch (SQLException e) {
+            LOG.warn(e, "Could not close connection after a wrapper failed");
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "Could not close connection after a wrapper failed");
+        }
+    }
+
+    /**
+     * Checks out a connection from the data source below the fused layer (delegate version). The connection is wrapped into the
+     * delegating connection that all wrappers build on, which also records the hold time unless the pool does.
+     */
+    private DelegatingConnection checkout(final DataSource dataSource, final boolean withCredentials, final String username, final String password) throws SQLException
+    {
+        if (statistics == null) {
+            return DelegatingConnection.forConnection(withCredentials ? dataSource.getConnection(username, password) : dataSource.getConnection());
+        }
+
+        final long start = System.nanoTime();
+        final Connection connection;
+        try {
+            connection = withCredentials ? dataSource.getConnection(username, password) : dataSource.getConnection();
+        }
+        catch (SQLException e) {
+            statistics.recordCheckoutFailure(e);
+            throw e;
+        }
+
+        final long checkoutNanos = System.nanoTime();
+        statistics.recordCheckout(checkoutNanos - start);
+
+        if (connection instanceof DelegatingConnection || connection instanceof C3P0ProxyConnection) {
+            // Connections of the native pool or C3P0, which record the hold time themselves.
+            return DelegatingConnection.forConnection(connection);
+        }
+        else {
+            return new HoldTimeConnection(connection, statistics, checkoutNanos);
+        }
+    }
+
+    /**
+     * Checks out a connection from the data source below the fused layer (proxy version).
+     */
+    class CheckoutTimer implements MethodWrapper
+    {
+        private final Method method;
+
+        CheckoutTimer(final Method method)
+        {
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(final Object dataSource, final Object[] args) throws Exception
+        {
+            final long start = System.nanoTime();
+            try {
+                final Object connection = method.invoke(dataSource, args);
+                statistics.recordCheckout(System.nanoTime() - start);
+                return connection;
+            }
+            catch (InvocationTargetException ite) {
+                statistics.recordCheckoutFailure(ite.getCause());
+                throw ite;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return method.getName();
+        }
+    }
+
+    class FusedInvocationHandler extends AbstractProxyInvocationHandler
+    {
+        FusedInvocationHandler(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        protected Object intercept(final Method method, final Object object) throws Throwable
+        {
+            if (getConnectionMethod.equals(method) || getConnectionUserPasswordMethod.equals(method)) {
+                return interceptConnection(Connection.class.cast(object));
+            }
+            return object;
+        }
+
+        @Override
+        protected boolean ignore(final Method method)
+        {
+            return closeableCloseMethod.equals(method);
+        }
+
+        @Override
+        protected MethodWrapper createMethodWrapper(final Class<?> objectClass, final Object proxy, final Method method, final Object[] args)
+        {
+            if (method.equals(closeableCloseMethod)) {
+                try {
+                    return new MethodHolder(objectClass.getMethod("close", new Class<?>[0]));
+                }
+                catch (NoSuchMethodException nsme) {
+                    return IGNORE_THIS_METHOD;
+                }
+            }
+            else if (statistics != null && (getConnectionMethod.equals(method) || getConnectionUserPasswordMethod.equals(method))) {
+                return new CheckoutTimer(method);
+            }
+            else {
+                return super.createMethodWrapper(objectClass, proxy, method, args);
+            }
+        }
+    }
+
+    class FusedDataSource extends DelegatingDataSource
+    {
+        FusedDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return interceptConnection(checkout(getDelegate(), false, null, null));
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return interceptConnection(checkout(getDelegate(), true, username, password));
+        }
+    }
+
+    class FusedCloseableDataSource extends CloseableWrapper.CloseableDataSource
+    {
+        FusedCloseableDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return interceptConnection(checkout(getDelegate(), false, null, null));
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return interceptConnection(checkout(getDelegate(), true, username, password));
+        }
+    }
+
+    /**
+     * Records the hold time when the connection is closed for the first time.
+     */
+    static final class HoldTimeConnection extends DelegatingConnection
+    {
+        private final PoolStatistics statistics;
+        private final long checkoutNanos;
+        private boolean closed = false;
+
+        HoldTimeConnection(final Connection connection, final PoolStatistics statistics, final long checkoutNanos)
+        {
+            super(connection);
+            this.statistics = statistics;
+            this.checkoutNanos = checkoutNanos;
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            if (!closed) {
+                closed = true;
+                statistics.recordHoldTime(System.nanoTime() - checkoutNanos);
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Function;
+
+/**
+ * A DataSource wrapper that only acts on the connections handed out by the data source. All wrappers of a pool that implement
+ * this interface are merged into a single dispatch layer by {@link FusedDataSourceWrapper}.
+ *
+ * The order of the wrappers within that layer is determined by {@link #getOrder()}. Lower values are applied first, so they see the
+ * connection closer to the pool. Wrappers with the same order value are sorted by class name.
+ */
+public interface FusibleDataSourceWrapper extends Function<DataSource, DataSource>
+{
+    /** {@link ConnectionWrapper}. Runs first, so that all later interceptors already see the wrapped connection. */
+    int ORDER_CONNECTION_WRAPPER = 100;
+
+    /** {@link SchemaSelectorWrapper}. */
+    int ORDER_SCHEMA_SELECTOR = 200;
+
+    /** {@link SessionSettingsWrapper}. */
+    int ORDER_SESSION_SETTINGS = 250;
+
+    /** {@link ApplicationNameWrapper}. */
+    int ORDER_APPLICATION_NAME = 300;
+
+    /** {@link StatementCacheWrapper}. Runs last, so that it sees all statements prepared on the connection. */
+    int ORDER_STATEMENT_CACHE = 400;
+
+    /** {@link CloseableWrapper}. Does not touch connections. */
+    int ORDER_CLOSEABLE = 1000;
+
+    /**
+     * Returns the position of this wrapper in the fused layer.
+     */
+    int getOrder();
+
+    /**
+     * Called for every connection handed out by the data source. Returns the connection to pass on to the next wrapper.
+     */
+    Connection interceptConnection(Connection connection) throws SQLException;
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodWrapper;
+
+/**
+ * Caches the proxy constructor and the method resolution table per proxied class. All proxies for objects of the same class share
+ * them, so creating a proxy only allocates the proxy and its invocation handler.
+ *
+ * A cache must only be used by a single kind of invocation handler, as the method tables depend on the handler.
+ */
+final class ProxyClassCache
+{
+    private final ConcurrentMap<Class<?>, ProxyClass> proxyClasses = Maps.newConcurrentMap();
+
+    ProxyClass forClass(final Class<?> objectClass)
+    {
+        ProxyClass proxyClass = proxyClasses.get(objectClass);
+        if (proxyClass == null) {
+            proxyClass = new ProxyClass(objectClass);
+            final ProxyClass oldProxyClass = proxyClasses.putIfAbsent(objectClass, proxyClass);
+            if (oldProxyClass != null) {
+                proxyClass = oldProxyClass;
+            }
+        }
+        return proxyClass;
+    }
+
+    static final class ProxyClass
+    {
+        private final Constructor<?> constructor;
+        private final Map<Method, MethodWrapper> methodMap = Maps.newConcurrentMap();
+
+        private ProxyClass(final Class<?> objectClass)
+        {
+            try {
+                this.constructor = Proxy.getProxyClass(objectClass.getClassLoader(), objectClass.getInterfaces()).getConstructor(InvocationHandler.class);
+            }
+            catch (NoSuchMethodException nsme) {
+                throw new IllegalStateException(nsme);
+            }
+        }
+
+        Map<Method, MethodWrapper> getMethodMap()
+        {
+            return methodMap;
+        }
+
+        Object newInstance(final InvocationHandler handler)
+        {
+            try {
+                return constructor.newInstance(handler);
+            }
+            catch (InvocationTargetException ite) {
+                throw new IllegalStateException(ite.getCause());
+            }
+            catch (InstantiationException ie) {
+                throw new IllegalStateException(ie);
+            }
+            catch (IllegalAccessException iae) {
+                throw new IllegalStateException(iae);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.nesscomputing.jdbc.replica.Replica;
+import com.nesscomputing.jdbc.replica.ReplicaLagMonitor;
+import com.nesscomputing.jdbc.replica.ReplicaRouting;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Sends read-only checkouts (see {@link ReplicaRouting}) to a replica in rotation and all other checkouts to the primary. If no
+ * replica is in rotation or the replica checkout fails, the primary is used.
+ *
+ * If read-your-writes is enabled, read-only checkouts of a thread also go to the primary for a while after that thread returned a
+ * connection of the primary.
+ *
+ * This is not a fusible wrapper, it is applied on top of the fused layer so that replica connections do not pass through the
+ * wrappers of the primary. They already passed through the wrappers of their own pool.
+ */
+public class ReplicaRoutingWrapper implements Function<DataSource, DataSource>
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String dbName;
+    private final Annotation annotation;
+
+    private final ConnectionCloseTracker closeTracker = new ConnectionCloseTracker();
+    private final ThreadLocal<Long> lastPrimaryUse = new ThreadLocal<Long>();
+
+    private Provider<ReplicaLagMonitor> monitorProvider = null;
+
+    public ReplicaRoutingWrapper(final String dbName, final Annotation annotation)
+    {
+        Preconditions.checkArgument(dbName != null, "the database name must not be null!");
+        this.dbName = dbName;
+        this.annotation = annotation;
+    }
+
+    /**
+     * Creates a wrapper for a given monitor.
+     */
+    public ReplicaRoutingWrapper(final String dbName, final ReplicaLagMonitor monitor)
+    {
+        this(dbName, (Annotation) null);
+        this.monitorProvider = new Provider<ReplicaLagMonitor>() {
+            @Override
+            public ReplicaLagMonitor get()
+            {
+                return monitor;
+            }
+        };
+    }
+
+    @Inject
+    void setUpMonitor(final Injector injector)
+    {
+        if (annotation != null) {
+            // The monitor creates the replica pools, so it is only looked up when the primary pool is created.
+            final Binding<ReplicaLagMonitor> monitorBinding = injector.getExistingBinding(Key.get(ReplicaLagMonitor.class, annotation));
+            if (monitorBinding != null) {
+                monitorProvider = monitorBinding.getProvider();
+            }
+        }
+    }
+
+    @Override
+    public DataSource apply(@Nullable final DataSource dataSource)
+    {
+        if (dataSource == null) {
+            return null;
+        }
+        else if (monitorProvider == null) {
+            LOG.warn("No replica lag monitor bound for %s, all connections go to the primary", dbName);
+            return dataSource;
+        }
+        else {
+            return new ReplicaRoutingDataSource(dataSource, monitorProvider.get());
+        }
+    }
+
+    class ReplicaRoutingDataSource extends DelegatingDataSource implements Closeable
+    {
+        private final ReplicaLagMonitor monitor;
+        private final long readYourWritesNanos;
+
+        ReplicaRoutingDataSource(final DataSource dataSource, final ReplicaLagMonitor monitor)
+        {
+            super(dataSource);
+            this.monitor = monitor;
+            this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(monitor.getReplicaConfig().getReadYourWrites());
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return route(false, null, null);
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return route(true, username, password);
+        }
+
+        private Connection route(final boolean withCredentials, final String username, final String password) throws SQLException
+        {
+            final boolean readOnly = ReplicaRouting.isReadOnly();
+            if (readOnly && !isReadingOwnWrites()) {
+                final Replica replica = monitor.nextReplica();
+                if (replica != null) {
+                    try {
+                        final DataSource replicaDataSource = replica.getDataSource();
+                        return withCredentials ? replicaDataSource.getConnection(username, password) : replicaDataSource.getConnection();
+                    }
+                    catch (SQLException e) {
+                        monitor.markFailed(replica, e);
+                    }
+                }
+            }
+
+            final Connection connection = withCredentials ? super.getConnection(username, password) : super.getConnection();
+            if (readOnly || readYourWritesNanos == 0L) {
+                return connection;
+            }
+
+            lastPrimaryUse.set(System.nanoTime());
+            return closeTracker.track(connection, new Runnable() {
+                @Override
+                public void run()
+                {
+                    lastPrimaryUse.set(System.nanoTime());
+                }
+            });
+        }
+
+        private boolean isReadingOwnWrites()
+        {
+            if (readYourWritesNanos == 0L) {
+                return false;
+            }
+            final Long lastUse = lastPrimaryUse.get();
+            return lastUse != null && System.nanoTime() - lastUse < readYourWritesNanos;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            final DataSource delegate = getDelegate();
+            if (delegate instanceof Closeable) {
+                ((Closeable) delegate).close();
+            }
+        }
+    }
+}
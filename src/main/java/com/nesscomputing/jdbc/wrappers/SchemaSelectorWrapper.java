@@ -19,31 +19,30 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.sql.DataSource;
 
-import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodInterceptor;
-import com.nesscomputing.logging.Log;
 
 /**
  * Postgres specific interceptor that selects a schema before handing out a connection object.
  */
-public class SchemaSelectorWrapper implements Function<DataSource, DataSource>
+public class SchemaSelectorWrapper implements FusibleDataSourceWrapper
 {
-    private static final Log LOG = Log.findLog();
+    static final String SEARCH_PATH = "search_path";
 
     private final Map<Method, MethodInterceptor<Connection>> interceptors = Maps.newHashMap();
+    private final SchemaSelectorInterceptor schemaChangeInterceptor;
 
     public SchemaSelectorWrapper(final String schemaName)
     {
-        final MethodInterceptor<Connection> schemaChangeInterceptor = new SchemaSelectorInterceptor(schemaName);
+        this.schemaChangeInterceptor = new SchemaSelectorInterceptor(schemaName);
 
         try {
             // Intercept all attempts to hand out a connection.
@@ -57,12 +56,27 @@ public class SchemaSelectorWrapper implements Function<DataSource, DataSource>
         }
     }
 
+    @Override
+    public int getOrder()
+    {
+        return ORDER_SCHEMA_SELECTOR;
+    }
+
+    @Override
+    public Connection interceptConnection(final Connection connection) throws SQLException
+    {
+        return schemaChangeInterceptor.intercept(connection);
+    }
+
     @Override
     public DataSource apply(@Nonnull final DataSource dataSource)
     {
         if (dataSource == null) {
             return null;
         }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return new SchemaSelectorDataSource(dataSource);
+        }
         else {
             return (DataSource) Proxy.newProxyInstance(dataSource.getClass().getClassLoader(),
                                                        dataSource.getClass().getInterfaces(),
@@ -85,13 +99,36 @@ public class SchemaSelectorWrapper implements Function<DataSource, DataSource>
         }
     }
 
+    class SchemaSelectorDataSource extends DelegatingDataSource
+    {
+        SchemaSelectorDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return schemaChangeInterceptor.intercept(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return schemaChangeInterceptor.intercept(super.getConnection(username, password));
+        }
+    }
+
+    /**
+     * Sets the search path. The statement is only sent if the physical connection does not already use the schema.
+     */
     static class SchemaSelectorInterceptor implements MethodInterceptor<Connection>
     {
-        private final String schemaStatement;
+        private final Map<String, String> searchPath;
 
         SchemaSelectorInterceptor(final String schemaName)
         {
-            this.schemaStatement = String.format("SET search_path TO '%s'", schemaName);
+            this.searchPath = ImmutableMap.of(SEARCH_PATH, schemaName);
         }
 
         @Override
@@ -99,14 +136,7 @@ public class SchemaSelectorWrapper implements Function<DataSource, DataSource>
         {
             Preconditions.checkState(connection != null, "connection is null!");
 
-            final Statement stmt = connection.createStatement();
-            try {
-                stmt.execute(schemaStatement);
-                LOG.trace(schemaStatement);
-            } finally {
-                stmt.close();
-            }
-
+            SessionState.forConnection(connection).apply(connection, searchPath);
             return connection;
         }
     }
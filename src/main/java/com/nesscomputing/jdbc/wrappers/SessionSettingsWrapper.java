@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.apache.commons.configuration.CombinedConfiguration;
+import org.apache.commons.configuration.tree.OverrideCombiner;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodInterceptor;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Applies session settings (e.g. <code>work_mem</code> or <code>statement_timeout</code>) to the connections of a pool.
+ * The settings are read from <code>ness.db.dbName.session.*</code> and <code>ness.db.defaults.session.*</code>. A
+ * setting is only sent to the database if the physical connection does not have it yet, see {@link SessionState}.
+ */
+public class SessionSettingsWrapper implements FusibleDataSourceWrapper
+{
+    private static final Log LOG = Log.findLog();
+
+    private final Map<Method, MethodInterceptor<Connection>> interceptors = Maps.newHashMap();
+    private final SessionSettingsInterceptor sessionSettingsInterceptor = new SessionSettingsInterceptor();
+
+    private final String dbName;
+
+    private volatile Map<String, String> settings = ImmutableMap.of();
+
+    public SessionSettingsWrapper(final String dbName)
+    {
+        Preconditions.checkArgument(dbName != null, "the database name must not be null!");
+        this.dbName = dbName;
+
+        try {
+            // Intercept all attempts to hand out a connection.
+            // @{link DataSource#getConnection()}
+            interceptors.put(DataSource.class.getMethod("getConnection", new Class<?>[0]), sessionSettingsInterceptor);
+            // @{link DataSource#getConnection(String username, String password)}
+            interceptors.put(DataSource.class.getMethod("getConnection", new Class<?>[] {String.class, String.class}), sessionSettingsInterceptor);
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+    }
+
+    /**
+     * Creates a wrapper with a fixed set of settings.
+     */
+    public SessionSettingsWrapper(final String dbName, final Map<String, String> settings)
+    {
+        this(dbName);
+        setSettings(settings);
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        final CombinedConfiguration cc = new CombinedConfiguration(new OverrideCombiner());
+        cc.addConfiguration(config.getConfiguration("ness.db." + dbName + ".session"));
+        cc.addConfiguration(config.getConfiguration("ness.db.defaults.session"));
+
+        final Map<String, String> configSettings = Maps.newHashMap();
+        for (final Iterator<?> it = cc.getKeys(); it.hasNext(); ) {
+            final String key = it.next().toString();
+            configSettings.put(key, cc.getString(key));
+        }
+        setSettings(configSettings);
+    }
+
+    private void setSettings(final Map<String, String> newSettings)
+    {
+        for (final Map.Entry<String, String> setting : newSettings.entrySet()) {
+            // Fail early for bad names and values.
+            SessionState.getSetStatement(setting.getKey(), setting.getValue());
+        }
+        this.settings = ImmutableSortedMap.copyOf(newSettings);
+        if (!settings.isEmpty()) {
+            LOG.info("Session settings for %s are %s", dbName, settings);
+        }
+    }
+
+    public Map<String, String> getSettings()
+    {
+        return settings;
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return ORDER_SESSION_SETTINGS;
+    }
+
+    @Override
+    public Connection interceptConnection(final Connection connection) throws SQLException
+    {
+        return sessionSettingsInterceptor.intercept(connection);
+    }
+
+    @Override
+    public DataSource apply(@Nullable final DataSource dataSource)
+    {
+        if (dataSource == null) {
+            return null;
+        }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return new SessionSettingsDataSource(dataSource);
+        }
+        else {
+            return (DataSource) Proxy.newProxyInstance(dataSource.getClass().getClassLoader(),
+                                                       dataSource.getClass().getInterfaces(),
+                                                       new SessionSettingsInvocationHandler(dataSource));
+        }
+    }
+
+    class SessionSettingsInvocationHandler extends AbstractProxyInvocationHandler
+    {
+        SessionSettingsInvocationHandler(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        protected Object intercept(final Method method, final Object object) throws Throwable
+        {
+            final MethodInterceptor<Connection> interceptor = interceptors.get(method);
+            return (interceptor == null) ? object : interceptor.intercept(Connection.class.cast(object));
+        }
+    }
+
+    class SessionSettingsDataSource extends DelegatingDataSource
+    {
+        SessionSettingsDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return sessionSettingsInterceptor.intercept(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return sessionSettingsInterceptor.intercept(super.getConnection(username, password));
+        }
+    }
+
+    class SessionSettingsInterceptor implements MethodInterceptor<Connection>
+    {
+        @Override
+        public Connection intercept(final Connection connection) throws SQLException
+        {
+            Preconditions.checkState(connection != null, "connection is null!");
+
+            final Map<String, String> currentSettings = settings;
+            if (!currentSettings.isEmpty()) {
+                SessionState.forConnection(connection).apply(connection, currentSettings);
+            }
+            return connection;
+        }
+    }
+}
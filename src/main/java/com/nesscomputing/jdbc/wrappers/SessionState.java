@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Tracks the session settings of a physical database connection, so that settings are only sent to the database
+ * when they actually change. A pooled connection keeps its session state between checkouts, so most checkouts do
+ * not need any round trip at all.
+ *
+ * The physical connection is located with {@link C3P0ProxyConnection#rawConnectionOperation}. Connections that do
+ * not support this are never tracked and get all settings applied every time.
+ *
+ * Only settings changed through this class are known. Code that changes the same settings directly (e.g. with
+ * <code>SET</code> or <code>RESET ALL</code>) must call {@link #invalidate(Connection)}.
+ */
+public final class SessionState
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final Pattern SETTING_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+
+    private static final Method IDENTITY_METHOD;
+
+    static {
+        try {
+            IDENTITY_METHOD = SessionState.class.getMethod("identity", Object.class);
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+    }
+
+    /** Physical connection to session state. Weak keys compare by identity and go away with the physical connection. */
+    private static final ConcurrentMap<Object, SessionState> SESSION_STATES = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * A physical connection is only used by one thread at a time and the pool hands it over with a happens-before
+     * edge, so the settings need no further synchronization.
+     */
+    private final Map<String, String> settings = Maps.newHashMap();
+    private final boolean tracked;
+
+    private SessionState(final boolean tracked)
+    {
+        this.tracked = tracked;
+    }
+
+    /**
+     * Returns the session state for the physical connection behind a logical connection.
+     */
+    public static SessionState forConnection(final Connection connection) throws SQLException
+    {
+        Preconditions.checkState(connection != null, "connection is null!");
+
+        final Object physicalConnection = getPhysicalConnection(connection);
+        if (physicalConnection == null) {
+            return new SessionState(false);
+        }
+
+        SessionState state = SESSION_STATES.get(physicalConnection);
+        if (state == null) {
+            final SessionState newState = new SessionState(true);
+            state = SESSION_STATES.putIfAbsent(physicalConnection, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Forgets all settings recorded for the physical connection behind a logical connection.
+     */
+    public static void invalidate(final Connection connection) throws SQLException
+    {
+        final Object physicalConnection = getPhysicalConnection(connection);
+        if (physicalConnection != null) {
+            SESSION_STATES.remove(physicalConnection);
+        }
+    }
+
+    /**
+     * Used through {@link C3P0ProxyConnection#rawConnectionOperation} to get hold of the physical connection. Not for
+     * general use.
+     */
+    public static Object identity(final Object object)
+    {
+        return object;
+    }
+
+    /**
+     * Returns the physical connection behind a logical connection, or null if it can not be reached.
+     */
+    static Object getPhysicalConnection(final Connection connection) throws SQLException
+    {
+        if (!(connection instanceof C3P0ProxyConnection)) {
+            return null;
+        }
+
+        try {
+            return ((C3P0ProxyConnection) connection).rawConnectionOperation(IDENTITY_METHOD, null, new Object[] { C3P0ProxyConnection.RAW_CONNECTION });
+        }
+        catch (InvocationTargetException ite) {
+            LOG.trace(ite, "While locating physical connection");
+            return null;
+        }
+        catch (IllegalAccessException iae) {
+            LOG.trace(iae, "While locating physical connection");
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if any value was recorded for the given setting.
+     */
+    public boolean isKnown(final String name)
+    {
+        return tracked && settings.containsKey(name);
+    }
+
+    /**
+     * Returns true if the physical connection is known to have the given setting.
+     */
+    public boolean isCurrent(final String name, final String value)
+    {
+        return tracked && settings.containsKey(name) && Objects.equal(settings.get(name), value);
+    }
+
+    /**
+     * Records a setting that was applied to the connection. Settings applied inside a transaction are not recorded,
+     * because a rollback would undo them.
+     */
+    public void record(final Connection connection, final String name, final String value) throws SQLException
+    {
+        if (tracked && connection.getAutoCommit()) {
+            settings.put(name, value);
+        }
+    }
+
+    /**
+     * Applies all settings that the physical connection does not have yet with <code>SET name TO 'value'</code>. All
+     * changes are sent as a single batch.
+     */
+    public void apply(final Connection connection, final Map<String, String> newSettings) throws SQLException
+    {
+        Map<String, String> changes = null;
+        for (final Map.Entry<String, String> setting : newSettings.entrySet()) {
+            if (!isCurrent(setting.getKey(), setting.getValue())) {
+                if (changes == null) {
+                    changes = Maps.newLinkedHashMap();
+                }
+                changes.put(setting.getKey(), setting.getValue());
+            }
+        }
+
+        if (changes == null) {
+            return;
+        }
+
+        final Statement stmt = connection.createStatement();
+        try {
+            if (changes.size() == 1) {
+                final Map.Entry<String, String> change = changes.entrySet().iterator().next();
+                final String sql = getSetStatement(change.getKey(), change.getValue());
+                stmt.execute(sql);
+                LOG.trace(sql);
+            }
+            else {
+                for (final Map.Entry<String, String> change : changes.entrySet()) {
+                    final String sql = getSetStatement(change.getKey(), change.getValue());
+                    stmt.addBatch(sql);
+                    LOG.trace(sql);
+                }
+                stmt.executeBatch();
+            }
+        }
+        finally {
+            stmt.close();
+        }
+
+        for (final Map.Entry<String, String> change : changes.entrySet()) {
+            record(connection, change.getKey(), change.getValue());
+        }
+    }
+
+    static String getSetStatement(final String name, final String value)
+    {
+        Preconditions.checkArgument(name != null && SETTING_NAME.matcher(name).matches(), "'%s' is not a valid setting name", name);
+        Preconditions.checkArgument(value != null, "value for %s must not be null!", name);
+        return String.format("SET %s TO '%s'", name, value.replace("'", "''"));
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.logging.Log;
+
+/**
+ * LRU cache of prepared statements for a single physical connection. The cache only holds statements that are not in use,
+ * a statement is taken out of the cache when it is handed out and put back when it is closed.
+ *
+ * A physical connection is only used by one thread at a time and the pool hands it over with a happens-before edge, so the
+ * cache needs no further synchronization.
+ */
+final class StatementCache
+{
+    private static final Log LOG = Log.findLog();
+
+    /**
+     * Physical connection to cache. The cached statements refer to their connection, so the pool must drop the cache when it
+     * destroys the connection (see {@link #remove(Object)}). The weak keys only provide identity comparison.
+     */
+    private static final ConcurrentMap<Object, StatementCache> CACHES = new MapMaker().weakKeys().makeMap();
+
+    private final Connection physicalConnection;
+    private final int maxSize;
+    @Nullable
+    private final PoolStatistics statistics;
+
+    private final Map<StatementKey, PreparedStatement> idleStatements = new LinkedHashMap<StatementKey, PreparedStatement>(16, 0.75f, true);
+
+    private StatementCache(final Connection physicalConnection, final int maxSize, @Nullable final PoolStatistics statistics)
+    {
+        this.physicalConnection = physicalConnection;
+        this.maxSize = maxSize;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the statement cache for the physical connection behind a logical connection, or null if the physical connection
+     * can not be reached.
+     */
+    static StatementCache forConnection(final Connection connection, final int maxSize, @Nullable final PoolStatistics statistics) throws SQLException
+    {
+        Preconditions.checkState(connection != null, "connection is null!");
+
+        final Object physicalConnection = SessionState.getPhysicalConnection(connection);
+        if (!(physicalConnection instanceof Connection)) {
+            return null;
+        }
+
+        StatementCache cache = CACHES.get(physicalConnection);
+        if (cache == null) {
+            // Only the thread that currently owns the physical connection can get here.
+            cache = new StatementCache((Connection) physicalConnection, maxSize, statistics);
+            CACHES.put(physicalConnection, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Drops the cache of a physical connection. Called by the pool when it destroys the connection, the statements are closed
+     * together with the connection.
+     */
+    static void remove(final Object physicalConnection)
+    {
+        if (physicalConnection != null) {
+            CACHES.remove(physicalConnection);
+        }
+    }
+
+    /**
+     * Returns a prepared statement for the given key, either from the cache or newly prepared on the physical connection.
+     */
+    PreparedStatement checkout(final StatementKey key) throws SQLException
+    {
+        final PreparedStatement statement = idleStatements.remove(key);
+        if (statement != null) {
+            if (statistics != null) {
+                statistics.recordStatementCacheHit();
+            }
+            return statement;
+        }
+
+        if (statistics != null) {
+            statistics.recordStatementCacheMiss();
+        }
+        return key.prepare(physicalConnection);
+    }
+
+    /**
+     * Puts a statement back into the cache. If the cache already holds a statement for the same key, the statement is closed
+     * instead. If the cache is full, the least recently used statement is closed.
+     */
+    void checkin(final StatementKey key, final PreparedStatement statement)
+    {
+        if (idleStatements.containsKey(key)) {
+            close(statement);
+            return;
+        }
+
+        idleStatements.put(key, statement);
+        if (idleStatements.size() > maxSize) {
+            final Iterator<PreparedStatement> it = idleStatements.values().iterator();
+            final PreparedStatement eldest = it.next();
+            it.remove();
+            close(eldest);
+            if (statistics != null) {
+                statistics.recordStatementCacheEviction();
+            }
+        }
+    }
+
+    /**
+     * Closes a statement that can not be reused.
+     */
+    void close(final PreparedStatement statement)
+    {
+        try {
+            statement.close();
+        }
+        catch (SQLException e) {
+            LOG.debug(e, "While closing statement");
+        }
+    }
+
+    int size()
+    {
+        return idleStatements.size();
+    }
+
+    /**
+     * The arguments to prepareStatement() that determine whether a cached statement can be reused.
+     */
+    static final class StatementKey
+    {
+        private static final int NO_GENERATED_KEYS_ARGUMENT = -1;
+
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        StatementKey(final String sql)
+        {
+            this(sql, NO_GENERATED_KEYS_ARGUMENT);
+        }
+
+        StatementKey(final String sql, final int autoGeneratedKeys)
+        {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        PreparedStatement prepare(final Connection connection) throws SQLException
+        {
+            return autoGeneratedKeys == NO_GENERATED_KEYS_ARGUMENT ? connection.prepareStatement(sql) : connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(sql, autoGeneratedKeys);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final StatementKey that = (StatementKey) obj;
+            return autoGeneratedKeys == that.autoGeneratedKeys && sql.equals(that.sql);
+        }
+
+        @Override
+        public String toString()
+        {
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Keeps prepared statements open across connection checkouts. Every physical connection gets an LRU cache of up to
+ * <code>ness.db.dbName.statementCache.size</code> idle statements, closing a statement puts it back into that cache.
+ * Hits, misses and evictions are counted in the {@link PoolStatistics} of the pool, if one is bound.
+ *
+ * Only connections that allow access to the physical connection (C3P0 and the built-in pool) are cached. The cache of a physical
+ * connection is dropped when the pool destroys the connection: the built-in pool calls {@link #connectionDestroyed(Connection)},
+ * C3P0 pools are configured with the {@link C3P0ConnectionCustomizer}.
+ */
+public class StatementCacheWrapper implements FusibleDataSourceWrapper
+{
+    private static final Log LOG = Log.findLog();
+
+    private final String dbName;
+    private final Annotation annotation;
+
+    private final Method getConnectionMethod;
+    private final Method getConnectionUserPasswordMethod;
+
+    private volatile int size = 0;
+    private volatile PoolStatistics statistics = null;
+
+    public StatementCacheWrapper(final String dbName, final Annotation annotation)
+    {
+        Preconditions.checkArgument(dbName != null, "the database name must not be null!");
+        this.dbName = dbName;
+        this.annotation = annotation;
+
+        try {
+            this.getConnectionMethod = DataSource.class.getMethod("getConnection", new Class<?>[0]);
+            this.getConnectionUserPasswordMethod = DataSource.class.getMethod("getConnection", new Class<?>[] {String.class, String.class});
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+    }
+
+    /**
+     * Creates a wrapper with a fixed cache size.
+     */
+    public StatementCacheWrapper(final String dbName, final int size, @Nullable final PoolStatistics statistics)
+    {
+        this(dbName, null);
+        this.size = size;
+        this.statistics = statistics;
+    }
+
+    @Inject(optional=true)
+    void setUpConfig(final Config config)
+    {
+        final StatementCacheConfig statementCacheConfig = config.getBean(StatementCacheConfig.class, ImmutableMap.of("dbName", dbName));
+        this.size = statementCacheConfig.getSize();
+        if (size > 0) {
+            LOG.info("Caching up to %d statements per connection for %s", size, dbName);
+        }
+    }
+
+    @Inject
+    void setUpStatistics(final Injector injector)
+    {
+        if (annotation != null) {
+            final Binding<PoolStatistics> statisticsBinding = injector.getExistingBinding(Key.get(PoolStatistics.class, annotation));
+            if (statisticsBinding != null) {
+                statistics = statisticsBinding.getProvider().get();
+            }
+        }
+    }
+
+    /**
+     * Drops the statement cache of a physical connection. Must be called by a pool when it closes one of its physical connections.
+     */
+    public static void connectionDestroyed(final Connection physicalConnection)
+    {
+        StatementCache.remove(physicalConnection);
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return ORDER_STATEMENT_CACHE;
+    }
+
+    @Override
+    public Connection interceptConnection(final Connection connection) throws SQLException
+    {
+        Preconditions.checkState(connection != null, "connection is null!");
+
+        final int currentSize = size;
+        if (currentSize <= 0 || !(connection instanceof C3P0ProxyConnection)) {
+            return connection;
+        }
+
+        final StatementCache statementCache = StatementCache.forConnection(connection, currentSize, statistics);
+        return statementCache == null ? connection : new StatementCachingConnection((C3P0ProxyConnection) connection, statementCache);
+    }
+
+    @Override
+    public DataSource apply(@Nullable final DataSource dataSource)
+    {
+        if (dataSource == null) {
+            return null;
+        }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return new StatementCacheDataSource(dataSource);
+        }
+        else {
+            return (DataSource) Proxy.newProxyInstance(dataSource.getClass().getClassLoader(),
+                                                       dataSource.getClass().getInterfaces(),
+                                                       new StatementCacheInvocationHandler(dataSource));
+        }
+    }
+
+    class StatementCacheInvocationHandler extends AbstractProxyInvocationHandler
+    {
+        StatementCacheInvocationHandler(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        protected Object intercept(final Method method, final Object object) throws Throwable
+        {
+            if (getConnectionMethod.equals(method) || getConnectionUserPasswordMethod.equals(method)) {
+                return interceptConnection(Connection.class.cast(object));
+            }
+            return object;
+        }
+    }
+
+    class StatementCacheDataSource extends DelegatingDataSource
+    {
+        StatementCacheDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return interceptConnection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return interceptConnection(super.getConnection(username, password));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.nesscomputing.jdbc.wrappers.StatementCache.StatementKey;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Logical connection that takes its prepared statements from the {@link StatementCache} of the physical connection. Closing a
+ * statement or the connection puts the statements back into the cache.
+ *
+ * Only <code>prepareStatement(String)</code> and <code>prepareStatement(String, int)</code> are cached. A statement on which
+ * fetch size, limits, timeouts or similar settings were changed is closed instead of being put back.
+ */
+class StatementCachingConnection extends DelegatingC3P0Connection
+{
+    private static final Log LOG = Log.findLog();
+
+    private final StatementCache statementCache;
+    private final Set<CachedPreparedStatement> openStatements = Sets.newSetFromMap(Maps.<CachedPreparedStatement, Boolean>newIdentityHashMap());
+
+    private boolean closed = false;
+
+    StatementCachingConnection(final C3P0ProxyConnection connection, final StatementCache statementCache)
+    {
+        super(connection);
+        this.statementCache = statementCache;
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException
+    {
+        return checkout(new StatementKey(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException
+    {
+        return checkout(new StatementKey(sql, autoGeneratedKeys));
+    }
+
+    private PreparedStatement checkout(final StatementKey key) throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("connection is closed!");
+        }
+        final CachedPreparedStatement statement = new CachedPreparedStatement(key, statementCache.checkout(key));
+        openStatements.add(statement);
+        return statement;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        if (!closed) {
+            closed = true;
+            // The physical connection is still owned by this thread until the delegate is closed.
+            final List<CachedPreparedStatement> statements = Lists.newArrayList(openStatements);
+            for (final CachedPreparedStatement statement : statements) {
+                statement.close();
+            }
+        }
+        super.close();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException
+    {
+        return closed || super.isClosed();
+    }
+
+    private void checkin(final CachedPreparedStatement statement, final PreparedStatement physicalStatement, final boolean reusable)
+    {
+        openStatements.remove(statement);
+
+        if (reusable && reset(physicalStatement)) {
+            statementCache.checkin(statement.key, physicalStatement);
+        }
+        else {
+            statementCache.close(physicalStatement);
+        }
+    }
+
+    private boolean reset(final PreparedStatement physicalStatement)
+    {
+        try {
+            if (physicalStatement.isClosed()) {
+                return false;
+            }
+            final ResultSet resultSet = physicalStatement.getResultSet();
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            physicalStatement.clearParameters();
+            physicalStatement.clearBatch();
+            physicalStatement.clearWarnings();
+            return true;
+        }
+        catch (SQLException e) {
+            LOG.debug(e, "While resetting statement, not caching it");
+            return false;
+        }
+    }
+
+    /**
+     * Statement handed out to the caller. Only valid until it is closed, afterwards the physical statement may already be used
+     * by another caller.
+     */
+    class CachedPreparedStatement extends DelegatingPreparedStatement
+    {
+        private final StatementKey key;
+        private final PreparedStatement physicalStatement;
+
+        private boolean statementClosed = false;
+        private boolean modified = false;
+
+        CachedPreparedStatement(final StatementKey key, final PreparedStatement physicalStatement)
+        {
+            super(physicalStatement);
+            this.key = key;
+            this.physicalStatement = physicalStatement;
+        }
+
+        @Override
+        public PreparedStatement getDelegate()
+        {
+            Preconditions.checkState(!statementClosed, "statement is closed!");
+            return physicalStatement;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            getDelegate();
+            return StatementCachingConnection.this;
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            if (!statementClosed) {
+                statementClosed = true;
+                checkin(this, physicalStatement, !modified);
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException
+        {
+            return statementClosed;
+        }
+
+        @Override
+        public void setCursorName(final String name) throws SQLException
+        {
+            modified = true;
+            super.setCursorName(name);
+        }
+
+        @Override
+        public void setEscapeProcessing(final boolean enable) throws SQLException
+        {
+            modified = true;
+            super.setEscapeProcessing(enable);
+        }
+
+        @Override
+        public void setFetchDirection(final int direction) throws SQLException
+        {
+            modified = true;
+            super.setFetchDirection(direction);
+        }
+
+        @Override
+        public void setFetchSize(final int rows) throws SQLException
+        {
+            modified = true;
+            super.setFetchSize(rows);
+        }
+
+        @Override
+        public void setMaxFieldSize(final int max) throws SQLException
+        {
+            modified = true;
+            super.setMaxFieldSize(max);
+        }
+
+        @Override
+        public void setMaxRows(final int max) throws SQLException
+        {
+            modified = true;
+            super.setMaxRows(max);
+        }
+
+        @Override
+        public void setPoolable(final boolean poolable) throws SQLException
+        {
+            modified = true;
+            super.setPoolable(poolable);
+        }
+
+        @Override
+        public void setQueryTimeout(final int seconds) throws SQLException
+        {
+            modified = true;
+            super.setQueryTimeout(seconds);
+        }
+
+        @Override
+        public void closeOnCompletion() throws SQLException
+        {
+            modified = true;
+            super.closeOnCompletion();
+        }
+    }
+}
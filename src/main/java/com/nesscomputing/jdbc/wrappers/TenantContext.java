@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import javax.annotation.Nullable;
+
+import com.nesscomputing.jdbc.pool.ConnectionAffinity;
+
+/**
+ * Holds the schema of the tenant that the current thread works for. Set it when a request starts (e.g. in a servlet
+ * filter) and clear it when the request ends. {@link TenantSchemaSelectorWrapper} selects the schema on every connection
+ * checked out while it is set.
+ *
+ * The schema is also used as {@link ConnectionAffinity} hint, so that the native pool hands out connections that already
+ * use the schema.
+ */
+public final class TenantContext
+{
+    private static final ThreadLocal<String> TENANT_SCHEMA = new ThreadLocal<String>();
+
+    private TenantContext()
+    {
+    }
+
+    /**
+     * Sets the tenant schema for the current thread. <code>null</code> clears it.
+     */
+    public static void setTenantSchema(@Nullable final String schemaName)
+    {
+        if (schemaName == null) {
+            clear();
+        }
+        else {
+            TENANT_SCHEMA.set(schemaName);
+            ConnectionAffinity.set(schemaName);
+        }
+    }
+
+    @Nullable
+    public static String getTenantSchema()
+    {
+        return TENANT_SCHEMA.get();
+    }
+
+    public static void clear()
+    {
+        TENANT_SCHEMA.remove();
+        ConnectionAffinity.clear();
+    }
+}
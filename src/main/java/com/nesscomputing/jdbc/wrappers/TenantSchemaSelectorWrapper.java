@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import com.nesscomputing.jdbc.wrappers.AbstractProxyInvocationHandler.MethodInterceptor;
+
+/**
+ * Postgres specific interceptor that selects the schema of the current tenant (see {@link TenantContext}) before handing out
+ * a connection object. This allows many tenant schemas to share a single pool.
+ *
+ * The search path of each physical connection is tracked by {@link SessionState}, so the <code>SET</code> statement is only sent
+ * if the connection was last used for a different tenant.
+ */
+public class TenantSchemaSelectorWrapper implements FusibleDataSourceWrapper
+{
+    private final Map<Method, MethodInterceptor<Connection>> interceptors = Maps.newHashMap();
+    private final TenantSchemaSelectorInterceptor tenantSchemaInterceptor = new TenantSchemaSelectorInterceptor();
+
+    /** Session settings per tenant schema, so that a checkout does not allocate them. */
+    private final ConcurrentMap<String, Map<String, String>> searchPaths = Maps.newConcurrentMap();
+    private final Map<String, String> defaultSearchPath;
+
+    /**
+     * @param defaultSchemaName Schema used if no tenant is set. If null, the search path is left alone.
+     */
+    public TenantSchemaSelectorWrapper(@Nullable final String defaultSchemaName)
+    {
+        this.defaultSearchPath = defaultSchemaName == null ? null : ImmutableMap.of(SchemaSelectorWrapper.SEARCH_PATH, defaultSchemaName);
+
+        try {
+            // Intercept all attempts to hand out a connection.
+            // @{link DataSource#getConnection()}
+            interceptors.put(DataSource.class.getMethod("getConnection", new Class<?>[0]), tenantSchemaInterceptor);
+            // @{link DataSource#getConnection(String username, String password)}
+            interceptors.put(DataSource.class.getMethod("getConnection", new Class<?>[] {String.class, String.class}), tenantSchemaInterceptor);
+        }
+        catch (NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return ORDER_SCHEMA_SELECTOR;
+    }
+
+    @Override
+    public Connection interceptConnection(final Connection connection) throws SQLException
+    {
+        return tenantSchemaInterceptor.intercept(connection);
+    }
+
+    @Override
+    public DataSource apply(@Nullable final DataSource dataSource)
+    {
+        if (dataSource == null) {
+            return null;
+        }
+        else if (dataSource instanceof DelegatingDataSource) {
+            return new TenantSchemaSelectorDataSource(dataSource);
+        }
+        else {
+            return (DataSource) Proxy.newProxyInstance(dataSource.getClass().getClassLoader(),
+                                                       dataSource.getClass().getInterfaces(),
+                                                       new TenantSchemaSelectorInvocationHandler(dataSource));
+        }
+    }
+
+    class TenantSchemaSelectorInvocationHandler extends AbstractProxyInvocationHandler
+    {
+        TenantSchemaSelectorInvocationHandler(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        protected Object intercept(final Method method, final Object object) throws Throwable
+        {
+            final MethodInterceptor<Connection> interceptor = interceptors.get(method);
+            return (interceptor == null) ? object : interceptor.intercept(Connection.class.cast(object));
+        }
+    }
+
+    class TenantSchemaSelectorDataSource extends DelegatingDataSource
+    {
+        TenantSchemaSelectorDataSource(final DataSource dataSource)
+        {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            return tenantSchemaInterceptor.intercept(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return tenantSchemaInterceptor.intercept(super.getConnection(username, password));
+        }
+    }
+
+    class TenantSchemaSelectorInterceptor implements MethodInterceptor<Connection>
+    {
+        @Override
+        public Connection intercept(final Connection connection) throws SQLException
+        {
+            Preconditions.checkState(connection != null, "connection is null!");
+
+            final String tenantSchemaName = TenantContext.getTenantSchema();
+            final Map<String, String> searchPath = tenantSchemaName == null ? defaultSearchPath : getSearchPath(tenantSchemaName);
+            if (searchPath != null) {
+                SessionState.forConnection(connection).apply(connection, searchPath);
+            }
+            return connection;
+        }
+
+        private Map<String, String> getSearchPath(final String schemaName)
+        {
+            Map<String, String> searchPath = searchPaths.get(schemaName);
+            if (searchPath == null) {
+                searchPath = ImmutableMap.of(SchemaSelectorWrapper.SEARCH_PATH, schemaName);
+                final Map<String, String> oldSearchPath = searchPaths.putIfAbsent(schemaName, searchPath);
+                if (oldSearchPath != null) {
+                    searchPath = oldSearchPath;
+                }
+            }
+            return searchPath;
+        }
+    }
+}
@@ -17,10 +17,15 @@ package com.nesscomputing.jdbc;
 
 import static org.junit.Assert.assertTrue;
 
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
 import java.util.UUID;
 
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
 import org.junit.After;
@@ -35,8 +40,16 @@ import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Stage;
 import com.google.inject.name.Names;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
 import com.nesscomputing.config.Config;
 import com.nesscomputing.config.ConfigModule;
+import com.nesscomputing.jdbc.async.AsyncIDBI;
+import com.nesscomputing.jdbc.pool.NessPooledDataSource;
+import com.nesscomputing.jdbc.stats.LeakDetector;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+import com.nesscomputing.lifecycle.Lifecycle;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.LifecycleModule;
 import com.nesscomputing.testing.lessio.AllowDNSResolution;
 
 @AllowDNSResolution
@@ -126,6 +139,222 @@ public class DatabaseModuleTest
         }
     }
 
+    @Test
+    public void testC3P0HoldTime() throws Exception
+    {
+        final DataSource dataSource = injector.getInstance(Key.get(DataSource.class, Names.named(DATABASE_NAME)));
+        final PoolStatistics statistics = injector.getInstance(Key.get(PoolStatistics.class, Names.named(DATABASE_NAME)));
+        statistics.reset();
+
+        // Proxy mode, the connection customizer records the hold time.
+        dataSource.getConnection().close();
+        Assert.assertEquals(1, statistics.getHoldTime().getCount());
+    }
+
+    @Test
+    public void testDelegateWrappers() throws Exception
+    {
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new DatabaseModule("delegate"),
+            ConfigModule.forTesting("ness.db.delegate.uri",  "jdbc:h2:mem:delegate" + UUID.randomUUID().toString(),
+                                    "ness.db.delegate.wrapper.delegate", "true"),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.requireExplicitBindings();
+                    binder.disableCircularProxies();
+                }
+            });
+        final DataSource dataSource = injector.getInstance(Key.get(DataSource.class, Names.named("delegate")));
+        Assert.assertNotNull(dataSource);
+        Assert.assertFalse(Proxy.isProxyClass(dataSource.getClass()));
+        Assert.assertTrue(dataSource instanceof Closeable);
+
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            Assert.assertNotNull(connection);
+            Assert.assertFalse(Proxy.isProxyClass(connection.getClass()));
+            Assert.assertTrue(connection instanceof C3P0ProxyConnection);
+        }
+        finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    @Test
+    public void testStopDelegateWrappers() throws Exception
+    {
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new DatabaseModule("delegate"),
+            new LifecycleModule(),
+            ConfigModule.forTesting("ness.db.delegate.uri",  "jdbc:h2:mem:delegate" + UUID.randomUUID().toString(),
+                                    "ness.db.delegate.wrapper.delegate", "true"),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.disableCircularProxies();
+                }
+            });
+        final Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+        lifecycle.executeTo(LifecycleStage.START_STAGE);
+
+        final DataSource dataSource = injector.getInstance(Key.get(DataSource.class, Names.named("delegate")));
+        dataSource.getConnection().close();
+
+        lifecycle.executeTo(LifecycleStage.STOP_STAGE);
+
+        try {
+            dataSource.getConnection();
+            Assert.fail();
+        }
+        catch (SQLException e) {
+            // The pool was destroyed.
+        }
+    }
+
+    @Test
+    public void testNessPool() throws Exception
+    {
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new DatabaseModule("native"),
+            ConfigModule.forTesting("ness.db.native.uri",  "jdbc:h2:mem:native" + UUID.randomUUID().toString(),
+                                    "ness.db.native.pool.implementation", "ness",
+                                    "ness.db.native.pool.maxPoolSize", "2"),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.requireExplicitBindings();
+                    binder.disableCircularProxies();
+                }
+            });
+        final DataSource dataSource = injector.getInstance(Key.get(DataSource.class, Names.named("native")));
+        Assert.assertNotNull(dataSource);
+        Assert.assertTrue(dataSource.isWrapperFor(NessPooledDataSource.class));
+        Assert.assertEquals(2, dataSource.unwrap(NessPooledDataSource.class).getMaxPoolSize());
+
+        final PoolStatistics statistics = injector.getInstance(Key.get(PoolStatistics.class, Names.named("native")));
+        statistics.reset();
+
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            Assert.assertNotNull(connection);
+            Assert.assertTrue(connection instanceof C3P0ProxyConnection);
+            Assert.assertEquals(1, statistics.getNumBusyConnections());
+        }
+        finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+
+        Assert.assertEquals(1, statistics.getCheckoutCount());
+        Assert.assertEquals(1, statistics.getHoldTime().getCount());
+        Assert.assertEquals(0, statistics.getNumBusyConnections());
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("com.nesscomputing.jdbc:type=PoolStatistics,name=\"native\"")));
+    }
+
+    @Test
+    public void testWarmPool() throws Exception
+    {
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new DatabaseModule("warm"),
+            ConfigModule.forTesting("ness.db.warm.uri",  "jdbc:h2:mem:warm" + UUID.randomUUID().toString(),
+                                    "ness.db.warm.pool.implementation", "ness",
+                                    "ness.db.warm.pool.maxPoolSize", "4",
+                                    "ness.db.warm.pool.warmSize", "3"),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.requireExplicitBindings();
+                    binder.disableCircularProxies();
+                }
+            });
+        final DataSource dataSource = injector.getInstance(Key.get(DataSource.class, Names.named("warm")));
+        final NessPooledDataSource pool = dataSource.unwrap(NessPooledDataSource.class);
+
+        // The probe connection is one of the warm connections.
+        Assert.assertEquals(3, pool.getNumConnections());
+        Assert.assertEquals(3, pool.getNumIdleConnections());
+        pool.close();
+    }
+
+    @Test
+    public void testWarmSizeCappedByC3P0Default() throws Exception
+    {
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new DatabaseModule("warmc3p0"),
+            ConfigModule.forTesting("ness.db.warmc3p0.uri",  "jdbc:h2:mem:warmc3p0" + UUID.randomUUID().toString(),
+                                    "ness.db.warmc3p0.pool.warmSize", "100"),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.requireExplicitBindings();
+                    binder.disableCircularProxies();
+                }
+            });
+
+        // Does not wait for more connections than C3P0 opens by default.
+        final PoolStatistics statistics = injector.getInstance(Key.get(PoolStatistics.class, Names.named("warmc3p0")));
+        injector.getInstance(Key.get(DataSource.class, Names.named("warmc3p0")));
+        Assert.assertTrue(statistics.getNumConnections() >= C3P0DataSourceProvider.C3P0_DEFAULT_MAX_POOL_SIZE);
+    }
+
+    @Test
+    public void testAsyncThreadsFromPool() throws Exception
+    {
+        final Properties props = new Properties();
+        props.setProperty("pool.implementation", "NESS");
+        props.setProperty("pool.maxPoolSize", "3");
+
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new DatabaseModule("asyncpool"),
+            ConfigModule.forTesting("ness.db.asyncpool.uri",  "jdbc:h2:mem:asyncpool" + UUID.randomUUID().toString()),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.requireExplicitBindings();
+                    binder.disableCircularProxies();
+                    binder.bind(Properties.class).annotatedWith(Names.named("asyncpool")).toInstance(props);
+                }
+            });
+
+        final AsyncIDBI asyncIdbi = injector.getInstance(Key.get(AsyncIDBI.class, Names.named("asyncpool")));
+        Assert.assertEquals(3, asyncIdbi.getThreads());
+    }
+
+    @Test
+    public void testLeakDetector() throws Exception
+    {
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new DatabaseModule("leak"),
+            ConfigModule.forTesting("ness.db.leak.uri",  "jdbc:h2:mem:leak" + UUID.randomUUID().toString(),
+                                    "ness.db.leak.leak.enabled", "true"),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.requireExplicitBindings();
+                    binder.disableCircularProxies();
+                }
+            });
+        final DataSource dataSource = injector.getInstance(Key.get(DataSource.class, Names.named("leak")));
+        final LeakDetector leakDetector = injector.getInstance(Key.get(LeakDetector.class, Names.named("leak")));
+        Assert.assertTrue(leakDetector.isEnabled());
+
+        try {
+            final Connection connection = dataSource.getConnection();
+            Assert.assertEquals(1, leakDetector.getActiveCheckoutCount());
+            connection.close();
+            Assert.assertEquals(0, leakDetector.getActiveCheckoutCount());
+        }
+        finally {
+            leakDetector.stop();
+        }
+    }
+
     @Test
     public void testMultiInstallOk()
     {
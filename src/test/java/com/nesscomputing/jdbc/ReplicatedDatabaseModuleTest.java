@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Stage;
+import com.google.inject.name.Names;
+import com.nesscomputing.config.ConfigModule;
+import com.nesscomputing.jdbc.replica.ReplicaRouting;
+import com.nesscomputing.lifecycle.Lifecycle;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.LifecycleModule;
+import com.nesscomputing.testing.lessio.AllowDNSResolution;
+
+@AllowDNSResolution
+public class ReplicatedDatabaseModuleTest
+{
+    @After
+    public void tearDown()
+    {
+        ReplicaRouting.clear();
+    }
+
+    @Test
+    public void testStartStop() throws Exception
+    {
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+            new ReplicatedDatabaseModule("primary", "replica"),
+            new LifecycleModule(),
+            ConfigModule.forTesting("ness.db.primary.uri",  "jdbc:h2:mem:primary" + UUID.randomUUID().toString(),
+                                    "ness.db.replica.uri",  "jdbc:h2:mem:replica" + UUID.randomUUID().toString()),
+            new Module() {
+                @Override
+                public void configure(final Binder binder) {
+                    binder.disableCircularProxies();
+                }
+            });
+        final Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+        lifecycle.executeTo(LifecycleStage.START_STAGE);
+
+        final DataSource dataSource = injector.getInstance(Key.get(DataSource.class, Names.named("primary")));
+        final DataSource replicaDataSource = injector.getInstance(Key.get(DataSource.class, Names.named("replica")));
+        dataSource.getConnection().close();
+        ReplicaRouting.setReadOnly(true);
+        dataSource.getConnection().close();
+        ReplicaRouting.setReadOnly(false);
+
+        lifecycle.executeTo(LifecycleStage.STOP_STAGE);
+
+        // Both C3P0 pools were destroyed.
+        assertDestroyed(dataSource);
+        assertDestroyed(replicaDataSource);
+    }
+
+    private static void assertDestroyed(final DataSource dataSource)
+    {
+        try {
+            dataSource.getConnection();
+            Assert.fail();
+        }
+        catch (SQLException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.skife.config.ConfigurationObjectFactory;
+
+import com.google.inject.ProvisionException;
+import com.mchange.v2.c3p0.DataSources;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.jdbc.pool.NessPoolConfig;
+import com.nesscomputing.jdbc.pool.NessPooledDataSource;
+
+public class TestPoolStartup
+{
+    private static final DataSource DATA_SOURCE = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] { DataSource.class }, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+        {
+            return "isWrapperFor".equals(method.getName()) ? Boolean.FALSE : null;
+        }
+    });
+
+    private static PoolStartup createStartup(final String timeout)
+    {
+        final PoolStartup poolStartup = new PoolStartup();
+        poolStartup.setUpConfig(Config.getFixedConfig("ness.db.startup.parallel", "true",
+                                                      "ness.db.startup.timeout", timeout));
+        return poolStartup;
+    }
+
+    @Test
+    public void testParallel() throws Exception
+    {
+        final PoolStartup poolStartup = createStartup("10000");
+
+        // Every pool only starts once all of them are being started.
+        final CountDownLatch latch = new CountDownLatch(3);
+        for (final String dbName : new String[] { "one", "two", "three" }) {
+            poolStartup.register(dbName, new Callable<DataSource>() {
+                @Override
+                public DataSource call() throws Exception
+                {
+                    latch.countDown();
+                    Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+                    return DATA_SOURCE;
+                }
+            });
+        }
+
+        Assert.assertSame(DATA_SOURCE, poolStartup.getPool("two"));
+        Assert.assertSame(DATA_SOURCE, poolStartup.getPool("one"));
+        Assert.assertSame(DATA_SOURCE, poolStartup.getPool("three"));
+    }
+
+    @Test
+    public void testFailuresReportedTogether() throws Exception
+    {
+        final PoolStartup poolStartup = createStartup("10000");
+
+        poolStartup.register("good", new Callable<DataSource>() {
+            @Override
+            public DataSource call()
+            {
+                return DATA_SOURCE;
+            }
+        });
+        for (final String dbName : new String[] { "bad1", "bad2" }) {
+            poolStartup.register(dbName, new Callable<DataSource>() {
+                @Override
+                public DataSource call() throws Exception
+                {
+                    throw new SQLException("no database " + dbName);
+                }
+            });
+        }
+
+        try {
+            poolStartup.getPool("good");
+            Assert.fail();
+        }
+        catch (ProvisionException e) {
+            Assert.assertEquals(2, e.getErrorMessages().size());
+            Assert.assertTrue(e.getMessage().contains("bad1"));
+            Assert.assertTrue(e.getMessage().contains("bad2"));
+        }
+
+        // All pools fail from now on.
+        try {
+            poolStartup.getPool("good");
+            Assert.fail();
+        }
+        catch (ProvisionException e) {
+            Assert.assertEquals(2, e.getErrorMessages().size());
+        }
+    }
+
+    @Test
+    public void testSharedDeadline() throws Exception
+    {
+        final PoolStartup poolStartup = createStartup("200");
+
+        for (final String dbName : new String[] { "slow1", "slow2" }) {
+            poolStartup.register(dbName, new Callable<DataSource>() {
+                @Override
+                public DataSource call() throws Exception
+                {
+                    Thread.sleep(5000L);
+                    return DATA_SOURCE;
+                }
+            });
+        }
+
+        final long start = System.nanoTime();
+        try {
+            poolStartup.getPool("slow1");
+            Assert.fail();
+        }
+        catch (ProvisionException e) {
+            Assert.assertEquals(2, e.getErrorMessages().size());
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000L);
+    }
+
+    @Test
+    public void testUnusedPoolsDestroyedOnStop() throws Exception
+    {
+        final PoolStartup poolStartup = createStartup("10000");
+        final NessPooledDataSource unusedPool = new NessPooledDataSource("unused",
+                                                                         DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString()),
+                                                                         new ConfigurationObjectFactory(new Properties()).build(NessPoolConfig.class));
+        poolStartup.register("used", new Callable<DataSource>() {
+            @Override
+            public DataSource call()
+            {
+                return DATA_SOURCE;
+            }
+        });
+        poolStartup.register("unused", new Callable<DataSource>() {
+            @Override
+            public DataSource call()
+            {
+                return unusedPool;
+            }
+        });
+
+        Assert.assertSame(DATA_SOURCE, poolStartup.getPool("used"));
+        poolStartup.stop();
+
+        try {
+            unusedPool.getConnection();
+            Assert.fail();
+        }
+        catch (SQLException e) {
+            // The pool was destroyed.
+        }
+    }
+
+    @Test
+    public void testSequentialByDefault() throws Exception
+    {
+        final PoolStartup poolStartup = new PoolStartup();
+        poolStartup.setUpConfig(Config.getFixedConfig());
+
+        poolStartup.register("one", new Callable<DataSource>() {
+            @Override
+            public DataSource call()
+            {
+                return DATA_SOURCE;
+            }
+        });
+        poolStartup.register("two", new Callable<DataSource>() {
+            @Override
+            public DataSource call()
+            {
+                throw new IllegalStateException("two was never requested");
+            }
+        });
+
+        Assert.assertSame(DATA_SOURCE, poolStartup.getPool("one"));
+    }
+
+    @Test
+    public void testSingle() throws Exception
+    {
+        final PoolStartup poolStartup = createStartup("10000");
+        poolStartup.register("single", new Callable<DataSource>() {
+            @Override
+            public DataSource call() throws Exception
+            {
+                throw new SQLException("no database");
+            }
+        });
+
+        try {
+            poolStartup.getPool("single");
+            Assert.fail();
+        }
+        catch (SQLException e) {
+            Assert.assertEquals("no database", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.argument;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestArrayArgumentFactory
+{
+    private final ArrayArgumentFactory factory = new ArrayArgumentFactory();
+
+    @Test
+    public void testAccepts()
+    {
+        Assert.assertTrue(factory.accepts(Object.class, new long [0], null));
+        Assert.assertTrue(factory.accepts(Object.class, new int [0], null));
+        Assert.assertTrue(factory.accepts(Object.class, new double [0], null));
+        Assert.assertTrue(factory.accepts(Object.class, new UUID [0], null));
+        Assert.assertFalse(factory.accepts(Object.class, new Long [0], null));
+        Assert.assertFalse(factory.accepts(Object.class, "foo", null));
+        Assert.assertFalse(factory.accepts(Object.class, null, null));
+    }
+
+    @Test
+    public void testLiterals()
+    {
+        Assert.assertEquals("{}", LiteralArray.forValue(new long [0]).toString());
+        Assert.assertEquals("{1,-2," + Long.MAX_VALUE + "}", LiteralArray.forValue(new long [] { 1L, -2L, Long.MAX_VALUE }).toString());
+        Assert.assertEquals("{3,4}", LiteralArray.forValue(new int [] { 3, 4 }).toString());
+        Assert.assertEquals("{1.5,NaN,-Infinity}", LiteralArray.forValue(new double [] { 1.5, Double.NaN, Double.NEGATIVE_INFINITY }).toString());
+
+        final UUID uuid = UUID.randomUUID();
+        final UUID small = new UUID(1L, 2L);
+        Assert.assertEquals("{" + uuid + "," + small + ",NULL}", LiteralArray.forValue(new UUID [] { uuid, small, null }).toString());
+    }
+
+    @Test
+    public void testTypes()
+    {
+        Assert.assertEquals("int8", LiteralArray.forValue(new long [0]).getBaseTypeName());
+        Assert.assertEquals("int4", LiteralArray.forValue(new int [0]).getBaseTypeName());
+        Assert.assertEquals("float8", LiteralArray.forValue(new double [0]).getBaseTypeName());
+        Assert.assertEquals("uuid", LiteralArray.forValue(new UUID [0]).getBaseTypeName());
+        Assert.assertEquals(Types.BIGINT, LiteralArray.forValue(new long [0]).getBaseType());
+    }
+
+    @Test
+    public void testApply() throws Exception
+    {
+        final Array [] bound = new Array[1];
+        final PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?> [] { PreparedStatement.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                Assert.assertEquals("setArray", method.getName());
+                Assert.assertEquals(3, args[0]);
+                bound[0] = (Array) args[1];
+                return null;
+            }
+        });
+
+        final long [] ids = new long [] { 5L, 6L };
+        factory.build(Object.class, ids, null).apply(3, statement, null);
+
+        Assert.assertNotNull(bound[0]);
+        Assert.assertSame(ids, bound[0].getArray());
+        Assert.assertEquals("{5,6}", bound[0].toString());
+    }
+}
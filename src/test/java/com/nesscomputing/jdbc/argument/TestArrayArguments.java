@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.argument;
+
+import java.net.URI;
+import java.util.UUID;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Stage;
+import com.google.inject.name.Named;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.util.LongMapper;
+import org.skife.jdbi.v2.util.StringMapper;
+
+import com.nesscomputing.config.Config;
+import com.nesscomputing.config.ConfigModule;
+import com.nesscomputing.db.postgres.junit.EmbeddedPostgresRules;
+import com.nesscomputing.db.postgres.junit.EmbeddedPostgresTestDatabaseRule;
+import com.nesscomputing.jdbc.DatabaseModule;
+import com.nesscomputing.lifecycle.junit.LifecycleRule;
+import com.nesscomputing.lifecycle.junit.LifecycleRunner;
+import com.nesscomputing.lifecycle.junit.LifecycleStatement;
+import com.nesscomputing.testing.lessio.AllowDNSResolution;
+import com.nesscomputing.testing.lessio.AllowNetworkAccess;
+
+@AllowDNSResolution
+@AllowNetworkAccess(endpoints= {"127.0.0.1:*"})
+@RunWith(LifecycleRunner.class)
+public class TestArrayArguments
+{
+    @LifecycleRule
+    public final LifecycleStatement lifecycleRule = LifecycleStatement.serviceDiscoveryLifecycle();
+
+    @Rule
+    public EmbeddedPostgresTestDatabaseRule postgresRule = EmbeddedPostgresRules.embeddedDatabaseRule(URI.create("classpath:/sql"));
+
+    @Inject
+    @Named("test")
+    private IDBI testDbi;
+
+    @Before
+    public void setUp()
+    {
+        final Config config = postgresRule.getTweakedConfig("test");
+        final Injector inj = Guice.createInjector(Stage.PRODUCTION,
+                                                  new ConfigModule(config),
+                                                  lifecycleRule.getLifecycleModule(),
+                                                  new DatabaseModule("test"));
+
+        inj.injectMembers(this);
+
+        Assert.assertNotNull(testDbi);
+    }
+
+    @Test
+    public void testPrimitiveArray()
+    {
+        final long [] ids = new long[100000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i * 2;
+        }
+
+        final Long count = testDbi.withHandle(new HandleCallback<Long>() {
+            @Override
+            public Long withHandle(final Handle handle)
+            {
+                return handle.createQuery("SELECT COUNT(*) FROM generate_series(1, 100) AS x WHERE x = ANY(:ids)").bind("ids", ids).map(LongMapper.FIRST).first();
+            }
+        });
+        Assert.assertEquals(50L, count.longValue());
+    }
+
+    @Test
+    public void testUuidArray()
+    {
+        final UUID uuid = UUID.randomUUID();
+        final String found = testDbi.withHandle(new HandleCallback<String>() {
+            @Override
+            public String withHandle(final Handle handle)
+            {
+                return handle.createQuery("SELECT CAST((:uuids)[2] AS text)").bind("uuids", new UUID [] { UUID.randomUUID(), uuid }).map(StringMapper.FIRST).first();
+            }
+        });
+        Assert.assertEquals(uuid.toString(), found);
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.async;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestAsyncIDBI
+{
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AsyncIDBI asyncIdbi = new AsyncIDBI("test", new FakeIDBI(), 2, 2);
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        asyncIdbi.shutdown();
+    }
+
+    @Test
+    public void testResult() throws Exception
+    {
+        release.countDown();
+        final ListenableFuture<String> future = asyncIdbi.withHandle(new HandleCallback<String>() {
+            @Override
+            public String withHandle(final Handle handle)
+            {
+                return Thread.currentThread().getName();
+            }
+        });
+        Assert.assertTrue(future.get(10, TimeUnit.SECONDS).startsWith("async-test-"));
+    }
+
+    @Test
+    public void testFailure() throws Exception
+    {
+        release.countDown();
+        final ListenableFuture<String> future = asyncIdbi.withHandle(new HandleCallback<String>() {
+            @Override
+            public String withHandle(final Handle handle)
+            {
+                throw new IllegalStateException("broken");
+            }
+        });
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        }
+        catch (ExecutionException ee) {
+            Assert.assertTrue(ee.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testRejectedWhenFull() throws Exception
+    {
+        final HandleCallback<Void> blocking = new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception
+            {
+                release.await();
+                return null;
+            }
+        };
+
+        // Two threads and two queue slots.
+        for (int i = 0; i < 4; i++) {
+            asyncIdbi.withHandle(blocking);
+        }
+        final ListenableFuture<Void> rejected = asyncIdbi.withHandle(blocking);
+
+        Assert.assertTrue(rejected.isDone());
+        try {
+            rejected.get();
+            Assert.fail();
+        }
+        catch (ExecutionException ee) {
+            Assert.assertTrue(ee.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1L, asyncIdbi.getRejectedCount());
+        Assert.assertEquals(2, asyncIdbi.getQueueDepth());
+    }
+
+    @Test
+    public void testShutdownWaitsForAcceptedCalls() throws Exception
+    {
+        final HandleCallback<Void> slow = new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception
+            {
+                Thread.sleep(200L);
+                return null;
+            }
+        };
+
+        final ListenableFuture<Void> running = asyncIdbi.withHandle(slow);
+        final ListenableFuture<Void> queued = asyncIdbi.withHandle(slow);
+        asyncIdbi.shutdown();
+
+        Assert.assertTrue(running.isDone());
+        Assert.assertTrue(queued.isDone());
+        Assert.assertTrue(asyncIdbi.withHandle(slow).isDone());
+        Assert.assertEquals(1L, asyncIdbi.getRejectedCount());
+    }
+
+    /**
+     * Runs the callbacks without a database.
+     */
+    private static class FakeIDBI implements IDBI
+    {
+        @Override
+        public <ReturnType> ReturnType withHandle(final HandleCallback<ReturnType> callback)
+        {
+            try {
+                return callback.withHandle(null);
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public <ReturnType> ReturnType inTransaction(final TransactionCallback<ReturnType> callback)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Handle open()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void define(final String key, final Object value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <SqlObjectType> SqlObjectType open(final Class<SqlObjectType> sqlObjectType)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <SqlObjectType> SqlObjectType onDemand(final Class<SqlObjectType> sqlObjectType)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close(final Object sqlObject)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.batch;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.util.LongMapper;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.mchange.v2.c3p0.DataSources;
+
+public class TestGroupCommitter
+{
+    private static final String INSERT = "INSERT INTO group_commit (id) VALUES (:id)";
+
+    private DBI dbi = null;
+    private GroupCommitter groupCommitter = null;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dbi = new DBI(DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1"));
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE group_commit (id INTEGER PRIMARY KEY)").execute();
+                return null;
+            }
+        });
+        groupCommitter = new GroupCommitter("test", dbi, createConfig());
+    }
+
+    private static GroupCommitConfig createConfig()
+    {
+        return new GroupCommitConfig() {
+            @Override
+            public int getMaxBatchSize()
+            {
+                return 50;
+            }
+
+            @Override
+            public long getMaxDelay()
+            {
+                return 50L;
+            }
+
+            @Override
+            public int getQueueSize()
+            {
+                return 1000;
+            }
+        };
+    }
+
+    @After
+    public void tearDown()
+    {
+        Assert.assertNotNull(groupCommitter);
+        groupCommitter.stop();
+    }
+
+    @Test
+    public void testWritesAreBatched() throws Exception
+    {
+        final List<ListenableFuture<Integer>> futures = Lists.newArrayList();
+        for (int i = 0; i < 200; i++) {
+            futures.add(groupCommitter.submit(INSERT, ImmutableMap.of("id", i)));
+        }
+        for (final ListenableFuture<Integer> future : futures) {
+            Assert.assertEquals(Integer.valueOf(1), future.get(10, TimeUnit.SECONDS));
+        }
+
+        Assert.assertEquals(200L, countRows());
+        Assert.assertEquals(200L, groupCommitter.getWriteCount());
+        Assert.assertTrue(groupCommitter.getBatchCount() <= 10);
+    }
+
+    @Test
+    public void testFailureOnlyAffectsOwnWrite() throws Exception
+    {
+        final ListenableFuture<Integer> first = groupCommitter.submit(INSERT, ImmutableMap.of("id", 1));
+        final ListenableFuture<Integer> second = groupCommitter.submit(INSERT, ImmutableMap.of("id", 2));
+        final ListenableFuture<Integer> duplicate = groupCommitter.submit(INSERT, ImmutableMap.of("id", 1));
+
+        Assert.assertEquals(Integer.valueOf(1), first.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(1), second.get(10, TimeUnit.SECONDS));
+        try {
+            duplicate.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        }
+        catch (ExecutionException ee) {
+            // Expected, the key exists.
+        }
+
+        Assert.assertEquals(2L, countRows());
+        Assert.assertEquals(1L, groupCommitter.getRetriedBatchCount());
+    }
+
+    @Test
+    public void testRejectedAfterStop() throws Exception
+    {
+        groupCommitter.stop();
+        try {
+            groupCommitter.submit(INSERT, ImmutableMap.of("id", 1)).get();
+            Assert.fail();
+        }
+        catch (ExecutionException ee) {
+            Assert.assertTrue(ee.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void testStopCommitsQueuedWrites() throws Exception
+    {
+        final List<ListenableFuture<Integer>> futures = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            futures.add(groupCommitter.submit(INSERT, ImmutableMap.of("id", i)));
+        }
+        groupCommitter.stop();
+
+        // The pool may be destroyed right after stop(), so all writes must be done by now.
+        for (final ListenableFuture<Integer> future : futures) {
+            Assert.assertTrue(future.isDone());
+            Assert.assertEquals(Integer.valueOf(1), future.get());
+        }
+        Assert.assertEquals(100L, countRows());
+    }
+
+    @Test
+    public void testNoRetryAfterExecution() throws Exception
+    {
+        final DBI failingDbi = new DBI(DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1")) {
+            @Override
+            public <ReturnType> ReturnType inTransaction(final TransactionCallback<ReturnType> callback)
+            {
+                // Fails after the batch was committed, like a connection that drops while the commit is acknowledged.
+                super.inTransaction(callback);
+                throw new IllegalStateException("commit failed");
+            }
+        };
+        failingDbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE group_commit (id INTEGER)").execute();
+                return null;
+            }
+        });
+
+        final GroupCommitter failingGroupCommitter = new GroupCommitter("failing", failingDbi, createConfig());
+        try {
+            final List<ListenableFuture<Integer>> futures = Lists.newArrayList();
+            for (int i = 0; i < 10; i++) {
+                futures.add(failingGroupCommitter.submit(INSERT, ImmutableMap.of("id", i)));
+            }
+            for (final ListenableFuture<Integer> future : futures) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    Assert.fail();
+                }
+                catch (ExecutionException ee) {
+                    Assert.assertTrue(ee.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+        finally {
+            failingGroupCommitter.stop();
+        }
+
+        // Every write was applied once, none was retried.
+        final long rows = failingDbi.withHandle(new HandleCallback<Long>() {
+            @Override
+            public Long withHandle(final Handle handle)
+            {
+                return handle.createQuery("SELECT COUNT(*) FROM group_commit").map(LongMapper.FIRST).first();
+            }
+        });
+        Assert.assertEquals(10L, rows);
+        Assert.assertEquals(0L, failingGroupCommitter.getRetriedBatchCount());
+    }
+
+    @Test
+    public void testErrorFailsBatch() throws Exception
+    {
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        final DBI failingDbi = new DBI(DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1")) {
+            @Override
+            public <ReturnType> ReturnType inTransaction(final TransactionCallback<ReturnType> callback)
+            {
+                if (fail.getAndSet(false)) {
+                    throw new AssertionError("commit failed");
+                }
+                return super.inTransaction(callback);
+            }
+        };
+        failingDbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE group_commit (id INTEGER PRIMARY KEY)").execute();
+                return null;
+            }
+        });
+
+        final GroupCommitter failingGroupCommitter = new GroupCommitter("failing", failingDbi, createConfig());
+        try {
+            try {
+                failingGroupCommitter.submit(INSERT, ImmutableMap.of("id", 1)).get(10, TimeUnit.SECONDS);
+                Assert.fail();
+            }
+            catch (ExecutionException ee) {
+                Assert.assertTrue(ee.getCause() instanceof AssertionError);
+            }
+
+            // The background thread survived the error.
+            Assert.assertEquals(Integer.valueOf(1), failingGroupCommitter.submit(INSERT, ImmutableMap.of("id", 2)).get(10, TimeUnit.SECONDS));
+        }
+        finally {
+            failingGroupCommitter.stop();
+        }
+    }
+
+    private long countRows()
+    {
+        return dbi.withHandle(new HandleCallback<Long>() {
+            @Override
+            public Long withHandle(final Handle handle)
+            {
+                return handle.createQuery("SELECT COUNT(*) FROM group_commit").map(LongMapper.FIRST).first();
+            }
+        });
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.cache;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.util.StringMapper;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.mchange.v2.c3p0.DataSources;
+
+public class TestQueryCache
+{
+    private static final CachedQuery<String> QUERY = CachedQuery.of("SELECT name FROM cached_users WHERE id = :id", StringMapper.FIRST).bind("id", 1).tables("cached_users");
+
+    private QueryCache queryCache = null;
+
+    @Before
+    public void setUp()
+    {
+        queryCache = new QueryCache("test", new QueryCacheConfig() {
+            @Override
+            public long getTtl()
+            {
+                return 60000L;
+            }
+
+            @Override
+            public long getMaxWeight()
+            {
+                return 100L;
+            }
+        });
+        queryCache.activate();
+    }
+
+    @Test
+    public void testWrittenTables()
+    {
+        Assert.assertEquals(ImmutableSet.of("users"), QueryCache.findWrittenTables("INSERT INTO users (id) VALUES (?)"));
+        Assert.assertEquals(ImmutableSet.of("users"), QueryCache.findWrittenTables("  update public.\"Users\" SET name = ?"));
+        Assert.assertEquals(ImmutableSet.of("users"), QueryCache.findWrittenTables("DELETE FROM ONLY users WHERE id = ?"));
+        Assert.assertEquals(ImmutableSet.of("a", "b"), QueryCache.findWrittenTables("TRUNCATE TABLE a, b CASCADE"));
+        Assert.assertEquals(ImmutableSet.of("users"), QueryCache.findWrittenTables("COPY users (id, name) FROM STDIN"));
+
+        Assert.assertNull(QueryCache.findWrittenTables("SELECT * FROM users"));
+        Assert.assertNull(QueryCache.findWrittenTables("COPY users TO STDOUT"));
+        Assert.assertNull(QueryCache.findWrittenTables("WITH x AS (SELECT 1) SELECT * FROM x"));
+
+        // Can not tell which tables change, so everything is invalidated.
+        Assert.assertEquals(ImmutableSet.of(), QueryCache.findWrittenTables("ALTER TABLE users ADD COLUMN x INTEGER"));
+        Assert.assertEquals(ImmutableSet.of(), QueryCache.findWrittenTables("WITH x AS (DELETE FROM users RETURNING id) SELECT * FROM x"));
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        final List<String> result = ImmutableList.of("a");
+        queryCache.put(QUERY, queryCache.snapshot(QUERY), result);
+        Assert.assertEquals(result, queryCache.get(QUERY));
+
+        queryCache.statementExecuted("UPDATE other_table SET x = 1");
+        Assert.assertEquals(result, queryCache.get(QUERY));
+
+        queryCache.statementExecuted("UPDATE cached_users SET name = 'b'");
+        Assert.assertNull(queryCache.get(QUERY));
+
+        queryCache.put(QUERY, queryCache.snapshot(QUERY), result);
+        queryCache.statementExecuted("DROP TABLE something");
+        Assert.assertNull(queryCache.get(QUERY));
+
+        Assert.assertEquals(2, queryCache.getHitCount());
+        Assert.assertEquals(2, queryCache.getMissCount());
+    }
+
+    @Test
+    public void testWriteWhileLoading()
+    {
+        final long [] snapshot = queryCache.snapshot(QUERY);
+        queryCache.invalidate("cached_users");
+        queryCache.put(QUERY, snapshot, ImmutableList.of("stale"));
+        Assert.assertNull(queryCache.get(QUERY));
+    }
+
+    @Test
+    public void testInvalidateOnExit()
+    {
+        queryCache.enterCall();
+        queryCache.statementExecuted("UPDATE cached_users SET name = 'b'");
+
+        // Loaded before the transaction committed.
+        queryCache.put(QUERY, queryCache.snapshot(QUERY), ImmutableList.of("a"));
+        Assert.assertNotNull(queryCache.get(QUERY));
+
+        queryCache.exitCall();
+        Assert.assertNull(queryCache.get(QUERY));
+    }
+
+    @Test
+    public void testCachingIDBI() throws Exception
+    {
+        final DBI dbi = new DBI(DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1"));
+        dbi.setTimingCollector(queryCache);
+        final CachingIDBI cachingIdbi = new CachingIDBI(dbi, queryCache);
+
+        cachingIdbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE cached_users (id INTEGER PRIMARY KEY, name VARCHAR(20))").execute();
+                handle.createStatement("INSERT INTO cached_users (id, name) VALUES (1, 'a')").execute();
+                return null;
+            }
+        });
+
+        Assert.assertEquals("a", cachingIdbi.first(QUERY));
+        Assert.assertEquals("a", cachingIdbi.first(QUERY));
+        Assert.assertEquals(1, queryCache.getHitCount());
+        Assert.assertEquals(1, queryCache.getMissCount());
+
+        cachingIdbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("UPDATE cached_users SET name = 'b' WHERE id = 1").execute();
+                return null;
+            }
+        });
+
+        Assert.assertEquals("b", cachingIdbi.first(QUERY));
+        Assert.assertEquals(2, queryCache.getMissCount());
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.columnar;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.exceptions.CallbackFailedException;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+
+import com.google.common.collect.Lists;
+import com.mchange.v2.c3p0.DataSources;
+import com.nesscomputing.jdbc.stream.QueryStreamer;
+import com.nesscomputing.jdbc.stream.StreamingConfig;
+
+public class TestColumnarScanner
+{
+    private static final ColumnarConfig COLUMNAR_CONFIG = new ColumnarConfig() {
+        @Override
+        public int getBatchSize()
+        {
+            return 100;
+        }
+    };
+
+    /**
+     * A result set over a fixed row, with a BIGINT and a DOUBLE column. A null value is read as 0.
+     */
+    private static ResultSet createResultSet(final Object [] row, final int [] sqlTypes)
+    {
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                if ("getColumnCount".equals(method.getName())) {
+                    return sqlTypes.length;
+                }
+                else if ("getColumnType".equals(method.getName())) {
+                    return sqlTypes[(Integer) args[0] - 1];
+                }
+                return "c" + args[0];
+            }
+        });
+        final AtomicBoolean wasNull = new AtomicBoolean();
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                if ("getMetaData".equals(method.getName())) {
+                    return metaData;
+                }
+                else if ("wasNull".equals(method.getName())) {
+                    return wasNull.get();
+                }
+                final Object value = row[(Integer) args[0] - 1];
+                wasNull.set(value == null);
+                if ("getLong".equals(method.getName())) {
+                    return value == null ? 0L : ((Number) value).longValue();
+                }
+                return value == null ? 0.0 : ((Number) value).doubleValue();
+            }
+        });
+    }
+
+    @Test
+    public void testBatch() throws Exception
+    {
+        final Object [] row = new Object[2];
+        final int [] types = new int [] { Types.BIGINT, Types.DOUBLE };
+        final ColumnBatch batch = ColumnBatch.forResultSet(createResultSet(row, types), 100);
+
+        Assert.assertEquals(2, batch.getColumnCount());
+        Assert.assertEquals(ColumnType.LONG, batch.getColumnType(0));
+        Assert.assertEquals(ColumnType.DOUBLE, batch.getColumnType(1));
+        Assert.assertEquals(1, batch.getColumnIndex("C2"));
+
+        final long [] longs = batch.getLongs(0);
+        for (int i = 0; i < 100; i++) {
+            row[0] = (long) i;
+            row[1] = (i == 70) ? null : Double.valueOf(i / 2.0);
+            batch.readRow(createResultSet(row, types));
+        }
+        Assert.assertTrue(batch.isFull());
+        Assert.assertEquals(99L, batch.getLongs(0)[99]);
+        Assert.assertEquals(35.5, batch.getDoubles(1)[71], 0.0);
+        Assert.assertFalse(batch.hasNulls(0));
+        Assert.assertTrue(batch.hasNulls(1));
+        Assert.assertTrue(batch.isNull(1, 70));
+        Assert.assertFalse(batch.isNull(1, 6));
+        Assert.assertEquals(1L << 6, batch.getNulls(1)[1]);
+
+        // The arrays are reused, the null bitmap is reset.
+        batch.clear();
+        Assert.assertEquals(0, batch.size());
+        Assert.assertFalse(batch.hasNulls(1));
+        Assert.assertEquals(0L, batch.getNulls(1)[1]);
+        Assert.assertSame(longs, batch.getLongs(0));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnsupportedColumn() throws Exception
+    {
+        ColumnBatch.forResultSet(createResultSet(new Object[1], new int [] { Types.VARCHAR }), 10);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testWrongColumnType()
+    {
+        new ColumnBatch(new String [] { "a" }, new ColumnType [] { ColumnType.LONG }, 10).getDoubles(0);
+    }
+
+    @Test
+    public void testScan() throws Exception
+    {
+        final DBI dbi = new DBI(DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1"));
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE scanned (id BIGINT PRIMARY KEY, amount DOUBLE)").execute();
+                handle.createStatement("INSERT INTO scanned SELECT x, x / 2.0 FROM SYSTEM_RANGE(1, 1050)").execute();
+                return null;
+            }
+        });
+
+        final ColumnarScanner scanner = new ColumnarScanner("test", new QueryStreamer("test", dbi, new StreamingConfig() {
+            @Override
+            public int getInitialFetchSize()
+            {
+                return 100;
+            }
+
+            @Override
+            public long getFetchBytes()
+            {
+                return 100000L;
+            }
+
+            @Override
+            public int getMinFetchSize()
+            {
+                return 10;
+            }
+
+            @Override
+            public int getMaxFetchSize()
+            {
+                return 5000;
+            }
+        }), COLUMNAR_CONFIG);
+
+        final List<Integer> sizes = Lists.newArrayList();
+        final AtomicInteger batches = new AtomicInteger();
+        final long [] sum = new long[1];
+        final ColumnBatch [] seen = new ColumnBatch[1];
+
+        final long rows = scanner.scan("SELECT id, amount FROM scanned ORDER BY id", new ColumnBatchCallback() {
+            @Override
+            public void onBatch(final ColumnBatch batch)
+            {
+                batches.incrementAndGet();
+                sizes.add(batch.size());
+                if (seen[0] != null) {
+                    Assert.assertSame(seen[0], batch);
+                }
+                seen[0] = batch;
+
+                final long [] ids = batch.getLongs(batch.getColumnIndex("id"));
+                for (int i = 0; i < batch.size(); i++) {
+                    sum[0] += ids[i];
+                }
+            }
+        });
+
+        Assert.assertEquals(1050L, rows);
+        Assert.assertEquals(11, batches.get());
+        Assert.assertEquals(Integer.valueOf(100), sizes.get(0));
+        Assert.assertEquals(Integer.valueOf(50), sizes.get(10));
+        Assert.assertEquals(1050L * 1051L / 2L, sum[0]);
+
+        try {
+            scanner.scan("SELECT id FROM scanned", new ColumnBatchCallback() {
+                @Override
+                public void onBatch(final ColumnBatch batch) throws Exception
+                {
+                    throw new Exception("boom");
+                }
+            });
+            Assert.fail();
+        }
+        catch (CallbackFailedException cfe) {
+            Assert.assertEquals("boom", cfe.getCause().getMessage());
+        }
+    }
+}
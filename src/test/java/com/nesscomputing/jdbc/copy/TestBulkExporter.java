@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class TestBulkExporter
+{
+    @Test
+    public void testTransfer() throws Exception
+    {
+        final List<byte []> chunks = Lists.newArrayList();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            final String row = i + ",row\n";
+            chunks.add(row.getBytes(Charsets.UTF_8));
+            expected.append(row);
+        }
+        // Larger than the buffer.
+        final String large = "0123456789012345678901234567890123456789\n";
+        chunks.add(large.getBytes(Charsets.UTF_8));
+        expected.append(large);
+
+        final RecordingChannel channel = new RecordingChannel();
+        final long bytes = BulkExporter.transfer(new ListSource(chunks), channel, ByteBuffer.allocate(32));
+
+        Assert.assertEquals(expected.length(), bytes);
+        Assert.assertEquals(expected.toString(), new String(channel.data.toByteArray(), Charsets.UTF_8));
+
+        // Rows are collected into few writes, only the large chunk goes out on its own.
+        Assert.assertTrue(channel.writes.size() < 50);
+        for (int i = 0; i < channel.writes.size(); i++) {
+            final int length = channel.writes.get(i);
+            Assert.assertTrue(length <= 32 || length == large.length());
+        }
+    }
+
+    @Test
+    public void testTransferEmpty() throws Exception
+    {
+        final RecordingChannel channel = new RecordingChannel();
+        Assert.assertEquals(0L, BulkExporter.transfer(new ListSource(ImmutableList.<byte []>of()), channel, ByteBuffer.allocate(32)));
+        Assert.assertEquals(0, channel.data.size());
+    }
+
+    @Test
+    public void testExportStatement()
+    {
+        Assert.assertEquals("COPY (SELECT * FROM events) TO STDOUT WITH (FORMAT csv)", BulkExporter.exportStatement("SELECT * FROM events", CopyFormat.CSV));
+    }
+
+    private static class ListSource implements CopySource
+    {
+        private final Iterator<byte []> chunks;
+        private long rows = 0L;
+
+        ListSource(final List<byte []> chunks)
+        {
+            this.chunks = chunks.iterator();
+        }
+
+        @Override
+        public byte [] read() throws SQLException
+        {
+            if (chunks.hasNext()) {
+                rows++;
+                return chunks.next();
+            }
+            return null;
+        }
+
+        @Override
+        public long getRowCount()
+        {
+            return rows;
+        }
+
+        @Override
+        public void cancel()
+        {
+        }
+    }
+
+    private static class RecordingChannel implements WritableByteChannel
+    {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final List<Integer> writes = Lists.newArrayList();
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException
+        {
+            final int length = src.remaining();
+            final byte [] bytes = new byte[length];
+            src.get(bytes);
+            data.write(bytes);
+            writes.add(length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
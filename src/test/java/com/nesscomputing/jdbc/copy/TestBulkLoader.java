@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Stage;
+import com.google.inject.name.Named;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.util.LongMapper;
+import org.skife.jdbi.v2.util.StringMapper;
+
+import com.nesscomputing.config.Config;
+import com.nesscomputing.config.ConfigModule;
+import com.nesscomputing.db.postgres.junit.EmbeddedPostgresRules;
+import com.nesscomputing.db.postgres.junit.EmbeddedPostgresTestDatabaseRule;
+import com.nesscomputing.jdbc.DatabaseModule;
+import com.nesscomputing.lifecycle.junit.LifecycleRule;
+import com.nesscomputing.lifecycle.junit.LifecycleRunner;
+import com.nesscomputing.lifecycle.junit.LifecycleStatement;
+import com.nesscomputing.testing.lessio.AllowDNSResolution;
+import com.nesscomputing.testing.lessio.AllowNetworkAccess;
+
+@AllowDNSResolution
+@AllowNetworkAccess(endpoints= {"127.0.0.1:*"})
+@RunWith(LifecycleRunner.class)
+public class TestBulkLoader
+{
+    private static final List<String> COLUMNS = ImmutableList.of("id", "name");
+
+    private static final Function<Integer, Object []> ROW_FUNCTION = new Function<Integer, Object []>() {
+        @Override
+        public Object [] apply(final Integer id)
+        {
+            return new Object [] { id, "name\t" + id };
+        }
+    };
+
+    @LifecycleRule
+    public final LifecycleStatement lifecycleRule = LifecycleStatement.serviceDiscoveryLifecycle();
+
+    @Rule
+    public EmbeddedPostgresTestDatabaseRule postgresRule = EmbeddedPostgresRules.embeddedDatabaseRule(URI.create("classpath:/sql"));
+
+    @Inject
+    @Named("test")
+    private IDBI testDbi;
+
+    @Inject
+    @Named("test")
+    private BulkLoader bulkLoader;
+
+    @Inject
+    @Named("test")
+    private BulkExporter bulkExporter;
+
+    @Before
+    public void setUp()
+    {
+        final Config config = postgresRule.getTweakedConfig("test");
+        final Injector inj = Guice.createInjector(Stage.PRODUCTION,
+                                                  new ConfigModule(config),
+                                                  lifecycleRule.getLifecycleModule(),
+                                                  new DatabaseModule("test"));
+
+        inj.injectMembers(this);
+
+        Assert.assertNotNull(testDbi);
+        Assert.assertNotNull(bulkLoader);
+        Assert.assertNotNull(bulkExporter);
+
+        testDbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE bulk_load (id INTEGER PRIMARY KEY, name VARCHAR(50))").execute();
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testCopyText()
+    {
+        Assert.assertEquals(1000L, bulkLoader.copyRows("bulk_load", COLUMNS, CopyFormat.TEXT, ids(1000).iterator(), ROW_FUNCTION));
+        Assert.assertEquals(1000L, countRows());
+        Assert.assertEquals("name\t17", findName(17));
+    }
+
+    @Test
+    public void testCopyBinary()
+    {
+        Assert.assertEquals(1000L, bulkLoader.copyRows("bulk_load", COLUMNS, CopyFormat.BINARY, ids(1000).iterator(), ROW_FUNCTION));
+        Assert.assertEquals(1000L, countRows());
+        Assert.assertEquals("name\t17", findName(17));
+    }
+
+    @Test
+    public void testCopyChannel()
+    {
+        final byte [] data = "1\tone\n2\ttwo\n".getBytes(Charsets.UTF_8);
+        Assert.assertEquals(2L, bulkLoader.copyIn("COPY bulk_load (id, name) FROM STDIN", Channels.newChannel(new ByteArrayInputStream(data))));
+        Assert.assertEquals("two", findName(2));
+    }
+
+    @Test
+    public void testExport()
+    {
+        bulkLoader.copyRows("bulk_load", COLUMNS, CopyFormat.TEXT, ids(3).iterator(), ROW_FUNCTION);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(3L, bulkExporter.export("SELECT id, name FROM bulk_load ORDER BY id", CopyFormat.CSV, out));
+        Assert.assertEquals("0,name\t0\n1,name\t1\n2,name\t2\n", new String(out.toByteArray(), Charsets.UTF_8));
+
+        final ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        Assert.assertEquals(3L, bulkExporter.export("SELECT id, name FROM bulk_load ORDER BY id", CopyFormat.TEXT, Channels.newChannel(channelOut)));
+        Assert.assertEquals("0\tname\\t0\n1\tname\\t1\n2\tname\\t2\n", new String(channelOut.toByteArray(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testFailedCopyLoadsNothing()
+    {
+        try {
+            bulkLoader.copyRows("bulk_load", COLUMNS, CopyFormat.TEXT, ids(1000).iterator(), new Function<Integer, Object []>() {
+                @Override
+                public Object [] apply(final Integer id)
+                {
+                    if (id == 500) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return ROW_FUNCTION.apply(id);
+                }
+            });
+            Assert.fail();
+        }
+        catch (IllegalStateException ise) {
+            Assert.assertEquals("boom", ise.getMessage());
+        }
+        Assert.assertEquals(0L, countRows());
+
+        // The connection went back to the pool in a usable state.
+        Assert.assertEquals(10L, bulkLoader.copyRows("bulk_load", COLUMNS, CopyFormat.TEXT, ids(10).iterator(), ROW_FUNCTION));
+    }
+
+    private static List<Integer> ids(final int count)
+    {
+        final ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            builder.add(i);
+        }
+        return builder.build();
+    }
+
+    private long countRows()
+    {
+        return testDbi.withHandle(new HandleCallback<Long>() {
+            @Override
+            public Long withHandle(final Handle handle)
+            {
+                return handle.createQuery("SELECT COUNT(*) FROM bulk_load").map(LongMapper.FIRST).first();
+            }
+        });
+    }
+
+    private String findName(final int id)
+    {
+        return testDbi.withHandle(new HandleCallback<String>() {
+            @Override
+            public String withHandle(final Handle handle)
+            {
+                return handle.createQuery("SELECT name FROM bulk_load WHERE id = :id").bind("id", id).map(StringMapper.FIRST).first();
+            }
+        });
+    }
+}
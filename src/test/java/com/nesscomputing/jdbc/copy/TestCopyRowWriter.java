@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.copy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class TestCopyRowWriter
+{
+    @Test
+    public void testText() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CopyRowWriter writer = CopyRowWriter.forFormat(CopyFormat.TEXT, out);
+        writer.start();
+        writer.writeRow(new Object [] { 1, "a\tb\\c\nd", null });
+        writer.writeRow(new Object [] { true, new byte [] { 0x01, (byte) 0xab }, "\u00e4" });
+        writer.finish();
+
+        Assert.assertEquals("1\ta\\tb\\\\c\\nd\t\\N\nt\t\\\\x01ab\t\u00e4\n", new String(out.toByteArray(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testCsv() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CopyRowWriter writer = CopyRowWriter.forFormat(CopyFormat.CSV, out);
+        writer.start();
+        writer.writeRow(new Object [] { 1, "a,b", null, "" });
+        writer.writeRow(new Object [] { false, "say \"hi\"", "x\ny" });
+        writer.finish();
+
+        Assert.assertEquals("1,\"a,b\",,\"\"\nf,\"say \"\"hi\"\"\",\"x\ny\"\n", new String(out.toByteArray(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testBinary() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CopyRowWriter writer = CopyRowWriter.forFormat(CopyFormat.BINARY, out);
+        final UUID uuid = UUID.randomUUID();
+        writer.start();
+        writer.writeRow(new Object [] { 42, 7L, "x", null, uuid });
+        writer.finish();
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        final byte [] signature = new byte[11];
+        in.readFully(signature);
+        Assert.assertArrayEquals(new byte [] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 }, signature);
+        Assert.assertEquals(0, in.readInt());
+        Assert.assertEquals(0, in.readInt());
+
+        Assert.assertEquals(5, in.readShort());
+        Assert.assertEquals(4, in.readInt());
+        Assert.assertEquals(42, in.readInt());
+        Assert.assertEquals(8, in.readInt());
+        Assert.assertEquals(7L, in.readLong());
+        Assert.assertEquals(1, in.readInt());
+        Assert.assertEquals('x', in.readByte());
+        Assert.assertEquals(-1, in.readInt());
+        Assert.assertEquals(16, in.readInt());
+        Assert.assertEquals(uuid, new UUID(in.readLong(), in.readLong()));
+
+        Assert.assertEquals(-1, in.readShort());
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBinaryUnknownType() throws Exception
+    {
+        CopyRowWriter.forFormat(CopyFormat.BINARY, new ByteArrayOutputStream()).writeRow(new Object [] { new Object() });
+    }
+
+    @Test
+    public void testBoundedBuffer() throws Exception
+    {
+        final RecordingSink sink = new RecordingSink();
+        final CopyRowWriter writer = CopyRowWriter.forFormat(CopyFormat.TEXT, new CopySinkOutputStream(sink, 16));
+        writer.start();
+        for (int i = 0; i < 100; i++) {
+            writer.writeRow(new Object [] { i, "abc" });
+        }
+        writer.finish();
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append(i).append("\tabc\n");
+        }
+        Assert.assertEquals(sb.toString(), new String(sink.data.toByteArray(), Charsets.UTF_8));
+        for (int length : sink.writes) {
+            Assert.assertTrue(length <= 16);
+        }
+        Assert.assertTrue(sink.writes.size() > 1);
+    }
+
+    @Test
+    public void testCopyStatement()
+    {
+        Assert.assertEquals("COPY events (id, name) FROM STDIN WITH (FORMAT binary)", BulkLoader.copyStatement("events", ImmutableList.of("id", "name"), CopyFormat.BINARY));
+    }
+
+    private static class RecordingSink implements CopySink
+    {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final List<Integer> writes = Lists.newArrayList();
+
+        @Override
+        public void write(final byte [] bytes, final int offset, final int length) throws SQLException
+        {
+            data.write(bytes, offset, length);
+            writes.add(length);
+        }
+
+        @Override
+        public long end() throws SQLException
+        {
+            return 0;
+        }
+
+        @Override
+        public void cancel() throws SQLException
+        {
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.logging;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.skife.jdbi.v2.logging.NoOpLog;
+import org.skife.jdbi.v2.tweak.SQLLog;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class TestSqlLog
+{
+    /**
+     * Records the logged statements. Every statement waits for the gate to open first.
+     */
+    private static class RecordingLog extends NoOpLog
+    {
+        private final List<String> statements = Collections.synchronizedList(Lists.<String>newArrayList());
+        private final CountDownLatch gate;
+
+        RecordingLog(final CountDownLatch gate)
+        {
+            this.gate = gate;
+        }
+
+        @Override
+        public void logSQL(final long time, final String sql)
+        {
+            try {
+                gate.await();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            statements.add(sql);
+        }
+
+        @Override
+        public SQLLog.BatchLogger logBatch()
+        {
+            return new SQLLog.BatchLogger() {
+                private final List<String> batch = Lists.newArrayList();
+
+                @Override
+                public void add(final String sql)
+                {
+                    batch.add(sql);
+                }
+
+                @Override
+                public void log(final long time)
+                {
+                    statements.add("batch " + batch);
+                }
+            };
+        }
+    }
+
+    @Test
+    public void testSampled()
+    {
+        final RecordingLog delegate = new RecordingLog(new CountDownLatch(0));
+        final SQLLog sqlLog = new SampledSqlLog(delegate, 10);
+
+        for (int i = 0; i < 10000; i++) {
+            sqlLog.logSQL(1L, "SELECT " + i);
+        }
+
+        final int logged = delegate.statements.size();
+        Assert.assertTrue("logged " + logged + " statements", logged > 700 && logged < 1300);
+    }
+
+    @Test
+    public void testSampleEverything()
+    {
+        final RecordingLog delegate = new RecordingLog(new CountDownLatch(0));
+        final SQLLog sqlLog = new SampledSqlLog(delegate, 1);
+
+        for (int i = 0; i < 100; i++) {
+            sqlLog.logSQL(1L, "SELECT " + i);
+        }
+        Assert.assertEquals(100, delegate.statements.size());
+    }
+
+    @Test
+    public void testCapacity()
+    {
+        Assert.assertEquals(1, stopped(new AsyncSqlLog("test", new NoOpLog(), 1)).getCapacity());
+        Assert.assertEquals(8, stopped(new AsyncSqlLog("test", new NoOpLog(), 8)).getCapacity());
+        Assert.assertEquals(16, stopped(new AsyncSqlLog("test", new NoOpLog(), 9)).getCapacity());
+    }
+
+    private static AsyncSqlLog stopped(final AsyncSqlLog sqlLog)
+    {
+        sqlLog.stop();
+        return sqlLog;
+    }
+
+    @Test
+    public void testAsyncInOrder()
+    {
+        final RecordingLog delegate = new RecordingLog(new CountDownLatch(0));
+        final AsyncSqlLog sqlLog = new AsyncSqlLog("test", delegate, 1024);
+
+        sqlLog.logSQL(1L, "SELECT 1");
+        final SQLLog.BatchLogger batchLogger = sqlLog.logBatch();
+        batchLogger.add("INSERT 1");
+        batchLogger.add("INSERT 2");
+        batchLogger.log(2L);
+        sqlLog.logSQL(3L, "SELECT 2");
+        sqlLog.stop();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1", "batch [INSERT 1, INSERT 2]", "SELECT 2"), delegate.statements);
+        Assert.assertEquals(0L, sqlLog.getDroppedCount());
+    }
+
+    @Test
+    public void testAsyncConcurrent() throws Exception
+    {
+        final RecordingLog delegate = new RecordingLog(new CountDownLatch(0));
+        final AsyncSqlLog sqlLog = new AsyncSqlLog("test", delegate, 1 << 16);
+
+        final List<Thread> threads = Lists.newArrayList();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < 5000; i++) {
+                        sqlLog.logSQL(1L, "SELECT 1");
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sqlLog.stop();
+
+        Assert.assertEquals(20000L, delegate.statements.size() + sqlLog.getDroppedCount());
+        Assert.assertEquals(0L, sqlLog.getDroppedCount());
+    }
+
+    @Test
+    public void testAsyncAfterIdle() throws Exception
+    {
+        final RecordingLog delegate = new RecordingLog(new CountDownLatch(0));
+        final AsyncSqlLog sqlLog = new AsyncSqlLog("test", delegate, 1024);
+
+        // Long enough for the background thread to back off to its longest sleep.
+        Thread.sleep(500L);
+
+        sqlLog.logSQL(1L, "SELECT 1");
+        final long start = System.nanoTime();
+        while (delegate.statements.isEmpty() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5L)) {
+            Thread.sleep(1L);
+        }
+        sqlLog.stop();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1"), delegate.statements);
+    }
+
+    @Test
+    public void testAsyncDropsWhenFull() throws Exception
+    {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final RecordingLog delegate = new RecordingLog(gate);
+        final AsyncSqlLog sqlLog = new AsyncSqlLog("test", delegate, 8);
+
+        // The background thread blocks on the first statement, the buffer fills up and the rest is dropped without blocking.
+        final long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            sqlLog.logSQL(1L, "SELECT " + i);
+        }
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5L));
+
+        gate.countDown();
+        sqlLog.stop();
+
+        final long dropped = sqlLog.getDroppedCount();
+        Assert.assertTrue("dropped " + dropped + " statements", dropped >= 100 - 9);
+        Assert.assertEquals(100L, delegate.statements.size() + dropped);
+        Assert.assertEquals("SELECT 0", delegate.statements.get(0));
+    }
+}
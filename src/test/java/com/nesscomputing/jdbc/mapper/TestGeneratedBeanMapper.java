@@ -0,0 +1,379 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.mapper;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.skife.jdbi.v2.BeanMapper;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.google.common.base.Objects;
+import com.mchange.v2.c3p0.DataSources;
+import com.nesscomputing.logging.Log;
+
+public class TestGeneratedBeanMapper
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final int BENCHMARK_ROWS = 20000;
+    private static final int WARMUP = 3;
+    private static final int ROUNDS = 5;
+
+    public enum Color
+    {
+        RED, GREEN;
+    }
+
+    public static class Account
+    {
+        private long id;
+        private Long parentId;
+        private String name;
+        private double balance;
+        private boolean active;
+        private Color color;
+
+        public long getId()
+        {
+            return id;
+        }
+
+        public void setId(final long id)
+        {
+            this.id = id;
+        }
+
+        public Long getParentId()
+        {
+            return parentId;
+        }
+
+        public void setParentId(final Long parentId)
+        {
+            this.parentId = parentId;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(final String name)
+        {
+            this.name = name;
+        }
+
+        public double getBalance()
+        {
+            return balance;
+        }
+
+        public void setBalance(final double balance)
+        {
+            this.balance = balance;
+        }
+
+        public boolean isActive()
+        {
+            return active;
+        }
+
+        public void setActive(final boolean active)
+        {
+            this.active = active;
+        }
+
+        public Color getColor()
+        {
+            return color;
+        }
+
+        public void setColor(final Color color)
+        {
+            this.color = color;
+        }
+
+        @Override
+        public boolean equals(final Object other)
+        {
+            if (!(other instanceof Account)) {
+                return false;
+            }
+            final Account that = (Account) other;
+            return id == that.id && balance == that.balance && active == that.active && Objects.equal(parentId, that.parentId)
+                && Objects.equal(name, that.name) && color == that.color;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(id, parentId, name, balance, active, color);
+        }
+    }
+
+    public static class Point
+    {
+        private final int x;
+        private final int y;
+        private String label;
+
+        @ConstructorProperties({"x", "y"})
+        public Point(final int x, final int y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+
+        public int getX()
+        {
+            return x;
+        }
+
+        public int getY()
+        {
+            return y;
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+
+        public void setLabel(final String label)
+        {
+            this.label = label;
+        }
+    }
+
+    public static class NoDefaultConstructor
+    {
+        public NoDefaultConstructor(final int x)
+        {
+        }
+    }
+
+    /**
+     * A single row result with the given column labels and values.
+     */
+    private static ResultSet createResultSet(final String [] labels, final Object [] values)
+    {
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                if ("getColumnCount".equals(method.getName())) {
+                    return labels.length;
+                }
+                return labels[(Integer) args[0] - 1];
+            }
+        });
+        final AtomicBoolean wasNull = new AtomicBoolean();
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                final String name = method.getName();
+                if ("getMetaData".equals(name)) {
+                    return metaData;
+                }
+                else if ("wasNull".equals(name)) {
+                    return wasNull.get();
+                }
+                final Object value = values[(Integer) args[0] - 1];
+                wasNull.set(value == null);
+                if ("getLong".equals(name)) {
+                    return value == null ? 0L : ((Number) value).longValue();
+                }
+                else if ("getInt".equals(name)) {
+                    return value == null ? 0 : ((Number) value).intValue();
+                }
+                else if ("getDouble".equals(name)) {
+                    return value == null ? 0.0 : ((Number) value).doubleValue();
+                }
+                else if ("getBoolean".equals(name)) {
+                    return value == null ? false : (Boolean) value;
+                }
+                else if ("getString".equals(name)) {
+                    return value == null ? null : value.toString();
+                }
+                return value;
+            }
+        });
+    }
+
+    @Test
+    public void testSetters() throws Exception
+    {
+        final ResultSetMapper<Account> mapper = new GeneratedBeanMapperFactory().getMapper(Account.class);
+        final String [] labels = new String [] { "ID", "parentId", "name", "balance", "active", "color", "unknown" };
+
+        final Account account = mapper.map(0, createResultSet(labels, new Object [] { 5L, null, "hello", 1.5, true, "GREEN", "x" }), null);
+        Assert.assertEquals(5L, account.getId());
+        Assert.assertNull(account.getParentId());
+        Assert.assertEquals("hello", account.getName());
+        Assert.assertEquals(1.5, account.getBalance(), 0.0);
+        Assert.assertTrue(account.isActive());
+        Assert.assertEquals(Color.GREEN, account.getColor());
+
+        final Account other = mapper.map(1, createResultSet(labels, new Object [] { 6L, 5L, null, 0.0, false, null, null }), null);
+        Assert.assertEquals(Long.valueOf(5L), other.getParentId());
+        Assert.assertNull(other.getName());
+        Assert.assertNull(other.getColor());
+    }
+
+    @Test
+    public void testShapes() throws Exception
+    {
+        final GeneratedBeanMapper<Account> mapper = new GeneratedBeanMapper<Account>(Account.class);
+
+        final Account first = mapper.map(0, createResultSet(new String [] { "id", "name" }, new Object [] { 1L, "a" }), null);
+        Assert.assertEquals(1L, first.getId());
+        Assert.assertEquals("a", first.getName());
+
+        // A result with other columns gets a handle of its own.
+        final Account second = mapper.map(0, createResultSet(new String [] { "name", "balance" }, new Object [] { "b", 2.5 }), null);
+        Assert.assertEquals(0L, second.getId());
+        Assert.assertEquals("b", second.getName());
+        Assert.assertEquals(2.5, second.getBalance(), 0.0);
+    }
+
+    @Test
+    public void testConstructor() throws Exception
+    {
+        final ResultSetMapper<Point> mapper = new GeneratedBeanMapperFactory().getMapper(Point.class);
+
+        final Point point = mapper.map(0, createResultSet(new String [] { "label", "y", "x" }, new Object [] { "p", 2, 1 }), null);
+        Assert.assertEquals(1, point.getX());
+        Assert.assertEquals(2, point.getY());
+        Assert.assertEquals("p", point.getLabel());
+
+        // Missing constructor columns are passed as defaults.
+        final Point origin = mapper.map(0, createResultSet(new String [] { "y" }, new Object [] { 3 }), null);
+        Assert.assertEquals(0, origin.getX());
+        Assert.assertEquals(3, origin.getY());
+        Assert.assertNull(origin.getLabel());
+    }
+
+    @Test
+    public void testAccepts()
+    {
+        final GeneratedBeanMapperFactory factory = new GeneratedBeanMapperFactory();
+        Assert.assertTrue(factory.accepts(Account.class, null));
+        Assert.assertTrue(factory.accepts(Point.class, null));
+        Assert.assertFalse(factory.accepts(NoDefaultConstructor.class, null));
+        Assert.assertFalse(factory.accepts(String.class, null));
+        Assert.assertFalse(factory.accepts(Long.class, null));
+        Assert.assertFalse(factory.accepts(long.class, null));
+        Assert.assertFalse(factory.accepts(Color.class, null));
+        Assert.assertFalse(factory.accepts(List.class, null));
+        Assert.assertSame(factory.mapperFor(Account.class, null), factory.mapperFor(Account.class, null));
+    }
+
+    @Test
+    public void testColumnNamesLikeBeanMapper() throws Exception
+    {
+        final String [] labels = new String [] { "parent_id", "NAME" };
+        final Object [] values = new Object [] { 5L, "a" };
+
+        final Account account = new GeneratedBeanMapperFactory().getMapper(Account.class).map(0, createResultSet(labels, values), null);
+        Assert.assertEquals(new BeanMapper<Account>(Account.class).map(0, createResultSet(labels, values), null), account);
+        Assert.assertNull(account.getParentId());
+        Assert.assertEquals("a", account.getName());
+    }
+
+    /**
+     * The generated mapper must produce the same beans as the reflective JDBI bean mapper.
+     */
+    @Test
+    public void testSameAsBeanMapper() throws Exception
+    {
+        final DBI dbi = createAccounts(1000);
+
+        final List<Account> accounts = query(dbi, new GeneratedBeanMapperFactory().getMapper(Account.class));
+        Assert.assertEquals(1000, accounts.size());
+        Assert.assertEquals(query(dbi, new BeanMapper<Account>(Account.class)), accounts);
+    }
+
+    /**
+     * Throughput benchmark. Maps the same rows with the reflective JDBI bean mapper and with the generated mapper.
+     */
+    @Test
+    public void testThroughput() throws Exception
+    {
+        final DBI dbi = createAccounts(BENCHMARK_ROWS);
+        final ResultSetMapper<Account> reflective = new BeanMapper<Account>(Account.class);
+        final ResultSetMapper<Account> generated = new GeneratedBeanMapperFactory().getMapper(Account.class);
+
+        final long reflectiveMillis = measure(dbi, reflective);
+        final long generatedMillis = measure(dbi, generated);
+
+        LOG.info("Mapped %d rows: reflective %d ms, generated %d ms", BENCHMARK_ROWS * ROUNDS, reflectiveMillis, generatedMillis);
+    }
+
+    private static long measure(final DBI dbi, final ResultSetMapper<Account> mapper)
+    {
+        for (int i = 0; i < WARMUP; i++) {
+            Assert.assertEquals(BENCHMARK_ROWS, query(dbi, mapper).size());
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            Assert.assertEquals(BENCHMARK_ROWS, query(dbi, mapper).size());
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static DBI createAccounts(final int rows) throws SQLException
+    {
+        final DBI dbi = new DBI(DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1"));
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE accounts (id BIGINT PRIMARY KEY, parentid BIGINT, name VARCHAR(50), balance DOUBLE, active BOOLEAN)").execute();
+                handle.createStatement("INSERT INTO accounts SELECT x, x / 10, 'account ' || x, x * 1.5, MOD(x, 2) = 0 FROM SYSTEM_RANGE(1, " + rows + ")").execute();
+                return null;
+            }
+        });
+        return dbi;
+    }
+
+    private static List<Account> query(final DBI dbi, final ResultSetMapper<Account> mapper)
+    {
+        return dbi.withHandle(new HandleCallback<List<Account>>() {
+            @Override
+            public List<Account> withHandle(final Handle handle)
+            {
+                return handle.createQuery("SELECT id, parentid, name, balance, active FROM accounts ORDER BY id").map(mapper).list();
+            }
+        });
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.skife.config.ConfigurationObjectFactory;
+
+import com.google.common.collect.Lists;
+
+public class TestDriverDataSource
+{
+    private static final String URL = "jdbc:fakedriver:test";
+
+    private static final FakeDriver DRIVER = new FakeDriver();
+
+    @BeforeClass
+    public static void registerDriver() throws SQLException
+    {
+        DriverManager.registerDriver(DRIVER);
+    }
+
+    @Test
+    public void testConnect() throws Exception
+    {
+        final Properties properties = new Properties();
+        properties.setProperty("user", "nobody");
+        final DriverDataSource dataSource = new DriverDataSource(URL, properties);
+
+        final int connects = DRIVER.connects.get();
+        dataSource.getConnection().close();
+        dataSource.getConnection("somebody", "secret").close();
+
+        Assert.assertEquals(connects + 2, DRIVER.connects.get());
+        Assert.assertEquals("somebody", DRIVER.lastProperties.getProperty("user"));
+        Assert.assertEquals("nobody", properties.getProperty("user"));
+    }
+
+    @Test(expected=SQLException.class)
+    public void testUnknownUrl() throws Exception
+    {
+        new DriverDataSource("jdbc:nosuchdriver:test", null);
+    }
+
+    /**
+     * Many threads share two connections. Waiting for a connection must park the threads, none of them may ever block on a monitor.
+     */
+    @Test
+    public void testNoMonitorBlocking() throws Exception
+    {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final Properties props = new Properties();
+        props.setProperty("maxPoolSize", "2");
+        props.setProperty("checkoutTimeout", "10000");
+
+        final NessPooledDataSource pool = new NessPooledDataSource("test", new DriverDataSource(URL, null), new ConfigurationObjectFactory(props).build(NessPoolConfig.class));
+        try {
+            // Open all connections and load all classes before the threads start.
+            final Connection c1 = pool.getConnection();
+            final Connection c2 = pool.getConnection();
+            c1.close();
+            c2.close();
+
+            final int threads = 200;
+            final CountDownLatch start = new CountDownLatch(1);
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            final List<Future<Long>> blockedCounts = Lists.newArrayList();
+            for (int i = 0; i < threads; i++) {
+                blockedCounts.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception
+                    {
+                        start.await();
+                        final long blockedBefore = threadMXBean.getThreadInfo(Thread.currentThread().getId()).getBlockedCount();
+                        for (int j = 0; j < 50; j++) {
+                            final Connection connection = pool.getConnection();
+                            connection.getAutoCommit();
+                            connection.close();
+                        }
+                        return threadMXBean.getThreadInfo(Thread.currentThread().getId()).getBlockedCount() - blockedBefore;
+                    }
+                }));
+            }
+            start.countDown();
+
+            long blocked = 0L;
+            for (final Future<Long> blockedCount : blockedCounts) {
+                blocked += blockedCount.get();
+            }
+            executor.shutdown();
+
+            Assert.assertEquals(0L, blocked);
+            Assert.assertEquals(2, pool.getNumConnections());
+            Assert.assertEquals(0, pool.getNumBusyConnections());
+        }
+        finally {
+            pool.close();
+        }
+    }
+
+    private static class FakeDriver implements Driver
+    {
+        private final AtomicInteger connects = new AtomicInteger(0);
+        private volatile Properties lastProperties = null;
+
+        @Override
+        public Connection connect(final String url, final Properties info)
+        {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            connects.incrementAndGet();
+            lastProperties = info;
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args)
+                {
+                    if (method.getReturnType() == boolean.class) {
+                        return "getAutoCommit".equals(method.getName());
+                    }
+                    else if (method.getReturnType() == int.class) {
+                        return Connection.TRANSACTION_READ_COMMITTED;
+                    }
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public boolean acceptsURL(final String url)
+        {
+            return url.startsWith("jdbc:fakedriver:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info)
+        {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion()
+        {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion()
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant()
+        {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException
+        {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.pool;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.config.ConfigurationObjectFactory;
+
+import com.google.common.collect.Lists;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.mchange.v2.c3p0.DataSources;
+import com.nesscomputing.jdbc.wrappers.SessionState;
+
+public class TestNessPooledDataSource
+{
+    private NessPooledDataSource pool = null;
+
+    @Before
+    public void setUp()
+    {
+        pool = createPool(4, 100);
+    }
+
+    @After
+    public void tearDown()
+    {
+        Assert.assertNotNull(pool);
+        pool.close();
+    }
+
+    private static NessPooledDataSource createPool(final int maxPoolSize, final long checkoutTimeout)
+    {
+        final Properties props = new Properties();
+        props.setProperty("maxPoolSize", Integer.toString(maxPoolSize));
+        props.setProperty("checkoutTimeout", Long.toString(checkoutTimeout));
+
+        try {
+            return new NessPooledDataSource("test",
+                                            DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString()),
+                                            new ConfigurationObjectFactory(props).build(NessPoolConfig.class));
+        }
+        catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception
+    {
+        final Connection c1 = pool.getConnection();
+        Assert.assertTrue(c1 instanceof C3P0ProxyConnection);
+        Assert.assertEquals(1, pool.getNumBusyConnections());
+        c1.close();
+
+        final Connection c2 = pool.getConnection();
+        c2.close();
+
+        Assert.assertEquals(1, pool.getNumConnections());
+        Assert.assertEquals(0, pool.getNumBusyConnections());
+        Assert.assertEquals(1, pool.getNumIdleConnections());
+    }
+
+    @Test
+    public void testAddConnection() throws Exception
+    {
+        final DataSource unpooledDataSource = DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString());
+
+        Assert.assertTrue(pool.addConnection(unpooledDataSource.getConnection()));
+        Assert.assertEquals(1, pool.getNumConnections());
+        Assert.assertEquals(1, pool.getNumIdleConnections());
+
+        // The added connection is handed out, no new one is opened.
+        final Connection c = pool.getConnection();
+        Assert.assertEquals(1, pool.getNumConnections());
+        c.close();
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(pool.addConnection(unpooledDataSource.getConnection()));
+        }
+
+        // The pool is full, so the connection is closed instead.
+        final Connection extra = unpooledDataSource.getConnection();
+        Assert.assertFalse(pool.addConnection(extra));
+        Assert.assertTrue(extra.isClosed());
+        Assert.assertEquals(4, pool.getNumConnections());
+    }
+
+    @Test
+    public void testClosedConnection() throws Exception
+    {
+        final Connection c = pool.getConnection();
+        c.close();
+        Assert.assertTrue(c.isClosed());
+
+        // Closing twice must not return the connection twice.
+        c.close();
+        Assert.assertEquals(0, pool.getNumBusyConnections());
+
+        try {
+            c.createStatement();
+            Assert.fail();
+        }
+        catch (SQLException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testStatementsClosedOnCheckin() throws Exception
+    {
+        final Connection c = pool.getConnection();
+        final Statement statement = c.createStatement();
+        final PreparedStatement preparedStatement = c.prepareStatement("SELECT 1");
+        final CallableStatement callableStatement = c.prepareCall("SELECT 1");
+        final ResultSet resultSet = preparedStatement.executeQuery();
+
+        Assert.assertSame(c, statement.getConnection());
+        Assert.assertSame(c, preparedStatement.getConnection());
+        Assert.assertSame(c, callableStatement.getConnection());
+
+        final PreparedStatement closedStatement = c.prepareStatement("SELECT 2");
+        closedStatement.close();
+
+        c.close();
+
+        Assert.assertTrue(statement.isClosed());
+        Assert.assertTrue(preparedStatement.isClosed());
+        Assert.assertTrue(callableStatement.isClosed());
+        Assert.assertTrue(resultSet.isClosed());
+        Assert.assertTrue(closedStatement.isClosed());
+    }
+
+    @Test
+    public void testReset() throws Exception
+    {
+        final Connection c1 = pool.getConnection();
+        c1.setAutoCommit(false);
+        c1.setReadOnly(true);
+        c1.close();
+
+        final Connection c2 = pool.getConnection();
+        Assert.assertTrue(c2.getAutoCommit());
+        Assert.assertFalse(c2.isReadOnly());
+        c2.close();
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        pool.close();
+        pool = createPool(1, 10);
+
+        final Connection c = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail();
+        }
+        catch (SQLTimeoutException e) {
+            // ok
+        }
+        finally {
+            c.close();
+        }
+
+        pool.getConnection().close();
+    }
+
+    @Test
+    public void testConcurrentCheckout() throws Exception
+    {
+        pool.close();
+        pool = createPool(4, 0);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            final List<Future<Void>> futures = Lists.newArrayList();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        for (int j = 0; j < 500; j++) {
+                            final Connection c = pool.getConnection();
+                            try {
+                                Assert.assertTrue(pool.getNumConnections() <= 4);
+                                c.createStatement().close();
+                            }
+                            finally {
+                                c.close();
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        Assert.assertTrue(pool.getNumConnections() <= 4);
+        Assert.assertEquals(0, pool.getNumBusyConnections());
+    }
+
+    @Test
+    public void testAffinity() throws Exception
+    {
+        try {
+            ConnectionAffinity.set("a");
+            final Connection a = pool.getConnection();
+            ConnectionAffinity.set("b");
+            final Connection b = pool.getConnection();
+            final Object physicalA = getPhysicalConnection(a);
+            a.close();
+            b.close();
+
+            // b was returned last, but a matches the hint.
+            ConnectionAffinity.set("a");
+            final Connection c = pool.getConnection();
+            Assert.assertSame(physicalA, getPhysicalConnection(c));
+            c.close();
+        }
+        finally {
+            ConnectionAffinity.clear();
+        }
+    }
+
+    @Test
+    public void testAffinityClearedWithoutHint() throws Exception
+    {
+        try {
+            ConnectionAffinity.set("a");
+            final Connection a1 = pool.getConnection();
+            final Connection a2 = pool.getConnection();
+            final Object physicalA2 = getPhysicalConnection(a2);
+            a2.close();
+            a1.close();
+
+            // Takes the connection that was returned last, which now has no hint anymore.
+            ConnectionAffinity.clear();
+            pool.getConnection().close();
+
+            ConnectionAffinity.set("a");
+            final Connection c = pool.getConnection();
+            Assert.assertSame(physicalA2, getPhysicalConnection(c));
+            c.close();
+        }
+        finally {
+            ConnectionAffinity.clear();
+        }
+    }
+
+    private static Object getPhysicalConnection(final Connection connection) throws Exception
+    {
+        return ((C3P0ProxyConnection) connection).rawConnectionOperation(SessionState.class.getMethod("identity", Object.class), null, new Object[] { C3P0ProxyConnection.RAW_CONNECTION });
+    }
+
+    @Test
+    public void testClosePool() throws Exception
+    {
+        final Connection c = pool.getConnection();
+        pool.getConnection().close();
+        pool.close();
+
+        Assert.assertEquals(1, pool.getNumConnections());
+        c.close();
+        Assert.assertEquals(0, pool.getNumConnections());
+
+        try {
+            pool.getConnection();
+            Assert.fail();
+        }
+        catch (SQLException e) {
+            // ok
+        }
+    }
+}
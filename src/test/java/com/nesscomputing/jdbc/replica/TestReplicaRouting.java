@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.replica;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.nesscomputing.jdbc.wrappers.ReplicaRoutingWrapper;
+
+public class TestReplicaRouting
+{
+    private final FakeDataSource primary = new FakeDataSource("primary", 0.0);
+    private final FakeDataSource replica1 = new FakeDataSource("replica1", 100.0);
+    private final FakeDataSource replica2 = new FakeDataSource("replica2", 200.0);
+
+    @After
+    public void tearDown()
+    {
+        ReplicaRouting.clear();
+    }
+
+    @Test
+    public void testReadOnlyGoesToReplica() throws Exception
+    {
+        final DataSource dataSource = createDataSource(0L);
+
+        Assert.assertEquals("primary", name(dataSource.getConnection()));
+        ReplicaRouting.setReadOnly(true);
+        Assert.assertEquals("replica1", name(dataSource.getConnection()));
+        Assert.assertEquals("replica2", name(dataSource.getConnection()));
+        Assert.assertEquals("replica1", name(dataSource.getConnection()));
+        ReplicaRouting.setReadOnly(false);
+        Assert.assertEquals("primary", name(dataSource.getConnection()));
+    }
+
+    @Test
+    public void testLaggingReplicaOutOfRotation() throws Exception
+    {
+        final ReplicaLagMonitor monitor = createMonitor(0L);
+        final DataSource dataSource = new ReplicaRoutingWrapper("test", monitor).apply(primary);
+        ReplicaRouting.setReadOnly(true);
+
+        replica1.lagMillis = 5000.0;
+        monitor.checkReplicas();
+        Assert.assertFalse(monitor.getReplicas().get(0).isInRotation());
+        Assert.assertEquals("replica2", name(dataSource.getConnection()));
+        Assert.assertEquals("replica2", name(dataSource.getConnection()));
+
+        replica2.broken = true;
+        monitor.checkReplicas();
+        Assert.assertEquals("primary", name(dataSource.getConnection()));
+
+        replica1.lagMillis = 10.0;
+        monitor.checkReplicas();
+        Assert.assertEquals("replica1", name(dataSource.getConnection()));
+    }
+
+    @Test
+    public void testFailedCheckoutFallsBackToPrimary() throws Exception
+    {
+        final ReplicaLagMonitor monitor = createMonitor(0L);
+        final DataSource dataSource = new ReplicaRoutingWrapper("test", monitor).apply(primary);
+        ReplicaRouting.setReadOnly(true);
+
+        replica1.broken = true;
+        Assert.assertEquals("primary", name(dataSource.getConnection()));
+        Assert.assertFalse(monitor.getReplicas().get(0).isInRotation());
+        Assert.assertEquals("replica2", name(dataSource.getConnection()));
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception
+    {
+        final DataSource dataSource = createDataSource(60000L);
+
+        ReplicaRouting.setReadOnly(true);
+        Assert.assertEquals("replica1", name(dataSource.getConnection()));
+
+        ReplicaRouting.setReadOnly(false);
+        dataSource.getConnection().close();
+
+        ReplicaRouting.setReadOnly(true);
+        Assert.assertEquals("primary", name(dataSource.getConnection()));
+    }
+
+    private DataSource createDataSource(final long readYourWrites)
+    {
+        return new ReplicaRoutingWrapper("test", createMonitor(readYourWrites)).apply(primary);
+    }
+
+    private ReplicaLagMonitor createMonitor(final long readYourWrites)
+    {
+        final List<Replica> replicas = ImmutableList.of(new Replica("replica1", replica1), new Replica("replica2", replica2));
+        final ReplicaLagMonitor monitor = new ReplicaLagMonitor("test", replicas, new ReplicaConfig() {
+            @Override
+            public long getMaxLag()
+            {
+                return 1000L;
+            }
+
+            @Override
+            public long getCheckInterval()
+            {
+                return 1000L;
+            }
+
+            @Override
+            public String getLagQuery()
+            {
+                return "SELECT lag";
+            }
+
+            @Override
+            public long getReadYourWrites()
+            {
+                return readYourWrites;
+            }
+        });
+        monitor.checkReplicas();
+        return monitor;
+    }
+
+    private static String name(final Connection connection) throws SQLException
+    {
+        return connection.getCatalog();
+    }
+
+    /**
+     * Hands out connections that report the name of the data source as catalog and answer the lag query.
+     */
+    private static class FakeDataSource extends ProxyDataSource
+    {
+        private final String name;
+        private volatile double lagMillis;
+        private volatile boolean broken = false;
+
+        FakeDataSource(final String name, final double lagMillis)
+        {
+            this.name = name;
+            this.lagMillis = lagMillis;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            if (broken) {
+                throw new SQLException(name + " is down");
+            }
+            return proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args)
+                {
+                    if ("getCatalog".equals(method.getName())) {
+                        return name;
+                    }
+                    else if ("createStatement".equals(method.getName())) {
+                        return proxy(Statement.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(final Object proxy, final Method method, final Object[] args)
+                            {
+                                return "executeQuery".equals(method.getName()) ? resultSet() : null;
+                            }
+                        });
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private ResultSet resultSet()
+        {
+            return proxy(ResultSet.class, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args)
+                {
+                    if ("next".equals(method.getName())) {
+                        return Boolean.TRUE;
+                    }
+                    else if ("getDouble".equals(method.getName())) {
+                        return lagMillis;
+                    }
+                    else if ("wasNull".equals(method.getName())) {
+                        return Boolean.FALSE;
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private abstract static class ProxyDataSource implements DataSource
+    {
+        static <T> T proxy(final Class<T> iface, final InvocationHandler handler)
+        {
+            return iface.cast(Proxy.newProxyInstance(TestReplicaRouting.class.getClassLoader(), new Class<?>[] { iface }, handler));
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException
+        {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter()
+        {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(final PrintWriter out)
+        {
+        }
+
+        @Override
+        public void setLoginTimeout(final int seconds)
+        {
+        }
+
+        @Override
+        public int getLoginTimeout()
+        {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger()
+        {
+            return null;
+        }
+
+        @Override
+        public <T> T unwrap(final Class<T> iface) throws SQLException
+        {
+            throw new SQLException("not a wrapper");
+        }
+
+        @Override
+        public boolean isWrapperFor(final Class<?> iface)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.retry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.exceptions.CallbackFailedException;
+import org.skife.jdbi.v2.tweak.TransactionHandler;
+
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+
+public class TestRetryingTransactionRunner
+{
+    private static final Handle HANDLE = (Handle) Proxy.newProxyInstance(Handle.class.getClassLoader(), new Class<?>[] { Handle.class }, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+        {
+            return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+        }
+    });
+
+    private PoolStatistics poolStatistics = null;
+
+    @Before
+    public void setUp()
+    {
+        poolStatistics = new PoolStatistics("test");
+    }
+
+    @After
+    public void tearDown()
+    {
+        TransactionRetries.clear();
+    }
+
+    private RetryingTransactionRunner createRunner(final int maxRetries, final int budgetMaximum)
+    {
+        return new RetryingTransactionRunner(new TransactionRetryPolicy("test", new TestRetryConfig(maxRetries, budgetMaximum)), poolStatistics, null, new FakeTransactionHandler());
+    }
+
+    @Test
+    public void testRetryUntilSuccess()
+    {
+        final RetryingTransactionRunner runner = createRunner(5, 100);
+        final FailingCallback callback = new FailingCallback(2, "40001");
+
+        Assert.assertEquals("done", runner.inTransaction(HANDLE, callback));
+        Assert.assertEquals(3, callback.calls.get());
+        Assert.assertEquals(2, poolStatistics.getSerializationConflictCount());
+        Assert.assertEquals(2, poolStatistics.getTransactionRetryCount());
+        Assert.assertEquals(0, poolStatistics.getRetriesExhaustedCount());
+    }
+
+    @Test
+    public void testDeadlockIsRetried()
+    {
+        final RetryingTransactionRunner runner = createRunner(5, 100);
+        final FailingCallback callback = new FailingCallback(1, "40P01");
+
+        Assert.assertEquals("done", runner.inTransaction(HANDLE, callback));
+        Assert.assertEquals(2, callback.calls.get());
+    }
+
+    @Test
+    public void testOtherFailureNotRetried()
+    {
+        final RetryingTransactionRunner runner = createRunner(5, 100);
+        final FailingCallback callback = new FailingCallback(1, "23505");
+
+        try {
+            runner.inTransaction(HANDLE, callback);
+            Assert.fail();
+        }
+        catch (CallbackFailedException e) {
+            Assert.assertEquals(1, callback.calls.get());
+            Assert.assertEquals(0, poolStatistics.getSerializationConflictCount());
+        }
+    }
+
+    @Test
+    public void testRetriesExhausted()
+    {
+        final RetryingTransactionRunner runner = createRunner(2, 100);
+        final FailingCallback callback = new FailingCallback(10, "40001");
+
+        try {
+            runner.inTransaction(HANDLE, callback);
+            Assert.fail();
+        }
+        catch (CallbackFailedException e) {
+            Assert.assertEquals(3, callback.calls.get());
+            Assert.assertEquals(3, poolStatistics.getSerializationConflictCount());
+            Assert.assertEquals(2, poolStatistics.getTransactionRetryCount());
+            Assert.assertEquals(1, poolStatistics.getRetriesExhaustedCount());
+        }
+    }
+
+    @Test
+    public void testBudget()
+    {
+        final RetryingTransactionRunner runner = createRunner(5, 1);
+
+        // Uses the only retry of the budget.
+        Assert.assertEquals("done", runner.inTransaction(HANDLE, new FailingCallback(1, "40001")));
+
+        final FailingCallback callback = new FailingCallback(1, "40001");
+        try {
+            runner.inTransaction(HANDLE, callback);
+            Assert.fail();
+        }
+        catch (CallbackFailedException e) {
+            Assert.assertEquals(1, callback.calls.get());
+            Assert.assertEquals(1, poolStatistics.getRetryBudgetExhaustedCount());
+        }
+    }
+
+    @Test
+    public void testOverride()
+    {
+        final RetryingTransactionRunner runner = createRunner(5, 100);
+        final FailingCallback callback = new FailingCallback(1, "40001");
+
+        TransactionRetries.setMaxRetries(0);
+        try {
+            runner.inTransaction(HANDLE, callback);
+            Assert.fail();
+        }
+        catch (CallbackFailedException e) {
+            Assert.assertEquals(1, callback.calls.get());
+            Assert.assertEquals(0, poolStatistics.getTransactionRetryCount());
+        }
+    }
+
+    @Test
+    public void testBackoff()
+    {
+        final TransactionRetryPolicy policy = new TransactionRetryPolicy("test", new TestRetryConfig(5, 100));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(policy.getBackoffMillis(0) <= 1);
+            Assert.assertTrue(policy.getBackoffMillis(3) <= 8);
+            Assert.assertTrue(policy.getBackoffMillis(30) <= 10);
+        }
+    }
+
+    private static class FailingCallback implements TransactionCallback<String>
+    {
+        private final AtomicInteger calls = new AtomicInteger(0);
+        private final int failures;
+        private final String sqlState;
+
+        FailingCallback(final int failures, final String sqlState)
+        {
+            this.failures = failures;
+            this.sqlState = sqlState;
+        }
+
+        @Override
+        public String inTransaction(final Handle handle, final TransactionStatus status) throws Exception
+        {
+            if (calls.incrementAndGet() <= failures) {
+                throw new SQLException("could not serialize access", sqlState);
+            }
+            return "done";
+        }
+    }
+
+    private static class TestRetryConfig extends RetryConfig
+    {
+        private final int maxRetries;
+        private final int budgetMaximum;
+
+        TestRetryConfig(final int maxRetries, final int budgetMaximum)
+        {
+            this.maxRetries = maxRetries;
+            this.budgetMaximum = budgetMaximum;
+        }
+
+        @Override
+        public int getMaxRetries()
+        {
+            return maxRetries;
+        }
+
+        @Override
+        public long getInitialBackoff()
+        {
+            return 1L;
+        }
+
+        @Override
+        public long getMaxBackoff()
+        {
+            return 10L;
+        }
+
+        @Override
+        public double getBudgetRatio()
+        {
+            return 0.0;
+        }
+
+        @Override
+        public int getBudgetMaximum()
+        {
+            return budgetMaximum;
+        }
+
+        @Override
+        public String getSqlStates()
+        {
+            return "40001, 40P01";
+        }
+    }
+
+    /**
+     * Runs the callback like the local transaction handler of the DBI.
+     */
+    private static class FakeTransactionHandler implements TransactionHandler
+    {
+        @Override
+        public <ReturnType> ReturnType inTransaction(final Handle handle, final TransactionCallback<ReturnType> callback)
+        {
+            try {
+                return callback.inTransaction(handle, null);
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new CallbackFailedException(e);
+            }
+        }
+
+        @Override
+        public <ReturnType> ReturnType inTransaction(final Handle handle, final TransactionIsolationLevel level, final TransactionCallback<ReturnType> callback)
+        {
+            return inTransaction(handle, callback);
+        }
+
+        @Override
+        public void begin(final Handle handle)
+        {
+        }
+
+        @Override
+        public void commit(final Handle handle)
+        {
+        }
+
+        @Override
+        public void rollback(final Handle handle)
+        {
+        }
+
+        @Override
+        public void rollback(final Handle handle, final String checkpointName)
+        {
+        }
+
+        @Override
+        public boolean isInTransaction(final Handle handle)
+        {
+            return false;
+        }
+
+        @Override
+        public void checkpoint(final Handle handle, final String name)
+        {
+        }
+
+        @Override
+        public void release(final Handle handle, final String checkpointName)
+        {
+        }
+    }
+}
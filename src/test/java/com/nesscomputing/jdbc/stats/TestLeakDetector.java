@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLeakDetector
+{
+    private static LeakDetectorConfig leakConfig(final long threshold, final int captureEvery)
+    {
+        return new LeakDetectorConfig() {
+            @Override
+            public boolean isEnabled()
+            {
+                return true;
+            }
+
+            @Override
+            public long getThreshold()
+            {
+                return threshold;
+            }
+
+            @Override
+            public int getCaptureEvery()
+            {
+                return captureEvery;
+            }
+
+            @Override
+            public long getScanInterval()
+            {
+                return 60000L;
+            }
+        };
+    }
+
+    @Test
+    public void testDisabledByDefault()
+    {
+        Assert.assertFalse(new LeakDetector("test").isEnabled());
+    }
+
+    @Test
+    public void testReportOnce() throws Exception
+    {
+        final LeakDetector leakDetector = new LeakDetector("test", leakConfig(0L, 1));
+        try {
+            final LeakDetector.Checkout checkout = leakDetector.checkout();
+            Assert.assertEquals(1, leakDetector.getActiveCheckoutCount());
+            Thread.sleep(5L);
+
+            Assert.assertEquals(1, leakDetector.scan());
+            Assert.assertEquals(0, leakDetector.scan());
+            Assert.assertEquals(1, leakDetector.getLeakCount());
+
+            leakDetector.checkin(checkout);
+            Assert.assertEquals(0, leakDetector.getActiveCheckoutCount());
+        }
+        finally {
+            leakDetector.stop();
+        }
+    }
+
+    @Test
+    public void testBelowThreshold() throws Exception
+    {
+        final LeakDetector leakDetector = new LeakDetector("test", leakConfig(60000L, 0));
+        try {
+            final LeakDetector.Checkout checkout = leakDetector.checkout();
+            Assert.assertEquals(0, leakDetector.scan());
+            leakDetector.checkin(checkout);
+            Assert.assertEquals(0, leakDetector.getLeakCount());
+        }
+        finally {
+            leakDetector.stop();
+        }
+    }
+
+    @Test
+    public void testNoScanAfterStop() throws Exception
+    {
+        final LeakDetector leakDetector = new LeakDetector("stopped", leakConfig(60000L, 0));
+        leakDetector.checkout();
+        Assert.assertTrue(hasScannerThread("leak-detector-stopped"));
+
+        leakDetector.stop();
+        for (int i = 0; i < 100 && hasScannerThread("leak-detector-stopped"); i++) {
+            Thread.sleep(10L);
+        }
+
+        leakDetector.checkout();
+        Assert.assertFalse(hasScannerThread("leak-detector-stopped"));
+    }
+
+    private static boolean hasScannerThread(final String name)
+    {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.nesscomputing.jdbc.wrappers.CloseableWrapper;
+import com.nesscomputing.jdbc.wrappers.DelegatingDataSource;
+import com.nesscomputing.jdbc.wrappers.FusedDataSourceWrapper;
+
+public class TestPoolStatistics
+{
+    private boolean fail = false;
+
+    private final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                              new Class<?>[] { Connection.class },
+                                                                              new InvocationHandler() {
+                                                                                  @Override
+                                                                                  public Object invoke(final Object proxy, final Method method, final Object[] args)
+                                                                                  {
+                                                                                      return null;
+                                                                                  }
+                                                                              });
+
+    private final DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                              new Class<?>[] { DataSource.class },
+                                                                              new InvocationHandler() {
+                                                                                  @Override
+                                                                                  public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException
+                                                                                  {
+                                                                                      if (fail) {
+                                                                                          throw new SQLException("An attempt by a client to checkout a Connection has timed out.");
+                                                                                      }
+                                                                                      return connection;
+                                                                                  }
+                                                                              });
+
+    @Test
+    public void testHistogram()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i * 10));
+        }
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMaxNanos());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(505), histogram.getMeanNanos());
+
+        // 500us falls into the bucket up to 512us.
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(512), histogram.getPercentileNanos(0.5));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getPercentileNanos(0.99));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentileNanos(0.99));
+    }
+
+    @Test
+    public void testProxyLayer() throws Exception
+    {
+        // The proxy layer does not wrap connections, so only pools that record the hold time themselves report it.
+        runCheckouts(dataSource, 0);
+    }
+
+    @Test
+    public void testDelegateLayer() throws Exception
+    {
+        runCheckouts(new DelegatingDataSource(dataSource), 1);
+    }
+
+    private void runCheckouts(final DataSource pool, final long expectedHoldTimes) throws Exception
+    {
+        final PoolStatistics statistics = new PoolStatistics("test");
+        final DataSource wrapped = new FusedDataSourceWrapper(ImmutableList.of(new CloseableWrapper()), statistics).apply(pool);
+
+        final Connection c = wrapped.getConnection();
+        Assert.assertEquals(1, statistics.getCheckoutCount());
+        Assert.assertEquals(0, statistics.getHoldTime().getCount());
+        c.close();
+        c.close();
+        Assert.assertEquals(expectedHoldTimes, statistics.getHoldTime().getCount());
+
+        fail = true;
+        try {
+            wrapped.getConnection();
+            Assert.fail();
+        }
+        catch (Exception e) {
+            // ok
+        }
+        Assert.assertEquals(1, statistics.getCheckoutCount());
+        Assert.assertEquals(1, statistics.getTimeoutCount());
+        Assert.assertEquals(0, statistics.getAcquireFailureCount());
+    }
+}
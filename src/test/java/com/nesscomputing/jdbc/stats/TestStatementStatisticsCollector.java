@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stats;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStatementStatisticsCollector
+{
+    @Test
+    public void testLiterals()
+    {
+        Assert.assertEquals("SELECT * FROM t1 WHERE a = ? AND b = ? AND c = ?",
+                            SqlFingerprint.normalize("SELECT *  FROM t1\n WHERE a = 'it''s' AND b = 42 AND c = -- comment\n 1.5e3"));
+        Assert.assertEquals("SELECT ?::text, ?", SqlFingerprint.normalize("SELECT $$dollar 'quoted'$$::text, E'esc\\'aped'"));
+        Assert.assertEquals("UPDATE t SET a = ? WHERE id = ?", SqlFingerprint.normalize("UPDATE t SET a = :value WHERE id = $1"));
+        Assert.assertEquals("SELECT \"Col 1\" FROM t", SqlFingerprint.normalize("SELECT \"Col 1\" /* hint */ FROM t"));
+    }
+
+    @Test
+    public void testLists()
+    {
+        final String expected = "SELECT * FROM t WHERE id IN (...)";
+        Assert.assertEquals(expected, SqlFingerprint.normalize("SELECT * FROM t WHERE id IN (1, 2, 3)"));
+        Assert.assertEquals(expected, SqlFingerprint.normalize("SELECT * FROM t WHERE id IN (?,?)"));
+        Assert.assertEquals(expected, SqlFingerprint.normalize("SELECT * FROM t WHERE id IN ( 'a' )"));
+
+        Assert.assertEquals("INSERT INTO t (a, b) VALUES (?, ?), ...", SqlFingerprint.normalize("INSERT INTO t (a, b) VALUES (1, 2), (3, 4), (5, 6)"));
+    }
+
+    @Test
+    public void testAggregation()
+    {
+        final StatementStatisticsCollector collector = new StatementStatisticsCollector("test");
+        collector.record("SELECT * FROM t WHERE id = 1", 1000L);
+        collector.record("SELECT * FROM t WHERE id = 2", 3000L);
+        collector.record("DELETE FROM t", 100000L);
+
+        final List<StatementStatistics> snapshot = collector.getSnapshot();
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals("DELETE FROM t", snapshot.get(0).getFingerprint());
+
+        final StatementStatistics select = snapshot.get(1);
+        Assert.assertEquals("SELECT * FROM t WHERE id = ?", select.getFingerprint());
+        Assert.assertEquals(2, select.getCount());
+        Assert.assertEquals(4000L, select.getTotalNanos());
+        Assert.assertEquals(1000L, select.getMinNanos());
+        Assert.assertEquals(3000L, select.getMaxNanos());
+
+        Assert.assertEquals(2, collector.getSnapshotAndReset().size());
+        Assert.assertEquals(0, collector.getFingerprintCount());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        final StatementStatisticsCollector collector = new StatementStatisticsCollector("test", 2);
+        collector.record("SELECT a FROM t", 1000L);
+        collector.record("SELECT a FROM t", 1000L);
+        collector.record("SELECT b FROM t", 1000L);
+        collector.record("SELECT c FROM t", 1000L);
+
+        Assert.assertEquals(2, collector.getFingerprintCount());
+        Assert.assertEquals(1, collector.getEvictionCount());
+        Assert.assertEquals("SELECT a FROM t", collector.getSnapshot().get(0).getFingerprint());
+    }
+
+    @Test
+    public void testBatchEviction()
+    {
+        final StatementStatisticsCollector collector = new StatementStatisticsCollector("test", 100);
+        for (int i = 0; i < 50; i++) {
+            collector.record("SELECT frequent FROM t", 1000L);
+        }
+        for (int i = 0; i < 1000; i++) {
+            collector.record("SELECT c" + i + " FROM t", 1000L);
+        }
+
+        Assert.assertTrue(collector.getFingerprintCount() <= 100);
+        // All fingerprints that are gone were evicted, the frequent one survived.
+        Assert.assertEquals(1001 - collector.getFingerprintCount(), collector.getEvictionCount());
+        Assert.assertEquals("SELECT frequent FROM t", collector.getSnapshot().get(0).getFingerprint());
+    }
+
+    @Test
+    public void testConflicts()
+    {
+        final StatementStatisticsCollector collector = new StatementStatisticsCollector("test");
+        collector.record("UPDATE t SET a = 1 WHERE id = 1", 1000L);
+        collector.recordConflict("UPDATE t SET a = 2 WHERE id = 1");
+        collector.recordConflict("UPDATE t SET a = 3 WHERE id = 2");
+
+        final List<StatementStatistics> snapshot = collector.getSnapshot();
+        Assert.assertEquals(1, snapshot.size());
+        Assert.assertEquals(1, snapshot.get(0).getCount());
+        Assert.assertEquals(2, snapshot.get(0).getConflictCount());
+    }
+}
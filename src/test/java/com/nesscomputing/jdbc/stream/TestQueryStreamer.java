@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.stream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.util.LongMapper;
+
+import com.google.common.base.Strings;
+import com.mchange.v2.c3p0.DataSources;
+
+public class TestQueryStreamer
+{
+    private static StreamingConfig createConfig(final int initialFetchSize)
+    {
+        return new StreamingConfig() {
+            @Override
+            public int getInitialFetchSize()
+            {
+                return initialFetchSize;
+            }
+
+            @Override
+            public long getFetchBytes()
+            {
+                return 100000L;
+            }
+
+            @Override
+            public int getMinFetchSize()
+            {
+                return 10;
+            }
+
+            @Override
+            public int getMaxFetchSize()
+            {
+                return 5000;
+            }
+        };
+    }
+
+    /**
+     * A single row result set with one string column of the given length.
+     */
+    private static ResultSet createResultSet(final int length, final AtomicInteger fetchSize)
+    {
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                return "getColumnCount".equals(method.getName()) ? 1 : null;
+            }
+        });
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                if ("getMetaData".equals(method.getName())) {
+                    return metaData;
+                }
+                else if ("getObject".equals(method.getName())) {
+                    return Strings.repeat("x", length);
+                }
+                else if ("setFetchSize".equals(method.getName())) {
+                    fetchSize.set((Integer) args[0]);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testAdaptiveFetchSize() throws Exception
+    {
+        final FetchSizeAdjuster adjuster = new FetchSizeAdjuster(createConfig(100));
+        final AtomicInteger fetchSize = new AtomicInteger(100);
+
+        // Narrow rows, fetch more of them at once.
+        final ResultSet narrow = createResultSet(2, fetchSize);
+        adjuster.rowFetched(0, narrow);
+        Assert.assertEquals(1923, adjuster.getFetchSize());
+        Assert.assertEquals(1923, fetchSize.get());
+
+        // Not sampled again before the next fetch.
+        adjuster.rowFetched(1, createResultSet(100000, fetchSize));
+        Assert.assertEquals(1923, adjuster.getFetchSize());
+
+        // Wide rows shrink the fetch size down to the minimum.
+        for (int i = 1923; i < 20000; i += adjuster.getFetchSize()) {
+            adjuster.rowFetched(i, createResultSet(100000, fetchSize));
+        }
+        Assert.assertEquals(10, adjuster.getFetchSize());
+        Assert.assertEquals(10, fetchSize.get());
+    }
+
+    @Test
+    public void testFetchSizeBounds()
+    {
+        final FetchSizeAdjuster adjuster = new FetchSizeAdjuster(createConfig(1));
+        Assert.assertEquals(10, adjuster.getFetchSize());
+        Assert.assertEquals(5000, adjuster.computeFetchSize(1L));
+        Assert.assertEquals(10, adjuster.computeFetchSize(1000000L));
+        Assert.assertEquals(1000, adjuster.computeFetchSize(100L));
+    }
+
+    @Test
+    public void testStream() throws Exception
+    {
+        final DBI dbi = new DBI(DataSources.unpooledDataSource("jdbc:h2:mem:" + UUID.randomUUID().toString() + ";DB_CLOSE_DELAY=-1"));
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle)
+            {
+                handle.createStatement("CREATE TABLE streamed (id BIGINT PRIMARY KEY)").execute();
+                handle.createStatement("INSERT INTO streamed SELECT x FROM SYSTEM_RANGE(1, 1000)").execute();
+                return null;
+            }
+        });
+
+        final QueryStreamer queryStreamer = new QueryStreamer("test", dbi, createConfig(100));
+        final StreamingResultIterator<Long> rows = queryStreamer.stream("SELECT id FROM streamed ORDER BY id", LongMapper.FIRST);
+        long sum = 0L;
+        while (rows.hasNext()) {
+            sum += rows.next();
+        }
+        Assert.assertEquals(500500L, sum);
+        Assert.assertEquals(1000L, rows.getRowCount());
+
+        // Reading the last row released the connection.
+        Assert.assertTrue(rows.isClosed());
+        rows.close();
+
+        final StreamingResultIterator<Long> partial = queryStreamer.stream("SELECT id FROM streamed ORDER BY id", LongMapper.FIRST);
+        Assert.assertEquals(Long.valueOf(1L), partial.next());
+        partial.close();
+        Assert.assertFalse(partial.hasNext());
+    }
+}
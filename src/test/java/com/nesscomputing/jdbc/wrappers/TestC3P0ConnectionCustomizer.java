@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+
+public class TestC3P0ConnectionCustomizer
+{
+    private final C3P0ConnectionCustomizer customizer = new C3P0ConnectionCustomizer();
+    private final PoolStatistics statistics = new PoolStatistics("test");
+
+    private final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                              new Class<?>[] { Connection.class },
+                                                                              new InvocationHandler() {
+                                                                                  @Override
+                                                                                  public Object invoke(final Object proxy, final Method method, final Object[] args)
+                                                                                  {
+                                                                                      return null;
+                                                                                  }
+                                                                              });
+
+    @After
+    public void tearDown()
+    {
+        C3P0ConnectionCustomizer.unregister("registered");
+    }
+
+    @Test
+    public void testHoldTime()
+    {
+        C3P0ConnectionCustomizer.register("registered", statistics);
+
+        customizer.onCheckOut(connection, "registered");
+        Assert.assertEquals(0, statistics.getHoldTime().getCount());
+        customizer.onCheckIn(connection, "registered");
+        Assert.assertEquals(1, statistics.getHoldTime().getCount());
+
+        // A check in without a recorded check out, e.g. of a connection that was opened to warm the pool.
+        customizer.onCheckIn(connection, "registered");
+        Assert.assertEquals(1, statistics.getHoldTime().getCount());
+    }
+
+    @Test
+    public void testUnregisteredPool()
+    {
+        customizer.onCheckOut(connection, "other");
+        customizer.onCheckIn(connection, "other");
+
+        C3P0ConnectionCustomizer.register("registered", statistics);
+        customizer.onCheckIn(connection, "registered");
+        Assert.assertEquals(0, statistics.getHoldTime().getCount());
+    }
+}
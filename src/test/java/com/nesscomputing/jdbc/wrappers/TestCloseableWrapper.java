@@ -71,6 +71,21 @@ public class TestCloseableWrapper
         verify(ds, times(1)).close();
     }
 
+    @Test
+    public void testDelegateCloseable() throws Exception
+    {
+        final CloseableDatasource ds = mock(CloseableDatasource.class);
+        final CloseableWrapper wrap = new CloseableWrapper();
+        final DataSource wrappedDs = wrap.apply(new DelegatingDataSource(ds));
+
+        Assert.assertTrue(wrappedDs instanceof Closeable);
+
+        ((Closeable) wrappedDs).close();
+
+        verify(ds, only()).close();
+        verify(ds, times(1)).close();
+    }
+
     private static interface CloseableDatasource extends DataSource, Closeable
     {
     }
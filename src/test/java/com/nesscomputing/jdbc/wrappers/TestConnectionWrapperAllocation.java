@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Allocation benchmark for wrapping checked out connections. Compares stacking the C3P0 connection wrappers (one proxy per wrapper)
+ * with the merged wrapper that {@link ConnectionWrapper} uses.
+ */
+public class TestConnectionWrapperAllocation
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final int WARMUP = 20000;
+    private static final int ROUNDS = 200000;
+
+    private final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                              new Class<?>[] { C3P0ProxyConnection.class },
+                                                                              new InvocationHandler() {
+                                                                                  @Override
+                                                                                  public Object invoke(final Object proxy, final Method method, final Object[] args)
+                                                                                  {
+                                                                                      return null;
+                                                                                  }
+                                                                              });
+
+    @Test
+    public void testMergedWrapperAllocatesLess() throws Exception
+    {
+        final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            LOG.warn("No allocation counters available, skipping benchmark!");
+            return;
+        }
+
+        final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            LOG.warn("Allocation counters are disabled, skipping benchmark!");
+            return;
+        }
+
+        final CreateArrayOfWrapper createArrayOfWrapper = new CreateArrayOfWrapper();
+        final ClientInfoWrapper clientInfoWrapper = new ClientInfoWrapper();
+
+        final Function<Connection, Connection> stacked = Functions.compose(clientInfoWrapper, createArrayOfWrapper);
+        final Function<Connection, Connection> merged = AbstractC3P0ConnectionWrapper.merge(ImmutableList.<AbstractC3P0ConnectionWrapper>of(createArrayOfWrapper, clientInfoWrapper));
+
+        final long stackedBytes = measure(allocationBean, stacked);
+        final long mergedBytes = measure(allocationBean, merged);
+
+        LOG.info("Bytes allocated per checkout: stacked %d, merged %d", stackedBytes, mergedBytes);
+        Assert.assertTrue(String.format("merged (%d) must allocate less than stacked (%d)", mergedBytes, stackedBytes), mergedBytes < stackedBytes);
+    }
+
+    private long measure(final com.sun.management.ThreadMXBean allocationBean, final Function<Connection, Connection> wrapper) throws Exception
+    {
+        final long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP; i++) {
+            wrapper.apply(connection).getWarnings();
+        }
+
+        final long start = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            wrapper.apply(connection).getWarnings();
+        }
+        return (allocationBean.getThreadAllocatedBytes(threadId) - start) / ROUNDS;
+    }
+}
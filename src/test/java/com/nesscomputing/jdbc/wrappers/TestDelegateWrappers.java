@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+
+public class TestDelegateWrappers
+{
+    @Test
+    public void testCreateArrayOf() throws Exception
+    {
+        final C3P0ProxyConnection c3p0Connection = mock(C3P0ProxyConnection.class);
+        final Connection wrapped = new CreateArrayOfWrapper().apply(DelegatingConnection.forConnection(c3p0Connection));
+
+        Assert.assertFalse(Proxy.isProxyClass(wrapped.getClass()));
+        Assert.assertTrue(wrapped instanceof C3P0ProxyConnection);
+
+        final Object [] elements = new Object [] { "a", "b" };
+        wrapped.createArrayOf("varchar", elements);
+        wrapped.getAutoCommit();
+
+        final Method createArrayOf = Connection.class.getMethod("createArrayOf", new Class<?>[] { String.class, Object [].class});
+        verify(c3p0Connection, times(1)).rawConnectionOperation(createArrayOf, C3P0ProxyConnection.RAW_CONNECTION, new Object [] { "varchar", elements });
+        verify(c3p0Connection, times(1)).getAutoCommit();
+    }
+
+    @Test
+    public void testStackedConnectionWrappers() throws Exception
+    {
+        final C3P0ProxyConnection c3p0Connection = mock(C3P0ProxyConnection.class);
+        final Connection wrapped = new ClientInfoWrapper().apply(new CreateArrayOfWrapper().apply(DelegatingConnection.forConnection(c3p0Connection)));
+
+        Assert.assertFalse(Proxy.isProxyClass(wrapped.getClass()));
+
+        wrapped.setClientInfo("ApplicationName", "test");
+
+        final Method setClientInfo = Connection.class.getMethod("setClientInfo", new Class<?>[] { String.class, String.class });
+        verify(c3p0Connection, times(1)).rawConnectionOperation(setClientInfo, C3P0ProxyConnection.RAW_CONNECTION, new Object [] { "ApplicationName", "test" });
+    }
+
+    @Test
+    public void testDataSourceWrappers() throws Exception
+    {
+        final DataSource ds = mock(DataSource.class);
+        final DataSource wrapped = new ApplicationNameWrapper().apply(new CloseableWrapper().apply(new DelegatingDataSource(ds)));
+
+        Assert.assertFalse(Proxy.isProxyClass(wrapped.getClass()));
+        Assert.assertSame(ds, DelegatingDataSource.unwrapAll(wrapped));
+
+        wrapped.getLoginTimeout();
+        verify(ds, times(1)).getLoginTimeout();
+    }
+
+    /**
+     * A data source that, like the C3P0 pool, does not implement the JDBC 4 methods.
+     */
+    private static DataSource createJdbc3DataSource()
+    {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                throw new AbstractMethodError(method.getName());
+            }
+        });
+    }
+
+    @Test
+    public void testJdbc3Delegate() throws Exception
+    {
+        final DataSource wrapped = new ApplicationNameWrapper().apply(new DelegatingDataSource(createJdbc3DataSource()));
+
+        Assert.assertTrue(wrapped.isWrapperFor(DelegatingDataSource.class));
+        Assert.assertTrue(wrapped.isWrapperFor(DataSource.class));
+        Assert.assertFalse(wrapped.isWrapperFor(Connection.class));
+
+        try {
+            wrapped.unwrap(Connection.class);
+            Assert.fail();
+        }
+        catch (SQLException e) {
+            // expected
+        }
+
+        try {
+            wrapped.getParentLogger();
+            Assert.fail();
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Closeable;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class TestFusedDataSourceWrapper
+{
+    private final List<String> calls = Lists.newArrayList();
+
+    @Test
+    public void testOrdering() throws Exception
+    {
+        final DataSource ds = mock(DataSource.class);
+        final Connection connection = mock(Connection.class);
+        when(ds.getConnection()).thenReturn(connection);
+
+        final FusibleDataSourceWrapper first = new RecordingWrapper("first", 10);
+        final FusibleDataSourceWrapper second = new RecordingWrapper("second", 20);
+
+        for (List<FusibleDataSourceWrapper> wrappers : ImmutableList.of(ImmutableList.of(first, second), ImmutableList.of(second, first))) {
+            calls.clear();
+            final DataSource wrapped = new FusedDataSourceWrapper(wrappers).apply(ds);
+            Assert.assertSame(connection, wrapped.getConnection());
+            Assert.assertEquals(ImmutableList.of("first", "second"), calls);
+        }
+    }
+
+    @Test
+    public void testSingleLayer() throws Exception
+    {
+        final DataSource ds = mock(DataSource.class);
+        final DataSource wrapped = new FusedDataSourceWrapper(ImmutableList.of(new CloseableWrapper(), new ApplicationNameWrapper(), new RecordingWrapper("test", 0))).apply(ds);
+
+        Assert.assertTrue(Proxy.isProxyClass(wrapped.getClass()));
+        Assert.assertTrue(Proxy.getInvocationHandler(wrapped) instanceof FusedDataSourceWrapper.FusedInvocationHandler);
+        Assert.assertTrue(wrapped instanceof Closeable);
+    }
+
+    @Test
+    public void testSingleDelegateLayer() throws Exception
+    {
+        final DataSource ds = mock(DataSource.class);
+        final Connection connection = mock(Connection.class);
+        when(ds.getConnection()).thenReturn(connection);
+
+        final DataSource wrapped = new FusedDataSourceWrapper(ImmutableList.of(new CloseableWrapper(), new RecordingWrapper("test", 0))).apply(new DelegatingDataSource(ds));
+
+        Assert.assertTrue(wrapped instanceof Closeable);
+        Assert.assertSame(ds, DelegatingDataSource.unwrapAll(wrapped));
+
+        final Connection c = wrapped.getConnection();
+        Assert.assertTrue(c instanceof DelegatingConnection);
+        Assert.assertSame(connection, ((DelegatingConnection) c).getDelegate());
+        Assert.assertEquals(ImmutableList.of("test"), calls);
+    }
+
+    @Test
+    public void testFailingWrapperClosesConnection() throws Exception
+    {
+        final DataSource ds = mock(DataSource.class);
+        final Connection connection = mock(Connection.class);
+        when(ds.getConnection()).thenReturn(connection);
+
+        final FusibleDataSourceWrapper failing = new RecordingWrapper("failing", 20) {
+            @Override
+            public Connection interceptConnection(final Connection connection) throws SQLException
+            {
+                super.interceptConnection(connection);
+                throw new SQLException("failed");
+            }
+        };
+
+        for (DataSource pool : ImmutableList.of(ds, new DelegatingDataSource(ds))) {
+            final DataSource wrapped = new FusedDataSourceWrapper(ImmutableList.of(new RecordingWrapper("first", 10), failing)).apply(pool);
+            try {
+                wrapped.getConnection();
+                Assert.fail();
+            }
+            catch (SQLException e) {
+                Assert.assertEquals("failed", e.getMessage());
+            }
+        }
+        Assert.assertEquals(ImmutableList.of("first", "failing", "first", "failing"), calls);
+        verify(connection, times(2)).close();
+    }
+
+    private class RecordingWrapper implements FusibleDataSourceWrapper
+    {
+        private final String name;
+        private final int order;
+
+        RecordingWrapper(final String name, final int order)
+        {
+            this.name = name;
+            this.order = order;
+        }
+
+        @Override
+        public DataSource apply(final DataSource dataSource)
+        {
+            throw new AssertionError("wrapper should be fused!");
+        }
+
+        @Override
+        public int getOrder()
+        {
+            return order;
+        }
+
+        @Override
+        public Connection interceptConnection(final Connection connection) throws SQLException
+        {
+            calls.add(name);
+            return connection;
+        }
+    }
+}
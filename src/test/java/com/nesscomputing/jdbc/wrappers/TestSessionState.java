@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+
+public class TestSessionState
+{
+    private final List<String> statements = Lists.newArrayList();
+    private boolean autoCommit = true;
+
+    private final Connection physicalConnection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                                      new Class<?>[] { Connection.class },
+                                                                                      new PhysicalConnectionHandler());
+
+    @Test
+    public void testSchemaSelectedOnce() throws Exception
+    {
+        final SchemaSelectorWrapper wrapper = new SchemaSelectorWrapper("test");
+
+        wrapper.interceptConnection(checkout());
+        wrapper.interceptConnection(checkout());
+
+        Assert.assertEquals(ImmutableList.of("SET search_path TO 'test'"), statements);
+    }
+
+    @Test
+    public void testSettingsChanged() throws Exception
+    {
+        new SessionSettingsWrapper("test", ImmutableMap.of("work_mem", "64MB", "statement_timeout", "5s")).interceptConnection(checkout());
+        Assert.assertEquals(ImmutableList.of("SET statement_timeout TO '5s'", "SET work_mem TO '64MB'"), statements);
+
+        statements.clear();
+        new SessionSettingsWrapper("test", ImmutableMap.of("work_mem", "64MB", "statement_timeout", "5s")).interceptConnection(checkout());
+        Assert.assertTrue(statements.isEmpty());
+
+        new SessionSettingsWrapper("test", ImmutableMap.of("work_mem", "128MB", "statement_timeout", "5s")).interceptConnection(checkout());
+        Assert.assertEquals(ImmutableList.of("SET work_mem TO '128MB'"), statements);
+    }
+
+    @Test
+    public void testNotRecordedInTransaction() throws Exception
+    {
+        autoCommit = false;
+        final SchemaSelectorWrapper wrapper = new SchemaSelectorWrapper("test");
+
+        wrapper.interceptConnection(checkout());
+        wrapper.interceptConnection(checkout());
+
+        Assert.assertEquals(2, statements.size());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        final SchemaSelectorWrapper wrapper = new SchemaSelectorWrapper("test");
+
+        final Connection connection = checkout();
+        wrapper.interceptConnection(connection);
+        SessionState.invalidate(connection);
+        wrapper.interceptConnection(checkout());
+
+        Assert.assertEquals(2, statements.size());
+    }
+
+    @Test
+    public void testUntrackedConnection() throws Exception
+    {
+        final SchemaSelectorWrapper wrapper = new SchemaSelectorWrapper("test");
+
+        wrapper.interceptConnection(physicalConnection);
+        wrapper.interceptConnection(physicalConnection);
+
+        Assert.assertEquals(2, statements.size());
+    }
+
+    @Test
+    public void testTenantSchema() throws Exception
+    {
+        final TenantSchemaSelectorWrapper wrapper = new TenantSchemaSelectorWrapper(null);
+        try {
+            wrapper.interceptConnection(checkout());
+            Assert.assertTrue(statements.isEmpty());
+
+            TenantContext.setTenantSchema("tenant1");
+            wrapper.interceptConnection(checkout());
+            wrapper.interceptConnection(checkout());
+
+            TenantContext.setTenantSchema("tenant2");
+            wrapper.interceptConnection(checkout());
+
+            Assert.assertEquals(ImmutableList.of("SET search_path TO 'tenant1'", "SET search_path TO 'tenant2'"), statements);
+        }
+        finally {
+            TenantContext.clear();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadSettingName()
+    {
+        new SessionSettingsWrapper("test", ImmutableMap.of("work_mem; DROP TABLE x", "64MB"));
+    }
+
+    @Test
+    public void testQuoting()
+    {
+        Assert.assertEquals("SET application_name TO 'it''s'", SessionState.getSetStatement("application_name", "it's"));
+    }
+
+    /**
+     * Returns a new logical connection for the physical connection, like a pool checkout.
+     */
+    private Connection checkout()
+    {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                   new Class<?>[] { C3P0ProxyConnection.class },
+                                                   new InvocationHandler() {
+                                                       @Override
+                                                       public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+                                                       {
+                                                           if ("rawConnectionOperation".equals(method.getName())) {
+                                                               final Object [] rawArgs = ((Object []) args[2]).clone();
+                                                               for (int i = 0; i < rawArgs.length; i++) {
+                                                                   if (rawArgs[i] == C3P0ProxyConnection.RAW_CONNECTION) {
+                                                                       rawArgs[i] = physicalConnection;
+                                                                   }
+                                                               }
+                                                               return ((Method) args[0]).invoke(args[1], rawArgs);
+                                                           }
+                                                           return method.invoke(physicalConnection, args);
+                                                       }
+                                                   });
+    }
+
+    private class PhysicalConnectionHandler implements InvocationHandler
+    {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+        {
+            if ("getAutoCommit".equals(method.getName())) {
+                return autoCommit;
+            }
+            else if ("createStatement".equals(method.getName())) {
+                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                              new Class<?>[] { Statement.class },
+                                              new StatementHandler());
+            }
+            return null;
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler
+    {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+        {
+            if ("execute".equals(method.getName()) || "addBatch".equals(method.getName())) {
+                statements.add((String) args[0]);
+                return Boolean.FALSE;
+            }
+            else if ("executeBatch".equals(method.getName())) {
+                return new int[0];
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.jdbc.wrappers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import com.nesscomputing.jdbc.stats.PoolStatistics;
+
+public class TestStatementCache
+{
+    private final List<String> prepared = Lists.newArrayList();
+    private final List<String> closed = Lists.newArrayList();
+
+    private final PoolStatistics statistics = new PoolStatistics("test");
+    private final StatementCacheWrapper wrapper = new StatementCacheWrapper("test", 2, statistics);
+
+    private final Connection physicalConnection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                                      new Class<?>[] { Connection.class },
+                                                                                      new PhysicalConnectionHandler());
+
+    @After
+    public void tearDown()
+    {
+        StatementCacheWrapper.connectionDestroyed(physicalConnection);
+    }
+
+    @Test
+    public void testReuseAcrossCheckouts() throws Exception
+    {
+        Connection connection = wrapper.interceptConnection(checkout());
+        final PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        Assert.assertSame(connection, statement.getConnection());
+        statement.close();
+        Assert.assertTrue(statement.isClosed());
+        connection.prepareStatement("SELECT 1").close();
+        connection.close();
+
+        connection = wrapper.interceptConnection(checkout());
+        connection.prepareStatement("SELECT 1").close();
+        connection.close();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1"), prepared);
+        Assert.assertTrue(closed.isEmpty());
+        Assert.assertEquals(2L, statistics.getStatementCacheHitCount());
+        Assert.assertEquals(1L, statistics.getStatementCacheMissCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception
+    {
+        final Connection connection = wrapper.interceptConnection(checkout());
+        connection.prepareStatement("SELECT 1").close();
+        connection.prepareStatement("SELECT 2").close();
+        connection.prepareStatement("SELECT 1").close();
+        connection.prepareStatement("SELECT 3").close();
+        connection.prepareStatement("SELECT 2").close();
+        connection.close();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1", "SELECT 2", "SELECT 3", "SELECT 2"), prepared);
+        Assert.assertEquals(ImmutableList.of("SELECT 2", "SELECT 1"), closed);
+        Assert.assertEquals(2L, statistics.getStatementCacheEvictionCount());
+    }
+
+    @Test
+    public void testConnectionCloseReturnsStatements() throws Exception
+    {
+        Connection connection = wrapper.interceptConnection(checkout());
+        final PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        final PreparedStatement concurrentStatement = connection.prepareStatement("SELECT 1");
+        connection.close();
+        Assert.assertTrue(statement.isClosed());
+        Assert.assertTrue(concurrentStatement.isClosed());
+
+        connection = wrapper.interceptConnection(checkout());
+        connection.prepareStatement("SELECT 1").close();
+        connection.close();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1", "SELECT 1"), prepared);
+        Assert.assertEquals(ImmutableList.of("SELECT 1"), closed);
+        Assert.assertEquals(1L, statistics.getStatementCacheHitCount());
+    }
+
+    @Test
+    public void testModifiedStatementNotCached() throws Exception
+    {
+        final Connection connection = wrapper.interceptConnection(checkout());
+        final PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        statement.setFetchSize(100);
+        statement.close();
+        connection.prepareStatement("SELECT 1").close();
+        connection.close();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1", "SELECT 1"), prepared);
+        Assert.assertEquals(ImmutableList.of("SELECT 1"), closed);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testClosedStatement() throws Exception
+    {
+        final Connection connection = wrapper.interceptConnection(checkout());
+        final PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        statement.close();
+        statement.executeQuery();
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        final Connection connection = checkout();
+        Assert.assertSame(connection, new StatementCacheWrapper("test", 0, statistics).interceptConnection(connection));
+        Assert.assertSame(physicalConnection, wrapper.interceptConnection(physicalConnection));
+    }
+
+    @Test
+    public void testConnectionDestroyed() throws Exception
+    {
+        Connection connection = wrapper.interceptConnection(checkout());
+        connection.prepareStatement("SELECT 1").close();
+        connection.close();
+
+        StatementCacheWrapper.connectionDestroyed(physicalConnection);
+
+        connection = wrapper.interceptConnection(checkout());
+        connection.prepareStatement("SELECT 1").close();
+        connection.close();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1", "SELECT 1"), prepared);
+        Assert.assertEquals(0L, statistics.getStatementCacheHitCount());
+    }
+
+    @Test
+    public void testWithoutStatistics() throws Exception
+    {
+        final Connection connection = new StatementCacheWrapper("test", 2, null).interceptConnection(checkout());
+        connection.prepareStatement("SELECT 1").close();
+        connection.prepareStatement("SELECT 1").close();
+        connection.close();
+
+        Assert.assertEquals(ImmutableList.of("SELECT 1"), prepared);
+    }
+
+    /**
+     * Returns a new logical connection for the physical connection, like a pool checkout.
+     */
+    private Connection checkout()
+    {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                   new Class<?>[] { C3P0ProxyConnection.class },
+                                                   new InvocationHandler() {
+                                                       @Override
+                                                       public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+                                                       {
+                                                           if ("rawConnectionOperation".equals(method.getName())) {
+                                                               final Object [] rawArgs = ((Object []) args[2]).clone();
+                                                               for (int i = 0; i < rawArgs.length; i++) {
+                                                                   if (rawArgs[i] == C3P0ProxyConnection.RAW_CONNECTION) {
+                                                                       rawArgs[i] = physicalConnection;
+                                                                   }
+                                                               }
+                                                               return ((Method) args[0]).invoke(args[1], rawArgs);
+                                                           }
+                                                           else if ("close".equals(method.getName())) {
+                                                               return null;
+                                                           }
+                                                           return method.invoke(physicalConnection, args);
+                                                       }
+                                                   });
+    }
+
+    private class PhysicalConnectionHandler implements InvocationHandler
+    {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+        {
+            if ("isClosed".equals(method.getName())) {
+                return Boolean.FALSE;
+            }
+            else if ("prepareStatement".equals(method.getName())) {
+                final String sql = (String) args[0];
+                prepared.add(sql);
+                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                              new Class<?>[] { PreparedStatement.class },
+                                              new StatementHandler(sql));
+            }
+            return null;
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler
+    {
+        private final String sql;
+        private boolean statementClosed = false;
+
+        StatementHandler(final String sql)
+        {
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+        {
+            if ("close".equals(method.getName())) {
+                statementClosed = true;
+                closed.add(sql);
+            }
+            else if ("isClosed".equals(method.getName())) {
+                return statementClosed;
+            }
+            return null;
+        }
+    }
+}